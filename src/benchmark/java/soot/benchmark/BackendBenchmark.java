@@ -0,0 +1,126 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.PackManager;
+import soot.Scene;
+import soot.SootClass;
+import soot.baf.BafASMBackend;
+import soot.baf.JasminClass;
+import soot.options.Options;
+
+/**
+ * Measures the generation of class files from Baf bodies, with the ASM back-end and the textual Jasmin back-end. The body
+ * packs, including the conversion to Baf, are run once during setup. Output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BackendBenchmark {
+  @Param({ BenchmarkInputs.IT_TESTS, BenchmarkInputs.SYNTHETIC })
+  public String input;
+
+  private List<SootClass> classes;
+
+  @Setup
+  public void setUp() throws IOException {
+    BenchmarkInputs.setUp(input, false);
+    Options.v().set_output_format(Options.output_format_class);
+    PackManager.v().runBodyPacks();
+    classes = new ArrayList<SootClass>(Scene.v().getApplicationClasses());
+  }
+
+  @Benchmark
+  public long bafASMBackend() {
+    CountingOutputStream out = new CountingOutputStream();
+    for (SootClass sc : classes) {
+      new BafASMBackend(sc, Options.v().java_version()).generateClassFile(out);
+    }
+    return out.count;
+  }
+
+  @Benchmark
+  public long jasminClass() {
+    CountingWriter out = new CountingWriter();
+    PrintWriter writer = new PrintWriter(out);
+    for (SootClass sc : classes) {
+      new JasminClass(sc).print(writer);
+    }
+    writer.flush();
+    return out.count;
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  private static final class CountingWriter extends Writer {
+    long count;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      count += len;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+/**
+ * The fixed inputs of the benchmarks and the code to set up Soot for them.
+ *
+ * <p>
+ * Two inputs are available: <code>it-tests</code>, the class files of the integration tests in <code>src/it/tests</code>,
+ * and <code>synthetic</code>, a mid-size program that is generated by {@link SyntheticJarGenerator} into
+ * <code>target/benchmark-inputs</code>. The <code>benchmark</code> profile runs {@link #main(String[])} to generate it
+ * before the benchmarks are run. Paths are resolved against the system property <code>soot.benchmark.basedir</code>,
+ * which defaults to the working directory.
+ * </p>
+ */
+public final class BenchmarkInputs {
+  public static final String IT_TESTS = "it-tests";
+  public static final String SYNTHETIC = "synthetic";
+
+  /** The number of classes of the synthetic program. */
+  public static final int SYNTHETIC_CLASSES = 400;
+
+  /** The number of methods per class of the synthetic program. */
+  public static final int SYNTHETIC_METHODS = 12;
+
+  private BenchmarkInputs() {
+  }
+
+  private static File getBaseDir() {
+    return new File(System.getProperty("soot.benchmark.basedir", "."));
+  }
+
+  /**
+   * Generates the synthetic program.
+   */
+  public static void main(String[] args) throws IOException {
+    File jar = getSyntheticJarFile();
+    File tmp = new File(jar.getPath() + ".tmp");
+    new SyntheticJarGenerator(SYNTHETIC_CLASSES, SYNTHETIC_METHODS).write(tmp);
+    if (jar.exists() && !jar.delete()) {
+      throw new IOException("Could not replace " + jar);
+    }
+    if (!tmp.renameTo(jar)) {
+      throw new IOException("Could not create " + jar);
+    }
+  }
+
+  private static File getSyntheticJarFile() {
+    return new File(getBaseDir(),
+        "target/benchmark-inputs/synthetic-" + SYNTHETIC_CLASSES + "x" + SYNTHETIC_METHODS + ".jar");
+  }
+
+  /**
+   * Returns the class path entries that make up the given input.
+   */
+  public static List<String> getProcessDirs(String input) throws IOException {
+    if (IT_TESTS.equals(input)) {
+      File[] tests = new File(getBaseDir(), "src/it/tests").listFiles();
+      if (tests == null) {
+        throw new IOException("Integration tests not found in " + getBaseDir().getAbsolutePath());
+      }
+      Arrays.sort(tests);
+      List<String> dirs = new ArrayList<String>();
+      for (File test : tests) {
+        File classes = new File(test, "classes");
+        if (classes.isDirectory()) {
+          dirs.add(classes.getPath());
+        }
+      }
+      return dirs;
+    } else if (SYNTHETIC.equals(input)) {
+      return Collections.singletonList(getSyntheticJar().getPath());
+    }
+    throw new IllegalArgumentException("Unknown benchmark input " + input);
+  }
+
+  /**
+   * Returns the synthetic program, which must have been generated by {@link #main(String[])}.
+   */
+  public static File getSyntheticJar() throws IOException {
+    File jar = getSyntheticJarFile();
+    if (!jar.isFile()) {
+      throw new IOException("Synthetic program not found in " + jar.getAbsolutePath()
+          + ", run mvn -Pbenchmark process-test-classes to generate it");
+    }
+    return jar;
+  }
+
+  /**
+   * Resets Soot and loads the given input. Whole-program mode is only available for the synthetic
+   * program, whose main class is used as entry point.
+   */
+  public static void setUp(String input, boolean wholeProgram) throws IOException {
+    setUp(input, wholeProgram, "");
+  }
+
+  /**
+   * Resets Soot and loads the given input, serving the bodies from the body cache in the given directory unless it is
+   * empty.
+   */
+  public static void setUp(String input, boolean wholeProgram, String bodyCacheDir) throws IOException {
+    if (wholeProgram && !SYNTHETIC.equals(input)) {
+      throw new IllegalArgumentException("Only the synthetic input has an entry point");
+    }
+    G.reset();
+    Options.v().set_process_dir(getProcessDirs(input));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_src_prec(Options.src_prec_class);
+    Options.v().set_output_format(Options.output_format_none);
+    Options.v().set_whole_program(wholeProgram);
+    Options.v().set_body_cache_dir(bodyCacheDir);
+    if (wholeProgram) {
+      Options.v().set_main_class(SyntheticJarGenerator.MAIN_CLASS);
+    }
+    Scene.v().loadNecessaryClasses();
+  }
+
+  /**
+   * Retrieves the active bodies of all concrete methods of the application classes.
+   */
+  public static List<Body> retrieveBodies() {
+    List<Body> bodies = new ArrayList<Body>();
+    for (SootClass sc : Scene.v().getApplicationClasses()) {
+      for (SootMethod m : new ArrayList<SootMethod>(sc.getMethods())) {
+        if (m.isConcrete()) {
+          bodies.add(m.retrieveActiveBody());
+        }
+      }
+    }
+    return bodies;
+  }
+}
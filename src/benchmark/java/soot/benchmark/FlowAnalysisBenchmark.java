@@ -0,0 +1,119 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.Body;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.BitVectorGuaranteedDefs;
+import soot.toolkits.scalar.BitVectorLiveLocals;
+import soot.toolkits.scalar.BitVectorLocalDefs;
+import soot.toolkits.scalar.GuaranteedDefs;
+import soot.toolkits.scalar.SimpleLiveLocals;
+import soot.toolkits.scalar.SimpleLocalDefs;
+
+/**
+ * Compares the bit-vector implementations of live locals, local definitions and guaranteed definitions with the
+ * general-purpose flow analyses they replace, on the exceptional unit graphs of all bodies of the input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FlowAnalysisBenchmark {
+  @Param({ BenchmarkInputs.IT_TESTS, BenchmarkInputs.SYNTHETIC })
+  public String input;
+
+  private List<UnitGraph> graphs;
+
+  @Setup
+  public void setUp() throws IOException {
+    BenchmarkInputs.setUp(input, false);
+    graphs = new ArrayList<UnitGraph>();
+    for (Body b : BenchmarkInputs.retrieveBodies()) {
+      graphs.add(new ExceptionalUnitGraph(b));
+    }
+  }
+
+  @Benchmark
+  public void simpleLiveLocals(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new SimpleLiveLocals(g));
+    }
+  }
+
+  @Benchmark
+  public void bitVectorLiveLocals(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new BitVectorLiveLocals(g));
+    }
+  }
+
+  @Benchmark
+  public void simpleLocalDefs(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new SimpleLocalDefs(g));
+    }
+  }
+
+  @Benchmark
+  public void bitVectorLocalDefs(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new BitVectorLocalDefs(g));
+    }
+  }
+
+  @Benchmark
+  public void guaranteedDefs(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new GuaranteedDefs(g));
+    }
+  }
+
+  @Benchmark
+  public void bitVectorGuaranteedDefs(Blackhole bh) {
+    for (UnitGraph g : graphs) {
+      bh.consume(new BitVectorGuaranteedDefs(g));
+    }
+  }
+}
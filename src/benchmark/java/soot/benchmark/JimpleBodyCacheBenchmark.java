@@ -0,0 +1,100 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.JimpleBodyCache;
+
+/**
+ * Measures loading the input and retrieving all of its bodies, once with the bodies built by the front-end and the
+ * <code>jb</code> pack and once with the bodies served from a warm {@link JimpleBodyCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JimpleBodyCacheBenchmark {
+  @Param({ BenchmarkInputs.IT_TESTS, BenchmarkInputs.SYNTHETIC })
+  public String input;
+
+  @Param({ "false", "true" })
+  public boolean cached;
+
+  private File cacheDir;
+
+  @Setup
+  public void setUp() throws IOException {
+    if (cached) {
+      cacheDir = Files.createTempDirectory("soot-body-cache").toFile();
+      BenchmarkInputs.setUp(input, false, cacheDir.getPath());
+      BenchmarkInputs.retrieveBodies();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (cacheDir != null) {
+      delete(cacheDir);
+    }
+  }
+
+  private static void delete(File f) {
+    File[] children = f.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    f.delete();
+  }
+
+  @Benchmark
+  public int retrieveBodies() throws IOException {
+    BenchmarkInputs.setUp(input, false, cached ? cacheDir.getPath() : "");
+    int count = BenchmarkInputs.retrieveBodies().size();
+    if (cached && JimpleBodyCache.v().getMisses() > 0) {
+      throw new IllegalStateException(JimpleBodyCache.v().getMisses() + " bodies were not found in the cache");
+    }
+    return count;
+  }
+}
@@ -0,0 +1,285 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates the synthetic input program of the benchmarks. The program is derived from its size parameters only, so the
+ * same parameters always produce the same classes.
+ *
+ * <p>
+ * The program consists of a class hierarchy of <code>Node</code> classes that form a binary tree and all implement the
+ * <code>Service</code> interface. Every class overrides the same set of methods, each of which contains a loop, field
+ * accesses, allocations, a trap and virtual and interface calls, so that the program exercises the front-end, the unit
+ * graphs, typing, the points-to analysis and the back-ends. A <code>Main</code> class instantiates all node classes and
+ * serves as entry point for whole-program analyses.
+ * </p>
+ */
+public class SyntheticJarGenerator implements Opcodes {
+  public static final String PACKAGE = "soot/benchmark/synthetic/";
+  public static final String MAIN_CLASS = "soot.benchmark.synthetic.Main";
+
+  private static final String OBJECT = "java/lang/Object";
+  private static final String SERVICE = PACKAGE + "Service";
+  private static final String METHOD_DESC = "(Ljava/lang/Object;I)Ljava/lang/Object;";
+  private static final long ENTRY_TIME = 946684800000L;
+
+  private final int numClasses;
+  private final int numMethods;
+
+  public SyntheticJarGenerator(int numClasses, int numMethods) {
+    if (numClasses < 1 || numMethods < 1) {
+      throw new IllegalArgumentException("The program needs at least one class and one method");
+    }
+    this.numClasses = numClasses;
+    this.numMethods = numMethods;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("Usage: SyntheticJarGenerator <jar> <classes> <methods per class>");
+      System.exit(1);
+    }
+    new SyntheticJarGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2])).write(new File(args[0]));
+  }
+
+  /**
+   * Writes the program to the given jar file.
+   */
+  public void write(File jar) throws IOException {
+    File dir = jar.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      putClass(out, SERVICE, generateService());
+      for (int i = 0; i < numClasses; i++) {
+        putClass(out, nodeName(i), generateNode(i));
+      }
+      putClass(out, PACKAGE + "Main", generateMain());
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void putClass(JarOutputStream out, String name, byte[] bytes) throws IOException {
+    JarEntry entry = new JarEntry(name + ".class");
+    entry.setTime(ENTRY_TIME);
+    out.putNextEntry(entry);
+    out.write(bytes);
+    out.closeEntry();
+  }
+
+  private static String nodeName(int i) {
+    return PACKAGE + "Node" + i;
+  }
+
+  private byte[] generateService() {
+    ClassWriter cw = new ClassWriter(0);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_ABSTRACT | ACC_INTERFACE, SERVICE, null, OBJECT, null);
+    cw.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, "call", METHOD_DESC, null, null).visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private byte[] generateNode(int i) {
+    String name = nodeName(i);
+    String superName = i == 0 ? OBJECT : nodeName((i - 1) / 2);
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_SUPER, name, null, superName, i == 0 ? new String[] { SERVICE } : null);
+    if (i == 0) {
+      cw.visitField(ACC_PUBLIC, "f0", "Ljava/lang/Object;", null, null).visitEnd();
+      cw.visitField(ACC_PUBLIC, "f1", "Ljava/lang/Object;", null, null).visitEnd();
+      cw.visitField(ACC_PUBLIC, "next", "L" + SERVICE + ";", null, null).visitEnd();
+    }
+
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    mv = cw.visitMethod(ACC_PUBLIC, "call", METHOD_DESC, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitMethodInsn(INVOKEVIRTUAL, name, "m" + (i % numMethods), METHOD_DESC, false);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    for (int j = 0; j < numMethods; j++) {
+      generateMethod(cw, i, j);
+    }
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /**
+   * Generates the method <code>m&lt;j&gt;</code> of class <code>Node&lt;i&gt;</code>. Local 5 holds a node in the loop
+   * and an int afterwards, so that the front-end has to split it and the type assigner has to type both parts.
+   */
+  private void generateMethod(ClassWriter cw, int i, int j) {
+    String root = nodeName(0);
+    String allocated = nodeName((i * 31 + j * 17 + 1) % numClasses);
+    String callee = nodeName((i * 13 + j * 7 + 5) % numClasses);
+
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "m" + j, METHOD_DESC, null, null);
+    mv.visitCode();
+    Label loop = new Label();
+    Label odd = new Label();
+    Label cont = new Label();
+    Label end = new Label();
+    Label tryStart = new Label();
+    Label tryEnd = new Label();
+    Label handler = new Label();
+    Label afterTry = new Label();
+    Label ret = new Label();
+    mv.visitTryCatchBlock(tryStart, tryEnd, handler, "java/lang/ArithmeticException");
+
+    // Object r = o; for (int k = 0; k < n; k++) { ... }
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitInsn(ICONST_0);
+    mv.visitVarInsn(ISTORE, 4);
+    mv.visitLabel(loop);
+    mv.visitVarInsn(ILOAD, 4);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitJumpInsn(IF_ICMPGE, end);
+    mv.visitVarInsn(ILOAD, 4);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(IAND);
+    mv.visitJumpInsn(IFNE, odd);
+
+    // Node x = new Node(); x.f0 = r; r = x;
+    mv.visitTypeInsn(NEW, allocated);
+    mv.visitInsn(DUP);
+    mv.visitMethodInsn(INVOKESPECIAL, allocated, "<init>", "()V", false);
+    mv.visitVarInsn(ASTORE, 5);
+    mv.visitVarInsn(ALOAD, 5);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitFieldInsn(PUTFIELD, root, "f0", "Ljava/lang/Object;");
+    mv.visitVarInsn(ALOAD, 5);
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitJumpInsn(GOTO, cont);
+
+    // this.f1 = r; r = this.f0;
+    mv.visitLabel(odd);
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitFieldInsn(PUTFIELD, root, "f1", "Ljava/lang/Object;");
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitFieldInsn(GETFIELD, root, "f0", "Ljava/lang/Object;");
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitLabel(cont);
+    mv.visitIincInsn(4, 1);
+    mv.visitJumpInsn(GOTO, loop);
+    mv.visitLabel(end);
+
+    // try { int q = 100 / n; Service s = this.next; if (s != null) r = s.call(r, q); } catch (ArithmeticException e) { r = e; }
+    mv.visitLabel(tryStart);
+    mv.visitIntInsn(BIPUSH, 100);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitInsn(IDIV);
+    mv.visitVarInsn(ISTORE, 5);
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitFieldInsn(GETFIELD, root, "next", "L" + SERVICE + ";");
+    mv.visitVarInsn(ASTORE, 6);
+    mv.visitVarInsn(ALOAD, 6);
+    mv.visitJumpInsn(IFNULL, tryEnd);
+    mv.visitVarInsn(ALOAD, 6);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitVarInsn(ILOAD, 5);
+    mv.visitMethodInsn(INVOKEINTERFACE, SERVICE, "call", METHOD_DESC, true);
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitLabel(tryEnd);
+    mv.visitJumpInsn(GOTO, afterTry);
+    mv.visitLabel(handler);
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitLabel(afterTry);
+
+    // if (r instanceof Node) r = ((Node) r).m(this, n - 1);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitTypeInsn(INSTANCEOF, callee);
+    mv.visitJumpInsn(IFEQ, ret);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitTypeInsn(CHECKCAST, callee);
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitInsn(ICONST_1);
+    mv.visitInsn(ISUB);
+    mv.visitMethodInsn(INVOKEVIRTUAL, callee, "m" + ((j + 1) % numMethods), METHOD_DESC, false);
+    mv.visitVarInsn(ASTORE, 3);
+    mv.visitLabel(ret);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private byte[] generateMain() {
+    String root = nodeName(0);
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_SUPER, PACKAGE + "Main", null, OBJECT, null);
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+    mv.visitCode();
+    for (int i = 0; i < numClasses; i++) {
+      // Node x = new Node(); x.next = new Node(); x.call(args, i);
+      String node = nodeName(i);
+      String next = nodeName((i * 7 + 3) % numClasses);
+      mv.visitTypeInsn(NEW, node);
+      mv.visitInsn(DUP);
+      mv.visitMethodInsn(INVOKESPECIAL, node, "<init>", "()V", false);
+      mv.visitVarInsn(ASTORE, 1);
+      mv.visitVarInsn(ALOAD, 1);
+      mv.visitTypeInsn(NEW, next);
+      mv.visitInsn(DUP);
+      mv.visitMethodInsn(INVOKESPECIAL, next, "<init>", "()V", false);
+      mv.visitFieldInsn(PUTFIELD, root, "next", "L" + SERVICE + ";");
+      mv.visitVarInsn(ALOAD, 1);
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitIntInsn(SIPUSH, i);
+      mv.visitMethodInsn(INVOKEINTERFACE, SERVICE, "call", METHOD_DESC, true);
+      mv.visitInsn(POP);
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+}
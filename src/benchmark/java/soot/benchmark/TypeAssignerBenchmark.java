@@ -0,0 +1,99 @@
+package soot.benchmark;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.Body;
+import soot.PhaseOptions;
+import soot.jimple.toolkits.typing.TypeAssigner;
+
+/**
+ * Measures the type assigner (<code>jb.tr</code>) on all bodies of the input.
+ *
+ * <p>
+ * The bodies are built with <code>jb.tr</code> and all later phases of <code>jb</code> that depend on types disabled, so
+ * that they are in the state the type assigner normally sees. Every invocation types fresh copies of these bodies.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TypeAssignerBenchmark {
+  private static final String[] DISABLED_PHASES
+      = { "jb.tr", "jb.ulp", "jb.lns", "jb.cp", "jb.dae", "jb.cp-ule", "jb.lp", "jb.ne", "jb.uce" };
+
+  @Param({ BenchmarkInputs.IT_TESTS, BenchmarkInputs.SYNTHETIC })
+  public String input;
+
+  private Map<String, String> options;
+  private List<Body> untyped;
+  private List<Body> bodies;
+
+  @Setup
+  public void setUp() throws IOException {
+    BenchmarkInputs.setUp(input, false);
+    options = new HashMap<String, String>(PhaseOptions.v().getPhaseOptions("jb.tr"));
+    for (String phase : DISABLED_PHASES) {
+      PhaseOptions.v().setPhaseOption(phase, "enabled:false");
+    }
+    untyped = BenchmarkInputs.retrieveBodies();
+  }
+
+  @Setup(Level.Invocation)
+  public void copyBodies() {
+    bodies = new ArrayList<Body>(untyped.size());
+    for (Body b : untyped) {
+      bodies.add((Body) b.clone());
+    }
+  }
+
+  @Benchmark
+  public List<Body> typeAssigner() {
+    for (Body b : bodies) {
+      TypeAssigner.v().transform(b, "jb.tr", options);
+    }
+    return bodies;
+  }
+}
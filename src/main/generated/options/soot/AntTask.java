@@ -294,6 +294,11 @@ public class AntTask extends MatchingTask {
             if(arg) addArg("-drop-bodies-after-load");
         }
   
+        public void setbody_cache_dir(String arg) {
+            addArg("-body-cache-dir");
+            addArg(arg);
+        }
+  
         public void setoutput_dir(String arg) {
             addArg("-output-dir");
             addArg(arg);
@@ -514,6 +519,19 @@ public class AntTask extends MatchingTask {
             }
         }
   
+        public void setdominators(String arg) {
+            if(false
+    
+                || arg.equals( "iterative" )
+                || arg.equals( "chk" )
+                ) {
+                addArg("-dominators");
+                addArg(arg);
+            } else {
+                throw new BuildException("Bad value "+arg+" for option dominators");
+            }
+        }
+  
         public void setomit_excepting_unit_edges(boolean arg) {
             if(arg) addArg("-omit-excepting-unit-edges");
         }
@@ -526,6 +544,10 @@ public class AntTask extends MatchingTask {
             if(arg) addArg("-ignore-resolution-errors");
         }
   
+        public void setper_method_body_packs(boolean arg) {
+            if(arg) addArg("-per-method-body-packs");
+        }
+  
         public void setinclude(Path arg) {
             if(include == null )
                 include = new Path(getProject());
@@ -630,6 +652,16 @@ public class AntTask extends MatchingTask {
             if(arg) addArg("-subtract-gc");
         }
   
+        public void setphase_profile(String arg) {
+            addArg("-phase-profile");
+            addArg(arg);
+        }
+  
+        public void setphase_trace(String arg) {
+            addArg("-phase-trace");
+            addArg(arg);
+        }
+  
         public void setno_writeout_body_releasing(boolean arg) {
             if(arg) addArg("-no-writeout-body-releasing");
         }
@@ -1319,6 +1351,24 @@ public class AntTask extends MatchingTask {
             addArg("resolve-all-abstract-invokes:"+(arg?"true":"false"));
           }
       
+          public void setcompact(boolean arg) {
+            addArg("-p");
+            addArg("cg");
+            addArg("compact:"+(arg?"true":"false"));
+          }
+      
+          public void setdispatch_index(boolean arg) {
+            addArg("-p");
+            addArg("cg");
+            addArg("dispatch-index:"+(arg?"true":"false"));
+          }
+      
+          public void setparallel_bodies(boolean arg) {
+            addArg("-p");
+            addArg("cg");
+            addArg("parallel-bodies:"+(arg?"true":"false"));
+          }
+      
           public void setlibrary(String arg) {
             addArg("-p");
             addArg("cg");
@@ -1589,6 +1639,12 @@ public class AntTask extends MatchingTask {
             addArg("propagator:"+arg);
           }
       
+          public void setcheck_parallel(boolean arg) {
+            addArg("-p");
+            addArg("cg.spark");
+            addArg("check-parallel:"+(arg?"true":"false"));
+          }
+      
           public void setset_impl(String arg) {
             addArg("-p");
             addArg("cg.spark");
@@ -2309,6 +2365,12 @@ public class AntTask extends MatchingTask {
             addArg("extended:"+(arg?"true":"false"));
           }
       
+          public void setpruned(boolean arg) {
+            addArg("-p");
+            addArg("shimple");
+            addArg("pruned:"+(arg?"true":"false"));
+          }
+      
           public void setdebug(boolean arg) {
             addArg("-p");
             addArg("shimple");
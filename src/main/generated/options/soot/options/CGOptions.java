@@ -183,6 +183,56 @@ public class CGOptions {
         return soot.PhaseOptions.getBoolean(options, "resolve-all-abstract-invokes");
     }
 
+    /**
+     * Compact Call Graph --
+     * Store the finished call graph in compact, immutable arrays.
+     *
+     * When this option is set to true, the call graph is converted 
+     * into a compact, immutable representation once it has been 
+     * built. Edges are stored in arrays indexed by the numbers of 
+     * their source and target methods instead of in hash maps and 
+     * linked edge lists, which needs considerably less memory for 
+     * large call graphs. Later phases that add or remove call graph 
+     * edges cannot be used together with this option.
+     */
+    public boolean compact() {
+        return soot.PhaseOptions.getBoolean(options, "compact");
+    }
+
+    /**
+     * Dispatch Index --
+     * Resolve virtual calls with a precomputed, thread-safe dispatch 
+     * index.
+     *
+     * When this option is set to true, virtual calls are resolved with 
+     * an index of the dispatch of all classes in the Scene. The vtables 
+     * of all classes are built in parallel once, using the number of 
+     * threads given by -num-threads, and the targets of calls on any 
+     * subtype of a type are computed once per type and subsignature. 
+     * The index can be queried by several threads at the same time.
+     */
+    public boolean dispatch_index() {
+        return soot.PhaseOptions.getBoolean(options, "dispatch-index");
+    }
+
+    /**
+     * Parallel Bodies --
+     * Build the bodies of newly reachable methods in parallel during 
+     * CHA.
+     *
+     * When this option is set to true and the call graph is built by 
+     * class hierarchy analysis, the bodies of each batch of newly 
+     * reachable methods are built in parallel, using the number of 
+     * threads given by -num-threads, before the builder processes them. 
+     * Only body construction runs in parallel: the reachable methods 
+     * and call edges are still found by a single thread, so the call 
+     * graph has the same edges as without this option, although they 
+     * may be found in a different order.
+     */
+    public boolean parallel_bodies() {
+        return soot.PhaseOptions.getBoolean(options, "parallel-bodies");
+    }
+
     /**
      * JDK version --
      * JDK version for native methods.
@@ -112,6 +112,8 @@ public class Options extends OptionsBase {
     public static final int check_init_throw_analysis_pedantic = 2;
     public static final int check_init_throw_analysis_unit = 3;
     public static final int check_init_throw_analysis_dalvik = 4;
+    public static final int dominators_iterative = 1;
+    public static final int dominators_chk = 2;
 
     @SuppressWarnings("unused")
     public boolean parse(String[] argv) {
@@ -254,6 +256,22 @@ public class Options extends OptionsBase {
                     || option.equals("search-dex-in-archives")
             )
                 search_dex_in_archives = true;
+            else if (false
+                    || option.equals("dex-cache-size")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if(dex_cache_size == 0)
+                    dex_cache_size = Integer.valueOf(value);
+                else {
+                    G.v().out.println("Duplicate values " + dex_cache_size + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
             else if (false
                     || option.equals("process-path")
                     || option.equals("process-dir")
@@ -445,6 +463,38 @@ public class Options extends OptionsBase {
                     || option.equals("no-drop-bodies-after-load")
             )
                 drop_bodies_after_load = false;
+            else if (false
+                    || option.equals("body-cache-dir")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if (body_cache_dir.isEmpty())
+                    body_cache_dir = value;
+                else {
+                    G.v().out.println("Duplicate values " + body_cache_dir + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
+            else if (false
+                    || option.equals("body-memory-budget")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if(body_memory_budget == 0)
+                    body_memory_budget = Integer.valueOf(value);
+                else {
+                    G.v().out.println("Duplicate values " + body_memory_budget + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
             else if (false
                     || option.equals("d")
                     || option.equals("output-dir")
@@ -755,6 +805,30 @@ public class Options extends OptionsBase {
                     || option.equals("output-jar")
             )
                 output_jar = true;
+            else if (false
+                    || option.equals("output-jar-stored")
+            )
+                output_jar_stored = true;
+            else if (false
+                    || option.equals("output-jar-compression-level")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if(output_jar_compression_level == -1)
+                    output_jar_compression_level = Integer.valueOf(value);
+                else {
+                    G.v().out.println("Duplicate values " + output_jar_compression_level + " and " + value + " for option -" + option);
+                    return false;
+                }
+                if (false || output_jar_compression_level < -1 || output_jar_compression_level > 9) {
+                    G.v().out.println(String.format("Invalid value %s given for option -%s", value, option));
+                    return false;
+                }
+            }
             else if (false
                     || option.equals("hierarchy-dirs")
             )
@@ -1085,6 +1159,40 @@ public class Options extends OptionsBase {
                     return false;
                 }
             }
+            else if (false
+                    || option.equals("dominators")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+        
+                if (false);
+                else if (false
+                        || value.equals("iterative")
+                ) {
+                    if (dominators != 0 && dominators != dominators_iterative) {
+                        G.v().out.println("Multiple values given for option " + option);
+                        return false;
+                    }
+                    dominators = dominators_iterative;
+                }
+                else if (false
+                        || value.equals("chk")
+                ) {
+                    if (dominators != 0 && dominators != dominators_chk) {
+                        G.v().out.println("Multiple values given for option " + option);
+                        return false;
+                    }
+                    dominators = dominators_chk;
+                }
+                else {
+                    G.v().out.println(String.format("Invalid value %s given for option -%s", option, value));
+                    return false;
+                }
+            }
             else if (false
                     || option.equals("omit-excepting-unit-edges")
             )
@@ -1104,6 +1212,26 @@ public class Options extends OptionsBase {
                     || option.equals("ignore-resolution-errors")
             )
                 ignore_resolution_errors = true;
+            else if (false
+                    || option.equals("num-threads")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if(num_threads == -1)
+                    num_threads = Integer.valueOf(value);
+                else {
+                    G.v().out.println("Duplicate values " + num_threads + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
+            else if (false
+                    || option.equals("per-method-body-packs")
+            )
+                per_method_body_packs = true;
             else if (false
                     || option.equals("i")
                     || option.equals("include")
@@ -1252,6 +1380,38 @@ public class Options extends OptionsBase {
                     || option.equals("subtract-gc")
             )
                 subtract_gc = true;
+            else if (false
+                    || option.equals("phase-profile")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if (phase_profile.isEmpty())
+                    phase_profile = value;
+                else {
+                    G.v().out.println("Duplicate values " + phase_profile + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
+            else if (false
+                    || option.equals("phase-trace")
+            ) {
+                if (!hasMoreOptions()) {
+                    G.v().out.println("No value given for option -" + option);
+                    return false;
+                }
+
+                String value = nextOption();
+                if (phase_trace.isEmpty())
+                    phase_trace = value;
+                else {
+                    G.v().out.println("Duplicate values " + phase_trace + " and " + value + " for option -" + option);
+                    return false;
+                }
+            }
             else if (false
                     || option.equals("no-writeout-body-releasing")
             )
@@ -1371,6 +1531,10 @@ public class Options extends OptionsBase {
     private boolean search_dex_in_archives = false;
     public void set_search_dex_in_archives(boolean setting) { search_dex_in_archives = setting; }
 
+    public int dex_cache_size() { return dex_cache_size; }
+    public void set_dex_cache_size(int setting) { dex_cache_size = setting; }
+    private int dex_cache_size = 0;
+
     public List<String> process_dir() {
         return process_dir == null ? Collections.emptyList() : process_dir;
     }
@@ -1440,6 +1604,14 @@ public class Options extends OptionsBase {
     private boolean drop_bodies_after_load = true;
     public void set_drop_bodies_after_load(boolean setting) { drop_bodies_after_load = setting; }
 
+    public String body_cache_dir() { return body_cache_dir; }
+    public void set_body_cache_dir(String setting) { body_cache_dir = setting; }
+    private String body_cache_dir = "";
+
+    public int body_memory_budget() { return body_memory_budget; }
+    public void set_body_memory_budget(int setting) { body_memory_budget = setting; }
+    private int body_memory_budget = 0;
+
     public String output_dir() { return output_dir; }
     public void set_output_dir(String setting) { output_dir = setting; }
     private String output_dir = "";
@@ -1461,6 +1633,14 @@ public class Options extends OptionsBase {
     private boolean output_jar = false;
     public void set_output_jar(boolean setting) { output_jar = setting; }
 
+    public boolean output_jar_stored() { return output_jar_stored; }
+    private boolean output_jar_stored = false;
+    public void set_output_jar_stored(boolean setting) { output_jar_stored = setting; }
+
+    public int output_jar_compression_level() { return output_jar_compression_level; }
+    public void set_output_jar_compression_level(int setting) { output_jar_compression_level = setting; }
+    private int output_jar_compression_level = -1;
+
     public boolean hierarchy_dirs() { return hierarchy_dirs; }
     private boolean hierarchy_dirs = false;
     public void set_hierarchy_dirs(boolean setting) { hierarchy_dirs = setting; }
@@ -1547,6 +1727,13 @@ public class Options extends OptionsBase {
     public void set_check_init_throw_analysis(int setting) { check_init_throw_analysis = setting; }
     private int check_init_throw_analysis = 0;
 
+    public int dominators() {
+        if (dominators == 0) return dominators_iterative;
+        return dominators; 
+    }
+    public void set_dominators(int setting) { dominators = setting; }
+    private int dominators = 0;
+
     public boolean omit_excepting_unit_edges() { return omit_excepting_unit_edges; }
     private boolean omit_excepting_unit_edges = false;
     public void set_omit_excepting_unit_edges(boolean setting) { omit_excepting_unit_edges = setting; }
@@ -1555,6 +1742,14 @@ public class Options extends OptionsBase {
     private boolean ignore_resolution_errors = false;
     public void set_ignore_resolution_errors(boolean setting) { ignore_resolution_errors = setting; }
 
+    public int num_threads() { return num_threads; }
+    public void set_num_threads(int setting) { num_threads = setting; }
+    private int num_threads = -1;
+
+    public boolean per_method_body_packs() { return per_method_body_packs; }
+    private boolean per_method_body_packs = false;
+    public void set_per_method_body_packs(boolean setting) { per_method_body_packs = setting; }
+
     public List<String> include() {
         return include == null ? Collections.emptyList() : include;
     }
@@ -1609,6 +1804,14 @@ public class Options extends OptionsBase {
     private boolean subtract_gc = false;
     public void set_subtract_gc(boolean setting) { subtract_gc = setting; }
 
+    public String phase_profile() { return phase_profile; }
+    public void set_phase_profile(String setting) { phase_profile = setting; }
+    private String phase_profile = "";
+
+    public String phase_trace() { return phase_trace; }
+    public void set_phase_trace(String setting) { phase_trace = setting; }
+    private String phase_trace = "";
+
     public boolean no_writeout_body_releasing() { return no_writeout_body_releasing; }
     private boolean no_writeout_body_releasing = false;
     public void set_no_writeout_body_releasing(boolean setting) { no_writeout_body_releasing = setting; }
@@ -1639,6 +1842,7 @@ public class Options extends OptionsBase {
                 + padOpt("-ice, -ignore-classpath-errors", "Ignores invalid entries on the Soot classpath.")
                 + padOpt("-process-multiple-dex", "Process all DEX files found in APK.")
                 + padOpt("-search-dex-in-archives", "Also includes Jar and Zip files when searching for DEX files under the provided classpath.")
+                + padOpt("-dex-cache-size ARG", "Share up to ARG megabytes of loaded DEX files between runs in the same JVM")
                 + padOpt("-process-path ARG -process-dir ARG", "Process all classes found in ARG")
                 + padOpt("-oaat", "From the process-dir, processes one class at a time.")
                 + padOpt("-android-jars ARG", "Use ARG as the path for finding the android.jar file")
@@ -1660,6 +1864,8 @@ public class Options extends OptionsBase {
                 + padOpt("-polyglot", "Use Java 1.4 Polyglot frontend instead of JastAdd")
                 + padOpt("-permissive-resolving", "Use alternative sources when classes cannot be found using the normal resolving strategy")
                 + padOpt("-drop-bodies-after-load", "Drop the method source after it has served its purpose of loading the method body")
+                + padOpt("-body-cache-dir ARG", "Cache Jimple bodies produced by the jb pack in ARG")
+                + padOpt("-body-memory-budget ARG", "Keep at most ARG megabytes of method bodies in memory")
                 + "\nOutput Options:\n"
                 + padOpt("-d ARG -output-dir ARG", "Store output files in ARG")
                 + padOpt("-f ARG -output-format ARG", "Set output format for Soot")
@@ -1691,6 +1897,8 @@ public class Options extends OptionsBase {
                     + padVal("1.7 7", "Force Java 1.7 as output version.")
                     + padVal("1.8 8", "Force Java 1.8 as output version.")
                 + padOpt("-outjar, -output-jar", "Make output dir a Jar file instead of dir")
+                + padOpt("-output-jar-stored", "Store the entries of the output Jar file without compression")
+                + padOpt("-output-jar-compression-level ARG", "Compress the entries of the output Jar file with the given level")
                 + padOpt("-hierarchy-dirs", "Generate class hierarchy directories for Jimple/Shimple")
                 + padOpt("-xml-attributes", "Save tags to XML attributes for Eclipse")
                 + padOpt("-print-tags, -print-tags-in-output", "Print tags in output files after stmt")
@@ -1726,9 +1934,13 @@ public class Options extends OptionsBase {
                     + padVal("pedantic", "Pedantically conservative throw analysis")
                     + padVal("unit", "Unit Throw Analysis")
                     + padVal("dalvik", "Dalvik Throw Analysis")
+                + padOpt("-dominators ARG", "")
+                    + padVal("iterative (default)", "Iterate over dominator sets to a fixed point")
+                    + padVal("chk", "Compute immediate dominators with the Cooper-Harvey-Kennedy algorithm")
                 + padOpt("-omit-excepting-unit-edges", "Omit CFG edges to handlers from excepting units which lack side effects")
                 + padOpt("-trim-cfgs", "Trim unrealizable exceptional edges from CFGs")
                 + padOpt("-ire, -ignore-resolution-errors", "Does not throw an exception when a program references an undeclared field or method.")
+                + padOpt("-per-method-body-packs", "Schedule body packs per method body instead of per class")
                 + "\nApplication Mode Options:\n"
                 + padOpt("-i ARG -include ARG", "Include classes in ARG as application classes")
                 + padOpt("-x ARG -exclude ARG", "Exclude classes in ARG from application classes")
@@ -1750,6 +1962,8 @@ public class Options extends OptionsBase {
                 + "\nMiscellaneous Options:\n"
                 + padOpt("-time", "Report time required for transformations")
                 + padOpt("-subtract-gc", "Subtract gc from time")
+                + padOpt("-phase-profile ARG", "Write per-phase profiling data as JSON to file")
+                + padOpt("-phase-trace ARG", "Write a Chrome trace of all phases to file")
                 + padOpt("-no-writeout-body-releasing", "Disables the release of method bodies after writeout. This flag is used internally.");
     }
 
@@ -2105,7 +2319,10 @@ public class Options extends OptionsBase {
                     + padOpt("reflection-log", "Uses a reflection log to resolve reflective calls.")
                     + padOpt("guards (ignore)", "Describes how to guard the program from unsound assumptions.")
                     + padOpt("types-for-invoke (false)", "Uses reaching types inferred by the pointer analysis to resolve reflective calls.")
-                    + padOpt("resolve-all-abstract-invokes (false)", "Causes methods invoked on abstract classes to be resolved even if there are no non-abstract children of the classes in the Scene.");
+                    + padOpt("resolve-all-abstract-invokes (false)", "Causes methods invoked on abstract classes to be resolved even if there are no non-abstract children of the classes in the Scene.")
+                    + padOpt("compact (false)", "Store the finished call graph in compact, immutable arrays")
+                    + padOpt("dispatch-index (false)", "Resolve virtual calls with a precomputed, thread-safe dispatch index")
+                    + padOpt("parallel-bodies (false)", "Build the bodies of newly reachable methods in parallel during CHA");
 
         if (phaseName.equals("cg.cha"))
             return "Phase " + phaseName + ":\n"
@@ -2145,6 +2362,10 @@ public class Options extends OptionsBase {
                         + padVal("merge", "Unfinished field reference merging algorithms")
                         + padVal("alias", "Alias-edge based algorithm")
                         + padVal("none", "Disable propagation")
+                        + padVal("parallel", "Multi-threaded worklist algorithm")
+                    + padOpt("check-parallel (false)", "Compare the parallel propagator against the worklist propagator")
+                    + padOpt("indexed-edges (false)", "Store PAG edges in arrays indexed by node number")
+                    + padOpt("incremental (false)", "Update the previous solution when method bodies change")
                     + padOpt("set-impl", "Select points-to set implementation")
                         + padVal("hash", "Use Java HashSet")
                         + padVal("bit", "Bit vector")
@@ -2153,6 +2374,7 @@ public class Options extends OptionsBase {
                         + padVal("heintze", "Heintze's shared bit-vector and overflow list representation")
                         + padVal("sharedlist", "Shared list representation")
                         + padVal("double (default)", "Double set representation for incremental propagation")
+                        + padVal("roaring", "Compressed bitmap with array, bitmap and run containers")
                     + padOpt("double-set-old", "Select implementation of points-to set for old part of double set")
                         + padVal("hash", "Use Java HashSet")
                         + padVal("bit", "Bit vector")
@@ -2160,6 +2382,7 @@ public class Options extends OptionsBase {
                         + padVal("array", "Sorted array representation")
                         + padVal("heintze", "Heintze's shared bit-vector and overflow list representation")
                         + padVal("sharedlist", "Shared list representation")
+                        + padVal("roaring", "Compressed bitmap with array, bitmap and run containers")
                     + padOpt("double-set-new", "Select implementation of points-to set for new part of double set")
                         + padVal("hash", "Use Java HashSet")
                         + padVal("bit", "Bit vector")
@@ -2167,6 +2390,7 @@ public class Options extends OptionsBase {
                         + padVal("array", "Sorted array representation")
                         + padVal("heintze", "Heintze's shared bit-vector and overflow list representation")
                         + padVal("sharedlist", "Shared list representation")
+                        + padVal("roaring", "Compressed bitmap with array, bitmap and run containers")
                     + padOpt("dump-html (false)", "Dump pointer assignment graph to HTML for debugging")
                     + padOpt("dump-pag (false)", "Dump pointer assignment graph for other solvers")
                     + padOpt("dump-solution (false)", "Dump final solution for comparison with other solvers")
@@ -2426,6 +2650,7 @@ public class Options extends OptionsBase {
                     + padOpt("node-elim-opt (true)", "Node elimination optimizations")
                     + padOpt("standard-local-names (false)", "Uses naming scheme of the Local Name Standardizer.")
                     + padOpt("extended (false)", "Compute extended SSA (SSI) form.")
+                    + padOpt("pruned (false)", "Only place Phi nodes for live locals.")
                     + padOpt("debug (false)", "Enables debugging output, if any.");
 
         if (phaseName.equals("stp"))
@@ -3019,7 +3244,10 @@ public class Options extends OptionsBase {
                     "reflection-log",
                     "guards",
                     "types-for-invoke",
-                    "resolve-all-abstract-invokes"
+                    "resolve-all-abstract-invokes",
+                    "compact",
+                    "dispatch-index",
+                    "parallel-bodies"
             );
 
         if (phaseName.equals("cg.cha"))
@@ -3051,6 +3279,9 @@ public class Options extends OptionsBase {
                     "simplify-sccs",
                     "ignore-types-for-sccs",
                     "propagator",
+                    "check-parallel",
+                    "indexed-edges",
+                    "incremental",
                     "set-impl",
                     "double-set-old",
                     "double-set-new",
@@ -3231,6 +3462,7 @@ public class Options extends OptionsBase {
                     "node-elim-opt",
                     "standard-local-names",
                     "extended",
+                    "pruned",
                     "debug"
             );
 
@@ -3730,7 +3962,10 @@ public class Options extends OptionsBase {
                     + "trim-clinit:true "
                     + "guards:ignore "
                     + "types-for-invoke:false "
-                    + "resolve-all-abstract-invokes:false ";
+                    + "resolve-all-abstract-invokes:false "
+                    + "compact:false "
+                    + "dispatch-index:false "
+                    + "parallel-bodies:false ";
 
         if (phaseName.equals("cg.cha"))
             return ""
@@ -3760,6 +3995,9 @@ public class Options extends OptionsBase {
                     + "simplify-sccs:false "
                     + "ignore-types-for-sccs:false "
                     + "propagator:worklist "
+                    + "check-parallel:false "
+                    + "indexed-edges:false "
+                    + "incremental:false "
                     + "set-impl:double "
                     + "double-set-old:hybrid "
                     + "double-set-new:hybrid "
@@ -3922,6 +4160,7 @@ public class Options extends OptionsBase {
                     + "node-elim-opt:true "
                     + "standard-local-names:false "
                     + "extended:false "
+                    + "pruned:false "
                     + "debug:false ";
 
         if (phaseName.equals("stp"))
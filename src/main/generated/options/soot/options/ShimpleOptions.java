@@ -78,6 +78,20 @@ public class ShimpleOptions {
         return soot.PhaseOptions.getBoolean(options, "extended");
     }
 
+    /**
+     * Pruned SSA --
+     * Only place Phi nodes for live locals..
+     *
+     * If enabled, Shimple computes which locals are live at the start 
+     * of each block and only places a Phi node for a local where it is 
+     * live. Otherwise, Phi nodes are placed at the whole iterated 
+     * dominance frontier of the definitions of a local, and those 
+     * whose value is never used are left in the body.
+     */
+    public boolean pruned() {
+        return soot.PhaseOptions.getBoolean(options, "pruned");
+    }
+
     /**
      * Debugging Output --
      * Enables debugging output, if any.
@@ -564,6 +564,7 @@ public class SparkOptions {
     public static final int propagator_merge = 4;
     public static final int propagator_alias = 5;
     public static final int propagator_none = 6;
+    public static final int propagator_parallel = 7;
 
     /**
      * Propagator --
@@ -588,10 +589,67 @@ public class SparkOptions {
             return propagator_alias;
         if (s.equalsIgnoreCase("none"))
             return propagator_none;
+        if (s.equalsIgnoreCase("parallel"))
+            return propagator_parallel;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option propagator", s));
     }
 
+    /**
+     * Check Parallel Propagation --
+     * Compare the parallel propagator against the worklist 
+     * propagator.
+     *
+     * When this option is set to true and the parallel propagator is 
+     * selected, the points-to sets computed by the parallel 
+     * propagator are compared against the ones computed by the 
+     * sequential worklist propagator on a newly built pointer 
+     * assignment graph, and so are the call edges found on the fly. 
+     * Any difference in either direction is reported and aborts the 
+     * analysis. This more than doubles the time needed to build the 
+     * pointer assignment graph and propagate it and is meant for 
+     * testing.
+     */
+    public boolean check_parallel() {
+        return soot.PhaseOptions.getBoolean(options, "check-parallel");
+    }
+
+    /**
+     * Indexed Edges --
+     * Store PAG edges in arrays indexed by node number.
+     *
+     * When this option is set to true, the simple, load, store and 
+     * allocation edges of the pointer assignment graph are kept in 
+     * arrays indexed by the number of the source node instead of hash 
+     * maps from nodes to hash sets. Duplicate edges are detected by a 
+     * small hash set of node numbers per source. This reduces the 
+     * memory allocated while building the graph, and the propagators 
+     * can iterate over the edges of a node without copying them.
+     */
+    public boolean indexed_edges() {
+        return soot.PhaseOptions.getBoolean(options, "indexed-edges");
+    }
+
+    /**
+     * Incremental --
+     * Update the previous solution when method bodies change.
+     *
+     * When this option is set to true, Spark keeps its pointer 
+     * assignment graph and call graph after solving. When it is run 
+     * again after the bodies of some methods have been changed and 
+     * reported through SparkTransformer.methodsChanged(), only the 
+     * parts of the graph built from those methods are rebuilt, and 
+     * points-to sets are repaired starting from the affected nodes. If 
+     * the removed edges affect too large a part of the graph, or if 
+     * the change may alter virtual dispatch, Spark falls back to 
+     * solving from scratch. This option requires the worklist 
+     * propagator, on-the-fly call graph construction and no 
+     * simplification.
+     */
+    public boolean incremental() {
+        return soot.PhaseOptions.getBoolean(options, "incremental");
+    }
+
     public static final int set_impl_hash = 1;
     public static final int set_impl_bit = 2;
     public static final int set_impl_hybrid = 3;
@@ -599,6 +657,7 @@ public class SparkOptions {
     public static final int set_impl_heintze = 5;
     public static final int set_impl_sharedlist = 6;
     public static final int set_impl_double = 7;
+    public static final int set_impl_roaring = 8;
 
     /**
      * Set Implementation --
@@ -625,6 +684,8 @@ public class SparkOptions {
             return set_impl_sharedlist;
         if (s.equalsIgnoreCase("double"))
             return set_impl_double;
+        if (s.equalsIgnoreCase("roaring"))
+            return set_impl_roaring;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option set-impl", s));
     }
@@ -635,6 +696,7 @@ public class SparkOptions {
     public static final int double_set_old_array = 4;
     public static final int double_set_old_heintze = 5;
     public static final int double_set_old_sharedlist = 6;
+    public static final int double_set_old_roaring = 7;
 
     /**
      * Double Set Old --
@@ -662,6 +724,8 @@ public class SparkOptions {
             return double_set_old_heintze;
         if (s.equalsIgnoreCase("sharedlist"))
             return double_set_old_sharedlist;
+        if (s.equalsIgnoreCase("roaring"))
+            return double_set_old_roaring;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option double-set-old", s));
     }
@@ -672,6 +736,7 @@ public class SparkOptions {
     public static final int double_set_new_array = 4;
     public static final int double_set_new_heintze = 5;
     public static final int double_set_new_sharedlist = 6;
+    public static final int double_set_new_roaring = 7;
 
     /**
      * Double Set New --
@@ -699,6 +764,8 @@ public class SparkOptions {
             return double_set_new_heintze;
         if (s.equalsIgnoreCase("sharedlist"))
             return double_set_new_sharedlist;
+        if (s.equalsIgnoreCase("roaring"))
+            return double_set_new_roaring;
 
         throw new RuntimeException(String.format("Invalid value %s of phase option double-set-new", s));
     }
@@ -2399,4 +2399,60 @@ public class Singletons {
     protected void release_soot_jbco_jimpleTransformations_MethodRenamer() {
     	instance_soot_jbco_jimpleTransformations_MethodRenamer = null;
     }
+
+    private soot.JimpleBodyCache instance_soot_JimpleBodyCache;
+    public soot.JimpleBodyCache soot_JimpleBodyCache() {
+        if (instance_soot_JimpleBodyCache == null) {
+	       	synchronized (this) {
+		        if (instance_soot_JimpleBodyCache == null)
+	        		instance_soot_JimpleBodyCache = new soot.JimpleBodyCache(g);
+	       	}
+       	}
+        return instance_soot_JimpleBodyCache;
+    }
+    protected void release_soot_JimpleBodyCache() {
+    	instance_soot_JimpleBodyCache = null;
+    }
+
+    private soot.PhaseProfiler instance_soot_PhaseProfiler;
+    public soot.PhaseProfiler soot_PhaseProfiler() {
+        if (instance_soot_PhaseProfiler == null) {
+	       	synchronized (this) {
+		        if (instance_soot_PhaseProfiler == null)
+	        		instance_soot_PhaseProfiler = new soot.PhaseProfiler(g);
+	       	}
+       	}
+        return instance_soot_PhaseProfiler;
+    }
+    protected void release_soot_PhaseProfiler() {
+    	instance_soot_PhaseProfiler = null;
+    }
+
+    private soot.BodyResidencyManager instance_soot_BodyResidencyManager;
+    public soot.BodyResidencyManager soot_BodyResidencyManager() {
+        if (instance_soot_BodyResidencyManager == null) {
+	       	synchronized (this) {
+		        if (instance_soot_BodyResidencyManager == null)
+	        		instance_soot_BodyResidencyManager = new soot.BodyResidencyManager(g);
+	       	}
+       	}
+        return instance_soot_BodyResidencyManager;
+    }
+    protected void release_soot_BodyResidencyManager() {
+    	instance_soot_BodyResidencyManager = null;
+    }
+
+    private soot.jimple.toolkits.typing.fast.TypeLatticeCache instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache;
+    public soot.jimple.toolkits.typing.fast.TypeLatticeCache soot_jimple_toolkits_typing_fast_TypeLatticeCache() {
+        if (instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache == null) {
+	       	synchronized (this) {
+		        if (instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache == null)
+	        		instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache = new soot.jimple.toolkits.typing.fast.TypeLatticeCache(g);
+	       	}
+       	}
+        return instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache;
+    }
+    protected void release_soot_jimple_toolkits_typing_fast_TypeLatticeCache() {
+    	instance_soot_jimple_toolkits_typing_fast_TypeLatticeCache = null;
+    }
 }
\ No newline at end of file
@@ -75,8 +75,14 @@ public class ArrayType extends RefLikeType {
     while (numDimensions > 0) {
       ArrayType ret = elementType.getArrayType();
       if (ret == null) {
-        ret = new ArrayType(baseType, orgDimensions - numDimensions + 1);
-        elementType.setArrayType(ret);
+        // Array types are compared by identity, so concurrent resolvers must agree on a single instance
+        synchronized (elementType) {
+          ret = elementType.getArrayType();
+          if (ret == null) {
+            ret = new ArrayType(baseType, orgDimensions - numDimensions + 1);
+            elementType.setArrayType(ret);
+          }
+        }
       }
       elementType = ret;
       numDimensions--;
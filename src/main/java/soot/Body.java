@@ -43,6 +43,10 @@ import soot.options.Options;
 import soot.tagkit.AbstractHost;
 import soot.tagkit.CodeAttribute;
 import soot.tagkit.Tag;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.LocalUses;
 import soot.util.Chain;
 import soot.util.EscapedWriter;
 import soot.util.HashChain;
@@ -83,6 +87,9 @@ public abstract class Body extends AbstractHost implements Serializable {
   /** The chain of units for this Body. */
   protected UnitPatchingChain unitChain = new UnitPatchingChain(new HashChain<Unit>());
 
+  /** The analyses of this Body shared between phases, created on demand. */
+  private transient BodyAnalysisCache analysisCache = null;
+
   private static BodyValidator[] validators;
 
   /** Creates a deep copy of this Body. */
@@ -573,4 +580,51 @@ public abstract class Body extends AbstractHost implements Serializable {
     return localChain.getModificationCount() + unitChain.getModificationCount() + trapChain.getModificationCount();
   }
 
+  /**
+   * Returns the cache of the analyses of this Body that are shared between phases.
+   *
+   * @see BodyAnalysisCache
+   */
+  public BodyAnalysisCache getAnalysisCache() {
+    if (analysisCache == null) {
+      analysisCache = new BodyAnalysisCache(this);
+    }
+    return analysisCache;
+  }
+
+  /** Returns the analysis cache of this Body, or null if it has not been used. */
+  BodyAnalysisCache peekAnalysisCache() {
+    return analysisCache;
+  }
+
+  /**
+   * Returns the cached analysis of the given type, computing it if needed. The supported types are {@link UnitGraph} and
+   * {@link ExceptionalUnitGraph}, for the graph built with the default throw analysis, and {@link LocalDefs} and
+   * {@link LocalUses} on that graph.
+   *
+   * @throws IllegalArgumentException
+   *           if there is no default analysis of the given type
+   */
+  public <T> T getAnalysis(Class<T> type) {
+    BodyAnalysisCache cache = getAnalysisCache();
+    if (type == ExceptionalUnitGraph.class || type == UnitGraph.class) {
+      return type.cast(cache.getExceptionalUnitGraph());
+    } else if (type == LocalDefs.class) {
+      return type.cast(cache.getLocalDefs(cache.getExceptionalUnitGraph()));
+    } else if (type == LocalUses.class) {
+      return type.cast(cache.getLocalUses(cache.getExceptionalUnitGraph()));
+    }
+    throw new IllegalArgumentException("No default analysis of type " + type.getName());
+  }
+
+  /**
+   * Drops the cached analyses of this Body. Must be called after changing units or traps in place, since such changes do
+   * not show in the modification counts of the chains.
+   */
+  public void invalidateAnalyses() {
+    if (analysisCache != null) {
+      analysisCache.invalidate();
+    }
+  }
+
 }
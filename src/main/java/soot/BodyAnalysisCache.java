@@ -0,0 +1,152 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import soot.options.Options;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.LocalUses;
+
+/**
+ * Analyses of one {@link Body} that are shared between the phases applied to it, so that a phase does not rebuild a unit
+ * graph or the local definitions of a body that did not change since the previous phase.
+ *
+ * <p>
+ * All entries are dropped as soon as the modification count of the unit, local or trap chain of the body changes. Changes
+ * made in place, such as setting the value of a box or the begin unit of a trap, are not visible in these counts, so
+ * whoever makes them must call {@link Body#invalidateAnalyses()}. {@link BodyTransformer} does this after every
+ * transformer that does not declare otherwise, and {@link Pack} after every application of a pack to a body.
+ * </p>
+ *
+ * <p>
+ * Cached analyses are shared, so they must not be modified by their users.
+ * </p>
+ */
+public final class BodyAnalysisCache {
+  /** Computes an analysis of a body on a cache miss. */
+  public interface Factory<T> {
+    T newAnalysis(Body b);
+  }
+
+  private final Body body;
+  private Map<Object, Object> entries;
+  private long unitCount;
+  private long localCount;
+  private long trapCount;
+  private long hits;
+  private long misses;
+
+  BodyAnalysisCache(Body body) {
+    this.body = body;
+  }
+
+  /**
+   * Returns the analysis stored under <code>key</code>, computing it with <code>factory</code> if it is not cached or if the
+   * body changed since it was computed.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Factory<T> factory) {
+    validate();
+    Object ret = entries == null ? null : entries.get(key);
+    if (ret != null) {
+      hits++;
+      return (T) ret;
+    }
+    misses++;
+    T analysis = factory.newAnalysis(body);
+    // The factory may have changed the body, which makes the
+    // entries cached so far and the new one stale
+    validate();
+    if (entries == null) {
+      entries = new HashMap<Object, Object>();
+    }
+    entries.put(key, analysis);
+    return analysis;
+  }
+
+  /**
+   * Returns the {@link ExceptionalUnitGraph} of the body for the given throw analysis. The graph is a
+   * {@link CompactExceptionalUnitGraph}.
+   */
+  public ExceptionalUnitGraph getExceptionalUnitGraph(final ThrowAnalysis throwAnalysis,
+      final boolean omitExceptingUnitEdges) {
+    return get(Arrays.asList(ExceptionalUnitGraph.class, throwAnalysis, omitExceptingUnitEdges),
+        b -> new CompactExceptionalUnitGraph(b, throwAnalysis, omitExceptingUnitEdges));
+  }
+
+  /**
+   * Returns the {@link ExceptionalUnitGraph} of the body for the default throw analysis of the {@link Scene}, as built by
+   * <code>new ExceptionalUnitGraph(body)</code>.
+   */
+  public ExceptionalUnitGraph getExceptionalUnitGraph() {
+    return getExceptionalUnitGraph(Scene.v().getDefaultThrowAnalysis(), Options.v().omit_excepting_unit_edges());
+  }
+
+  /** Returns the {@link LocalDefs} computed by {@link LocalDefs.Factory#newLocalDefs(UnitGraph)} on the given graph. */
+  public LocalDefs getLocalDefs(final UnitGraph graph) {
+    return get(Arrays.asList(LocalDefs.class, graph), b -> LocalDefs.Factory.newLocalDefs(graph));
+  }
+
+  /**
+   * Returns the {@link LocalUses} computed by {@link LocalUses.Factory#newLocalUses(UnitGraph, LocalDefs)} on the given graph
+   * and the result of {@link #getLocalDefs(UnitGraph)} on it.
+   */
+  public LocalUses getLocalUses(final UnitGraph graph) {
+    final LocalDefs defs = getLocalDefs(graph);
+    return get(Arrays.asList(LocalUses.class, graph), b -> LocalUses.Factory.newLocalUses(graph, defs));
+  }
+
+  /** Drops all cached analyses. */
+  public void invalidate() {
+    entries = null;
+  }
+
+  /** Returns the number of requests answered from the cache, over the lifetime of the body. */
+  public long getHits() {
+    return hits;
+  }
+
+  /** Returns the number of requests for which an analysis had to be computed, over the lifetime of the body. */
+  public long getMisses() {
+    return misses;
+  }
+
+  private void validate() {
+    long units = body.getUnits().getModificationCount();
+    long locals = body.getLocals().getModificationCount();
+    long traps = body.getTraps().getModificationCount();
+    if (units != unitCount || locals != localCount || traps != trapCount) {
+      entries = null;
+      unitCount = units;
+      localCount = locals;
+      trapCount = traps;
+    }
+  }
+}
@@ -0,0 +1,384 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+import soot.tagkit.Host;
+import soot.tagkit.Tag;
+
+/**
+ * Keeps the estimated memory used by method bodies within the budget given by the <code>-body-memory-budget</code>
+ * option.
+ *
+ * <p>
+ * {@link SootMethod} reports every body it creates and every access to its body. When the estimated size of all tracked
+ * bodies exceeds the budget, the least recently used Jimple bodies are written to a spill file and released. The method
+ * source of an evicted method is replaced by one that reads the spill file, so the body is read back transparently the
+ * next time it is retrieved. Bodies of other intermediate representations cannot be read back and are never evicted.
+ * </p>
+ *
+ * <p>
+ * A body that is read back consists of new statements and locals, so a body may only be evicted when nobody holds on to
+ * it. Analyses that keep references to the statements or locals of a body, like the call graph builder and SPARK, call
+ * {@link #pin(SootMethod)}, and a pinned body stays in memory until it is released. All other bodies are only evicted
+ * when {@link #evictIfNeeded()} is called, which {@link PackManager} does between two classes of its per-class output, and
+ * at the {@link #safePoint() safe points} of the call graph builders while the <code>cg</code> pack runs. The tags of an
+ * evicted body, of its statements and of their value boxes are kept in memory and are restored when the body is read
+ * back.
+ * </p>
+ *
+ * <p>
+ * The size of a body is estimated from the number of its units, locals and traps when it is created.
+ * </p>
+ */
+public class BodyResidencyManager {
+  private static final Logger logger = LoggerFactory.getLogger(BodyResidencyManager.class);
+
+  private static final long BYTES_PER_BODY = 512;
+  private static final long BYTES_PER_UNIT = 200;
+  private static final long BYTES_PER_LOCAL = 80;
+  private static final long BYTES_PER_TRAP = 64;
+
+  /** Estimated sizes of the tracked bodies that may be evicted, in access order. */
+  private final LinkedHashMap<SootMethod, Long> resident = new LinkedHashMap<SootMethod, Long>(1024, 0.75f, true);
+  /** Estimated sizes of the pinned bodies, which are never evicted. */
+  private final Map<SootMethod, Long> pinned = new HashMap<SootMethod, Long>();
+  /** Estimated size of all tracked bodies, pinned or not. */
+  private long residentBytes;
+  private File spillDir;
+  private volatile boolean evictAtSafePoints;
+
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong reloads = new AtomicLong();
+
+  public BodyResidencyManager(Singletons.Global g) {
+  }
+
+  public static BodyResidencyManager v() {
+    return G.v().soot_BodyResidencyManager();
+  }
+
+  /** Returns true if a body memory budget has been configured. */
+  public boolean isEnabled() {
+    return Options.v().body_memory_budget() > 0;
+  }
+
+  /**
+   * Keeps the body of <code>m</code> in memory until it is released, because the caller keeps references to its statements
+   * or locals. Pin a method before retrieving its body, so that the body cannot be evicted in between. Does nothing if no
+   * budget has been configured.
+   */
+  public void pin(SootMethod m) {
+    if (!isEnabled()) {
+      return;
+    }
+    // Under the lock of m, so that a body that is being spilled is either kept or read back by the caller
+    synchronized (m) {
+      synchronized (this) {
+        if (!pinned.containsKey(m)) {
+          Long size = resident.remove(m);
+          pinned.put(m, size == null ? 0L : size);
+        }
+      }
+    }
+  }
+
+  /** Returns true if the body of <code>m</code> has been pinned and not released since. */
+  public synchronized boolean isPinned(SootMethod m) {
+    return pinned.containsKey(m);
+  }
+
+  /**
+   * Lets {@link #safePoint()} evict bodies. {@link PackManager} turns this on while it runs the <code>cg</code> pack, whose
+   * call graph builders hold on to no body they have not pinned at their safe points.
+   */
+  void setEvictAtSafePoints(boolean evictAtSafePoints) {
+    this.evictAtSafePoints = evictAtSafePoints;
+  }
+
+  /**
+   * Called by the call graph builders between two methods, where they hold on to no body they have not pinned. Evicts
+   * bodies as {@link #evictIfNeeded()} does if {@link PackManager} runs the <code>cg</code> pack, and does nothing
+   * otherwise, since the caller of a builder may hold on to bodies.
+   */
+  public void safePoint() {
+    if (evictAtSafePoints) {
+      evictIfNeeded();
+    }
+  }
+
+  /** Returns the number of bodies that have been written to a spill file. */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /** Returns the number of bodies that have been read back from a spill file. */
+  public long getReloads() {
+    return reloads.get();
+  }
+
+  /** Returns the estimated size of all tracked bodies in bytes. */
+  public synchronized long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /** Called when <code>m</code> has created the body <code>b</code> from its method source. */
+  synchronized void bodyLoaded(SootMethod m, Body b) {
+    long size = estimateSize(b);
+    Long old = pinned.containsKey(m) ? pinned.put(m, size) : resident.put(m, size);
+    residentBytes += size - (old == null ? 0 : old);
+  }
+
+  /** Called when the body of <code>m</code> has been accessed. */
+  synchronized void bodyAccessed(SootMethod m) {
+    resident.get(m);
+  }
+
+  /** Called when the body of <code>m</code> has been released. */
+  synchronized void bodyReleased(SootMethod m) {
+    Long old = resident.remove(m);
+    if (old == null) {
+      old = pinned.remove(m);
+    }
+    if (old != null) {
+      residentBytes -= old;
+    }
+  }
+
+  private static long estimateSize(Body b) {
+    return BYTES_PER_BODY + BYTES_PER_UNIT * b.getUnits().size() + BYTES_PER_LOCAL * b.getLocalCount()
+        + BYTES_PER_TRAP * b.getTraps().size();
+  }
+
+  /**
+   * Evicts the least recently used bodies that are not pinned until the estimated size of all tracked bodies is within the
+   * budget. Must only be called when no one holds on to the bodies of the methods that are not pinned, since a body that is
+   * read back is a new object. Does nothing if no budget has been configured.
+   */
+  public void evictIfNeeded() {
+    if (isEnabled()) {
+      evict(Options.v().body_memory_budget() * 1024L * 1024L);
+    }
+  }
+
+  /**
+   * Evicts the least recently used bodies that are not pinned until the estimated size of all tracked bodies is at most
+   * <code>budget</code> bytes, or until only pinned bodies are left.
+   */
+  void evict(long budget) {
+    while (true) {
+      SootMethod victim;
+      synchronized (this) {
+        if (residentBytes <= budget) {
+          return;
+        }
+        Iterator<Map.Entry<SootMethod, Long>> it = resident.entrySet().iterator();
+        if (!it.hasNext()) {
+          return;
+        }
+        victim = it.next().getKey();
+      }
+      spill(victim);
+    }
+  }
+
+  private void spill(SootMethod m) {
+    synchronized (m) {
+      synchronized (this) {
+        // The method may have been pinned or released after it had been chosen
+        Long size = resident.remove(m);
+        if (size == null) {
+          return;
+        }
+        residentBytes -= size;
+      }
+      Body b = m.activeBody;
+      if (!(b instanceof JimpleBody)) {
+        // Only Jimple can be read back, so the body stays in memory untracked
+        return;
+      }
+      try {
+        File file = new File(getSpillDir(), "m" + m.getNumber() + ".body");
+        file.deleteOnExit();
+        JimpleBodyCache.writeBody(file, (JimpleBody) b);
+        m.setSource(new SpilledMethodSource(file, new SpilledTags(b), m.getSource()));
+        m.activeBody = null;
+        evictions.incrementAndGet();
+      } catch (IOException e) {
+        logger.warn("Could not spill the body of " + m.getSignature() + ", keeping it in memory: " + e.getMessage());
+      }
+    }
+  }
+
+  private synchronized File getSpillDir() throws IOException {
+    if (spillDir == null) {
+      spillDir = Files.createTempDirectory("soot-bodies").toFile();
+      spillDir.deleteOnExit();
+      logger.debug("Spilling method bodies to " + spillDir);
+    }
+    return spillDir;
+  }
+
+  /**
+   * The method source of a method whose body has been evicted. It reads the body back from the spill file, restores its
+   * tags and then restores the original method source.
+   */
+  static final class SpilledMethodSource implements MethodSource {
+    private final File file;
+    private final SpilledTags tags;
+    private final MethodSource original;
+
+    SpilledMethodSource(File file, SpilledTags tags, MethodSource original) {
+      this.file = file;
+      this.tags = tags;
+      this.original = original;
+    }
+
+    @Override
+    public Body getBody(SootMethod m, String phaseName) {
+      JimpleBody b;
+      try {
+        b = JimpleBodyCache.readBody(file, m);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not read the spilled body of " + m.getSignature() + " from " + file, e);
+      }
+      if (b == null) {
+        throw new RuntimeException("Spill file " + file + " does not contain a body for " + m.getSignature());
+      }
+      tags.restore(m, b);
+      file.delete();
+      m.setSource(original);
+      v().reloads.incrementAndGet();
+      return b;
+    }
+
+    @Override
+    public int estimateBodySize() {
+      return original.estimateBodySize();
+    }
+
+    /** Deletes the spill file and returns the original method source. */
+    MethodSource discard() {
+      file.delete();
+      return original;
+    }
+  }
+
+  /**
+   * The tags of a body, of its units and of their value boxes, which the spill file does not keep. Units are identified by
+   * their position in the body, and value boxes by their position in the use and def boxes of their unit; both are the same
+   * in a body that has been read back.
+   */
+  static final class SpilledTags {
+    private final List<Tag> bodyTags;
+    private final Map<Integer, List<Tag>> unitTags = new HashMap<Integer, List<Tag>>();
+    private final Map<Integer, Map<Integer, List<Tag>>> boxTags = new HashMap<Integer, Map<Integer, List<Tag>>>();
+    private final int unitCount;
+
+    SpilledTags(Body b) {
+      bodyTags = copyTags(b);
+      int i = 0;
+      for (Unit u : b.getUnits()) {
+        List<Tag> tags = copyTags(u);
+        if (tags != null) {
+          unitTags.put(i, tags);
+        }
+        int j = 0;
+        for (ValueBox vb : u.getUseAndDefBoxes()) {
+          tags = copyTags(vb);
+          if (tags != null) {
+            Map<Integer, List<Tag>> unitBoxTags = boxTags.get(i);
+            if (unitBoxTags == null) {
+              unitBoxTags = new HashMap<Integer, List<Tag>>();
+              boxTags.put(i, unitBoxTags);
+            }
+            unitBoxTags.put(j, tags);
+          }
+          j++;
+        }
+        i++;
+      }
+      unitCount = i;
+    }
+
+    private static List<Tag> copyTags(Host h) {
+      List<Tag> tags = h.getTags();
+      return tags.isEmpty() ? null : new ArrayList<Tag>(tags);
+    }
+
+    void restore(SootMethod m, Body b) {
+      if (bodyTags != null) {
+        addTags(b, bodyTags);
+      }
+      if (unitTags.isEmpty() && boxTags.isEmpty()) {
+        return;
+      }
+      if (b.getUnits().size() != unitCount) {
+        logger.warn("The spilled body of " + m.getSignature() + " was read back with " + b.getUnits().size()
+            + " instead of " + unitCount + " statements, dropping its tags");
+        return;
+      }
+      int i = 0;
+      for (Unit u : b.getUnits()) {
+        List<Tag> tags = unitTags.get(i);
+        if (tags != null) {
+          addTags(u, tags);
+        }
+        Map<Integer, List<Tag>> unitBoxTags = boxTags.get(i);
+        if (unitBoxTags != null) {
+          List<ValueBox> boxes = u.getUseAndDefBoxes();
+          for (Map.Entry<Integer, List<Tag>> e : unitBoxTags.entrySet()) {
+            if (e.getKey() < boxes.size()) {
+              addTags(boxes.get(e.getKey()), e.getValue());
+            }
+          }
+        }
+        i++;
+      }
+    }
+
+    private static void addTags(Host h, List<Tag> tags) {
+      for (Tag t : tags) {
+        // The parser may have added some tags itself
+        if (!h.getTags().contains(t)) {
+          h.addTag(t);
+        }
+      }
+    }
+  }
+}
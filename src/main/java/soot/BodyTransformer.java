@@ -49,10 +49,16 @@ public abstract class BodyTransformer extends Transformer {
     }
 
     internalTransform(b, phaseName, options);
+    if (!preservesCachedAnalyses()) {
+      b.invalidateAnalyses();
+    }
   }
 
   public final void transform(Body b, String phaseName) {
     internalTransform(b, phaseName, enabledOnlyMap);
+    if (!preservesCachedAnalyses()) {
+      b.invalidateAnalyses();
+    }
   }
 
   public final void transform(Body b) {
@@ -72,4 +78,15 @@ public abstract class BodyTransformer extends Transformer {
    */
   protected abstract void internalTransform(Body b, String phaseName, Map<String, String> options);
 
+  /**
+   * Returns true if the analyses cached on a body remain valid after this transformer ran, i.e. if it changes the body only
+   * through its chains or calls {@link Body#invalidateAnalyses()} after changing units or traps in place. Otherwise the cache
+   * of the body is dropped after each transformation.
+   *
+   * @see BodyAnalysisCache
+   */
+  protected boolean preservesCachedAnalyses() {
+    return false;
+  }
+
 }
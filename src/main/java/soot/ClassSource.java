@@ -40,6 +40,15 @@ public abstract class ClassSource {
    */
   public abstract Dependencies resolve(SootClass sc);
 
+  /**
+   * Reads and parses the class ahead of {@link #resolve(SootClass)}, without accessing the {@link Scene}, so that several
+   * classes can be parsed on different threads. Returns false if this source does not support this; all the work is then
+   * done by {@link #resolve(SootClass)}.
+   */
+  public boolean parse() {
+    return false;
+  }
+
   protected String className;
 
   public void close() {
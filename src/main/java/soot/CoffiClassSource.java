@@ -22,6 +22,7 @@ package soot;
  * #L%
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -75,7 +76,15 @@ public class CoffiClassSource extends ClassSource {
     List<Type> references = new ArrayList<Type>();
 
     try {
-      soot.coffi.Util.v().resolveFromClassFile(sc, classFile, fileName, references);
+      if (JimpleBodyCache.v().isEnabled()) {
+        byte[] data = JimpleBodyCache.readFully(classFile);
+        soot.coffi.Util.v().resolveFromClassFile(sc, new ByteArrayInputStream(data), fileName, references);
+        JimpleBodyCache.v().attach(sc, data);
+      } else {
+        soot.coffi.Util.v().resolveFromClassFile(sc, classFile, fileName, references);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error: Failed to read class file " + fileName, e);
     } finally {
       close();
     }
@@ -106,7 +106,7 @@ public class DexClassProvider implements ClassProvider {
         File dexFile = new File(path);
         if (dexFile.exists()) {
           for (DexFileProvider.DexContainer container : DexFileProvider.v().getDexFromSource(dexFile)) {
-            for (String className : classesOfDex(container.getBase())) {
+            for (String className : container.getImage().getClassNames()) {
               if (!index.containsKey(className)) {
                 index.put(className, container.getFilePath());
               } else if (Options.v().verbose()) {
@@ -97,23 +97,19 @@ public class FoundFile {
       } catch (Exception e) {
         throw new RuntimeException("Error: Failed to open a InputStream for the file at path '" + file.getPath() + "'.", e);
       }
-    } else {
-      if (zipFile == null) {
-        try {
-          zipFile = new ZipFile(file);
-          zipEntry = zipFile.getEntry(entryName);
-          if (zipEntry == null) {
-            silentClose();
-            throw new RuntimeException(
-                "Error: Failed to find entry '" + entryName + "' in the archive file at path '" + file.getPath() + "'.");
-          }
-        } catch (Exception e) {
-          silentClose();
-          throw new RuntimeException(
-              "Error: Failed to open the archive file at path '" + file.getPath() + "' for entry '" + entryName + "'.", e);
-        }
+    } else if (zipFile == null) {
+      // Read through the archive index shared by all class providers instead of opening the archive again
+      try {
+        ret = SourceLocator.v().getArchive(file.getPath()).getInputStream(entryName);
+      } catch (Exception e) {
+        throw new RuntimeException(
+            "Error: Failed to open the archive file at path '" + file.getPath() + "' for entry '" + entryName + "'.", e);
       }
-
+      if (ret == null) {
+        throw new RuntimeException(
+            "Error: Failed to find entry '" + entryName + "' in the archive file at path '" + file.getPath() + "'.");
+      }
+    } else {
       InputStream stream = null;
       try {
         stream = zipFile.getInputStream(zipEntry);
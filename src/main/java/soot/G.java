@@ -60,6 +60,10 @@ public class G extends Singletons {
   }
 
   public static void reset() {
+    // Archives are shared by all class providers of a run and are not closed otherwise
+    objectGetter.getG().soot_SourceLocator().closeArchives();
+    // The resolver keeps its parser threads for the whole run
+    objectGetter.getG().soot_SootResolver().shutdown();
     objectGetter.reset();
   }
 
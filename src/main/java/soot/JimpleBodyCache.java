@@ -0,0 +1,316 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+/**
+ * A persistent cache for Jimple bodies that have been created from class files. Bodies are stored after the <code>jb</code>
+ * pack has been applied to them, so that a later run of Soot on the same class files can load them without going through
+ * the bytecode front-end and the <code>jb</code> pack again.
+ *
+ * <p>
+ * Each body is stored in the compact binary encoding of {@link JimpleBodyCodec} in the directory given by the
+ * <code>-body-cache-dir</code> option, so that loading it does not involve a parser. The name of the file is derived from
+ * the digest of the class file the method was loaded from, the Soot version, the version of the encoding, the options of
+ * the <code>jb</code> pack, the global options that influence the bodies it produces and the subsignature of the method,
+ * so that stale entries are never picked up. Entries that cannot be decoded are discarded and the body is rebuilt from its
+ * original source.
+ * </p>
+ *
+ * <p>
+ * The encoding does not record tags. The cache is therefore bypassed when line numbers or bytecode offsets are kept, and
+ * bodies that carry tags for another reason are not stored.
+ * </p>
+ */
+public class JimpleBodyCache {
+  private static final Logger logger = LoggerFactory.getLogger(JimpleBodyCache.class);
+
+  private static final String DIGEST_ALGORITHM = "SHA-1";
+  private static final String FILE_SUFFIX = ".body";
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile String configurationKey;
+
+  public JimpleBodyCache(Singletons.Global g) {
+  }
+
+  public static JimpleBodyCache v() {
+    return G.v().soot_JimpleBodyCache();
+  }
+
+  /**
+   * Returns true if a cache directory has been configured.
+   */
+  public boolean isEnabled() {
+    return !Options.v().body_cache_dir().isEmpty();
+  }
+
+  /** Returns the number of bodies that were loaded from the cache. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** Returns the number of bodies that had to be built from their original source. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Reads the given stream completely. Class sources use this to obtain the bytes of a class file so that they can be
+   * passed to {@link #attach(SootClass, byte[])}.
+   */
+  public static byte[] readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+    byte[] buf = new byte[8192];
+    for (int len; (len = is.read(buf)) != -1;) {
+      out.write(buf, 0, len);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Wraps the method sources of all concrete methods of <code>sc</code>, which has just been resolved from the class file
+   * <code>classBytes</code>, so that their bodies are served from and stored to the cache.
+   */
+  public void attach(SootClass sc, byte[] classBytes) {
+    String classDigest = toHex(digest(classBytes));
+    for (SootMethod m : sc.getMethods()) {
+      MethodSource ms = m.getSource();
+      if (ms != null && m.isConcrete() && !(ms instanceof CachedMethodSource)) {
+        m.setSource(new CachedMethodSource(classDigest, ms));
+      }
+    }
+  }
+
+  /**
+   * Computes the part of the cache key that does not depend on the class file, i.e. the Soot version, the options of the
+   * <code>jb</code> pack and all of its sub-phases, and the global options that the front-end and the <code>jb</code> pack
+   * consult.
+   */
+  private String getConfigurationKey() {
+    String key = configurationKey;
+    if (key == null) {
+      StringBuilder sb = new StringBuilder(Main.versionString);
+      sb.append(";format=").append(JimpleBodyCodec.FORMAT_VERSION);
+      Pack jb = PackManager.v().getPack("jb");
+      appendPhaseOptions(sb, jb);
+      for (Transform t : jb) {
+        appendPhaseOptions(sb, t);
+      }
+      Options opts = Options.v();
+      sb.append(";keep-line-number=").append(opts.keep_line_number());
+      sb.append(";keep-offset=").append(opts.keep_offset());
+      sb.append(";allow-phantom-refs=").append(opts.allow_phantom_refs());
+      sb.append(";allow-phantom-elms=").append(opts.allow_phantom_elms());
+      sb.append(";ignore-resolution-errors=").append(opts.ignore_resolution_errors());
+      sb.append(";wrong-staticness=").append(opts.wrong_staticness());
+      sb.append(";field-type-mismatches=").append(opts.field_type_mismatches());
+      sb.append(";throw-analysis=").append(opts.throw_analysis());
+      sb.append(";check-init-throw-analysis=").append(opts.check_init_throw_analysis());
+      sb.append(";omit-excepting-unit-edges=").append(opts.omit_excepting_unit_edges());
+      key = sb.toString();
+      configurationKey = key;
+    }
+    return key;
+  }
+
+  private static void appendPhaseOptions(StringBuilder sb, HasPhaseOptions phase) {
+    Map<String, String> options = new TreeMap<String, String>(PhaseOptions.v().getPhaseOptions(phase));
+    sb.append(';').append(phase.getPhaseName()).append(options);
+  }
+
+  /** Returns true if the bodies built by the front-end are expected to carry tags that Jimple files cannot record. */
+  private static boolean keepsTags() {
+    return Options.v().keep_line_number() || Options.v().keep_offset();
+  }
+
+  /** Returns true if the body, one of its units or one of their value boxes carries a tag. */
+  static boolean hasTags(Body body) {
+    if (!body.getTags().isEmpty()) {
+      return true;
+    }
+    for (Unit u : body.getUnits()) {
+      if (!u.getTags().isEmpty()) {
+        return true;
+      }
+      for (ValueBox vb : u.getUseAndDefBoxes()) {
+        if (!vb.getTags().isEmpty()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private File getCacheFile(String classDigest, SootMethod m) {
+    String key = classDigest + '\n' + getConfigurationKey() + '\n' + m.getSubSignature();
+    String name = toHex(digest(key.getBytes(StandardCharsets.UTF_8)));
+    File dir = new File(Options.v().body_cache_dir(), name.substring(0, 2));
+    return new File(dir, name + FILE_SUFFIX);
+  }
+
+  private JimpleBody load(File file, SootMethod m) {
+    try {
+      return readBody(file, m);
+    } catch (Exception e) {
+      logger.debug("Discarding unreadable cache entry " + file + " for " + m.getSignature(), e);
+      file.delete();
+      return null;
+    }
+  }
+
+  /**
+   * Reads a body that has been written by {@link #writeBody(File, JimpleBody)} for method <code>m</code>.
+   */
+  static JimpleBody readBody(File file, SootMethod m) throws IOException {
+    return JimpleBodyCodec.decode(Files.readAllBytes(file.toPath()), m);
+  }
+
+  private void store(File file, JimpleBody body) {
+    SootMethod m = body.getMethod();
+    File dir = file.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      logger.warn("Could not create cache directory " + dir);
+      return;
+    }
+
+    // Write to a temporary file first so that concurrent readers never see a partially written entry
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(file.getName(), ".tmp", dir);
+      writeBody(tmp, body);
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+    } catch (IOException e) {
+      logger.warn("Could not write cache entry for " + m.getSignature() + ": " + e.getMessage());
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Writes the given body in the binary encoding of {@link JimpleBodyCodec}.
+   */
+  static void writeBody(File file, JimpleBody body) throws IOException {
+    byte[] data;
+    try {
+      data = JimpleBodyCodec.encode(body);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static byte[] digest(byte[] data) {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(byte[] data) {
+    StringBuilder sb = new StringBuilder(data.length * 2);
+    for (byte b : data) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A method source that consults the cache before delegating to the method source created by the front-end.
+   */
+  private class CachedMethodSource implements MethodSource {
+    private final String classDigest;
+    private final MethodSource delegate;
+
+    CachedMethodSource(String classDigest, MethodSource delegate) {
+      this.classDigest = classDigest;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public int estimateBodySize() {
+      return delegate.estimateBodySize();
+    }
+
+    @Override
+    public Body getBody(SootMethod m, String phaseName) {
+      if (keepsTags()) {
+        return delegate.getBody(m, phaseName);
+      }
+      File file = getCacheFile(classDigest, m);
+      if (file.isFile()) {
+        JimpleBody b = load(file, m);
+        if (b != null) {
+          hits.incrementAndGet();
+          if (Options.v().verbose()) {
+            logger.debug("[" + m.getName() + "] Retrieved JimpleBody from cache " + file);
+          }
+          return b;
+        }
+      }
+
+      misses.incrementAndGet();
+      Body b = delegate.getBody(m, phaseName);
+      if (b instanceof JimpleBody && !hasTags(b)) {
+        store(file, (JimpleBody) b);
+      }
+      return b;
+    }
+  }
+}
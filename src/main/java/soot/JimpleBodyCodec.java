@@ -0,0 +1,1164 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.jimple.AddExpr;
+import soot.jimple.AndExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.BreakpointStmt;
+import soot.jimple.CastExpr;
+import soot.jimple.CaughtExceptionRef;
+import soot.jimple.ClassConstant;
+import soot.jimple.CmpExpr;
+import soot.jimple.CmpgExpr;
+import soot.jimple.CmplExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.DivExpr;
+import soot.jimple.DoubleConstant;
+import soot.jimple.DynamicInvokeExpr;
+import soot.jimple.EnterMonitorStmt;
+import soot.jimple.EqExpr;
+import soot.jimple.ExitMonitorStmt;
+import soot.jimple.FloatConstant;
+import soot.jimple.GeExpr;
+import soot.jimple.GotoStmt;
+import soot.jimple.GtExpr;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InstanceOfExpr;
+import soot.jimple.IntConstant;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.JimpleValueSwitch;
+import soot.jimple.LeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.LongConstant;
+import soot.jimple.LookupSwitchStmt;
+import soot.jimple.LtExpr;
+import soot.jimple.MethodHandle;
+import soot.jimple.MulExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.NegExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NewMultiArrayExpr;
+import soot.jimple.NopStmt;
+import soot.jimple.NullConstant;
+import soot.jimple.OrExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.RemExpr;
+import soot.jimple.RetStmt;
+import soot.jimple.ReturnStmt;
+import soot.jimple.ReturnVoidStmt;
+import soot.jimple.ShlExpr;
+import soot.jimple.ShrExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.StmtSwitch;
+import soot.jimple.StringConstant;
+import soot.jimple.SubExpr;
+import soot.jimple.TableSwitchStmt;
+import soot.jimple.ThisRef;
+import soot.jimple.ThrowStmt;
+import soot.jimple.UshrExpr;
+import soot.jimple.VirtualInvokeExpr;
+import soot.jimple.XorExpr;
+
+/**
+ * A compact binary encoding of Jimple bodies, used by {@link JimpleBodyCache}.
+ *
+ * <p>
+ * An encoded body starts with a format version, followed by the locals, the units and the traps of the body. Every unit
+ * and value is written as a one-byte kind followed by its operands. Locals and units are referred to by their position in
+ * the body, numbers are written as variable-length integers, and every string, such as a class, method or local name, is
+ * written in full only the first time it occurs and by its position in a table of strings after that. Decoding builds a
+ * body without going through any parser, so it costs little more than allocating the units and values.
+ * </p>
+ *
+ * <p>
+ * Tags are not encoded. Values that cannot occur in the bodies produced by the <code>jb</code> pack, such as the phi
+ * expressions of Shimple, cannot be encoded either; {@link #encode(JimpleBody)} rejects bodies that contain them.
+ * </p>
+ */
+final class JimpleBodyCodec {
+  /** The version of the format, which is incremented whenever the format changes. */
+  static final int FORMAT_VERSION = 1;
+
+  // Kinds of types
+  private static final int T_VOID = 0;
+  private static final int T_BOOLEAN = 1;
+  private static final int T_BYTE = 2;
+  private static final int T_CHAR = 3;
+  private static final int T_SHORT = 4;
+  private static final int T_INT = 5;
+  private static final int T_LONG = 6;
+  private static final int T_FLOAT = 7;
+  private static final int T_DOUBLE = 8;
+  private static final int T_REF = 9;
+  private static final int T_ARRAY = 10;
+  private static final int T_NULL = 11;
+  private static final int T_UNKNOWN = 12;
+
+  // Kinds of values
+  private static final int V_LOCAL = 0;
+  private static final int V_INT = 1;
+  private static final int V_LONG = 2;
+  private static final int V_FLOAT = 3;
+  private static final int V_DOUBLE = 4;
+  private static final int V_STRING = 5;
+  private static final int V_NULL = 6;
+  private static final int V_CLASS = 7;
+  private static final int V_METHOD_HANDLE = 8;
+  private static final int V_ADD = 9;
+  private static final int V_AND = 10;
+  private static final int V_CMP = 11;
+  private static final int V_CMPG = 12;
+  private static final int V_CMPL = 13;
+  private static final int V_DIV = 14;
+  private static final int V_EQ = 15;
+  private static final int V_NE = 16;
+  private static final int V_GE = 17;
+  private static final int V_GT = 18;
+  private static final int V_LE = 19;
+  private static final int V_LT = 20;
+  private static final int V_MUL = 21;
+  private static final int V_OR = 22;
+  private static final int V_REM = 23;
+  private static final int V_SHL = 24;
+  private static final int V_SHR = 25;
+  private static final int V_USHR = 26;
+  private static final int V_SUB = 27;
+  private static final int V_XOR = 28;
+  private static final int V_INTERFACE_INVOKE = 29;
+  private static final int V_SPECIAL_INVOKE = 30;
+  private static final int V_STATIC_INVOKE = 31;
+  private static final int V_VIRTUAL_INVOKE = 32;
+  private static final int V_DYNAMIC_INVOKE = 33;
+  private static final int V_CAST = 34;
+  private static final int V_INSTANCE_OF = 35;
+  private static final int V_NEW_ARRAY = 36;
+  private static final int V_NEW_MULTI_ARRAY = 37;
+  private static final int V_NEW = 38;
+  private static final int V_LENGTH = 39;
+  private static final int V_NEG = 40;
+  private static final int V_ARRAY_REF = 41;
+  private static final int V_STATIC_FIELD_REF = 42;
+  private static final int V_INSTANCE_FIELD_REF = 43;
+  private static final int V_PARAMETER_REF = 44;
+  private static final int V_CAUGHT_EXCEPTION_REF = 45;
+  private static final int V_THIS_REF = 46;
+
+  // Kinds of statements
+  private static final int S_BREAKPOINT = 0;
+  private static final int S_INVOKE = 1;
+  private static final int S_ASSIGN = 2;
+  private static final int S_IDENTITY = 3;
+  private static final int S_ENTER_MONITOR = 4;
+  private static final int S_EXIT_MONITOR = 5;
+  private static final int S_GOTO = 6;
+  private static final int S_IF = 7;
+  private static final int S_LOOKUP_SWITCH = 8;
+  private static final int S_NOP = 9;
+  private static final int S_RET = 10;
+  private static final int S_RETURN = 11;
+  private static final int S_RETURN_VOID = 12;
+  private static final int S_TABLE_SWITCH = 13;
+  private static final int S_THROW = 14;
+
+  private JimpleBodyCodec() {
+  }
+
+  /**
+   * Encodes the given body. Throws an {@link IllegalArgumentException} if the body contains a unit or value that the
+   * format does not support.
+   */
+  static byte[] encode(JimpleBody body) {
+    return new Encoder(body).encode();
+  }
+
+  /**
+   * Decodes a body of method <code>m</code> that has been encoded by {@link #encode(JimpleBody)}. Throws an
+   * {@link IOException} if the data is not a well-formed encoding of a body.
+   */
+  static JimpleBody decode(byte[] data, SootMethod m) throws IOException {
+    try {
+      return new Decoder(data, m).decode();
+    } catch (IndexOutOfBoundsException | ClassCastException e) {
+      throw new IOException("Malformed body encoding", e);
+    }
+  }
+
+  private static final class Encoder implements StmtSwitch, JimpleValueSwitch {
+    private final JimpleBody body;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final Map<Local, Integer> locals = new HashMap<Local, Integer>();
+    private final Map<Unit, Integer> units = new HashMap<Unit, Integer>();
+
+    Encoder(JimpleBody body) {
+      this.body = body;
+    }
+
+    byte[] encode() {
+      writeInt(FORMAT_VERSION);
+      writeInt(body.getLocalCount());
+      for (Local l : body.getLocals()) {
+        locals.put(l, locals.size());
+        writeString(l.getName());
+        writeType(l.getType());
+      }
+      for (Unit u : body.getUnits()) {
+        units.put(u, units.size());
+      }
+      writeInt(units.size());
+      for (Unit u : body.getUnits()) {
+        u.apply(this);
+      }
+      writeInt(body.getTraps().size());
+      for (Trap t : body.getTraps()) {
+        writeString(t.getException().getName());
+        writeUnit(t.getBeginUnit());
+        writeUnit(t.getEndUnit());
+        writeUnit(t.getHandlerUnit());
+      }
+      return out.toByteArray();
+    }
+
+    /** Writes a non-negative integer in as many bytes as needed, seven bits at a time. */
+    private void writeInt(int i) {
+      while ((i & ~0x7F) != 0) {
+        out.write((i & 0x7F) | 0x80);
+        i >>>= 7;
+      }
+      out.write(i);
+    }
+
+    /** Writes an integer of either sign by moving the sign into the lowest bit first. */
+    private void writeSignedInt(int i) {
+      writeInt((i << 1) ^ (i >> 31));
+    }
+
+    private void writeLong(long l) {
+      l = (l << 1) ^ (l >> 63);
+      while ((l & ~0x7FL) != 0) {
+        out.write((int) (l & 0x7F) | 0x80);
+        l >>>= 7;
+      }
+      out.write((int) l);
+    }
+
+    private void writeString(String s) {
+      Integer index = strings.get(s);
+      if (index != null) {
+        writeInt(index + 1);
+        return;
+      }
+      strings.put(s, strings.size());
+      writeInt(0);
+      // Characters rather than UTF-8 bytes, so that unpaired surrogates in string constants survive
+      writeInt(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        writeInt(s.charAt(i));
+      }
+    }
+
+    private void writeType(Type t) {
+      if (t instanceof PrimType) {
+        writeInt(primKind((PrimType) t));
+      } else if (t instanceof RefType) {
+        writeInt(T_REF);
+        writeString(((RefType) t).getClassName());
+      } else if (t instanceof ArrayType) {
+        ArrayType at = (ArrayType) t;
+        writeInt(T_ARRAY);
+        writeType(at.baseType);
+        writeInt(at.numDimensions);
+      } else if (t instanceof VoidType) {
+        writeInt(T_VOID);
+      } else if (t instanceof NullType) {
+        writeInt(T_NULL);
+      } else if (t instanceof UnknownType) {
+        writeInt(T_UNKNOWN);
+      } else {
+        throw new IllegalArgumentException("Cannot encode type " + t);
+      }
+    }
+
+    private static int primKind(PrimType t) {
+      if (t instanceof BooleanType) {
+        return T_BOOLEAN;
+      } else if (t instanceof ByteType) {
+        return T_BYTE;
+      } else if (t instanceof CharType) {
+        return T_CHAR;
+      } else if (t instanceof ShortType) {
+        return T_SHORT;
+      } else if (t instanceof IntType) {
+        return T_INT;
+      } else if (t instanceof LongType) {
+        return T_LONG;
+      } else if (t instanceof FloatType) {
+        return T_FLOAT;
+      } else if (t instanceof DoubleType) {
+        return T_DOUBLE;
+      }
+      throw new IllegalArgumentException("Cannot encode type " + t);
+    }
+
+    private void writeUnit(Unit u) {
+      Integer index = units.get(u);
+      if (index == null) {
+        throw new IllegalArgumentException("Unit " + u + " is not part of the body");
+      }
+      writeInt(index);
+    }
+
+    /** Writes the targets of a branching statement. */
+    private void writeTargets(Stmt s) {
+      List<UnitBox> boxes = s.getUnitBoxes();
+      writeInt(boxes.size());
+      for (UnitBox ub : boxes) {
+        writeUnit(ub.getUnit());
+      }
+    }
+
+    private void writeValue(Value v) {
+      v.apply(this);
+    }
+
+    private void writeValues(List<Value> values) {
+      writeInt(values.size());
+      for (Value v : values) {
+        writeValue(v);
+      }
+    }
+
+    private void writeMethodRef(SootMethodRef ref) {
+      writeString(ref.declaringClass().getName());
+      writeString(ref.name());
+      List<Type> parameterTypes = ref.parameterTypes();
+      writeInt(parameterTypes.size());
+      for (Type t : parameterTypes) {
+        writeType(t);
+      }
+      writeType(ref.returnType());
+      out.write(ref.isStatic() ? 1 : 0);
+    }
+
+    private void writeFieldRef(SootFieldRef ref) {
+      writeString(ref.declaringClass().getName());
+      writeString(ref.name());
+      writeType(ref.type());
+    }
+
+    private void writeBinop(int kind, BinopExpr v) {
+      writeInt(kind);
+      writeValue(v.getOp1());
+      writeValue(v.getOp2());
+    }
+
+    private void writeInvoke(int kind, InvokeExpr v) {
+      writeInt(kind);
+      if (v instanceof InstanceInvokeExpr) {
+        writeValue(((InstanceInvokeExpr) v).getBase());
+      }
+      writeMethodRef(v.getMethodRef());
+      writeValues(v.getArgs());
+    }
+
+    private void writeStmt(int kind, Value op) {
+      writeInt(kind);
+      writeValue(op);
+    }
+
+    @Override
+    public void caseBreakpointStmt(BreakpointStmt stmt) {
+      writeInt(S_BREAKPOINT);
+    }
+
+    @Override
+    public void caseInvokeStmt(InvokeStmt stmt) {
+      writeStmt(S_INVOKE, stmt.getInvokeExpr());
+    }
+
+    @Override
+    public void caseAssignStmt(AssignStmt stmt) {
+      writeStmt(S_ASSIGN, stmt.getLeftOp());
+      writeValue(stmt.getRightOp());
+    }
+
+    @Override
+    public void caseIdentityStmt(IdentityStmt stmt) {
+      writeStmt(S_IDENTITY, stmt.getLeftOp());
+      writeValue(stmt.getRightOp());
+    }
+
+    @Override
+    public void caseEnterMonitorStmt(EnterMonitorStmt stmt) {
+      writeStmt(S_ENTER_MONITOR, stmt.getOp());
+    }
+
+    @Override
+    public void caseExitMonitorStmt(ExitMonitorStmt stmt) {
+      writeStmt(S_EXIT_MONITOR, stmt.getOp());
+    }
+
+    @Override
+    public void caseGotoStmt(GotoStmt stmt) {
+      writeInt(S_GOTO);
+      writeTargets(stmt);
+    }
+
+    @Override
+    public void caseIfStmt(IfStmt stmt) {
+      writeStmt(S_IF, stmt.getCondition());
+      writeTargets(stmt);
+    }
+
+    @Override
+    public void caseLookupSwitchStmt(LookupSwitchStmt stmt) {
+      writeStmt(S_LOOKUP_SWITCH, stmt.getKey());
+      List<IntConstant> values = stmt.getLookupValues();
+      writeInt(values.size());
+      for (IntConstant c : values) {
+        writeSignedInt(c.value);
+      }
+      writeTargets(stmt);
+    }
+
+    @Override
+    public void caseNopStmt(NopStmt stmt) {
+      writeInt(S_NOP);
+    }
+
+    @Override
+    public void caseRetStmt(RetStmt stmt) {
+      writeStmt(S_RET, stmt.getStmtAddress());
+    }
+
+    @Override
+    public void caseReturnStmt(ReturnStmt stmt) {
+      writeStmt(S_RETURN, stmt.getOp());
+    }
+
+    @Override
+    public void caseReturnVoidStmt(ReturnVoidStmt stmt) {
+      writeInt(S_RETURN_VOID);
+    }
+
+    @Override
+    public void caseTableSwitchStmt(TableSwitchStmt stmt) {
+      writeStmt(S_TABLE_SWITCH, stmt.getKey());
+      writeSignedInt(stmt.getLowIndex());
+      writeSignedInt(stmt.getHighIndex());
+      writeTargets(stmt);
+    }
+
+    @Override
+    public void caseThrowStmt(ThrowStmt stmt) {
+      writeStmt(S_THROW, stmt.getOp());
+    }
+
+    @Override
+    public void caseLocal(Local l) {
+      Integer index = locals.get(l);
+      if (index == null) {
+        throw new IllegalArgumentException("Local " + l + " is not declared in the body");
+      }
+      writeInt(V_LOCAL);
+      writeInt(index);
+    }
+
+    @Override
+    public void caseIntConstant(IntConstant v) {
+      writeInt(V_INT);
+      writeSignedInt(v.value);
+    }
+
+    @Override
+    public void caseLongConstant(LongConstant v) {
+      writeInt(V_LONG);
+      writeLong(v.value);
+    }
+
+    @Override
+    public void caseFloatConstant(FloatConstant v) {
+      writeInt(V_FLOAT);
+      writeSignedInt(Float.floatToRawIntBits(v.value));
+    }
+
+    @Override
+    public void caseDoubleConstant(DoubleConstant v) {
+      writeInt(V_DOUBLE);
+      writeLong(Double.doubleToRawLongBits(v.value));
+    }
+
+    @Override
+    public void caseStringConstant(StringConstant v) {
+      writeInt(V_STRING);
+      writeString(v.value);
+    }
+
+    @Override
+    public void caseNullConstant(NullConstant v) {
+      writeInt(V_NULL);
+    }
+
+    @Override
+    public void caseClassConstant(ClassConstant v) {
+      writeInt(V_CLASS);
+      writeString(v.value);
+    }
+
+    @Override
+    public void caseMethodHandle(MethodHandle handle) {
+      writeInt(V_METHOD_HANDLE);
+      writeMethodRef(handle.getMethodRef());
+      writeInt(handle.tag);
+    }
+
+    @Override
+    public void caseAddExpr(AddExpr v) {
+      writeBinop(V_ADD, v);
+    }
+
+    @Override
+    public void caseAndExpr(AndExpr v) {
+      writeBinop(V_AND, v);
+    }
+
+    @Override
+    public void caseCmpExpr(CmpExpr v) {
+      writeBinop(V_CMP, v);
+    }
+
+    @Override
+    public void caseCmpgExpr(CmpgExpr v) {
+      writeBinop(V_CMPG, v);
+    }
+
+    @Override
+    public void caseCmplExpr(CmplExpr v) {
+      writeBinop(V_CMPL, v);
+    }
+
+    @Override
+    public void caseDivExpr(DivExpr v) {
+      writeBinop(V_DIV, v);
+    }
+
+    @Override
+    public void caseEqExpr(EqExpr v) {
+      writeBinop(V_EQ, v);
+    }
+
+    @Override
+    public void caseNeExpr(NeExpr v) {
+      writeBinop(V_NE, v);
+    }
+
+    @Override
+    public void caseGeExpr(GeExpr v) {
+      writeBinop(V_GE, v);
+    }
+
+    @Override
+    public void caseGtExpr(GtExpr v) {
+      writeBinop(V_GT, v);
+    }
+
+    @Override
+    public void caseLeExpr(LeExpr v) {
+      writeBinop(V_LE, v);
+    }
+
+    @Override
+    public void caseLtExpr(LtExpr v) {
+      writeBinop(V_LT, v);
+    }
+
+    @Override
+    public void caseMulExpr(MulExpr v) {
+      writeBinop(V_MUL, v);
+    }
+
+    @Override
+    public void caseOrExpr(OrExpr v) {
+      writeBinop(V_OR, v);
+    }
+
+    @Override
+    public void caseRemExpr(RemExpr v) {
+      writeBinop(V_REM, v);
+    }
+
+    @Override
+    public void caseShlExpr(ShlExpr v) {
+      writeBinop(V_SHL, v);
+    }
+
+    @Override
+    public void caseShrExpr(ShrExpr v) {
+      writeBinop(V_SHR, v);
+    }
+
+    @Override
+    public void caseUshrExpr(UshrExpr v) {
+      writeBinop(V_USHR, v);
+    }
+
+    @Override
+    public void caseSubExpr(SubExpr v) {
+      writeBinop(V_SUB, v);
+    }
+
+    @Override
+    public void caseXorExpr(XorExpr v) {
+      writeBinop(V_XOR, v);
+    }
+
+    @Override
+    public void caseInterfaceInvokeExpr(InterfaceInvokeExpr v) {
+      writeInvoke(V_INTERFACE_INVOKE, v);
+    }
+
+    @Override
+    public void caseSpecialInvokeExpr(SpecialInvokeExpr v) {
+      writeInvoke(V_SPECIAL_INVOKE, v);
+    }
+
+    @Override
+    public void caseStaticInvokeExpr(StaticInvokeExpr v) {
+      writeInvoke(V_STATIC_INVOKE, v);
+    }
+
+    @Override
+    public void caseVirtualInvokeExpr(VirtualInvokeExpr v) {
+      writeInvoke(V_VIRTUAL_INVOKE, v);
+    }
+
+    @Override
+    public void caseDynamicInvokeExpr(DynamicInvokeExpr v) {
+      writeInvoke(V_DYNAMIC_INVOKE, v);
+      writeMethodRef(v.getBootstrapMethodRef());
+      writeValues(v.getBootstrapArgs());
+      writeInt(v.getHandleTag());
+    }
+
+    @Override
+    public void caseCastExpr(CastExpr v) {
+      writeInt(V_CAST);
+      writeValue(v.getOp());
+      writeType(v.getCastType());
+    }
+
+    @Override
+    public void caseInstanceOfExpr(InstanceOfExpr v) {
+      writeInt(V_INSTANCE_OF);
+      writeValue(v.getOp());
+      writeType(v.getCheckType());
+    }
+
+    @Override
+    public void caseNewArrayExpr(NewArrayExpr v) {
+      writeInt(V_NEW_ARRAY);
+      writeType(v.getBaseType());
+      writeValue(v.getSize());
+    }
+
+    @Override
+    public void caseNewMultiArrayExpr(NewMultiArrayExpr v) {
+      writeInt(V_NEW_MULTI_ARRAY);
+      writeType(v.getBaseType());
+      writeValues(v.getSizes());
+    }
+
+    @Override
+    public void caseNewExpr(NewExpr v) {
+      writeInt(V_NEW);
+      writeType(v.getBaseType());
+    }
+
+    @Override
+    public void caseLengthExpr(LengthExpr v) {
+      writeInt(V_LENGTH);
+      writeValue(v.getOp());
+    }
+
+    @Override
+    public void caseNegExpr(NegExpr v) {
+      writeInt(V_NEG);
+      writeValue(v.getOp());
+    }
+
+    @Override
+    public void caseArrayRef(ArrayRef v) {
+      writeInt(V_ARRAY_REF);
+      writeValue(v.getBase());
+      writeValue(v.getIndex());
+    }
+
+    @Override
+    public void caseStaticFieldRef(StaticFieldRef v) {
+      writeInt(V_STATIC_FIELD_REF);
+      writeFieldRef(v.getFieldRef());
+    }
+
+    @Override
+    public void caseInstanceFieldRef(InstanceFieldRef v) {
+      writeInt(V_INSTANCE_FIELD_REF);
+      writeValue(v.getBase());
+      writeFieldRef(v.getFieldRef());
+    }
+
+    @Override
+    public void caseParameterRef(ParameterRef v) {
+      writeInt(V_PARAMETER_REF);
+      writeType(v.getType());
+      writeInt(v.getIndex());
+    }
+
+    @Override
+    public void caseCaughtExceptionRef(CaughtExceptionRef v) {
+      writeInt(V_CAUGHT_EXCEPTION_REF);
+    }
+
+    @Override
+    public void caseThisRef(ThisRef v) {
+      writeInt(V_THIS_REF);
+      writeType(v.getType());
+    }
+
+    @Override
+    public void defaultCase(Object obj) {
+      throw new IllegalArgumentException("Cannot encode " + obj.getClass().getName() + ": " + obj);
+    }
+  }
+
+  private static final class Decoder {
+    private final byte[] data;
+    private final SootMethod method;
+    private final Jimple jimple = Jimple.v();
+    private final List<String> strings = new ArrayList<String>();
+    private int pos;
+    private Local[] locals;
+    private Unit[] units;
+    private final List<Stmt> branches = new ArrayList<Stmt>();
+    private final List<int[]> branchTargets = new ArrayList<int[]>();
+
+    Decoder(byte[] data, SootMethod method) {
+      this.data = data;
+      this.method = method;
+    }
+
+    JimpleBody decode() throws IOException {
+      int version = readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported body encoding version " + version);
+      }
+      JimpleBody body = jimple.newBody(method);
+
+      locals = new Local[readInt()];
+      for (int i = 0; i < locals.length; i++) {
+        String name = readString();
+        locals[i] = jimple.newLocal(name, readType());
+      }
+      body.getLocals().addAll(Arrays.asList(locals));
+
+      units = new Unit[readInt()];
+      for (int i = 0; i < units.length; i++) {
+        units[i] = readStmt();
+      }
+      for (int i = 0; i < branches.size(); i++) {
+        List<UnitBox> boxes = branches.get(i).getUnitBoxes();
+        int[] targets = branchTargets.get(i);
+        if (boxes.size() != targets.length) {
+          throw new IOException("Wrong number of branch targets");
+        }
+        for (int j = 0; j < targets.length; j++) {
+          boxes.get(j).setUnit(units[targets[j]]);
+        }
+      }
+      body.getUnits().addAll(Arrays.asList(units));
+
+      int traps = readInt();
+      for (int i = 0; i < traps; i++) {
+        SootClass exception = readClass();
+        Unit begin = units[readInt()];
+        Unit end = units[readInt()];
+        body.getTraps().add(jimple.newTrap(exception, begin, end, units[readInt()]));
+      }
+      if (pos != data.length) {
+        throw new IOException("Trailing data after body");
+      }
+      return body;
+    }
+
+    private int readInt() throws IOException {
+      int ret = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = data[pos++];
+        ret |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return ret;
+        }
+      }
+      throw new IOException("Malformed integer");
+    }
+
+    private int readSignedInt() throws IOException {
+      int i = readInt();
+      return (i >>> 1) ^ -(i & 1);
+    }
+
+    private long readLong() throws IOException {
+      long ret = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = data[pos++];
+        ret |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return (ret >>> 1) ^ -(ret & 1);
+        }
+      }
+      throw new IOException("Malformed integer");
+    }
+
+    private String readString() throws IOException {
+      int index = readInt();
+      if (index > 0) {
+        return strings.get(index - 1);
+      }
+      char[] chars = new char[readInt()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = (char) readInt();
+      }
+      String ret = new String(chars);
+      strings.add(ret);
+      return ret;
+    }
+
+    private Type readType() throws IOException {
+      int kind = readInt();
+      switch (kind) {
+        case T_VOID:
+          return VoidType.v();
+        case T_BOOLEAN:
+          return BooleanType.v();
+        case T_BYTE:
+          return ByteType.v();
+        case T_CHAR:
+          return CharType.v();
+        case T_SHORT:
+          return ShortType.v();
+        case T_INT:
+          return IntType.v();
+        case T_LONG:
+          return LongType.v();
+        case T_FLOAT:
+          return FloatType.v();
+        case T_DOUBLE:
+          return DoubleType.v();
+        case T_REF:
+          return RefType.v(readString());
+        case T_ARRAY:
+          Type baseType = readType();
+          return ArrayType.v(baseType, readInt());
+        case T_NULL:
+          return NullType.v();
+        case T_UNKNOWN:
+          return UnknownType.v();
+        default:
+          throw new IOException("Unknown type kind " + kind);
+      }
+    }
+
+    private SootClass readClass() throws IOException {
+      String name = readString();
+      Scene scene = Scene.v();
+      return scene.containsClass(name) ? scene.getSootClass(name) : SootResolver.v().makeClassRef(name);
+    }
+
+    private SootMethodRef readMethodRef() throws IOException {
+      SootClass declaringClass = readClass();
+      String name = readString();
+      int count = readInt();
+      List<Type> parameterTypes = count == 0 ? Collections.<Type>emptyList() : new ArrayList<Type>(count);
+      for (int i = 0; i < count; i++) {
+        parameterTypes.add(readType());
+      }
+      Type returnType = readType();
+      boolean isStatic = data[pos++] != 0;
+      return Scene.v().makeMethodRef(declaringClass, name, parameterTypes, returnType, isStatic);
+    }
+
+    private SootFieldRef readFieldRef(boolean isStatic) throws IOException {
+      SootClass declaringClass = readClass();
+      String name = readString();
+      return Scene.v().makeFieldRef(declaringClass, name, readType(), isStatic);
+    }
+
+    private Local readLocal() throws IOException {
+      return (Local) readValue();
+    }
+
+    private List<Value> readValues() throws IOException {
+      int count = readInt();
+      if (count == 0) {
+        return Collections.<Value>emptyList();
+      }
+      List<Value> ret = new ArrayList<Value>(count);
+      for (int i = 0; i < count; i++) {
+        ret.add(readValue());
+      }
+      return ret;
+    }
+
+    private Value readValue() throws IOException {
+      int kind = readInt();
+      switch (kind) {
+        case V_LOCAL:
+          return locals[readInt()];
+        case V_INT:
+          return IntConstant.v(readSignedInt());
+        case V_LONG:
+          return LongConstant.v(readLong());
+        case V_FLOAT:
+          return FloatConstant.v(Float.intBitsToFloat(readSignedInt()));
+        case V_DOUBLE:
+          return DoubleConstant.v(Double.longBitsToDouble(readLong()));
+        case V_STRING:
+          return StringConstant.v(readString());
+        case V_NULL:
+          return NullConstant.v();
+        case V_CLASS:
+          return ClassConstant.v(readString());
+        case V_METHOD_HANDLE: {
+          SootMethodRef ref = readMethodRef();
+          return MethodHandle.v(ref, readInt());
+        }
+        case V_INTERFACE_INVOKE: {
+          Local base = readLocal();
+          SootMethodRef ref = readMethodRef();
+          return jimple.newInterfaceInvokeExpr(base, ref, readValues());
+        }
+        case V_SPECIAL_INVOKE: {
+          Local base = readLocal();
+          SootMethodRef ref = readMethodRef();
+          return jimple.newSpecialInvokeExpr(base, ref, readValues());
+        }
+        case V_STATIC_INVOKE: {
+          SootMethodRef ref = readMethodRef();
+          return jimple.newStaticInvokeExpr(ref, readValues());
+        }
+        case V_VIRTUAL_INVOKE: {
+          Local base = readLocal();
+          SootMethodRef ref = readMethodRef();
+          return jimple.newVirtualInvokeExpr(base, ref, readValues());
+        }
+        case V_DYNAMIC_INVOKE: {
+          SootMethodRef ref = readMethodRef();
+          List<Value> args = readValues();
+          SootMethodRef bootstrapRef = readMethodRef();
+          List<Value> bootstrapArgs = readValues();
+          return jimple.newDynamicInvokeExpr(bootstrapRef, bootstrapArgs, ref, readInt(), args);
+        }
+        case V_CAST: {
+          Value op = readValue();
+          return jimple.newCastExpr(op, readType());
+        }
+        case V_INSTANCE_OF: {
+          Value op = readValue();
+          return jimple.newInstanceOfExpr(op, readType());
+        }
+        case V_NEW_ARRAY: {
+          Type baseType = readType();
+          return jimple.newNewArrayExpr(baseType, readValue());
+        }
+        case V_NEW_MULTI_ARRAY: {
+          ArrayType baseType = (ArrayType) readType();
+          return jimple.newNewMultiArrayExpr(baseType, readValues());
+        }
+        case V_NEW:
+          return jimple.newNewExpr((RefType) readType());
+        case V_LENGTH:
+          return jimple.newLengthExpr(readValue());
+        case V_NEG:
+          return jimple.newNegExpr(readValue());
+        case V_ARRAY_REF: {
+          Value base = readValue();
+          return jimple.newArrayRef(base, readValue());
+        }
+        case V_STATIC_FIELD_REF:
+          return jimple.newStaticFieldRef(readFieldRef(true));
+        case V_INSTANCE_FIELD_REF: {
+          Value base = readValue();
+          return jimple.newInstanceFieldRef(base, readFieldRef(false));
+        }
+        case V_PARAMETER_REF: {
+          Type type = readType();
+          return jimple.newParameterRef(type, readInt());
+        }
+        case V_CAUGHT_EXCEPTION_REF:
+          return jimple.newCaughtExceptionRef();
+        case V_THIS_REF:
+          return jimple.newThisRef((RefType) readType());
+        default:
+          return readBinop(kind);
+      }
+    }
+
+    private Value readBinop(int kind) throws IOException {
+      Value op1 = readValue();
+      Value op2 = readValue();
+      switch (kind) {
+        case V_ADD:
+          return jimple.newAddExpr(op1, op2);
+        case V_AND:
+          return jimple.newAndExpr(op1, op2);
+        case V_CMP:
+          return jimple.newCmpExpr(op1, op2);
+        case V_CMPG:
+          return jimple.newCmpgExpr(op1, op2);
+        case V_CMPL:
+          return jimple.newCmplExpr(op1, op2);
+        case V_DIV:
+          return jimple.newDivExpr(op1, op2);
+        case V_EQ:
+          return jimple.newEqExpr(op1, op2);
+        case V_NE:
+          return jimple.newNeExpr(op1, op2);
+        case V_GE:
+          return jimple.newGeExpr(op1, op2);
+        case V_GT:
+          return jimple.newGtExpr(op1, op2);
+        case V_LE:
+          return jimple.newLeExpr(op1, op2);
+        case V_LT:
+          return jimple.newLtExpr(op1, op2);
+        case V_MUL:
+          return jimple.newMulExpr(op1, op2);
+        case V_OR:
+          return jimple.newOrExpr(op1, op2);
+        case V_REM:
+          return jimple.newRemExpr(op1, op2);
+        case V_SHL:
+          return jimple.newShlExpr(op1, op2);
+        case V_SHR:
+          return jimple.newShrExpr(op1, op2);
+        case V_USHR:
+          return jimple.newUshrExpr(op1, op2);
+        case V_SUB:
+          return jimple.newSubExpr(op1, op2);
+        case V_XOR:
+          return jimple.newXorExpr(op1, op2);
+        default:
+          throw new IOException("Unknown value kind " + kind);
+      }
+    }
+
+    /** Reads the targets of a branching statement, which are set once all units have been read. */
+    private Stmt readTargets(Stmt s) throws IOException {
+      int[] targets = new int[readInt()];
+      for (int i = 0; i < targets.length; i++) {
+        targets[i] = readInt();
+      }
+      branches.add(s);
+      branchTargets.add(targets);
+      return s;
+    }
+
+    private Stmt readStmt() throws IOException {
+      int kind = readInt();
+      switch (kind) {
+        case S_BREAKPOINT:
+          return jimple.newBreakpointStmt();
+        case S_INVOKE:
+          return jimple.newInvokeStmt(readValue());
+        case S_ASSIGN: {
+          Value left = readValue();
+          return jimple.newAssignStmt(left, readValue());
+        }
+        case S_IDENTITY: {
+          Value left = readValue();
+          return jimple.newIdentityStmt(left, readValue());
+        }
+        case S_ENTER_MONITOR:
+          return jimple.newEnterMonitorStmt(readValue());
+        case S_EXIT_MONITOR:
+          return jimple.newExitMonitorStmt(readValue());
+        case S_GOTO:
+          return readTargets(jimple.newGotoStmt((Unit) null));
+        case S_IF:
+          return readTargets(jimple.newIfStmt((ConditionExpr) readValue(), (Unit) null));
+        case S_LOOKUP_SWITCH: {
+          Value key = readValue();
+          int count = readInt();
+          List<IntConstant> values = new ArrayList<IntConstant>(count);
+          for (int i = 0; i < count; i++) {
+            values.add(IntConstant.v(readSignedInt()));
+          }
+          List<Unit> targets = Collections.nCopies(count, null);
+          return readTargets(jimple.newLookupSwitchStmt(key, values, targets, (Unit) null));
+        }
+        case S_NOP:
+          return jimple.newNopStmt();
+        case S_RET:
+          return jimple.newRetStmt(readValue());
+        case S_RETURN:
+          return jimple.newReturnStmt(readValue());
+        case S_RETURN_VOID:
+          return jimple.newReturnVoidStmt();
+        case S_TABLE_SWITCH: {
+          Value key = readValue();
+          int low = readSignedInt();
+          int high = readSignedInt();
+          List<Unit> targets = Collections.nCopies(high - low + 1, null);
+          return readTargets(jimple.newTableSwitchStmt(key, low, high, targets, (Unit) null));
+        }
+        case S_THROW:
+          return jimple.newThrowStmt(readValue());
+        default:
+          throw new IOException("Unknown statement kind " + kind);
+      }
+    }
+  }
+}
@@ -267,11 +267,12 @@ public class Main {
       }
 
       PackManager.v().runPacks();
-      if (!Options.v().oaat()) {
+      if (!Options.v().oaat() && !PackManager.v().isStreamingOutput()) {
         PackManager.v().writeOutput();
       }
 
       Timers.v().totalTimer.end();
+      PhaseProfiler.v().writeResults();
 
       // Print out time stats.
       if (Options.v().time()) {
@@ -26,4 +26,12 @@ package soot;
 public interface MethodSource {
   /** Returns a filled-out body for the given SootMethod. */
   public Body getBody(SootMethod m, String phaseName);
+
+  /**
+   * Returns an estimate of the size of the body this source produces, such as the number of bytecode instructions, or 0 if
+   * the size is not known before the body is built. The estimate is only used to schedule work.
+   */
+  public default int estimateBodySize() {
+    return 0;
+  }
 }
@@ -114,7 +114,12 @@ public abstract class Pack implements HasPhaseOptions, Iterable<Transform> {
     if (!PhaseOptions.getBoolean(options, "enabled")) {
       return;
     }
-    internalApply();
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start(getPhaseName(), null);
+    try {
+      internalApply();
+    } finally {
+      PhaseProfiler.v().stop(m);
+    }
   }
 
   public final void apply(Body b) {
@@ -122,7 +127,14 @@ public abstract class Pack implements HasPhaseOptions, Iterable<Transform> {
     if (!PhaseOptions.getBoolean(options, "enabled")) {
       return;
     }
-    internalApply(b);
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start(getPhaseName(), b);
+    try {
+      internalApply(b);
+    } finally {
+      // Analyses are only shared within one application of a pack
+      b.invalidateAnalyses();
+      PhaseProfiler.v().stop(m);
+    }
   }
 
   public String getDeclaredOptions() {
@@ -24,24 +24,43 @@ package soot;
 
 import heros.solver.CountingThreadPoolExecutor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 
@@ -146,6 +165,18 @@ import soot.xml.XMLPrinter;
 public class PackManager {
   private static final Logger logger = LoggerFactory.getLogger(PackManager.class);
   public static boolean DEBUG = false;
+
+  /**
+   * The phases of the body packs that only read and change the body they are applied to. With the
+   * <code>-per-method-body-packs</code> option, the methods of a class are only transformed concurrently if every enabled
+   * phase of the body packs is one of these.
+   */
+  private static final Set<String> METHOD_LOCAL_PHASES = new HashSet<String>(Arrays.asList("sop.cpf", "jop.cse", "jop.bcm",
+      "jop.lcm", "jop.cp", "jop.cpf", "jop.cbf", "jop.dae", "jop.nce", "jop.uce1", "jop.ubf1", "jop.uce2", "jop.ubf2",
+      "jop.ule", "jap.npc", "jap.npcolorer", "jap.abc", "jap.sea", "jap.cgtagger", "jap.parity", "jap.pat", "jap.rdtagger",
+      "jap.lvtagger", "jap.che", "jap.umt", "jap.lit", "jap.aet", "jap.dmt", "bb.lso", "bb.pho", "bb.ule", "bb.lp", "bb.sco",
+      "tag.ln", "tag.an", "tag.dep", "tag.fieldrw"));
+
   private final Map<String, Pack> packNameToPack = new HashMap<String, Pack>();
   private final List<Pack> packList = new LinkedList<Pack>();
   private boolean onlyStandardPacks = false;
@@ -494,6 +525,10 @@ public class PackManager {
     if (Options.v().whole_program() || Options.v().whole_shimple()) {
       runWholeProgramPacks();
     }
+    if (isStreamingOutput()) {
+      runBodyPacksAndWriteOneClassAtATime();
+      return;
+    }
     retrieveAllBodies();
 
     // Create tags from all values we only have in code assignments now
@@ -525,6 +560,62 @@ public class PackManager {
     handleInnerClasses();
   }
 
+  /**
+   * Returns true if a body memory budget has been set and the output format allows us to transform and write the classes
+   * one at a time. In that case, {@link #runPacks()} also writes the output.
+   */
+  public boolean isStreamingOutput() {
+    if (!BodyResidencyManager.v().isEnabled()) {
+      return false;
+    }
+    final int format = Options.v().output_format();
+    return format != Options.output_format_dava && format != Options.output_format_dex
+        && format != Options.output_format_force_dex;
+  }
+
+  /**
+   * Runs the body packs and writes the output one class at a time, without retrieving all bodies first. The bodies of a
+   * class are released once it has been written. Bodies that are not pinned are evicted between two classes, when no pack
+   * holds on to them.
+   */
+  private void runBodyPacksAndWriteOneClassAtATime() {
+    final BodyResidencyManager brm = BodyResidencyManager.v();
+    handleInnerClasses();
+
+    setupJAR();
+    if (Options.v().verbose()) {
+      PhaseDumper.v().dumpBefore("output");
+    }
+    for (Iterator<SootClass> classes = reachableClasses(); classes.hasNext();) {
+      SootClass c = classes.next();
+      // As retrieveAllBodies() does for all classes, since the transformations expect the bodies to exist
+      for (SootMethod m : new ArrayList<SootMethod>(c.getMethods())) {
+        if (m.isConcrete()) {
+          m.retrieveActiveBody();
+        }
+      }
+      if (Options.v().validate()) {
+        c.validate();
+      }
+      if (!c.isPhantom) {
+        ConstantInitializerToTagTransformer.v().transformClass(c, true);
+      }
+      runBodyPacks(c);
+      writeClass(c);
+      postProcessXML(Collections.singletonList(c).iterator());
+      if (!Options.v().no_writeout_body_releasing()) {
+        releaseBodies(c);
+      }
+      brm.evictIfNeeded();
+    }
+    tearDownJAR();
+    if (Options.v().verbose()) {
+      PhaseDumper.v().dumpAfter("output");
+    }
+
+    logger.debug("Evicted " + brm.getEvictions() + " bodies, read back " + brm.getReloads() + " bodies");
+  }
+
   public void coffiMetrics() {
     int tV = 0, tE = 0, hM = 0;
     double aM = 0;
@@ -591,6 +682,7 @@ public class PackManager {
       String outFileName = SourceLocator.v().getOutputJarName();
       try {
         jarFile = new JarOutputStream(new FileOutputStream(outFileName));
+        jarFile.setLevel(Options.v().output_jar_compression_level());
       } catch (IOException e) {
         throw new CompilationDeathException("Cannot open output Jar file " + outFileName);
       }
@@ -603,12 +695,12 @@ public class PackManager {
     if (Options.v().whole_shimple()) {
       ShimpleTransformer.v().transform();
       getPack("wspp").apply();
-      getPack("cg").apply();
+      runCallGraphPack();
       getPack("wstp").apply();
       getPack("wsop").apply();
     } else {
       getPack("wjpp").apply();
-      getPack("cg").apply();
+      runCallGraphPack();
       getPack("wjtp").apply();
       getPack("wjop").apply();
       getPack("wjap").apply();
@@ -616,6 +708,20 @@ public class PackManager {
     PaddleHook.v().finishPhases();
   }
 
+  /**
+   * Runs the <code>cg</code> pack. Its call graph builders pin the bodies they refer to, so the other bodies may be
+   * evicted at their safe points.
+   */
+  private void runCallGraphPack() {
+    BodyResidencyManager brm = BodyResidencyManager.v();
+    brm.setEvictAtSafePoints(true);
+    try {
+      getPack("cg").apply();
+    } finally {
+      brm.setEvictAtSafePoints(false);
+    }
+  }
+
   /* preprocess classes for DAVA */
   private void preProcessDAVA() {
     if (Options.v().output_format() == Options.output_format_dava) {
@@ -650,8 +756,26 @@ public class PackManager {
     }
   }
 
+  /**
+   * Returns the number of worker threads to use for the parallel phases, as given by the <code>-num-threads</code> option.
+   */
+  private static int getNumThreads() {
+    int n = Options.v().num_threads();
+    return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+  }
+
   private void runBodyPacks(final Iterator<SootClass> classes) {
-    int threadNum = Runtime.getRuntime().availableProcessors();
+    if (Options.v().per_method_body_packs() && Options.v().output_format() != Options.output_format_dava) {
+      String phase = findNonLocalBodyPhase();
+      if (phase == null) {
+        runBodyPacksPerMethod(classes);
+        return;
+      }
+      logger.info("Running the body packs per class, because phase " + phase
+          + " may access other methods or classes than the one it is applied to");
+    }
+
+    int threadNum = getNumThreads();
     CountingThreadPoolExecutor executor
         = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
@@ -686,18 +810,203 @@ public class PackManager {
     }
   }
 
+  /**
+   * Returns the first enabled phase of the body packs that is not known to only access the body it is applied to, or null
+   * if there is none. Such a phase, e.g. any phase added by a user, must not run on two methods of the same class at once.
+   */
+  String findNonLocalBodyPhase() {
+    for (String packName : new String[] { "stp", "sop", "jtp", "jop", "jap", "gop", "bb", "bop", "tag" }) {
+      Pack pack = getPack(packName);
+      if (!PhaseOptions.getBoolean(PhaseOptions.v().getPhaseOptions(pack), "enabled")) {
+        continue;
+      }
+      for (Transform t : pack) {
+        if (PhaseOptions.getBoolean(PhaseOptions.v().getPhaseOptions(t), "enabled")
+            && !METHOD_LOCAL_PHASES.contains(t.getPhaseName())) {
+          return t.getPhaseName();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Runs the body packs with one task per method instead of one task per class. Tasks are scheduled largest method first
+   * on a work-stealing pool, so that a single huge class does not keep one thread busy while the others are idle. The
+   * per-class work (XML attributes) is done by whichever task finishes the last method of a class.
+   */
+  private void runBodyPacksPerMethod(Iterator<SootClass> classes) {
+    final BodyPackOutputs outputs = new BodyPackOutputs(Options.v().output_format());
+    final BodyPackStatistics stats = new BodyPackStatistics();
+    List<MethodTask> tasks = new ArrayList<MethodTask>();
+
+    while (classes.hasNext()) {
+      SootClass c = classes.next();
+      logger.debug("Transforming {}...", c.getName());
+
+      List<SootMethod> methods = new ArrayList<SootMethod>();
+      for (SootMethod m : c.getMethods()) {
+        if (m.isConcrete()) {
+          methods.add(m);
+        }
+      }
+      ClassTask classTask = new ClassTask(c, methods.size());
+      if (methods.isEmpty()) {
+        finishBodyPacks(c, outputs, classTask.tc);
+        continue;
+      }
+      for (SootMethod m : methods) {
+        tasks.add(new MethodTask(m, estimateBodySize(m), classTask));
+      }
+    }
+
+    // Largest methods first, so that the long-running tasks do not end up at the tail of the schedule
+    Collections.sort(tasks);
+
+    final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+    final ForkJoinPool pool = new ForkJoinPool(getNumThreads());
+    final AtomicLong maxQueued = new AtomicLong();
+    for (final MethodTask task : tasks) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (exception.get() != null) {
+            return;
+          }
+          updateMax(maxQueued, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+          try {
+            runBodyPacks(task.method, outputs, task.owner.tc, stats);
+            if (task.owner.remaining.decrementAndGet() == 0) {
+              finishBodyPacks(task.owner.clazz, outputs, task.owner.tc);
+            }
+          } catch (Throwable t) {
+            exception.compareAndSet(null, t);
+          }
+        }
+      });
+    }
+
+    pool.shutdown();
+    try {
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    } catch (InterruptedException e) {
+      // Something went horribly wrong
+      throw new RuntimeException("Could not wait for pack threads to " + "finish: " + e.getMessage(), e);
+    }
+
+    stats.report(tasks.size(), pool.getParallelism(), maxQueued.get(), pool.getStealCount());
+
+    // If something went wrong, we tell the world
+    Throwable t = exception.get();
+    if (t != null) {
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      } else {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+
+  /**
+   * Estimates the size of the body of the given method, from its active body if it has one and from its method source
+   * otherwise.
+   */
+  private static int estimateBodySize(SootMethod m) {
+    if (m.hasActiveBody()) {
+      return m.getActiveBody().getUnits().size();
+    }
+    MethodSource ms = m.getSource();
+    return ms == null ? 0 : ms.estimateBodySize();
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    for (long current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get()) {
+    }
+  }
+
+  private static final class ClassTask {
+    final SootClass clazz;
+    final TagCollector tc = new TagCollector();
+    final AtomicInteger remaining;
+
+    ClassTask(SootClass clazz, int methodCount) {
+      this.clazz = clazz;
+      this.remaining = new AtomicInteger(methodCount);
+    }
+  }
+
+  private static final class MethodTask implements Comparable<MethodTask> {
+    final SootMethod method;
+    final int size;
+    final ClassTask owner;
+
+    MethodTask(SootMethod method, int size, ClassTask owner) {
+      this.method = method;
+      this.size = size;
+      this.owner = owner;
+    }
+
+    @Override
+    public int compareTo(MethodTask o) {
+      return Integer.compare(o.size, size);
+    }
+  }
+
+  /**
+   * Collects the time spent in each pack while running the body packs per method.
+   */
+  private static final class BodyPackStatistics {
+    private final ConcurrentHashMap<String, AtomicLong> times = new ConcurrentHashMap<String, AtomicLong>();
+
+    void addTime(String packName, long nanos) {
+      AtomicLong time = times.get(packName);
+      if (time == null) {
+        AtomicLong newTime = new AtomicLong();
+        time = times.putIfAbsent(packName, newTime);
+        if (time == null) {
+          time = newTime;
+        }
+      }
+      time.addAndGet(nanos);
+    }
+
+    void report(int methodCount, int threads, long maxQueued, long steals) {
+      boolean info = Options.v().time();
+      if (!info && !logger.isDebugEnabled()) {
+        return;
+      }
+      StringBuilder sb = new StringBuilder();
+      sb.append("Ran body packs on ").append(methodCount).append(" methods using ").append(threads).append(" threads");
+      sb.append(" (max queue depth ").append(maxQueued).append(", ").append(steals).append(" steals)");
+      for (Map.Entry<String, AtomicLong> e : new TreeMap<String, AtomicLong>(times).entrySet()) {
+        sb.append("\n  ").append(e.getKey()).append(": ").append(TimeUnit.NANOSECONDS.toMillis(e.getValue().get()))
+            .append(" ms");
+      }
+      if (info) {
+        logger.info(sb.toString());
+      } else {
+        logger.debug(sb.toString());
+      }
+    }
+  }
+
   private void handleInnerClasses() {
     InnerClassTagAggregator agg = InnerClassTagAggregator.v();
     agg.internalTransform("", null);
   }
 
   protected void writeOutput(Iterator<SootClass> classes) {
+    final int format = Options.v().output_format();
+    if (jarFile != null && format != Options.output_format_dex && format != Options.output_format_force_dex) {
+      writeOutputToJar(classes);
+      return;
+    }
+
     // If we're writing individual class files, we can write them
-    // concurrently. Otherwise, we need to synchronize for not destroying
-    // the shared output stream.
-    int threadNum = Options.v().output_format() == Options.output_format_class && jarFile == null
-        ? Runtime.getRuntime().availableProcessors()
-        : 1;
+    // concurrently. The dex printer collects all classes in one file.
+    int threadNum = format == Options.output_format_class && jarFile == null ? getNumThreads() : 1;
     CountingThreadPoolExecutor executor
         = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
@@ -732,6 +1041,70 @@ public class PackManager {
     }
   }
 
+  /**
+   * Writes the classes into the output Jar file. Worker threads print the classes into in-memory buffers. The calling
+   * thread is the only one that writes to the Jar file, and it appends the finished entries in the order of
+   * <code>classes</code>, so the Jar file does not depend on the number of threads. A few classes per thread are printed
+   * ahead of the writer at most, and their buffers are reused.
+   */
+  private void writeOutputToJar(Iterator<SootClass> classes) {
+    final int format = Options.v().output_format();
+    final int threadNum = canPrintConcurrently(format) ? getNumThreads() : 1;
+    final Queue<OutputBuffer> buffers = new ConcurrentLinkedQueue<OutputBuffer>();
+    ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+    ArrayDeque<Future<OutputBuffer>> pending = new ArrayDeque<Future<OutputBuffer>>();
+    try {
+      while (classes.hasNext()) {
+        final SootClass c = classes.next();
+        pending.add(executor.submit(new Callable<OutputBuffer>() {
+
+          @Override
+          public OutputBuffer call() {
+            return printToBuffer(c, format, buffers);
+          }
+
+        }));
+        if (pending.size() >= threadNum * 4) {
+          writeJarEntry(pending.poll().get(), buffers);
+        }
+      }
+      while (!pending.isEmpty()) {
+        writeJarEntry(pending.poll().get(), buffers);
+      }
+    } catch (InterruptedException e) {
+      // Something went horribly wrong
+      throw new RuntimeException("Could not wait for writer threads to " + "finish: " + e.getMessage(), e);
+    } catch (ExecutionException e) {
+      // If something went wrong, we tell the world
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      } else {
+        throw new RuntimeException(e.getCause());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns true if classes can be printed in the given output format by several threads at the same time.
+   */
+  private static boolean canPrintConcurrently(int format) {
+    switch (format) {
+      case Options.output_format_class:
+      case Options.output_format_jasmin:
+      case Options.output_format_asm:
+        // Every class gets a backend of its own
+        return true;
+      default:
+        // The Jimple-family formats share the options and line numbers of
+        // Printer.v(), the other printers collect state between classes
+        return false;
+    }
+  }
+
   private void tearDownJAR() {
     try {
       if (jarFile != null) {
@@ -906,7 +1279,6 @@ public class PackManager {
     }
   }
 
-  @SuppressWarnings("fallthrough")
   private void runBodyPacks(SootClass c) {
     final int format = Options.v().output_format();
     if (format == Options.output_format_dava) {
@@ -919,50 +1291,8 @@ public class PackManager {
       logger.debug("Transforming {}...", c.getName());
     }
 
-    boolean produceBaf = false, produceGrimp = false, produceDava = false, produceJimple = true, produceShimple = false;
-
-    switch (format) {
-      case Options.output_format_none:
-      case Options.output_format_xml:
-      case Options.output_format_jimple:
-      case Options.output_format_jimp:
-      case Options.output_format_template:
-      case Options.output_format_dex:
-      case Options.output_format_force_dex:
-        break;
-      case Options.output_format_shimp:
-      case Options.output_format_shimple:
-        produceShimple = true;
-        // FLIP produceJimple
-        produceJimple = false;
-        break;
-      case Options.output_format_dava:
-        produceDava = true;
-        // FALL THROUGH
-      case Options.output_format_grimp:
-      case Options.output_format_grimple:
-        produceGrimp = true;
-        break;
-      case Options.output_format_baf:
-      case Options.output_format_b:
-        produceBaf = true;
-        break;
-      case Options.output_format_jasmin:
-      case Options.output_format_class:
-      case Options.output_format_asm:
-        produceGrimp = Options.v().via_grimp();
-        produceBaf = !produceGrimp;
-        break;
-      default:
-        throw new RuntimeException();
-    }
-
-    soot.xml.TagCollector tc = new soot.xml.TagCollector();
-
-    boolean wholeShimple = Options.v().whole_shimple();
-    if (Options.v().via_shimple()) {
-      produceShimple = true;
-    }
+    BodyPackOutputs outputs = new BodyPackOutputs(format);
+    TagCollector tc = new TagCollector();
 
     // here we create a copy of the methods so that transformers are able
     // to add method bodies during the following iteration;
@@ -982,68 +1312,108 @@ public class PackManager {
         continue;
       }
 
-      if (produceShimple || wholeShimple) {
-        ShimpleBody sBody = null;
+      runBodyPacks(m, outputs, tc, null);
+    }
+
+    finishBodyPacks(c, outputs, tc);
+  }
 
-        // whole shimple or not?
-        {
-          Body body = m.retrieveActiveBody();
+  /**
+   * Runs the body packs on a single method. When <code>stats</code> is not null, the time spent in each pack is recorded
+   * there.
+   */
+  private void runBodyPacks(SootMethod m, BodyPackOutputs outputs, TagCollector tc, BodyPackStatistics stats) {
+    boolean wholeShimple = Options.v().whole_shimple();
+    if (outputs.produceShimple || wholeShimple) {
+      ShimpleBody sBody = null;
 
-          if (body instanceof ShimpleBody) {
-            sBody = (ShimpleBody) body;
-            if (!sBody.isSSA()) {
-              sBody.rebuild();
-            }
-          } else {
-            sBody = Shimple.v().newBody(body);
+      // whole shimple or not?
+      {
+        Body body = m.retrieveActiveBody();
+
+        if (body instanceof ShimpleBody) {
+          sBody = (ShimpleBody) body;
+          if (!sBody.isSSA()) {
+            sBody.rebuild();
           }
+        } else {
+          sBody = Shimple.v().newBody(body);
         }
+      }
 
-        m.setActiveBody(sBody);
-        PackManager.v().getPack("stp").apply(sBody);
-        PackManager.v().getPack("sop").apply(sBody);
+      m.setActiveBody(sBody);
+      applyPack("stp", sBody, stats);
+      applyPack("sop", sBody, stats);
 
-        if (produceJimple || (wholeShimple && !produceShimple)) {
-          m.setActiveBody(sBody.toJimpleBody());
-        }
+      if (outputs.produceJimple || (wholeShimple && !outputs.produceShimple)) {
+        m.setActiveBody(sBody.toJimpleBody());
       }
+    }
 
-      if (produceJimple) {
-        Body body = m.retrieveActiveBody();
-        // Change
-        CopyPropagator.v().transform(body);
-        ConditionalBranchFolder.v().transform(body);
-        UnreachableCodeEliminator.v().transform(body);
-        DeadAssignmentEliminator.v().transform(body);
-        UnusedLocalEliminator.v().transform(body);
-        PackManager.v().getPack("jtp").apply(body);
-        if (Options.v().validate()) {
-          body.validate();
-        }
-        PackManager.v().getPack("jop").apply(body);
-        PackManager.v().getPack("jap").apply(body);
-        if (Options.v().xml_attributes() && Options.v().output_format() != Options.output_format_jimple) {
-          // System.out.println("collecting body tags");
+    if (outputs.produceJimple) {
+      Body body = m.retrieveActiveBody();
+      long start = stats == null ? 0 : System.nanoTime();
+      // Change
+      CopyPropagator.v().transform(body);
+      ConditionalBranchFolder.v().transform(body);
+      UnreachableCodeEliminator.v().transform(body);
+      DeadAssignmentEliminator.v().transform(body);
+      UnusedLocalEliminator.v().transform(body);
+      if (stats != null) {
+        stats.addTime("jimple cleanup", System.nanoTime() - start);
+      }
+      applyPack("jtp", body, stats);
+      if (Options.v().validate()) {
+        body.validate();
+      }
+      applyPack("jop", body, stats);
+      applyPack("jap", body, stats);
+      if (Options.v().xml_attributes() && Options.v().output_format() != Options.output_format_jimple) {
+        // System.out.println("collecting body tags");
+        synchronized (tc) {
           tc.collectBodyTags(body);
         }
       }
+    }
 
-      // PackManager.v().getPack("cfg").apply(m.retrieveActiveBody());
+    // PackManager.v().getPack("cfg").apply(m.retrieveActiveBody());
 
-      if (produceGrimp) {
-        m.setActiveBody(Grimp.v().newBody(m.getActiveBody(), "gb"));
-        PackManager.v().getPack("gop").apply(m.getActiveBody());
-      } else if (produceBaf) {
-        m.setActiveBody(convertJimpleBodyToBaf(m));
+    if (outputs.produceGrimp) {
+      long start = stats == null ? 0 : System.nanoTime();
+      m.setActiveBody(Grimp.v().newBody(m.getActiveBody(), "gb"));
+      if (stats != null) {
+        stats.addTime("gb", System.nanoTime() - start);
+      }
+      applyPack("gop", m.getActiveBody(), stats);
+    } else if (outputs.produceBaf) {
+      long start = stats == null ? 0 : System.nanoTime();
+      m.setActiveBody(convertJimpleBodyToBaf(m));
+      if (stats != null) {
+        stats.addTime("bb", System.nanoTime() - start);
       }
     }
+  }
 
+  private void applyPack(String packName, Body b, BodyPackStatistics stats) {
+    if (stats == null) {
+      getPack(packName).apply(b);
+      return;
+    }
+    long start = System.nanoTime();
+    getPack(packName).apply(b);
+    stats.addTime(packName, System.nanoTime() - start);
+  }
+
+  /**
+   * Performs the work that has to be done once all methods of a class have been transformed.
+   */
+  private void finishBodyPacks(SootClass c, BodyPackOutputs outputs, TagCollector tc) {
     if (Options.v().xml_attributes() && Options.v().output_format() != Options.output_format_jimple) {
       processXMLForClass(c, tc);
       // System.out.println("processed xml for class");
     }
 
-    if (produceDava) {
+    if (outputs.produceDava) {
       for (SootMethod m : c.getMethods()) {
         if (!m.isConcrete()) {
           continue;
@@ -1072,6 +1442,60 @@ public class PackManager {
     } // end if produceDava
   }
 
+  /**
+   * The intermediate representations that the body packs have to produce for a given output format.
+   */
+  private static final class BodyPackOutputs {
+    boolean produceBaf = false;
+    boolean produceGrimp = false;
+    boolean produceDava = false;
+    boolean produceJimple = true;
+    boolean produceShimple = false;
+
+    @SuppressWarnings("fallthrough")
+    BodyPackOutputs(int format) {
+      switch (format) {
+        case Options.output_format_none:
+        case Options.output_format_xml:
+        case Options.output_format_jimple:
+        case Options.output_format_jimp:
+        case Options.output_format_template:
+        case Options.output_format_dex:
+        case Options.output_format_force_dex:
+          break;
+        case Options.output_format_shimp:
+        case Options.output_format_shimple:
+          produceShimple = true;
+          // FLIP produceJimple
+          produceJimple = false;
+          break;
+        case Options.output_format_dava:
+          produceDava = true;
+          // FALL THROUGH
+        case Options.output_format_grimp:
+        case Options.output_format_grimple:
+          produceGrimp = true;
+          break;
+        case Options.output_format_baf:
+        case Options.output_format_b:
+          produceBaf = true;
+          break;
+        case Options.output_format_jasmin:
+        case Options.output_format_class:
+        case Options.output_format_asm:
+          produceGrimp = Options.v().via_grimp();
+          produceBaf = !produceGrimp;
+          break;
+        default:
+          throw new RuntimeException();
+      }
+
+      if (Options.v().via_shimple()) {
+        produceShimple = true;
+      }
+    }
+  }
+
   public BafBody convertJimpleBodyToBaf(SootMethod m) {
     JimpleBody body = (JimpleBody) m.getActiveBody().clone();
     // Change
@@ -1089,61 +1513,89 @@ public class PackManager {
   }
 
   protected void writeClass(SootClass c) {
+    final int format = Options.v().output_format();
+    if (jarFile != null) {
+      writeJarEntry(printToBuffer(c, format, null), null);
+      return;
+    }
+    if (!prepareOutput(c, format)) {
+      return;
+    }
+
+    String fileName = getOutputFileName(c, format);
+    OutputStream streamOut;
+    try {
+      new File(fileName).getParentFile().mkdirs();
+      streamOut = new FileOutputStream(fileName);
+      logger.debug("Writing to " + fileName);
+      printClass(c, format, streamOut);
+    } catch (IOException e) {
+      throw new CompilationDeathException("Cannot output file " + fileName, e);
+    }
+
+    try {
+      streamOut.close();
+    } catch (IOException e) {
+      throw new CompilationDeathException("Cannot close output file " + fileName);
+    }
+  }
+
+  /**
+   * Prepares the given class for being written in the given format. Returns false if the class is not written to a file
+   * of its own.
+   */
+  private boolean prepareOutput(SootClass c, int format) {
     // Create code assignments for those values we only have in code
     // assignments
-    if (Options.v().output_format() == Options.output_format_jimple) {
+    if (format == Options.output_format_jimple) {
       if (!c.isPhantom) {
         ConstantValueToInitializerTransformer.v().transformClass(c);
       }
     }
 
-    final int format = Options.v().output_format();
     if (format == Options.output_format_none) {
-      return;
+      return false;
     }
     if (format == Options.output_format_dava) {
-      return;
+      return false;
     }
     if (format == Options.output_format_dex || format == Options.output_format_force_dex) {
       // just add the class to the dex printer, writing is done after
       // adding all classes
       dexPrinter.add(c);
-      return;
+      return false;
     }
+    return true;
+  }
 
-    OutputStream streamOut = null;
-    PrintWriter writerOut = null;
-
+  private String getOutputFileName(SootClass c, int format) {
     String fileName = SourceLocator.v().getFileNameFor(c, format);
     if (Options.v().gzip()) {
       fileName = fileName + ".gz";
     }
+    if (jarFile != null) {
+      // Fix path delimiters according to ZIP specification
+      fileName = fileName.replace("\\", "/");
+    }
+    return fileName;
+  }
 
-    try {
-      if (jarFile != null) {
-        // Fix path delimiters according to ZIP specification
-        fileName = fileName.replace("\\", "/");
-        JarEntry entry = new JarEntry(fileName);
-        entry.setMethod(ZipEntry.DEFLATED);
-        jarFile.putNextEntry(entry);
-        streamOut = jarFile;
-      } else {
-        new File(fileName).getParentFile().mkdirs();
-        streamOut = new FileOutputStream(fileName);
-      }
-      if (Options.v().gzip()) {
-        streamOut = new GZIPOutputStream(streamOut);
-      }
-      if (format == Options.output_format_class) {
-        if (Options.v().jasmin_backend()) {
-          streamOut = new JasminOutputStream(streamOut);
-        }
+  /**
+   * Prints the given class in the given format to <code>out</code>. Compression is finished, but <code>out</code> is not
+   * closed.
+   */
+  private void printClass(SootClass c, int format, OutputStream out) throws IOException {
+    OutputStream streamOut = out;
+    GZIPOutputStream gzipOut = null;
+    if (Options.v().gzip()) {
+      streamOut = gzipOut = new GZIPOutputStream(streamOut);
+    }
+    if (format == Options.output_format_class) {
+      if (Options.v().jasmin_backend()) {
+        streamOut = new JasminOutputStream(streamOut);
       }
-      writerOut = new PrintWriter(new OutputStreamWriter(streamOut));
-      logger.debug("Writing to " + fileName);
-    } catch (IOException e) {
-      throw new CompilationDeathException("Cannot output file " + fileName, e);
     }
+    PrintWriter writerOut = new PrintWriter(new OutputStreamWriter(streamOut));
 
     if (Options.v().xml_attributes()) {
       Printer.v().setOption(Printer.ADD_JIMPLE_LN);
@@ -1187,16 +1639,82 @@ public class PackManager {
         throw new RuntimeException();
     }
 
+    writerOut.flush();
+    if (gzipOut != null) {
+      gzipOut.finish();
+    }
+  }
+
+  /**
+   * Prints the given class into a buffer taken from <code>buffers</code>, or into a new one. Returns null if the class is
+   * not written to an entry of its own.
+   */
+  private OutputBuffer printToBuffer(SootClass c, int format, Queue<OutputBuffer> buffers) {
+    if (!prepareOutput(c, format)) {
+      return null;
+    }
+
+    OutputBuffer buf = buffers == null ? null : buffers.poll();
+    if (buf == null) {
+      buf = new OutputBuffer();
+    }
+    buf.entryName = getOutputFileName(c, format);
     try {
-      writerOut.flush();
-      if (jarFile == null) {
-        streamOut.close();
-        writerOut.close();
-      } else {
-        jarFile.closeEntry();
-      }
+      printClass(c, format, buf);
     } catch (IOException e) {
-      throw new CompilationDeathException("Cannot close output file " + fileName);
+      throw new CompilationDeathException("Cannot output file " + buf.entryName, e);
+    }
+    return buf;
+  }
+
+  /**
+   * Appends the contents of the given buffer to the output Jar file, and returns the buffer to <code>buffers</code> for
+   * reuse.
+   */
+  private void writeJarEntry(OutputBuffer buf, Queue<OutputBuffer> buffers) {
+    if (buf == null) {
+      return;
+    }
+
+    JarEntry entry = new JarEntry(buf.entryName);
+    if (Options.v().output_jar_stored()) {
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(buf.size());
+      entry.setCompressedSize(buf.size());
+      entry.setCrc(buf.crc());
+    } else {
+      entry.setMethod(ZipEntry.DEFLATED);
+    }
+    try {
+      logger.debug("Writing to " + buf.entryName);
+      jarFile.putNextEntry(entry);
+      buf.writeTo(jarFile);
+      jarFile.closeEntry();
+    } catch (IOException e) {
+      throw new CompilationDeathException("Cannot output file " + buf.entryName, e);
+    }
+
+    if (buffers != null && buf.size() <= OutputBuffer.MAX_REUSED_SIZE) {
+      buf.reset();
+      buffers.add(buf);
+    }
+  }
+
+  /** A buffer holding a printed class until it is written to the output Jar file. */
+  private static final class OutputBuffer extends ByteArrayOutputStream {
+    /** Larger buffers are dropped after use instead of being kept for the next class. */
+    static final int MAX_REUSED_SIZE = 1 << 20;
+
+    String entryName;
+
+    OutputBuffer() {
+      super(1 << 13);
+    }
+
+    long crc() {
+      CRC32 crc = new CRC32();
+      crc.update(buf, 0, count);
+      return crc.getValue();
     }
   }
 
@@ -1272,7 +1790,7 @@ public class PackManager {
 
   private void retrieveAllBodies() {
     // The old coffi front-end is not thread-safe
-    int threadNum = Options.v().coffi() ? 1 : Runtime.getRuntime().availableProcessors();
+    int threadNum = Options.v().coffi() ? 1 : getNumThreads();
     CountingThreadPoolExecutor executor
         = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
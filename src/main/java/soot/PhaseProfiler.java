@@ -0,0 +1,494 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.options.Options;
+
+/**
+ * Collects per-phase measurements for every {@link Pack} and {@link Transform} that is applied, including transforms that
+ * have been registered by users.
+ *
+ * <p>
+ * For every phase, the profiler records the number of applications, the wall-clock time, the CPU time and the number of
+ * bytes allocated by the applying thread, the number of bodies the phase was applied to, and how many units it added to or
+ * removed from them. A unit that is removed and inserted again in one application is not counted. Nested phases are
+ * measured separately, so the time of a pack includes the time of its transforms.
+ * </p>
+ *
+ * <p>
+ * Profiling is enabled by the <code>-phase-profile</code> and <code>-phase-trace</code> options, which write the results
+ * as JSON and in the Chrome trace event format when Soot finishes, or programmatically through
+ * {@link #setEnabled(boolean)}. The JVM is only asked to measure CPU time and allocated bytes per thread, for all threads,
+ * once the first phase is measured. Instances are safe for concurrent use.
+ * </p>
+ */
+public class PhaseProfiler {
+  private static final Logger logger = LoggerFactory.getLogger(PhaseProfiler.class);
+
+  private final ConcurrentHashMap<String, PhaseStatistics> statistics = new ConcurrentHashMap<String, PhaseStatistics>();
+  private final ConcurrentLinkedQueue<TraceEvent> events = new ConcurrentLinkedQueue<TraceEvent>();
+  private final long origin = System.nanoTime();
+  private volatile boolean enabled;
+
+  public PhaseProfiler(Singletons.Global g) {
+  }
+
+  public static PhaseProfiler v() {
+    return G.v().soot_PhaseProfiler();
+  }
+
+  /**
+   * Returns true if phases are measured, i.e. if profiling has been enabled explicitly or if one of the
+   * <code>-phase-profile</code> and <code>-phase-trace</code> options is set.
+   */
+  public boolean isEnabled() {
+    return enabled || !Options.v().phase_profile().isEmpty() || isTracing();
+  }
+
+  private boolean isTracing() {
+    return !Options.v().phase_trace().isEmpty();
+  }
+
+  /** Enables or disables profiling independently of the command-line options. */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Starts measuring an application of the given phase, on the whole scene if <code>b</code> is null and on the body
+   * <code>b</code> otherwise. Returns null if profiling is disabled. The result must be passed to
+   * {@link #stop(Measurement)} on the same thread.
+   */
+  public Measurement start(String phaseName, Body b) {
+    if (!isEnabled()) {
+      return null;
+    }
+    return new Measurement(phaseName, b);
+  }
+
+  /** Returns the signature of the method of <code>b</code>, or null if the body has no method or it is not declared. */
+  private static String getSignature(Body b) {
+    // Body.getMethod() throws if there is no method
+    SootMethod m = b.method;
+    return m == null || !m.isDeclared() ? null : m.getSignature();
+  }
+
+  /**
+   * Finishes the given measurement and adds it to the statistics of its phase. Does nothing if <code>m</code> is null.
+   */
+  public void stop(Measurement m) {
+    if (m == null) {
+      return;
+    }
+    long wall = System.nanoTime() - m.wallStart;
+    long cpu = ThreadAccounting.getCpuTime() - m.cpuStart;
+    long allocated = ThreadAccounting.getAllocatedBytes(m.threadId) - m.allocationStart;
+    int unitsAdded = 0;
+    int unitsKept = 0;
+    if (m.body != null) {
+      for (Unit u : m.body.getUnits()) {
+        if (m.unitsBefore.contains(u)) {
+          unitsKept++;
+        } else {
+          unitsAdded++;
+        }
+      }
+    }
+    BodyAnalysisCache cache = m.body == null ? null : m.body.peekAnalysisCache();
+
+    PhaseStatistics stats = statistics.get(m.phaseName);
+    if (stats == null) {
+      PhaseStatistics newStats = new PhaseStatistics(m.phaseName);
+      stats = statistics.putIfAbsent(m.phaseName, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    stats.applications.incrementAndGet();
+    stats.wallNanos.addAndGet(wall);
+    stats.cpuNanos.addAndGet(cpu);
+    stats.allocatedBytes.addAndGet(allocated);
+    if (m.body != null) {
+      stats.bodies.incrementAndGet();
+      stats.unitsAdded.addAndGet(unitsAdded);
+      stats.unitsRemoved.addAndGet(m.unitsBefore.size() - unitsKept);
+      if (cache != null) {
+        stats.analysisCacheHits.addAndGet(cache.getHits() - m.cacheHitsBefore);
+        stats.analysisCacheMisses.addAndGet(cache.getMisses() - m.cacheMissesBefore);
+      }
+    }
+
+    if (isTracing()) {
+      events.add(new TraceEvent(m.phaseName, m.body == null ? null : getSignature(m.body), m.threadId,
+          m.wallStart - origin, wall, cpu, allocated));
+    }
+  }
+
+  /** Returns the statistics of all phases measured so far, sorted by phase name. */
+  public List<PhaseStatistics> getStatistics() {
+    List<PhaseStatistics> ret = new ArrayList<PhaseStatistics>(new TreeMap<String, PhaseStatistics>(statistics).values());
+    return Collections.unmodifiableList(ret);
+  }
+
+  /** Returns the statistics of the given phase, or null if it has not been measured. */
+  public PhaseStatistics getStatistics(String phaseName) {
+    return statistics.get(phaseName);
+  }
+
+  /** Discards all measurements. */
+  public void reset() {
+    statistics.clear();
+    events.clear();
+  }
+
+  /**
+   * Writes the measurements to the files given by the <code>-phase-profile</code> and <code>-phase-trace</code> options, if
+   * they are set.
+   */
+  public void writeResults() {
+    String profile = Options.v().phase_profile();
+    if (!profile.isEmpty()) {
+      try {
+        writeJson(new File(profile));
+        logger.info("Wrote phase profile to " + profile);
+      } catch (IOException e) {
+        logger.error("Could not write phase profile to " + profile + ": " + e.getMessage());
+      }
+    }
+    String trace = Options.v().phase_trace();
+    if (!trace.isEmpty()) {
+      try {
+        writeChromeTrace(new File(trace));
+        logger.info("Wrote phase trace to " + trace);
+      } catch (IOException e) {
+        logger.error("Could not write phase trace to " + trace + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Writes the statistics of all phases to the given file as a JSON object with one entry per phase. Times are given in
+   * nanoseconds.
+   */
+  public void writeJson(File file) throws IOException {
+    Writer out = open(file);
+    try {
+      writeJson(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  public void writeJson(Writer out) throws IOException {
+    out.write("{\n  \"cpuTimeSupported\": " + ThreadAccounting.cpuTimeSupported + ",\n");
+    out.write("  \"allocatedBytesSupported\": " + (ThreadAccounting.allocationBean != null) + ",\n");
+    out.write("  \"phases\": [");
+    boolean first = true;
+    for (PhaseStatistics s : getStatistics()) {
+      out.write(first ? "\n" : ",\n");
+      first = false;
+      out.write("    {\"phase\": " + quote(s.getPhaseName()));
+      out.write(", \"applications\": " + s.getApplications());
+      out.write(", \"wallNanos\": " + s.getWallNanos());
+      out.write(", \"cpuNanos\": " + s.getCpuNanos());
+      out.write(", \"allocatedBytes\": " + s.getAllocatedBytes());
+      out.write(", \"bodies\": " + s.getBodies());
+      out.write(", \"unitsAdded\": " + s.getUnitsAdded());
+      out.write(", \"unitsRemoved\": " + s.getUnitsRemoved());
+      out.write(", \"analysisCacheHits\": " + s.getAnalysisCacheHits());
+      out.write(", \"analysisCacheMisses\": " + s.getAnalysisCacheMisses() + "}");
+    }
+    out.write("\n  ]\n}\n");
+  }
+
+  /**
+   * Writes every recorded phase application as a complete event in the Chrome trace event format. Only applications that
+   * happened while the <code>-phase-trace</code> option was set are recorded.
+   */
+  public void writeChromeTrace(File file) throws IOException {
+    Writer out = open(file);
+    try {
+      writeChromeTrace(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  public void writeChromeTrace(Writer out) throws IOException {
+    out.write("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+    boolean first = true;
+    for (TraceEvent e : events) {
+      out.write(first ? "\n" : ",\n");
+      first = false;
+      out.write("{\"name\": " + quote(e.phaseName));
+      out.write(", \"cat\": \"phase\", \"ph\": \"X\", \"pid\": 1, \"tid\": " + e.threadId);
+      out.write(", \"ts\": " + micros(e.start) + ", \"dur\": " + micros(e.duration));
+      out.write(", \"args\": {\"cpuNanos\": " + e.cpuNanos + ", \"allocatedBytes\": " + e.allocatedBytes);
+      if (e.method != null) {
+        out.write(", \"method\": " + quote(e.method));
+      }
+      out.write("}}");
+    }
+    out.write("\n]}\n");
+  }
+
+  private static Writer open(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+
+  private static String micros(long nanos) {
+    return (nanos / 1000) + "." + String.format("%03d", nanos % 1000);
+  }
+
+  private static String quote(String s) {
+    StringBuilder sb = new StringBuilder(s.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * An application of a phase that is being measured.
+   */
+  public static final class Measurement {
+    private final String phaseName;
+    private final Body body;
+    private final long threadId;
+    private final Set<Unit> unitsBefore;
+    private final long cacheHitsBefore;
+    private final long cacheMissesBefore;
+    private final long allocationStart;
+    private final long cpuStart;
+    private final long wallStart;
+
+    private Measurement(String phaseName, Body body) {
+      this.phaseName = phaseName;
+      this.body = body;
+      this.threadId = Thread.currentThread().getId();
+      if (body == null) {
+        this.unitsBefore = Collections.emptySet();
+      } else {
+        this.unitsBefore = Collections.newSetFromMap(new IdentityHashMap<Unit, Boolean>(body.getUnits().size() * 2));
+        this.unitsBefore.addAll(body.getUnits());
+      }
+      BodyAnalysisCache cache = body == null ? null : body.peekAnalysisCache();
+      this.cacheHitsBefore = cache == null ? 0 : cache.getHits();
+      this.cacheMissesBefore = cache == null ? 0 : cache.getMisses();
+      this.allocationStart = ThreadAccounting.getAllocatedBytes(threadId);
+      this.cpuStart = ThreadAccounting.getCpuTime();
+      this.wallStart = System.nanoTime();
+    }
+  }
+
+  /**
+   * The accumulated measurements of one phase.
+   */
+  public static final class PhaseStatistics {
+    private final String phaseName;
+    private final AtomicLong applications = new AtomicLong();
+    private final AtomicLong wallNanos = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong bodies = new AtomicLong();
+    private final AtomicLong unitsAdded = new AtomicLong();
+    private final AtomicLong unitsRemoved = new AtomicLong();
+    private final AtomicLong analysisCacheHits = new AtomicLong();
+    private final AtomicLong analysisCacheMisses = new AtomicLong();
+
+    PhaseStatistics(String phaseName) {
+      this.phaseName = phaseName;
+    }
+
+    public String getPhaseName() {
+      return phaseName;
+    }
+
+    public long getApplications() {
+      return applications.get();
+    }
+
+    public long getWallNanos() {
+      return wallNanos.get();
+    }
+
+    /** Returns the CPU time of the applying threads, or 0 if the JVM cannot measure it. */
+    public long getCpuNanos() {
+      return cpuNanos.get();
+    }
+
+    /** Returns the number of bytes allocated by the applying threads, or 0 if the JVM cannot measure it. */
+    public long getAllocatedBytes() {
+      return allocatedBytes.get();
+    }
+
+    public long getBodies() {
+      return bodies.get();
+    }
+
+    /** Returns the number of units that were in the bodies after an application of the phase but not before. */
+    public long getUnitsAdded() {
+      return unitsAdded.get();
+    }
+
+    /** Returns the number of units that were in the bodies before an application of the phase but not after. */
+    public long getUnitsRemoved() {
+      return unitsRemoved.get();
+    }
+
+    /** Returns the number of analyses the phase took from the {@link BodyAnalysisCache} of its bodies. */
+    public long getAnalysisCacheHits() {
+      return analysisCacheHits.get();
+    }
+
+    /** Returns the number of analyses the phase had to compute through the {@link BodyAnalysisCache} of its bodies. */
+    public long getAnalysisCacheMisses() {
+      return analysisCacheMisses.get();
+    }
+
+    @Override
+    public String toString() {
+      return phaseName + ": " + getApplications() + " applications, " + getWallNanos() / 1000000 + "ms";
+    }
+  }
+
+  /**
+   * Measures CPU time and allocated bytes per thread. Enabling these measurements affects all threads of the JVM, so this
+   * class is only initialized when the first phase is measured.
+   */
+  private static final class ThreadAccounting {
+    static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    static final boolean cpuTimeSupported = enableCpuTime();
+    static final com.sun.management.ThreadMXBean allocationBean = getAllocationBean();
+
+    private static boolean enableCpuTime() {
+      try {
+        if (threadBean.isCurrentThreadCpuTimeSupported()) {
+          if (!threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+          }
+          return true;
+        }
+      } catch (UnsupportedOperationException | SecurityException e) {
+        logger.debug("Thread CPU time is not available: " + e.getMessage());
+      }
+      return false;
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+      try {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+          com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+          if (bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+              bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+          }
+        }
+      } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+        logger.debug("Allocated bytes per thread are not available: " + e.getMessage());
+      }
+      return null;
+    }
+
+    static long getCpuTime() {
+      return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    static long getAllocatedBytes(long threadId) {
+      return allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+    }
+  }
+
+  private static final class TraceEvent {
+    final String phaseName;
+    final String method;
+    final long threadId;
+    final long start;
+    final long duration;
+    final long cpuNanos;
+    final long allocatedBytes;
+
+    TraceEvent(String phaseName, String method, long threadId, long start, long duration, long cpuNanos,
+        long allocatedBytes) {
+      this.phaseName = phaseName;
+      this.method = method;
+      this.threadId = threadId;
+      this.start = start;
+      this.duration = duration;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+}
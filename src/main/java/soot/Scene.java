@@ -41,6 +41,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -64,6 +66,7 @@ import soot.jimple.toolkits.callgraph.ContextSensitiveCallGraph;
 import soot.jimple.toolkits.callgraph.ReachableMethods;
 import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
 import soot.jimple.toolkits.pointer.SideEffectAnalysis;
+import soot.jimple.toolkits.typing.fast.TypeLatticeCache;
 import soot.options.CGOptions;
 import soot.options.Options;
 import soot.toolkits.exceptions.PedanticThrowAnalysis;
@@ -134,7 +137,7 @@ public class Scene // extends AbstractHost
   Chain<SootClass> libraryClasses = new HashChain<SootClass>();
   Chain<SootClass> phantomClasses = new HashChain<SootClass>();
 
-  private final Map<String, RefType> nameToClass = new HashMap<String, RefType>();
+  private final ConcurrentMap<String, RefType> nameToClass = new ConcurrentHashMap<String, RefType>();
 
   protected final ArrayNumberer<Kind> kindNumberer;
   protected ArrayNumberer<Type> typeNumberer = new ArrayNumberer<Type>();
@@ -734,6 +737,7 @@ public class Scene // extends AbstractHost
     activeFastHierarchy = null;
     activeSideEffectAnalysis = null;
     activePointsToAnalysis = null;
+    TypeLatticeCache.v().clear();
   }
 
   /**
@@ -743,7 +747,7 @@ public class Scene // extends AbstractHost
    * @param c
    *          The class to add
    */
-  public void addClass(SootClass c) {
+  public synchronized void addClass(SootClass c) {
     addClassSilent(c);
     c.setLibraryClass();
     modifyHierarchy();
@@ -756,7 +760,7 @@ public class Scene // extends AbstractHost
    * @param c
    *          The class to add
    */
-  protected void addClassSilent(SootClass c) {
+  protected synchronized void addClassSilent(SootClass c) {
     if (c.isInScene()) {
       throw new RuntimeException("already managed: " + c.getName());
     }
@@ -777,7 +781,7 @@ public class Scene // extends AbstractHost
     }
   }
 
-  public void removeClass(SootClass c) {
+  public synchronized void removeClass(SootClass c) {
     if (!c.isInScene()) {
       throw new RuntimeException();
     }
@@ -1293,6 +1297,7 @@ public class Scene // extends AbstractHost
 
   public void setFastHierarchy(FastHierarchy hierarchy) {
     activeFastHierarchy = hierarchy;
+    TypeLatticeCache.v().clear();
   }
 
   public boolean hasFastHierarchy() {
@@ -1301,6 +1306,7 @@ public class Scene // extends AbstractHost
 
   public void releaseFastHierarchy() {
     activeFastHierarchy = null;
+    TypeLatticeCache.v().clear();
   }
 
   /****************************************************************************/
@@ -2002,12 +2008,8 @@ public class Scene // extends AbstractHost
   }
 
   public RefType getOrAddRefType(RefType tp) {
-    RefType existing = nameToClass.get(tp.getClassName());
-    if (existing != null) {
-      return existing;
-    }
-    nameToClass.put(tp.getClassName(), tp);
-    return tp;
+    RefType existing = nameToClass.putIfAbsent(tp.getClassName(), tp);
+    return existing != null ? existing : tp;
   }
 
   /**
@@ -82,6 +82,9 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
 
   /** Tells this method how to find out where its body lives. */
   protected volatile MethodSource ms;
+
+  /** True if the {@link BodyResidencyManager} tracks the active body, so that accesses to it must be reported. */
+  private volatile boolean bodyTracked;
   
   protected volatile String sig;
   protected volatile String subSig;
@@ -310,6 +313,7 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
     // This is a quick check just in case the activeBody exists.
     Body activeBody = this.activeBody;
     if (activeBody != null) {
+      bodyAccessed();
       return activeBody;
     }
     
@@ -322,19 +326,26 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
         return activeBody;
       }
       
-      if (declaringClass != null) {
-        declaringClass.checkLevel(SootClass.BODIES);
-      }
-      if ((declaringClass != null && declaringClass.isPhantomClass()) || isPhantom()) {
-        throw new RuntimeException("cannot get active body for phantom method: " + getSignature());
-      }
-      
-      // ignore empty body exceptions if we are just computing coffi metrics
-      if (!soot.jbco.Main.metrics) {
-        throw new RuntimeException("no active body present for method " + getSignature());
+      // A body that has been evicted by the BodyResidencyManager is still
+      // active, it just needs to be read back
+      if (!(ms instanceof BodyResidencyManager.SpilledMethodSource)) {
+        if (declaringClass != null) {
+          declaringClass.checkLevel(SootClass.BODIES);
+        }
+        if ((declaringClass != null && declaringClass.isPhantomClass()) || isPhantom()) {
+          throw new RuntimeException("cannot get active body for phantom method: " + getSignature());
+        }
+        
+        // ignore empty body exceptions if we are just computing coffi metrics
+        if (!soot.jbco.Main.metrics) {
+          throw new RuntimeException("no active body present for method " + getSignature());
+        }
+        return null;
       }
-      return null;
     }
+    
+    // Not under our lock, as reading back the body may evict others
+    return retrieveActiveBody();
   }
 
   /**
@@ -357,6 +368,11 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
       body.setMethod(this);
     }
 
+    // A new body replaces the one that has been evicted
+    if (ms instanceof BodyResidencyManager.SpilledMethodSource) {
+      ms = ((BodyResidencyManager.SpilledMethodSource) ms).discard();
+    }
+
     this.activeBody = body;
   }
   
@@ -372,6 +388,7 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
     // This is a quick check just in case the activeBody exists.
     Body activeBody = this.activeBody;
     if (activeBody != null) {
+      bodyAccessed();
       return activeBody;
     }
     
@@ -403,18 +420,40 @@ public class SootMethod extends AbstractHost implements ClassMember, Numberable,
       if (Options.v().drop_bodies_after_load()) {
         ms = null;
       }
-      return activeBody;
+    }
+    
+    // Notify the residency manager outside of our lock, since it takes the
+    // locks of the methods it evicts
+    BodyResidencyManager brm = BodyResidencyManager.v();
+    if (brm.isEnabled()) {
+      bodyTracked = true;
+      brm.bodyLoaded(this, activeBody);
+    }
+    return activeBody;
+  }
+
+  private void bodyAccessed() {
+    // Without a memory budget, no body is tracked and the manager is not looked up
+    if (bodyTracked) {
+      BodyResidencyManager.v().bodyAccessed(this);
     }
   }
 
   /** Returns true if this method has an active body. */
   public boolean hasActiveBody() {
-    return activeBody != null;
+    return activeBody != null || ms instanceof BodyResidencyManager.SpilledMethodSource;
   }
 
   /** Releases the active body associated with this method. */
   public synchronized void releaseActiveBody() {
     activeBody = null;
+    if (ms instanceof BodyResidencyManager.SpilledMethodSource) {
+      ms = ((BodyResidencyManager.SpilledMethodSource) ms).discard();
+    }
+    if (bodyTracked) {
+      bodyTracked = false;
+      BodyResidencyManager.v().bodyReleased(this);
+    }
   }
 
   /**
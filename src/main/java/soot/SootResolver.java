@@ -26,10 +26,20 @@ package soot;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +67,18 @@ public class SootResolver {
   @SuppressWarnings("unchecked")
   private final Deque<SootClass>[] worklist = new Deque[4];
 
+  /** Classes that have been considered for parallel parsing and not been brought to HIERARCHY yet. */
+  private final Set<SootClass> preParseCandidates = new HashSet<SootClass>();
+
+  /** Class sources that have been parsed in parallel ahead of their classes being brought to HIERARCHY. */
+  private final Map<SootClass, ClassSource> preParsed = new HashMap<SootClass, ClassSource>();
+
+  /** Failures that occurred while parsing classes in parallel, rethrown when the class is brought to HIERARCHY. */
+  private final Map<SootClass, RuntimeException> preParseFailures = new ConcurrentHashMap<SootClass, RuntimeException>();
+
+  /** The threads parsing classes in parallel, created on first use and stopped by {@link #shutdown()}. */
+  private ForkJoinPool parserPool = null;
+
   private Program program = null;
 
   public SootResolver(Singletons.Global g) {
@@ -110,16 +132,24 @@ public class SootResolver {
    * will be resolved into this SootClass.
    */
   public SootClass makeClassRef(String className) {
-    if (Scene.v().containsClass(className)) {
-      return Scene.v().getSootClass(className);
+    Scene scene = Scene.v();
+    if (scene.containsClass(className)) {
+      return scene.getSootClass(className);
     }
 
-    SootClass newClass;
-    newClass = new SootClass(className);
-    newClass.setResolvingLevel(SootClass.DANGLING);
-    Scene.v().addClass(newClass);
+    // Method sources may create references concurrently while bodies are built in parallel
+    synchronized (scene) {
+      if (scene.containsClass(className)) {
+        return scene.getSootClass(className);
+      }
+
+      SootClass newClass;
+      newClass = new SootClass(className);
+      newClass.setResolvingLevel(SootClass.DANGLING);
+      scene.addClass(newClass);
 
-    return newClass;
+      return newClass;
+    }
   }
 
   /**
@@ -147,6 +177,9 @@ public class SootResolver {
   protected void processResolveWorklist() {
     for (int i = SootClass.BODIES; i >= SootClass.HIERARCHY; i--) {
       while (!worklist[i].isEmpty()) {
+        if (getParserThreads() > 1) {
+          preParse(worklist[i]);
+        }
         SootClass sc = worklist[i].pop();
         if (resolveEverything()) { // Whole program mode
           boolean onlySignatures = sc.isPhantom() || (Options.v().no_bodies_for_excluded() && Scene.v().isExcluded(sc)
@@ -180,6 +213,101 @@ public class SootResolver {
     }
   }
 
+  /**
+   * Parses the classes waiting on the given worklist concurrently if the class at its head has not been parsed yet. Only the
+   * parsing of the class sources happens in parallel, see {@link ClassSource#parse()}. The parsed sources are kept in
+   * {@link #preParsed} and resolved when their classes are brought to {@link SootClass#HIERARCHY} in worklist order. This
+   * keeps the order in which resolving levels are advanced and in which classes, types and members are created and
+   * numbered the same as in the sequential resolver.
+   */
+  private void preParse(Deque<SootClass> pending) {
+    SootClass head = pending.peek();
+    if (head.resolvingLevel() >= SootClass.HIERARCHY || !preParseCandidates.add(head)) {
+      return;
+    }
+
+    final List<SootClass> classes = new ArrayList<SootClass>();
+    final List<ClassSource> sources = new ArrayList<ClassSource>();
+    for (SootClass sc : pending) {
+      if (sc.resolvingLevel() >= SootClass.HIERARCHY || (sc != head && !preParseCandidates.add(sc))) {
+        continue;
+      }
+      ClassSource is = SourceLocator.v().getClassSource(sc.getName());
+      if (is != null) {
+        classes.add(sc);
+        sources.add(is);
+      }
+    }
+    if (classes.size() < 2) {
+      for (ClassSource is : sources) {
+        is.close();
+      }
+      return;
+    }
+
+    if (Options.v().debug_resolver()) {
+      logger.debug("parsing " + classes.size() + " classes in parallel");
+    }
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(classes.size());
+    for (int j = 0; j < classes.size(); j++) {
+      final SootClass sc = classes.get(j);
+      final ClassSource is = sources.get(j);
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          try {
+            return is.parse();
+          } catch (RuntimeException e) {
+            preParseFailures.put(sc, e);
+            return false;
+          }
+        }
+      });
+    }
+    if (parserPool == null) {
+      parserPool = new ForkJoinPool(getParserThreads());
+    }
+    List<Future<Boolean>> parsed = parserPool.invokeAll(tasks);
+    for (int j = 0; j < classes.size(); j++) {
+      boolean done;
+      try {
+        done = parsed.get(j).get();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Could not wait for parser threads to finish: " + e.getMessage(), e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+      if (done) {
+        preParsed.put(classes.get(j), sources.get(j));
+      } else {
+        sources.get(j).close();
+      }
+    }
+  }
+
+  private static int getParserThreads() {
+    int n = Options.v().num_threads();
+    return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Stops the threads parsing classes in parallel and closes the class sources that have been parsed but not resolved. This
+   * is done by {@link G#reset()}.
+   */
+  public void shutdown() {
+    if (parserPool != null) {
+      parserPool.shutdown();
+      parserPool = null;
+    }
+    for (ClassSource is : preParsed.values()) {
+      is.close();
+    }
+    preParsed.clear();
+  }
+
   protected void addToResolveWorklist(Type type, int level) {
     // We go from Type -> SootClass directly, since RefType.getSootClass
     // calls makeClassRef anyway
@@ -215,8 +343,19 @@ public class SootResolver {
   }
 
   protected void bringToHierarchyUnchecked(SootClass sc) {
+    ClassSource is = null;
+    if (!preParseCandidates.isEmpty() && preParseCandidates.remove(sc)) {
+      RuntimeException failure = preParseFailures.remove(sc);
+      if (failure != null) {
+        throw failure;
+      }
+      is = preParsed.remove(sc);
+    }
+
     String className = sc.getName();
-    ClassSource is = SourceLocator.v().getClassSource(className);
+    if (is == null) {
+      is = SourceLocator.v().getClassSource(className);
+    }
     try {
       boolean modelAsPhantomRef = is == null;
       if (modelAsPhantomRef) {
@@ -237,13 +376,7 @@ public class SootResolver {
           sc.setPhantomClass();
         }
       } else {
-        Dependencies dependencies = is.resolve(sc);
-        if (!dependencies.typesToSignature.isEmpty()) {
-          classToTypesSignature.putAll(sc, dependencies.typesToSignature);
-        }
-        if (!dependencies.typesToHierarchy.isEmpty()) {
-          classToTypesHierarchy.putAll(sc, dependencies.typesToHierarchy);
-        }
+        addDependencies(sc, is.resolve(sc));
       }
     } finally {
       if (is != null) {
@@ -253,6 +386,15 @@ public class SootResolver {
     reResolveHierarchy(sc, SootClass.HIERARCHY);
   }
 
+  private void addDependencies(SootClass sc, Dependencies dependencies) {
+    if (!dependencies.typesToSignature.isEmpty()) {
+      classToTypesSignature.putAll(sc, dependencies.typesToSignature);
+    }
+    if (!dependencies.typesToHierarchy.isEmpty()) {
+      classToTypesHierarchy.putAll(sc, dependencies.typesToHierarchy);
+    }
+  }
+
   public void reResolveHierarchy(SootClass sc, int level) {
     // Bring superclasses to hierarchy
     SootClass superClass = sc.getSuperclassUnsafe();
@@ -25,12 +25,13 @@ package soot;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,8 +39,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +47,7 @@ import soot.JavaClassProvider.JarException;
 import soot.asm.AsmClassProvider;
 import soot.dexpler.DexFileProvider;
 import soot.options.Options;
+import soot.util.MappedArchive;
 
 /**
  * Provides utility methods to retrieve an input stream for a class name, given a classfile, or jimple or baf output files.
@@ -87,26 +87,23 @@ public class SourceLocator {
               return ClassSourceType.directory;
             }
           });
-  private LoadingCache<String, Set<String>> archivePathsToEntriesCache
-      = CacheBuilder.newBuilder().initialCapacity(60).maximumSize(500).softValues()
-          .concurrencyLevel(Runtime.getRuntime().availableProcessors()).build(new CacheLoader<String, Set<String>>() {
+  private final LoadingCache<String, OpenArchive> archivePathToArchiveCache
+      = CacheBuilder.newBuilder().initialCapacity(60).maximumSize(500)
+          .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+          .removalListener(new RemovalListener<String, OpenArchive>() {
             @Override
-            public Set<String> load(String archivePath) throws Exception {
-              ZipFile archive = null;
+            public void onRemoval(RemovalNotification<String, OpenArchive> notification) {
               try {
-                archive = new ZipFile(archivePath);
-                Set<String> ret = new HashSet<String>();
-                Enumeration<? extends ZipEntry> it = archive.entries();
-                while (it.hasMoreElements()) {
-                  ret.add(it.nextElement().getName());
-                }
-                return ret;
-              } finally {
-                if (archive != null) {
-                  archive.close();
-                }
+                notification.getValue().archive.close();
+              } catch (IOException e) {
+                logger.debug("Could not close archive " + notification.getKey(), e);
               }
             }
+          }).build(new CacheLoader<String, OpenArchive>() {
+            @Override
+            public OpenArchive load(String path) throws Exception {
+              return new OpenArchive(new File(path));
+            }
           });
   /**
    * Set containing all dex files that were appended to the classpath later on. The classes from these files are not yet
@@ -276,6 +273,7 @@ public class SourceLocator {
   public void invalidateClassPath() {
     classPath = null;
     dexClassIndex = null;
+    closeChangedArchives();
   }
 
   public List<String> sourcePath() {
@@ -311,7 +309,7 @@ public class SourceLocator {
     if (cst == ClassSourceType.apk || cst == ClassSourceType.dex) {
       try {
         for (DexFileProvider.DexContainer dex : DexFileProvider.v().getDexFromSource(new File(aPath))) {
-          classes.addAll(DexClassProvider.classesOfDex(dex.getBase()));
+          classes.addAll(dex.getImage().getClassNames());
         }
       } catch (IOException e) {
         throw new CompilationDeathException("Error reading dex source", e);
@@ -319,12 +317,8 @@ public class SourceLocator {
     }
     // load Java class files from ZIP and JAR
     else if (cst == ClassSourceType.jar || cst == ClassSourceType.zip) {
-      ZipFile archive = null;
       try {
-        archive = new ZipFile(aPath);
-        for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();) {
-          ZipEntry entry = entries.nextElement();
-          String entryName = entry.getName();
+        for (String entryName : getArchive(aPath).getEntryNames()) {
           if (entryName.endsWith(".class") || entryName.endsWith(".jimple")) {
             int extensionIndex = entryName.lastIndexOf('.');
             entryName = entryName.substring(0, extensionIndex);
@@ -334,20 +328,12 @@ public class SourceLocator {
         }
       } catch (Throwable e) {
         throw new CompilationDeathException("Error reading archive '" + aPath + "'", e);
-      } finally {
-        try {
-          if (archive != null) {
-            archive.close();
-          }
-        } catch (Throwable t) {
-          logger.debug("" + t.getMessage());
-        }
       }
 
       // we might have dex files inside the archive
       try {
         for (DexFileProvider.DexContainer container : DexFileProvider.v().getDexFromSource(new File(aPath))) {
-          classes.addAll(DexClassProvider.classesOfDex(container.getBase()));
+          classes.addAll(container.getImage().getClassNames());
         }
       } catch (CompilationDeathException e) { // There might be cases where there is no dex file within a JAR or ZIP file...
       } catch (IOException e) {
@@ -381,7 +367,7 @@ public class SourceLocator {
           } else if (fileName.endsWith(".dex")) {
             try {
               for (DexFileProvider.DexContainer container : DexFileProvider.v().getDexFromSource(element)) {
-                classes.addAll(DexClassProvider.classesOfDex(container.getBase()));
+                classes.addAll(container.getImage().getClassNames());
               }
             } catch (IOException e) {
               /* Ignore unreadable files */
@@ -607,17 +593,62 @@ public class SourceLocator {
   }
 
   protected FoundFile lookupInArchive(String archivePath, String fileName) {
-    Set<String> entryNames = null;
+    if (getArchive(archivePath).containsEntry(fileName)) {
+      return new FoundFile(archivePath, fileName);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the shared, indexed view of the archive at the given path. Each archive is opened only once, and its index is
+   * reused by all class providers and found files. Changes to the file are not noticed until the class path is invalidated,
+   * see {@link #invalidateClassPath()}, or Soot is reset.
+   */
+  public MappedArchive getArchive(String archivePath) {
     try {
-      entryNames = archivePathsToEntriesCache.get(archivePath);
+      return archivePathToArchiveCache.get(archivePath).archive;
     } catch (Exception e) {
       throw new RuntimeException(
           "Error: Failed to retrieve the archive entries list for the archive at path '" + archivePath + "'.", e);
     }
-    if (entryNames.contains(fileName)) {
-      return new FoundFile(archivePath, fileName);
+  }
+
+  /**
+   * Closes all archives opened through {@link #getArchive(String)}. Called by {@link G#reset()}, since the archives of a
+   * previous run are not used anymore.
+   */
+  public void closeArchives() {
+    archivePathToArchiveCache.invalidateAll();
+  }
+
+  /**
+   * Closes the archives whose modification time or size has changed since they were opened, so that they are opened again
+   * by the next {@link #getArchive(String)}.
+   */
+  private void closeChangedArchives() {
+    for (Map.Entry<String, OpenArchive> e : archivePathToArchiveCache.asMap().entrySet()) {
+      if (e.getValue().isChanged()) {
+        archivePathToArchiveCache.asMap().remove(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  /** An opened archive with the modification time and size its file had when it was opened. */
+  private static final class OpenArchive {
+    final MappedArchive archive;
+    final long lastModified;
+    final long length;
+
+    OpenArchive(File file) throws IOException {
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+      this.archive = MappedArchive.open(file);
+    }
+
+    boolean isChanged() {
+      File file = archive.getFile();
+      return file.lastModified() != lastModified || file.length() != length;
     }
-    return null;
   }
 
   /**
@@ -99,7 +99,12 @@ public class Transform implements HasPhaseOptions {
       PhaseDumper.v().dumpBefore(getPhaseName());
     }
 
-    ((SceneTransformer) t).transform(phaseName, options);
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start(phaseName, null);
+    try {
+      ((SceneTransformer) t).transform(phaseName, options);
+    } finally {
+      PhaseProfiler.v().stop(m);
+    }
 
     if (DEBUG) {
       PhaseDumper.v().dumpAfter(getPhaseName());
@@ -117,7 +122,12 @@ public class Transform implements HasPhaseOptions {
       PhaseDumper.v().dumpBefore(b, getPhaseName());
     }
 
-    ((BodyTransformer) t).transform(b, phaseName, options);
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start(phaseName, b);
+    try {
+      ((BodyTransformer) t).transform(b, phaseName, options);
+    } finally {
+      PhaseProfiler.v().stop(m);
+    }
 
     if (DEBUG) {
       PhaseDumper.v().dumpAfter(b, getPhaseName());
@@ -100,6 +100,6 @@ public abstract class Type implements Switchable, Serializable, Numberable {
     this.number = number;
   }
 
-  protected ArrayType arrayType;
+  protected volatile ArrayType arrayType;
   private int number = 0;
 }
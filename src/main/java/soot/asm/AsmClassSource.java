@@ -26,9 +26,12 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 
 import soot.ClassSource;
 import soot.FoundFile;
+import soot.JimpleBodyCache;
 import soot.SootClass;
 import soot.javaToJimple.IInitialResolver.Dependencies;
 
@@ -41,6 +44,12 @@ class AsmClassSource extends ClassSource {
 
   private FoundFile foundFile;
 
+  /** The class read by {@link #parse()}, or null if it has not been called. */
+  private ClassNode parsed;
+
+  /** The bytes of the class read by {@link #parse()} for the body cache. */
+  private byte[] parsedData;
+
   /**
    * Constructs a new ASM class source.
    * 
@@ -61,10 +70,21 @@ class AsmClassSource extends ClassSource {
   public Dependencies resolve(SootClass sc) {
     InputStream d = null;
     try {
-      d = foundFile.inputStream();
-      ClassReader clsr = new ClassReader(d);
+      // Classes, types and members are created and numbered here, in the
+      // order in which the resolver resolves the classes
       SootClassBuilder scb = new SootClassBuilder(sc);
-      clsr.accept(scb, ClassReader.SKIP_FRAMES);
+      byte[] data = parsedData;
+      if (parsed != null) {
+        parsed.accept(scb);
+      } else {
+        d = foundFile.inputStream();
+        data = JimpleBodyCache.v().isEnabled() ? JimpleBodyCache.readFully(d) : null;
+        ClassReader clsr = data != null ? new ClassReader(data) : new ClassReader(d);
+        clsr.accept(scb, ClassReader.SKIP_FRAMES);
+      }
+      if (data != null) {
+        JimpleBodyCache.v().attach(sc, data);
+      }
       Dependencies deps = new Dependencies();
       deps.typesToSignature.addAll(scb.deps);
       return deps;
@@ -84,8 +104,36 @@ class AsmClassSource extends ClassSource {
     }
   }
 
+  @Override
+  public boolean parse() {
+    InputStream d = null;
+    try {
+      d = foundFile.inputStream();
+      boolean useBodyCache = JimpleBodyCache.v().isEnabled();
+      byte[] data = useBodyCache ? JimpleBodyCache.readFully(d) : null;
+      ClassReader clsr = data != null ? new ClassReader(data) : new ClassReader(d);
+      ClassNode node = new ClassNode(Opcodes.ASM5);
+      clsr.accept(node, ClassReader.SKIP_FRAMES);
+      parsed = node;
+      parsedData = data;
+      return true;
+    } catch (IOException e) {
+      throw new RuntimeException("Error: Failed to create class reader from class source.", e);
+    } finally {
+      try {
+        if (d != null) {
+          d.close();
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Error: Failed to close source input stream.", e);
+      }
+    }
+  }
+
   @Override
   public void close() {
+    parsed = null;
+    parsedData = null;
     if (foundFile != null) {
       foundFile.close();
       foundFile = null;
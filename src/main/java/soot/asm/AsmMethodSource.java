@@ -1989,6 +1989,11 @@ final class AsmMethodSource implements MethodSource {
     return null;
   }
 
+  @Override
+  public int estimateBodySize() {
+    return instructions.size();
+  }
+
   @Override
   public Body getBody(SootMethod m, String phaseName) {
     if (!m.isConcrete()) {
@@ -48,6 +48,12 @@ public class CoffiMethodSource implements MethodSource {
     this.coffiMethod = coffiMethod;
   }
 
+  @Override
+  public int estimateBodySize() {
+    Code_attribute code = coffiMethod == null ? null : coffiMethod.locate_code_attribute();
+    return code == null ? 0 : (int) code.code_length;
+  }
+
   public Body getBody(SootMethod m, String phaseName) {
     JimpleBody jb = Jimple.v().newBody(m);
 
@@ -0,0 +1,170 @@
+package soot.dexpler;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.options.Options;
+
+/**
+ * A cache of parsed dex files that is shared by all runs of Soot in the same JVM and survives {@link soot.G#reset()}. Dex
+ * files are identified by their contents rather than their location: the key of a dex file is the SHA-256 digest of its
+ * contents, together with the API level it is parsed for. The checksum and signature in the dex header are not used, since
+ * nothing guarantees that they match the contents. The cache holds at most <code>-dex-cache-size</code> megabytes of dex
+ * files and drops the least recently used ones when it is full; when the option is not set, every dex file is parsed anew
+ * and nothing is cached.
+ *
+ * <p>
+ * Instances are safe for concurrent use.
+ * </p>
+ */
+public final class DexFileCache {
+  private static final Logger logger = LoggerFactory.getLogger(DexFileCache.class);
+
+  /** The number of bytes of a dex header that are needed to recognize a dex file. */
+  public static final int HEADER_SIZE = 36;
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private static final DexFileCache instance = new DexFileCache();
+
+  private final LinkedHashMap<String, CachedImage> images = new LinkedHashMap<String, CachedImage>(16, 0.75f, true);
+  private long size;
+  private long hits;
+  private long misses;
+
+  private DexFileCache() {
+  }
+
+  public static DexFileCache v() {
+    return instance;
+  }
+
+  /**
+   * Returns true if <code>header</code> starts with the magic number of a dex file and is at least {@link #HEADER_SIZE} bytes
+   * long.
+   */
+  public static boolean isDexHeader(byte[] header) {
+    return header != null && header.length >= HEADER_SIZE && header[0] == 'd' && header[1] == 'e' && header[2] == 'x'
+        && header[3] == '\n' && header[7] == 0;
+  }
+
+  /**
+   * Returns the image of the dex file with the given contents, parsed for the given API level. A cached image is returned
+   * if a dex file with the same contents has been parsed for the same API level before. The contents must not be modified
+   * afterwards.
+   */
+  public DexImage get(byte[] contents, int api) {
+    long limit = Options.v().dex_cache_size() * 1024L * 1024L;
+    if (limit <= 0 || contents.length > limit) {
+      return new DexImage(new DexBackedDexFile(Opcodes.forApi(api), contents));
+    }
+
+    String key = key(contents, api);
+    synchronized (this) {
+      CachedImage cached = images.get(key);
+      if (cached != null) {
+        hits++;
+        return cached.image;
+      }
+      misses++;
+    }
+
+    // Parse outside of the lock so that other dex files can be served meanwhile
+    DexImage image = new DexImage(new DexBackedDexFile(Opcodes.forApi(api), contents));
+
+    synchronized (this) {
+      CachedImage existing = images.get(key);
+      if (existing != null) {
+        return existing.image;
+      }
+      images.put(key, new CachedImage(image, contents.length));
+      size += contents.length;
+      for (Iterator<CachedImage> it = images.values().iterator(); size > limit && it.hasNext();) {
+        CachedImage eldest = it.next();
+        if (eldest.image != image) {
+          it.remove();
+          size -= eldest.size;
+        }
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug(String.format("Dex cache: %d files, %d bytes, %d hits, %d misses", images.size(), size, hits, misses));
+      }
+    }
+    return image;
+  }
+
+  private static String key(byte[] contents, int api) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(contents);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    StringBuilder sb = new StringBuilder(2 * digest.length + 4);
+    for (byte b : digest) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.append('@').append(api).toString();
+  }
+
+  /** Returns the number of requests that were answered from the cache. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** Returns the number of requests for which a dex file had to be parsed while caching was enabled. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** Returns the total size in bytes of the cached dex files. */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /** Drops all cached dex files. */
+  public synchronized void clear() {
+    images.clear();
+    size = 0;
+  }
+
+  private static final class CachedImage {
+    final DexImage image;
+    final long size;
+
+    CachedImage(DexImage image, long size) {
+      this.image = image;
+      this.size = size;
+    }
+  }
+}
@@ -24,6 +24,9 @@ package soot.dexpler;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,6 +34,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -48,7 +52,9 @@ import soot.CompilationDeathException;
 import soot.G;
 import soot.Scene;
 import soot.Singletons;
+import soot.SourceLocator;
 import soot.options.Options;
+import soot.util.MappedArchive;
 
 /**
  * Class providing dex files from a given source, e.g., jar, apk, dex, folder containing multiple dex files
@@ -202,11 +208,10 @@ public class DexFileProvider {
     int api = Scene.v().getAndroidAPIVersion();
     boolean multiple_dex = Options.v().process_multiple_dex();
 
-    // load dex files from apk/folder/file
-    MultiDexContainer<? extends DexBackedDexFile> dexContainer
-        = DexFileFactory.loadDexContainer(dexSourceFile, Opcodes.forApi(api));
+    // find dex files in apk/folder/file
+    Map<String, DexEntry> dexEntries = findDexEntries(dexSourceFile, api);
 
-    List<String> dexEntryNameList = dexContainer.getDexEntryNames();
+    List<String> dexEntryNameList = new ArrayList<>(dexEntries.keySet());
     int dexFileCount = dexEntryNameList.size();
 
     if (dexFileCount < 1) {
@@ -224,17 +229,16 @@ public class DexFileProvider {
     ListIterator<String> entryNameIterator = dexEntryNameList.listIterator(dexFileCount);
     while (entryNameIterator.hasPrevious()) {
       String entryName = entryNameIterator.previous();
-      DexBackedDexFile entry = dexContainer.getEntry(entryName);
+      DexEntry entry = dexEntries.get(entryName);
       entryName = deriveDexName(entryName);
-      logger.debug("" + String.format("Found dex file '%s' with %d classes in '%s'", entryName, entry.getClasses().size(),
-          dexSourceFile.getCanonicalPath()));
 
       if (multiple_dex) {
-        dexMap.put(entryName, new DexContainer(entry, entryName, dexSourceFile));
+        dexMap.put(entryName, new DexContainer(load(entry, entryName, dexSourceFile), entryName, dexSourceFile));
       } else if (dexMap.isEmpty() && (entryName.equals("classes.dex") || !entryNameIterator.hasPrevious())) {
         // We prefer to have classes.dex in single dex mode.
         // If we haven't found a classes.dex until the last element, take the last!
-        dexMap = Collections.singletonMap(entryName, new DexContainer(entry, entryName, dexSourceFile));
+        dexMap = Collections.singletonMap(entryName,
+            new DexContainer(load(entry, entryName, dexSourceFile), entryName, dexSourceFile));
         if (dexFileCount > 1) {
           logger.warn("Multiple dex files detected, only processing '" + entryName
               + "'. Use '-process-multiple-dex' option to process them all.");
@@ -244,6 +248,75 @@ public class DexFileProvider {
     return Collections.unmodifiableMap(dexMap);
   }
 
+  private DexImage load(DexEntry entry, String entryName, File dexSourceFile) throws IOException {
+    DexImage image = entry.load();
+    logger.debug("" + String.format("Found dex file '%s' with %d classes in '%s'", entryName,
+        image.getDexFile().getClassCount(), dexSourceFile.getCanonicalPath()));
+    return image;
+  }
+
+  /**
+   * Finds the dex files in the given file, keyed by their entry names, without parsing them yet. Dex files in zip archives
+   * are found through the shared memory-mapped view of the archive, and dex files and archive entries are parsed through
+   * the {@link DexFileCache}. Other files, such as odex and oat files, are handled by dexlib.
+   */
+  private Map<String, DexEntry> findDexEntries(final File dexSourceFile, final int api) throws IOException {
+    byte[] magic = new byte[DexFileCache.HEADER_SIZE];
+    int magicLength;
+    try (RandomAccessFile raf = new RandomAccessFile(dexSourceFile, "r")) {
+      magicLength = raf.read(magic);
+    }
+    Map<String, DexEntry> ret = new LinkedHashMap<>();
+
+    if (magicLength >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+      final MappedArchive archive;
+      try {
+        archive = SourceLocator.v().getArchive(dexSourceFile.getCanonicalPath());
+      } catch (RuntimeException e) {
+        throw new IOException("Error opening archive " + dexSourceFile, e);
+      }
+      for (final String name : archive.getEntryNames()) {
+        if (name.endsWith("/")) {
+          continue;
+        }
+        if (DexFileCache.isDexHeader(archive.getEntryPrefix(name, DexFileCache.HEADER_SIZE))) {
+          ret.put(name, () -> DexFileCache.v().get(toArray(archive.getEntry(name)), api));
+        }
+      }
+    } else if (magicLength == DexFileCache.HEADER_SIZE && DexFileCache.isDexHeader(magic)) {
+      ret.put(dexSourceFile.getPath(), () -> DexFileCache.v().get(readFile(dexSourceFile), api));
+    } else {
+      final MultiDexContainer<? extends DexBackedDexFile> dexContainer
+          = DexFileFactory.loadDexContainer(dexSourceFile, Opcodes.forApi(api));
+      for (final String name : dexContainer.getDexEntryNames()) {
+        ret.put(name, () -> new DexImage(dexContainer.getEntry(name)));
+      }
+    }
+    return ret;
+  }
+
+  private static byte[] toArray(ByteBuffer buf) {
+    if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == 0 && buf.remaining() == buf.array().length) {
+      return buf.array();
+    }
+    byte[] ret = new byte[buf.remaining()];
+    buf.duplicate().get(ret);
+    return ret;
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Dex file too large: " + file);
+      }
+      byte[] ret = new byte[(int) size];
+      channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(ret);
+      return ret;
+    }
+  }
+
   private String deriveDexName(String entryName) {
     return new File(entryName).getName();
   }
@@ -268,19 +341,35 @@ public class DexFileProvider {
     return ret;
   }
 
+  /** A dex file that has been found in a dex source but may not have been parsed yet. */
+  private interface DexEntry {
+    DexImage load() throws IOException;
+  }
+
   public static final class DexContainer {
-    private final DexBackedDexFile base;
+    private final DexImage image;
     private final String name;
     private final File filePath;
 
     public DexContainer(DexBackedDexFile base, String name, File filePath) {
-      this.base = base;
+      this(new DexImage(base), name, filePath);
+    }
+
+    public DexContainer(DexImage image, String name, File filePath) {
+      this.image = image;
       this.name = name;
       this.filePath = filePath;
     }
 
     public DexBackedDexFile getBase() {
-      return base;
+      return image.getDexFile();
+    }
+
+    /**
+     * Returns the dex file together with its index of class definitions, which may be shared with other runs.
+     */
+    public DexImage getImage() {
+      return image;
     }
 
     public String getDexName() {
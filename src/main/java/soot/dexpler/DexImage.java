@@ -0,0 +1,91 @@
+package soot.dexpler;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.ClassDef;
+
+/**
+ * A parsed dex file together with an index from class names to the offsets of their class definitions. The index is built
+ * on the first lookup by reading only the type of every class definition, and class definitions are only created for the
+ * classes that are looked up. Images may be shared by several runs of Soot through the {@link DexFileCache}.
+ *
+ * <p>
+ * Instances are safe for concurrent use.
+ * </p>
+ */
+public final class DexImage {
+  private final DexBackedDexFile dexFile;
+  private volatile Map<String, Integer> classDefOffsets;
+
+  public DexImage(DexBackedDexFile dexFile) {
+    this.dexFile = dexFile;
+  }
+
+  public DexBackedDexFile getDexFile() {
+    return dexFile;
+  }
+
+  /**
+   * Returns the dotted names of all classes defined in the dex file.
+   */
+  public Set<String> getClassNames() {
+    return Collections.unmodifiableSet(getClassDefOffsets().keySet());
+  }
+
+  /**
+   * Returns the definition of the class with the given dotted name, or null if the dex file does not define it. If the
+   * class is defined more than once, the last definition is returned.
+   */
+  public ClassDef getClassDef(String className) {
+    Integer offset = getClassDefOffsets().get(className);
+    return offset == null ? null : new DexBackedClassDef(dexFile, offset);
+  }
+
+  private Map<String, Integer> getClassDefOffsets() {
+    Map<String, Integer> ret = classDefOffsets;
+    if (ret == null) {
+      synchronized (this) {
+        ret = classDefOffsets;
+        if (ret == null) {
+          int count = dexFile.getClassCount();
+          ret = new HashMap<String, Integer>(count * 4 / 3 + 1);
+          for (int i = 0; i < count; i++) {
+            int offset = dexFile.getClassDefItemOffset(i);
+            // The first field of a class_def_item is the index of its type
+            String type = dexFile.getType(dexFile.readSmallUint(offset));
+            ret.put(Util.dottedClassName(type), offset);
+          }
+          classDefOffsets = ret;
+        }
+      }
+    }
+    return ret;
+  }
+}
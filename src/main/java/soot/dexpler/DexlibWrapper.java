@@ -30,17 +30,14 @@ package soot.dexpler;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
 import java.util.Set;
 
 import org.jf.dexlib2.dexbacked.DexBackedDexFile;
 import org.jf.dexlib2.iface.ClassDef;
-import org.jf.dexlib2.iface.DexFile;
 
 import soot.ArrayType;
 import soot.CompilationDeathException;
@@ -75,18 +72,7 @@ public class DexlibWrapper {
 
   private final DexClassLoader dexLoader = createDexClassLoader();
 
-  private static class ClassInformation {
-    public DexFile dexFile;
-    public ClassDef classDefinition;
-
-    public ClassInformation(DexFile file, ClassDef classDef) {
-      this.dexFile = file;
-      this.classDefinition = classDef;
-    }
-  }
-
-  private final Map<String, ClassInformation> classesToDefItems = new HashMap<String, ClassInformation>();
-  private final Collection<DexBackedDexFile> dexFiles;
+  private final List<DexImage> dexFiles;
 
   /**
    * Construct a DexlibWrapper from a dex file and stores its classes referenced by their name. No further process is done
@@ -98,7 +84,7 @@ public class DexlibWrapper {
       List<DexFileProvider.DexContainer> containers = DexFileProvider.v().getDexFromSource(dexSource);
       this.dexFiles = new ArrayList<>(containers.size());
       for (DexFileProvider.DexContainer container : containers) {
-        this.dexFiles.add(container.getBase());
+        this.dexFiles.add(container.getImage());
       }
     } catch (IOException e) {
       throw new CompilationDeathException("IOException during dex parsing", e);
@@ -115,17 +101,10 @@ public class DexlibWrapper {
   }
 
   public void initialize() {
-    // resolve classes in dex files
-    for (DexBackedDexFile dexFile : dexFiles) {
-      for (ClassDef defItem : dexFile.getClasses()) {
-        String forClassName = Util.dottedClassName(defItem.getType());
-        classesToDefItems.put(forClassName, new ClassInformation(dexFile, defItem));
-      }
-    }
-
-    // It is important to first resolve the classes, otherwise we will
-    // produce an error during type resolution.
-    for (DexBackedDexFile dexFile : dexFiles) {
+    // The classes of the dex files are looked up through their indices,
+    // which are built on the first lookup during type resolution.
+    for (DexImage image : dexFiles) {
+      DexBackedDexFile dexFile = image.getDexFile();
       for (int i = 0; i < dexFile.getTypeCount(); i++) {
         String t = dexFile.getType(i);
 
@@ -157,9 +136,13 @@ public class DexlibWrapper {
       className = Util.dottedClassName(className);
     }
 
-    ClassInformation defItem = classesToDefItems.get(className);
-    if (defItem != null) {
-      return dexLoader.makeSootClass(sc, defItem.classDefinition, defItem.dexFile);
+    // If several dex files define the class, the last one wins
+    for (ListIterator<DexImage> it = dexFiles.listIterator(dexFiles.size()); it.hasPrevious();) {
+      DexImage image = it.previous();
+      ClassDef defItem = image.getClassDef(className);
+      if (defItem != null) {
+        return dexLoader.makeSootClass(sc, defItem, image.getDexFile());
+      }
     }
 
     throw new RuntimeException("Error: class not found in DEX files: " + className);
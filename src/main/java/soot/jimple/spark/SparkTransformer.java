@@ -22,8 +22,12 @@ package soot.jimple.spark;
  * #L%
  */
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,10 +60,13 @@ import soot.jimple.spark.pag.VarNode;
 import soot.jimple.spark.sets.P2SetVisitor;
 import soot.jimple.spark.sets.PointsToSetInternal;
 import soot.jimple.spark.solver.EBBCollapser;
+import soot.jimple.spark.solver.IncrementalUpdater;
+import soot.jimple.spark.solver.OnFlyCallGraph;
 import soot.jimple.spark.solver.PropAlias;
 import soot.jimple.spark.solver.PropCycle;
 import soot.jimple.spark.solver.PropIter;
 import soot.jimple.spark.solver.PropMerge;
+import soot.jimple.spark.solver.PropParallel;
 import soot.jimple.spark.solver.PropWorklist;
 import soot.jimple.spark.solver.Propagator;
 import soot.jimple.spark.solver.SCCCollapser;
@@ -84,10 +91,33 @@ public class SparkTransformer extends SceneTransformer {
     return G.v().soot_jimple_spark_SparkTransformer();
   }
 
+  /** The graph of the last run, if it can be updated by the next one. */
+  private PAG incrementalPag;
+  private Map<String, String> incrementalOptions;
+  private final Set<SootMethod> changedMethods = new HashSet<SootMethod>();
+
+  /**
+   * Reports that the given methods have been changed, added to or removed from their classes since Spark last ran. With the
+   * incremental option, the next run updates the previous solution for these methods instead of solving from scratch.
+   */
+  public void methodsChanged(Collection<SootMethod> methods) {
+    changedMethods.addAll(methods);
+  }
+
   protected void internalTransform(String phaseName, Map<String, String> options) {
     SparkOptions opts = new SparkOptions(options);
     final String output_dir = SourceLocator.v().getOutputDir();
 
+    if (opts.incremental()) {
+      if (updateIncrementally(options)) {
+        return;
+      }
+      // The method PAGs of a previous run belong to its graph
+      G.v().MethodPAG_methodToPag.clear();
+    }
+    incrementalPag = null;
+    changedMethods.clear();
+
     // Build pointer assignment graph
     ContextInsensitiveBuilder b = new ContextInsensitiveBuilder();
     if (opts.pre_jimplify()) {
@@ -208,6 +238,34 @@ public class SparkTransformer extends SceneTransformer {
       reportTime("Initialized on-demand refinement-based context-sensitive analysis", startOnDemand, endOndemand);
       Scene.v().setPointsToAnalysis(onDemandAnalysis);
     }
+
+    if (opts.incremental() && IncrementalUpdater.supports(pag)) {
+      incrementalPag = pag;
+      incrementalOptions = new HashMap<String, String>(options);
+    }
+  }
+
+  /**
+   * Updates the graph of the previous run for the changed methods, returns false if the caller has to solve from scratch.
+   */
+  protected boolean updateIncrementally(Map<String, String> options) {
+    final PAG pag = incrementalPag;
+    if (pag == null || !options.equals(incrementalOptions) || Scene.v().getPointsToAnalysis() != pag) {
+      return false;
+    }
+    Date start = new Date();
+    if (!new IncrementalUpdater(pag).update(changedMethods)) {
+      logger.debug("[Spark] Cannot update the previous solution, solving from scratch");
+      return false;
+    }
+    changedMethods.clear();
+    reportTime("Incremental update", start, new Date());
+
+    OnFlyCallGraph ofcg = pag.getOnFlyCallGraph();
+    Scene.v().setCallGraph(ofcg.callGraph());
+    Scene.v().setReachableMethods(ofcg.reachableMethods());
+    Scene.v().setPointsToAnalysis(pag);
+    return true;
   }
 
   protected void propagatePAG(SparkOptions opts, final PAG pag) {
@@ -228,6 +286,9 @@ public class SparkTransformer extends SceneTransformer {
       case SparkOptions.propagator_alias:
         propagator = new PropAlias(pag);
         break;
+      case SparkOptions.propagator_parallel:
+        propagator = new PropParallel(pag);
+        break;
       case SparkOptions.propagator_none:
         break;
       default:
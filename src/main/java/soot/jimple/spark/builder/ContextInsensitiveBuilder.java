@@ -28,6 +28,7 @@ import java.util.Iterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import soot.BodyResidencyManager;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
@@ -71,6 +72,7 @@ public class ContextInsensitiveBuilder {
           if (!m.hasActiveBody()) {
             change = true;
             m.retrieveActiveBody();
+            BodyResidencyManager.v().safePoint();
           }
         }
       }
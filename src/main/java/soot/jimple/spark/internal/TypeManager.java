@@ -87,9 +87,13 @@ public final class TypeManager {
     return cl.resolvingLevel() < SootClass.HIERARCHY;
   }
 
-  final public BitVector get(Type type) {
-    if (type == null) {
-      return null;
+  /**
+   * Adds the alloc nodes that have been created since the last call to the type masks. After this method returns,
+   * {@link #get(Type)} does not modify the type masks until new alloc nodes are created, so it may be called concurrently.
+   */
+  final public void updateTypeMasks() {
+    if (allocNodeListener == null) {
+      return;
     }
     while (allocNodeListener.hasNext()) {
       AllocNode n = allocNodeListener.next();
@@ -118,6 +122,13 @@ public final class TypeManager {
         }
       }
     }
+  }
+
+  final public BitVector get(Type type) {
+    if (type == null) {
+      return null;
+    }
+    updateTypeMasks();
     BitVector ret = (BitVector) typeMask.get(type);
     if (ret == null && fh != null) {
       // If we have a phantom class and have no type mask, we assume that
@@ -22,12 +22,16 @@ package soot.jimple.spark.pag;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import soot.ArrayType;
 import soot.Body;
+import soot.BodyResidencyManager;
 import soot.Context;
 import soot.EntryPoints;
 import soot.G;
@@ -111,6 +115,25 @@ public final class MethodPAG {
     }
   }
 
+  /** Returns true if this method has been added to the main PAG without a context. */
+  public boolean hasBeenAdded() {
+    return hasBeenAdded;
+  }
+
+  /**
+   * Returns the internal, in and out edges of this method, as a list of alternating sources and targets. The nodes are not
+   * parameterized by any context.
+   */
+  public List<Node> getEdges() {
+    List<Node> ret = new ArrayList<Node>();
+    for (QueueReader<Node> reader : Arrays.asList(internalReader.clone(), inReader.clone(), outReader.clone())) {
+      while (reader.hasNext()) {
+        ret.add(reader.next());
+      }
+    }
+    return ret;
+  }
+
   public void addInternalEdge(Node src, Node dst) {
     if (src == null) {
       return;
@@ -172,6 +195,14 @@ public final class MethodPAG {
     return ret;
   }
 
+  /**
+   * Forgets the PAG of method m, so that the next call to {@link #v(PAG, SootMethod)} builds a new one from its current body.
+   * The edges of the old one are not removed from the main PAG.
+   */
+  public static void invalidate(SootMethod m) {
+    G.v().MethodPAG_methodToPag.remove(m);
+  }
+
   public void build() {
     if (hasBeenBuilt) {
       return;
@@ -219,6 +250,8 @@ public final class MethodPAG {
   protected boolean hasBeenBuilt = false;
 
   protected void buildNormal() {
+    // The nodes refer to the locals and allocation sites of the body
+    BodyResidencyManager.v().pin(method);
     Body b = method.retrieveActiveBody();
     for (Unit u : b.getUnits()) {
       nodeFactory.handleStmt((Stmt) u);
@@ -0,0 +1,317 @@
+package soot.jimple.spark.pag;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import soot.util.ArrayNumberer;
+
+/**
+ * The edges of one kind in the pointer assignment graph, stored in arrays indexed by the number of the source node. This
+ * is the representation used by the <code>indexed-edges</code> option instead of a map from nodes to sets.
+ *
+ * <p>
+ * The targets of a source are kept in a growable array. Lists of up to {@value #LINEAR_SCAN_LIMIT} targets are searched
+ * linearly for duplicates; longer lists get an open-addressing hash set of the numbers of their targets. All targets of a
+ * store must therefore be numbered by the same numberer. {@link #lookup(Node, boolean)} trims the array of a source to its
+ * exact length once and then hands out that array without copying, as long as no target is added.
+ * </p>
+ */
+public final class NumberedEdgeStore<K extends Node> {
+  private static final Node[] EMPTY_NODE_ARRAY = new Node[0];
+  private static final int LINEAR_SCAN_LIMIT = 16;
+
+  private final ArrayNumberer<K> sourceNumberer;
+  private Node[][] targets = new Node[64][];
+  private int[] counts = new int[64];
+  /** Hash sets of target numbers, 0 marks a free slot since node numbers start at 1. */
+  private int[][] indexes = new int[64][];
+  private int numSources = 0;
+
+  public NumberedEdgeStore(ArrayNumberer<K> sourceNumberer) {
+    this.sourceNumberer = sourceNumberer;
+  }
+
+  /** Adds an edge from src to tgt, returns true if it was not present yet. */
+  public boolean add(K src, Node tgt) {
+    int s = src.getNumber();
+    ensureCapacity(s);
+    int n = counts[s];
+    if (n == 0) {
+      numSources++;
+    } else if (contains(s, tgt)) {
+      return false;
+    }
+    append(s, tgt);
+    return true;
+  }
+
+  /**
+   * Returns the targets of all edges from key. The returned array is owned by this store and must not be modified. If
+   * <code>merged</code> is set, targets that have been merged into other nodes are replaced by their representatives first,
+   * and edges from key to itself are removed.
+   */
+  public Node[] lookup(K key, boolean merged) {
+    int s = key.getNumber();
+    if (s >= counts.length || counts[s] == 0) {
+      return EMPTY_NODE_ARRAY;
+    }
+    if (merged) {
+      Node[] list = targets[s];
+      for (int i = 0; i < counts[s]; i++) {
+        Node rep = list[i].getReplacement();
+        if (rep != list[i] || rep == key) {
+          replaceMerged(s, key);
+          break;
+        }
+      }
+    }
+    int n = counts[s];
+    if (n == 0) {
+      return EMPTY_NODE_ARRAY;
+    }
+    Node[] list = targets[s];
+    if (list.length != n) {
+      targets[s] = list = Arrays.copyOf(list, n);
+    }
+    return list;
+  }
+
+  /** Moves the edges from n2 to n1, as n2 has been merged into n1. */
+  public void merge(K n1, K n2) {
+    int s2 = n2.getNumber();
+    if (s2 >= counts.length || counts[s2] == 0) {
+      return;
+    }
+    Node[] list = targets[s2];
+    int n = counts[s2];
+    remove(n2);
+    for (int i = 0; i < n; i++) {
+      add(n1, list[i]);
+    }
+  }
+
+  /** Removes all edges from key. */
+  public void remove(K key) {
+    int s = key.getNumber();
+    if (s >= counts.length || counts[s] == 0) {
+      return;
+    }
+    targets[s] = null;
+    indexes[s] = null;
+    counts[s] = 0;
+    numSources--;
+  }
+
+  /** Removes the edge from src to tgt, returns true if it was present. */
+  public boolean remove(K src, Node tgt) {
+    int s = src.getNumber();
+    if (s >= counts.length || counts[s] == 0 || !contains(s, tgt)) {
+      return false;
+    }
+    Node[] old = targets[s];
+    int n = counts[s] - 1;
+    if (n == 0) {
+      remove(src);
+      return true;
+    }
+    // Copy, as the old array may have been handed out by lookup
+    Node[] list = new Node[n];
+    int j = 0;
+    for (int i = 0; i <= n; i++) {
+      if (old[i] != tgt) {
+        list[j++] = old[i];
+      }
+    }
+    targets[s] = list;
+    counts[s] = n;
+    indexes[s] = n > LINEAR_SCAN_LIMIT ? buildIndex(list, n) : null;
+    return true;
+  }
+
+  public void clear() {
+    Arrays.fill(targets, null);
+    Arrays.fill(indexes, null);
+    Arrays.fill(counts, 0);
+    numSources = 0;
+  }
+
+  /** Returns a view of the nodes that have at least one outgoing edge. */
+  public AbstractSet<K> sources() {
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        return new SourceIterator();
+      }
+
+      @Override
+      public int size() {
+        return numSources;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Node)) {
+          return false;
+        }
+        int s = ((Node) o).getNumber();
+        return s > 0 && s < counts.length && counts[s] > 0 && sourceNumberer.get(s) == o;
+      }
+    };
+  }
+
+  private void ensureCapacity(int s) {
+    if (s < counts.length) {
+      return;
+    }
+    int size = Math.max(s + 1, counts.length * 2);
+    targets = Arrays.copyOf(targets, size);
+    counts = Arrays.copyOf(counts, size);
+    indexes = Arrays.copyOf(indexes, size);
+  }
+
+  private boolean contains(int s, Node tgt) {
+    int[] index = indexes[s];
+    if (index != null) {
+      return indexContains(index, tgt.getNumber());
+    }
+    Node[] list = targets[s];
+    for (int i = counts[s] - 1; i >= 0; i--) {
+      if (list[i] == tgt) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void append(int s, Node tgt) {
+    Node[] list = targets[s];
+    int n = counts[s];
+    if (list == null) {
+      targets[s] = list = new Node[2];
+    } else if (n == list.length) {
+      // Never write into an array that may have been handed out by lookup
+      targets[s] = list = Arrays.copyOf(list, n + (n >> 1) + 1);
+    }
+    list[n] = tgt;
+    counts[s] = ++n;
+
+    int[] index = indexes[s];
+    if (index != null && 2 * n <= index.length) {
+      indexAdd(index, tgt.getNumber());
+    } else if (n > LINEAR_SCAN_LIMIT) {
+      indexes[s] = buildIndex(list, n);
+    }
+  }
+
+  private void replaceMerged(int s, K key) {
+    Node[] old = targets[s];
+    int n = counts[s];
+    targets[s] = null;
+    indexes[s] = null;
+    counts[s] = 0;
+    for (int i = 0; i < n; i++) {
+      Node rep = old[i].getReplacement();
+      if (rep != key && !contains(s, rep)) {
+        append(s, rep);
+      }
+    }
+    if (counts[s] == 0) {
+      numSources--;
+    }
+  }
+
+  private static int[] buildIndex(Node[] list, int n) {
+    int size = Integer.highestOneBit(n) << 2;
+    int[] index = new int[size];
+    for (int i = 0; i < n; i++) {
+      indexAdd(index, list[i].getNumber());
+    }
+    return index;
+  }
+
+  private static int slot(int number, int mask) {
+    // Spread consecutive numbers over the table
+    return (number * 0x9E3779B9) >>> 7 & mask;
+  }
+
+  private static void indexAdd(int[] index, int number) {
+    int mask = index.length - 1;
+    for (int i = slot(number, mask);; i = (i + 1) & mask) {
+      if (index[i] == 0) {
+        index[i] = number;
+        return;
+      }
+      if (index[i] == number) {
+        return;
+      }
+    }
+  }
+
+  private static boolean indexContains(int[] index, int number) {
+    int mask = index.length - 1;
+    for (int i = slot(number, mask);; i = (i + 1) & mask) {
+      if (index[i] == number) {
+        return true;
+      }
+      if (index[i] == 0) {
+        return false;
+      }
+    }
+  }
+
+  private final class SourceIterator implements Iterator<K> {
+    private int next = advance(1);
+
+    private int advance(int from) {
+      int s = from;
+      while (s < counts.length && counts[s] == 0) {
+        s++;
+      }
+      return s;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < counts.length;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      K ret = sourceNumberer.get(next);
+      next = advance(next + 1);
+      return ret;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
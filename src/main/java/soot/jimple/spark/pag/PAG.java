@@ -72,6 +72,7 @@ import soot.jimple.spark.sets.HybridPointsToSet;
 import soot.jimple.spark.sets.P2SetFactory;
 import soot.jimple.spark.sets.P2SetVisitor;
 import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.spark.sets.RoaringPointsToSet;
 import soot.jimple.spark.sets.SharedHybridSet;
 import soot.jimple.spark.sets.SharedListSet;
 import soot.jimple.spark.sets.SortedArraySet;
@@ -110,6 +111,16 @@ public class PAG implements PointsToAnalysis {
           + ".spark on-fly-cg:false when using RTA.");
     }
     typeManager = new TypeManager(this);
+    if (opts.indexed_edges()) {
+      simpleStore = new NumberedEdgeStore<VarNode>(varNodeNumberer);
+      loadStore = new NumberedEdgeStore<FieldRefNode>(fieldRefNodeNumberer);
+      storeStore = new NumberedEdgeStore<VarNode>(varNodeNumberer);
+      allocStore = new NumberedEdgeStore<AllocNode>(allocNodeNumberer);
+      simpleInvStore = new NumberedEdgeStore<VarNode>(varNodeNumberer);
+      loadInvStore = new NumberedEdgeStore<VarNode>(varNodeNumberer);
+      storeInvStore = new NumberedEdgeStore<FieldRefNode>(fieldRefNodeNumberer);
+      allocInvStore = new NumberedEdgeStore<VarNode>(varNodeNumberer);
+    }
     if (!opts.ignore_types()) {
       typeManager.setFastHierarchy(Scene.v().getOrMakeFastHierarchy());
     }
@@ -132,6 +143,9 @@ public class PAG implements PointsToAnalysis {
       case SparkOptions.set_impl_bit:
         setFactory = BitPointsToSet.getFactory();
         break;
+      case SparkOptions.set_impl_roaring:
+        setFactory = RoaringPointsToSet.getFactory();
+        break;
       case SparkOptions.set_impl_double:
         P2SetFactory oldF;
         P2SetFactory newF;
@@ -154,6 +168,9 @@ public class PAG implements PointsToAnalysis {
           case SparkOptions.double_set_old_bit:
             oldF = BitPointsToSet.getFactory();
             break;
+          case SparkOptions.double_set_old_roaring:
+            oldF = RoaringPointsToSet.getFactory();
+            break;
           default:
             throw new RuntimeException();
         }
@@ -176,6 +193,9 @@ public class PAG implements PointsToAnalysis {
           case SparkOptions.double_set_new_bit:
             newF = BitPointsToSet.getFactory();
             break;
+          case SparkOptions.double_set_new_roaring:
+            newF = RoaringPointsToSet.getFactory();
+            break;
           default:
             throw new RuntimeException();
         }
@@ -270,10 +290,26 @@ public class PAG implements PointsToAnalysis {
     }
   }
 
+  private <K extends Node> void lookupInStore(NumberedEdgeStore<K> store) {
+    for (K object : store.sources()) {
+      store.lookup(object, true);
+    }
+  }
+
   public void cleanUpMerges() {
     if (opts.verbose()) {
       logger.debug("Cleaning up graph for merged nodes");
     }
+    if (simpleStore != null) {
+      lookupInStore(simpleStore);
+      lookupInStore(allocStore);
+      lookupInStore(storeStore);
+      lookupInStore(loadStore);
+      lookupInStore(simpleInvStore);
+      lookupInStore(allocInvStore);
+      lookupInStore(storeInvStore);
+      lookupInStore(loadInvStore);
+    }
     lookupInMap(simple);
     lookupInMap(alloc);
     lookupInMap(store);
@@ -290,18 +326,30 @@ public class PAG implements PointsToAnalysis {
   }
 
   public boolean doAddSimpleEdge(VarNode from, VarNode to) {
+    if (simpleStore != null) {
+      return simpleStore.add(from, to) | simpleInvStore.add(to, from);
+    }
     return addToMap(simple, from, to) | addToMap(simpleInv, to, from);
   }
 
   public boolean doAddStoreEdge(VarNode from, FieldRefNode to) {
+    if (storeStore != null) {
+      return storeStore.add(from, to) | storeInvStore.add(to, from);
+    }
     return addToMap(store, from, to) | addToMap(storeInv, to, from);
   }
 
   public boolean doAddLoadEdge(FieldRefNode from, VarNode to) {
+    if (loadStore != null) {
+      return loadStore.add(from, to) | loadInvStore.add(to, from);
+    }
     return addToMap(load, from, to) | addToMap(loadInv, to, from);
   }
 
   public boolean doAddAllocEdge(AllocNode from, VarNode to) {
+    if (allocStore != null) {
+      return allocStore.add(from, to) | allocInvStore.add(to, from);
+    }
     return addToMap(alloc, from, to) | addToMap(allocInv, to, from);
   }
 
@@ -313,6 +361,42 @@ public class PAG implements PointsToAnalysis {
     return addToMap(assignInstance, from, to) | addToMap(assignInstanceInv, to, from);
   }
 
+  public boolean doRemoveSimpleEdge(VarNode from, VarNode to) {
+    if (simpleStore != null) {
+      return simpleStore.remove(from, to) | simpleInvStore.remove(to, from);
+    }
+    return removeFromMap(simple, from, to) | removeFromMap(simpleInv, to, from);
+  }
+
+  public boolean doRemoveStoreEdge(VarNode from, FieldRefNode to) {
+    if (storeStore != null) {
+      return storeStore.remove(from, to) | storeInvStore.remove(to, from);
+    }
+    return removeFromMap(store, from, to) | removeFromMap(storeInv, to, from);
+  }
+
+  public boolean doRemoveLoadEdge(FieldRefNode from, VarNode to) {
+    if (loadStore != null) {
+      return loadStore.remove(from, to) | loadInvStore.remove(to, from);
+    }
+    return removeFromMap(load, from, to) | removeFromMap(loadInv, to, from);
+  }
+
+  public boolean doRemoveAllocEdge(AllocNode from, VarNode to) {
+    if (allocStore != null) {
+      return allocStore.remove(from, to) | allocInvStore.remove(to, from);
+    }
+    return removeFromMap(alloc, from, to) | removeFromMap(allocInv, to, from);
+  }
+
+  public boolean doRemoveNewInstanceEdge(VarNode from, NewInstanceNode to) {
+    return removeFromMap(newInstance, from, to) | removeFromMap(newInstanceInv, to, from);
+  }
+
+  public boolean doRemoveAssignInstanceEdge(NewInstanceNode from, VarNode to) {
+    return removeFromMap(assignInstance, from, to) | removeFromMap(assignInstanceInv, to, from);
+  }
+
   /** Node uses this to notify PAG that n2 has been merged into n1. */
   void mergedWith(Node n1, Node n2) {
     if (n1.equals(n2)) {
@@ -324,6 +408,12 @@ public class PAG implements PointsToAnalysis {
       ofcg().mergedWith(n1, n2);
     }
 
+    if (simpleStore != null) {
+      mergedWith(n1, n2, simpleStore, allocStore, storeStore, loadStore, simpleInvStore, allocInvStore, storeInvStore,
+          loadInvStore);
+      return;
+    }
+
     Map[] maps = { simple, alloc, store, load, simpleInv, allocInv, storeInv, loadInv };
     for (Map<Node, Object> m : maps) {
       if (!m.keySet().contains(n2)) {
@@ -392,6 +482,16 @@ public class PAG implements PointsToAnalysis {
     }
   }
 
+  /** Moves the edges of n2 to n1 in those of the given stores that n2 is a source of. */
+  @SuppressWarnings("unchecked")
+  private void mergedWith(Node n1, Node n2, NumberedEdgeStore<?>... stores) {
+    for (NumberedEdgeStore<?> store : stores) {
+      if (store.sources().contains(n2)) {
+        ((NumberedEdgeStore<Node>) store).merge(n1, n2);
+      }
+    }
+  }
+
   protected final static Node[] EMPTY_NODE_ARRAY = new Node[0];
 
   protected <K extends Node> Node[] lookup(Map<K, Object> m, K key) {
@@ -455,22 +555,37 @@ public class PAG implements PointsToAnalysis {
   }
 
   public Node[] simpleLookup(VarNode key) {
+    if (simpleStore != null) {
+      return simpleStore.lookup(key, somethingMerged);
+    }
     return lookup(simple, key);
   }
 
   public Node[] simpleInvLookup(VarNode key) {
+    if (simpleInvStore != null) {
+      return simpleInvStore.lookup(key, somethingMerged);
+    }
     return lookup(simpleInv, key);
   }
 
   public Node[] loadLookup(FieldRefNode key) {
+    if (loadStore != null) {
+      return loadStore.lookup(key, somethingMerged);
+    }
     return lookup(load, key);
   }
 
   public Node[] loadInvLookup(VarNode key) {
+    if (loadInvStore != null) {
+      return loadInvStore.lookup(key, somethingMerged);
+    }
     return lookup(loadInv, key);
   }
 
   public Node[] storeLookup(VarNode key) {
+    if (storeStore != null) {
+      return storeStore.lookup(key, somethingMerged);
+    }
     return lookup(store, key);
   }
 
@@ -483,30 +598,51 @@ public class PAG implements PointsToAnalysis {
   }
 
   public Node[] storeInvLookup(FieldRefNode key) {
+    if (storeInvStore != null) {
+      return storeInvStore.lookup(key, somethingMerged);
+    }
     return lookup(storeInv, key);
   }
 
   public Node[] allocLookup(AllocNode key) {
+    if (allocStore != null) {
+      return allocStore.lookup(key, somethingMerged);
+    }
     return lookup(alloc, key);
   }
 
   public Node[] allocInvLookup(VarNode key) {
+    if (allocInvStore != null) {
+      return allocInvStore.lookup(key, somethingMerged);
+    }
     return lookup(allocInv, key);
   }
 
   public Set<VarNode> simpleSources() {
+    if (simpleStore != null) {
+      return simpleStore.sources();
+    }
     return simple.keySet();
   }
 
   public Set<AllocNode> allocSources() {
+    if (allocStore != null) {
+      return allocStore.sources();
+    }
     return alloc.keySet();
   }
 
   public Set<VarNode> storeSources() {
+    if (storeStore != null) {
+      return storeStore.sources();
+    }
     return store.keySet();
   }
 
   public Set<FieldRefNode> loadSources() {
+    if (loadStore != null) {
+      return loadStore.sources();
+    }
     return load.keySet();
   }
 
@@ -519,51 +655,63 @@ public class PAG implements PointsToAnalysis {
   }
 
   public Set<VarNode> simpleInvSources() {
+    if (simpleInvStore != null) {
+      return simpleInvStore.sources();
+    }
     return simpleInv.keySet();
   }
 
   public Set<VarNode> allocInvSources() {
+    if (allocInvStore != null) {
+      return allocInvStore.sources();
+    }
     return allocInv.keySet();
   }
 
   public Set<FieldRefNode> storeInvSources() {
+    if (storeInvStore != null) {
+      return storeInvStore.sources();
+    }
     return storeInv.keySet();
   }
 
   public Set<VarNode> loadInvSources() {
+    if (loadInvStore != null) {
+      return loadInvStore.sources();
+    }
     return loadInv.keySet();
   }
 
   public Iterator<VarNode> simpleSourcesIterator() {
-    return simple.keySet().iterator();
+    return simpleSources().iterator();
   }
 
   public Iterator<AllocNode> allocSourcesIterator() {
-    return alloc.keySet().iterator();
+    return allocSources().iterator();
   }
 
   public Iterator<VarNode> storeSourcesIterator() {
-    return store.keySet().iterator();
+    return storeSources().iterator();
   }
 
   public Iterator<FieldRefNode> loadSourcesIterator() {
-    return load.keySet().iterator();
+    return loadSources().iterator();
   }
 
   public Iterator<VarNode> simpleInvSourcesIterator() {
-    return simpleInv.keySet().iterator();
+    return simpleInvSources().iterator();
   }
 
   public Iterator<VarNode> allocInvSourcesIterator() {
-    return allocInv.keySet().iterator();
+    return allocInvSources().iterator();
   }
 
   public Iterator<FieldRefNode> storeInvSourcesIterator() {
-    return storeInv.keySet().iterator();
+    return storeInvSources().iterator();
   }
 
   public Iterator<VarNode> loadInvSourcesIterator() {
-    return loadInv.keySet().iterator();
+    return loadInvSources().iterator();
   }
 
   static private int getSize(Object set) {
@@ -972,6 +1120,36 @@ public class PAG implements PointsToAnalysis {
     }
   }
 
+  /**
+   * Removes an edge from the graph, returning false if it was not there. Points-to sets are not updated, and the edge is not
+   * reported to edge readers.
+   */
+  public final boolean removeEdge(Node from, Node to) {
+    from = from.getReplacement();
+    to = to.getReplacement();
+    if (from instanceof VarNode) {
+      if (to instanceof VarNode) {
+        boolean ret = doRemoveSimpleEdge((VarNode) from, (VarNode) to);
+        if (opts.simple_edges_bidirectional()) {
+          ret |= doRemoveSimpleEdge((VarNode) to, (VarNode) from);
+        }
+        return ret;
+      } else if (to instanceof FieldRefNode) {
+        return doRemoveStoreEdge((VarNode) from, (FieldRefNode) to);
+      } else if (to instanceof NewInstanceNode) {
+        return doRemoveNewInstanceEdge((VarNode) from, (NewInstanceNode) to);
+      } else {
+        throw new RuntimeException("Invalid node type");
+      }
+    } else if (from instanceof FieldRefNode) {
+      return doRemoveLoadEdge((FieldRefNode) from, (VarNode) to);
+    } else if (from instanceof NewInstanceNode) {
+      return doRemoveAssignInstanceEdge((NewInstanceNode) from, (VarNode) to);
+    } else {
+      return doRemoveAllocEdge((AllocNode) from, (VarNode) to);
+    }
+  }
+
   protected ChunkedQueue<Node> edgeQueue = new ChunkedQueue<Node>();
 
   public QueueReader<Node> edgeReader() {
@@ -1411,6 +1589,16 @@ public class PAG implements PointsToAnalysis {
    * Delete all the assignment edges.
    */
   public void cleanPAG() {
+    if (simpleStore != null) {
+      simpleStore.clear();
+      loadStore.clear();
+      storeStore.clear();
+      allocStore.clear();
+      simpleInvStore.clear();
+      loadInvStore.clear();
+      storeInvStore.clear();
+      allocInvStore.clear();
+    }
     simple.clear();
     load.clear();
     store.clear();
@@ -1441,6 +1629,18 @@ public class PAG implements PointsToAnalysis {
   protected Map<NewInstanceNode, Object> newInstanceInv = new HashMap<NewInstanceNode, Object>();
   protected Map<VarNode, Object> assignInstanceInv = new HashMap<VarNode, Object>();
 
+  // Used instead of the maps above when the indexed-edges option is set.
+  // NewInstanceNodes are not numbered, so their edges always use the maps.
+  protected NumberedEdgeStore<VarNode> simpleStore;
+  protected NumberedEdgeStore<FieldRefNode> loadStore;
+  protected NumberedEdgeStore<VarNode> storeStore;
+  protected NumberedEdgeStore<AllocNode> allocStore;
+
+  protected NumberedEdgeStore<VarNode> simpleInvStore;
+  protected NumberedEdgeStore<VarNode> loadInvStore;
+  protected NumberedEdgeStore<FieldRefNode> storeInvStore;
+  protected NumberedEdgeStore<VarNode> allocInvStore;
+
   protected <K extends Node> boolean addToMap(Map<K, Object> m, K key, Node value) {
     Object valueList = m.get(key);
 
@@ -1458,6 +1658,38 @@ public class PAG implements PointsToAnalysis {
     return ((Set<Node>) valueList).add(value);
   }
 
+  protected <K extends Node> boolean removeFromMap(Map<K, Object> m, K key, Node value) {
+    Object valueList = m.get(key);
+    if (valueList == null) {
+      return false;
+    }
+    if (valueList instanceof Set) {
+      Set<Node> vl = (Set<Node>) valueList;
+      if (!vl.remove(value)) {
+        return false;
+      }
+      if (vl.isEmpty()) {
+        m.remove(key);
+      }
+      return true;
+    }
+    // Arrays may have been handed out by lookup, so never change them in place
+    Node[] ar = (Node[]) valueList;
+    HashSet<Node> vl = new HashSet<Node>(ar.length);
+    for (Node element : ar) {
+      vl.add(element);
+    }
+    if (!vl.remove(value)) {
+      return false;
+    }
+    if (vl.isEmpty()) {
+      m.remove(key);
+    } else {
+      m.put(key, vl);
+    }
+    return true;
+  }
+
   private boolean runGeomPTA = false;
   protected MultiMap<Pair<Node, Node>, Edge> assign2edges = new HashMultiMap<>();
   private final Map<Object, LocalVarNode> valToLocalVarNode = new HashMap<>(1000);
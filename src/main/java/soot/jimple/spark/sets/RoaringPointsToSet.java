@@ -0,0 +1,717 @@
+package soot.jimple.spark.sets;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+import soot.PointsToSet;
+import soot.Type;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.util.ArrayNumberer;
+import soot.util.BitVector;
+
+/**
+ * Implementation of points-to set using a compressed bitmap in the style of Roaring bitmaps. The numbers of the nodes are
+ * split into chunks of 65536, and each non-empty chunk is stored in its own container: a sorted array for up to 4096
+ * elements, a bitmap for dense chunks, or a list of runs for chunks that consist of few ranges of consecutive numbers.
+ * Unlike {@link BitPointsToSet}, the size of a set therefore depends on its contents rather than on the number of
+ * allocation nodes.
+ */
+public final class RoaringPointsToSet extends PointsToSetInternal {
+  /** Number of low bits of a node number that address it within its container. */
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+  /** Number of words in a bitmap container. */
+  private static final int WORDS = 1 << (CHUNK_BITS - 6);
+  /** Array containers that would grow beyond this size are converted to bitmaps. */
+  private static final int MAX_ARRAY_SIZE = 4096;
+  /** Run containers that would need more runs than this are converted to bitmaps, which are smaller then. */
+  private static final int MAX_RUNS = 2047;
+
+  /** Per-thread buffer for unions with bitmaps, since the parallel propagator updates sets concurrently. */
+  private static final ThreadLocal<long[]> scratch = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[WORDS];
+    }
+  };
+
+  public RoaringPointsToSet(Type type, PAG pag) {
+    super(type);
+    this.pag = pag;
+  }
+
+  /** Returns true if this set contains no run-time objects. */
+  public final boolean isEmpty() {
+    return numContainers == 0;
+  }
+
+  /**
+   * Adds contents of other into this set, returns true if this set changed.
+   */
+  public final boolean addAll(PointsToSetInternal other, PointsToSetInternal exclude) {
+    if (other != null && !(other instanceof RoaringPointsToSet)) {
+      return super.addAll(other, exclude);
+    }
+    if (exclude != null && !(exclude instanceof RoaringPointsToSet)) {
+      return super.addAll(other, exclude);
+    }
+    return nativeAddAll((RoaringPointsToSet) other, (RoaringPointsToSet) exclude);
+  }
+
+  private boolean nativeAddAll(RoaringPointsToSet other, RoaringPointsToSet exclude) {
+    if (other == null || other == this || other.numContainers == 0) {
+      return false;
+    }
+    BitVector mask = getBitMask(other, pag);
+    boolean ret = false;
+    for (int oi = 0; oi < other.numContainers; oi++) {
+      int key = other.keys[oi];
+      int i = indexOf(key);
+      Container c = i >= 0 ? containers[i] : null;
+      Container e = exclude == null ? null : exclude.find(key);
+      Container n = union(c, other.containers[oi], e, mask, key << CHUNK_BITS);
+      if (n != null) {
+        if (i >= 0) {
+          containers[i] = n;
+        } else {
+          insert(-i - 1, key, n);
+        }
+        ret = true;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Adds the elements of <code>o</code> that are in <code>mask</code> but not in <code>e</code> to <code>c</code>. Returns
+   * the resulting container, or null if nothing was added. Each of <code>c</code>, <code>e</code> and <code>mask</code> may
+   * be null.
+   */
+  private static Container union(Container c, Container o, Container e, BitVector mask, int base) {
+    if (o instanceof ArrayContainer) {
+      ArrayContainer a = (ArrayContainer) o;
+      int[] added = null;
+      int n = 0;
+      for (int j = 0; j < a.size; j++) {
+        int low = a.values[j];
+        if ((mask == null || mask.get(base | low)) && (e == null || !e.contains(low)) && (c == null || !c.contains(low))) {
+          if (added == null) {
+            added = new int[a.size - j];
+          }
+          added[n++] = low;
+        }
+      }
+      if (n == 0) {
+        return null;
+      }
+      return (c == null ? new ArrayContainer() : c).addSorted(added, n);
+    }
+
+    long[] words = scratch.get();
+    o.toWords(words);
+    if (mask != null) {
+      int first = base >>> 6;
+      for (int w = 0; w < WORDS; w++) {
+        words[w] &= mask.getWord(first + w);
+      }
+    }
+    if (e != null) {
+      e.andNotInto(words);
+    }
+    if (c != null) {
+      c.andNotInto(words);
+    }
+    int added = 0;
+    for (int w = 0; w < WORDS; w++) {
+      added += Long.bitCount(words[w]);
+    }
+    if (added == 0) {
+      return null;
+    }
+    return (c == null ? new ArrayContainer() : c).orWords(words, added);
+  }
+
+  /** Calls v's visit method on all nodes in this set. */
+  public final boolean forall(P2SetVisitor v) {
+    ArrayNumberer<AllocNode> numberer = pag.getAllocNodeNumberer();
+    for (int i = 0; i < numContainers; i++) {
+      containers[i].forall(keys[i] << CHUNK_BITS, numberer, v);
+    }
+    return v.getReturnValue();
+  }
+
+  /** Adds n to this set, returns true if n was not already in this set. */
+  public final boolean add(Node n) {
+    if (pag.getTypeManager().castNeverFails(n.getType(), type)) {
+      return fastAdd(n.getNumber());
+    }
+    return false;
+  }
+
+  /** Returns true iff the set contains n. */
+  public final boolean contains(Node n) {
+    int number = n.getNumber();
+    Container c = find(number >>> CHUNK_BITS);
+    return c != null && c.contains(number & CHUNK_MASK);
+  }
+
+  public final boolean hasNonEmptyIntersection(PointsToSet other) {
+    if (!(other instanceof RoaringPointsToSet)) {
+      return super.hasNonEmptyIntersection(other);
+    }
+    RoaringPointsToSet o = (RoaringPointsToSet) other;
+    int i = 0;
+    int j = 0;
+    while (i < numContainers && j < o.numContainers) {
+      if (keys[i] < o.keys[j]) {
+        i++;
+      } else if (keys[i] > o.keys[j]) {
+        j++;
+      } else {
+        if (containers[i].intersects(o.containers[j])) {
+          return true;
+        }
+        i++;
+        j++;
+      }
+    }
+    return false;
+  }
+
+  public final int size() {
+    int ret = 0;
+    for (int i = 0; i < numContainers; i++) {
+      ret += containers[i].cardinality();
+    }
+    return ret;
+  }
+
+  public static P2SetFactory getFactory() {
+    return new P2SetFactory() {
+      public PointsToSetInternal newSet(Type type, PAG pag) {
+        return new RoaringPointsToSet(type, pag);
+      }
+    };
+  }
+
+  /* End of public methods. */
+  /* End of package methods. */
+
+  private boolean fastAdd(int number) {
+    int key = number >>> CHUNK_BITS;
+    int low = number & CHUNK_MASK;
+    int i = indexOf(key);
+    if (i >= 0) {
+      Container c = containers[i];
+      if (c.contains(low)) {
+        return false;
+      }
+      containers[i] = c.add(low);
+    } else {
+      insert(-i - 1, key, new ArrayContainer().add(low));
+    }
+    return true;
+  }
+
+  private int indexOf(int key) {
+    if (keys == null) {
+      return -1;
+    }
+    return Arrays.binarySearch(keys, 0, numContainers, key);
+  }
+
+  private Container find(int key) {
+    int i = indexOf(key);
+    return i >= 0 ? containers[i] : null;
+  }
+
+  private void insert(int pos, int key, Container c) {
+    if (keys == null) {
+      keys = new int[2];
+      containers = new Container[2];
+    } else if (numContainers == keys.length) {
+      keys = Arrays.copyOf(keys, numContainers * 2);
+      containers = Arrays.copyOf(containers, numContainers * 2);
+    }
+    System.arraycopy(keys, pos, keys, pos + 1, numContainers - pos);
+    System.arraycopy(containers, pos, containers, pos + 1, numContainers - pos);
+    keys[pos] = key;
+    containers[pos] = c;
+    numContainers++;
+  }
+
+  private static void setRange(long[] words, int start, int end) {
+    int first = start >>> 6;
+    int last = end >>> 6;
+    long firstMask = -1L << start;
+    long lastMask = -1L >>> (63 - (end & 63));
+    if (first == last) {
+      words[first] |= firstMask & lastMask;
+      return;
+    }
+    words[first] |= firstMask;
+    for (int w = first + 1; w < last; w++) {
+      words[w] = -1L;
+    }
+    words[last] |= lastMask;
+  }
+
+  private static void clearRange(long[] words, int start, int end) {
+    int first = start >>> 6;
+    int last = end >>> 6;
+    long firstMask = -1L << start;
+    long lastMask = -1L >>> (63 - (end & 63));
+    if (first == last) {
+      words[first] &= ~(firstMask & lastMask);
+      return;
+    }
+    words[first] &= ~firstMask;
+    for (int w = first + 1; w < last; w++) {
+      words[w] = 0L;
+    }
+    words[last] &= ~lastMask;
+  }
+
+  private static boolean intersectsRange(long[] words, int start, int end) {
+    int first = start >>> 6;
+    int last = end >>> 6;
+    long firstMask = -1L << start;
+    long lastMask = -1L >>> (63 - (end & 63));
+    if (first == last) {
+      return (words[first] & firstMask & lastMask) != 0L;
+    }
+    if ((words[first] & firstMask) != 0L) {
+      return true;
+    }
+    for (int w = first + 1; w < last; w++) {
+      if (words[w] != 0L) {
+        return true;
+      }
+    }
+    return (words[last] & lastMask) != 0L;
+  }
+
+  /** The elements of one chunk of 65536 node numbers, addressed by the low 16 bits of the number. */
+  private static abstract class Container {
+    abstract boolean contains(int low);
+
+    abstract int cardinality();
+
+    /** Adds low, which is not in this container yet, and returns the resulting container. */
+    abstract Container add(int low);
+
+    /**
+     * Adds the first n elements of lows, which are sorted and not in this container yet, and returns the resulting
+     * container.
+     */
+    abstract Container addSorted(int[] lows, int n);
+
+    /**
+     * Adds the bits set in words, none of which are in this container yet, and returns the resulting container. added is
+     * the number of bits set in words.
+     */
+    abstract Container orWords(long[] words, int added);
+
+    /** Overwrites words with the bitmap of this container. */
+    abstract void toWords(long[] words);
+
+    /** Clears the bits of the elements of this container in words. */
+    abstract void andNotInto(long[] words);
+
+    abstract boolean intersects(Container other);
+
+    abstract void forall(int base, ArrayNumberer<AllocNode> numberer, P2SetVisitor v);
+  }
+
+  private static final class ArrayContainer extends Container {
+    private char[] values = new char[4];
+    private int size = 0;
+
+    boolean contains(int low) {
+      return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+    }
+
+    int cardinality() {
+      return size;
+    }
+
+    Container add(int low) {
+      if (size == MAX_ARRAY_SIZE) {
+        return toBitmap().add(low);
+      }
+      int pos = -Arrays.binarySearch(values, 0, size, (char) low) - 1;
+      if (size == values.length) {
+        values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, size * 2));
+      }
+      System.arraycopy(values, pos, values, pos + 1, size - pos);
+      values[pos] = (char) low;
+      size++;
+      return this;
+    }
+
+    Container addSorted(int[] lows, int n) {
+      int newSize = size + n;
+      if (newSize > MAX_ARRAY_SIZE) {
+        return toBitmap().addSorted(lows, n);
+      }
+      char[] merged = new char[Math.max(newSize, 4)];
+      int i = 0;
+      int j = 0;
+      int k = 0;
+      while (i < size && j < n) {
+        if (values[i] < lows[j]) {
+          merged[k++] = values[i++];
+        } else {
+          merged[k++] = (char) lows[j++];
+        }
+      }
+      while (i < size) {
+        merged[k++] = values[i++];
+      }
+      while (j < n) {
+        merged[k++] = (char) lows[j++];
+      }
+      values = merged;
+      size = newSize;
+      return this;
+    }
+
+    Container orWords(long[] words, int added) {
+      int newSize = size + added;
+      if (newSize > MAX_ARRAY_SIZE) {
+        return toBitmap().orWords(words, added);
+      }
+      char[] merged = new char[Math.max(newSize, 4)];
+      int i = 0;
+      int k = 0;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0L) {
+          int low = (w << 6) | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          while (i < size && values[i] < low) {
+            merged[k++] = values[i++];
+          }
+          merged[k++] = (char) low;
+        }
+      }
+      while (i < size) {
+        merged[k++] = values[i++];
+      }
+      values = merged;
+      size = newSize;
+      return this;
+    }
+
+    void toWords(long[] words) {
+      Arrays.fill(words, 0L);
+      for (int i = 0; i < size; i++) {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+    }
+
+    void andNotInto(long[] words) {
+      for (int i = 0; i < size; i++) {
+        words[values[i] >>> 6] &= ~(1L << values[i]);
+      }
+    }
+
+    boolean intersects(Container other) {
+      for (int i = 0; i < size; i++) {
+        if (other.contains(values[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void forall(int base, ArrayNumberer<AllocNode> numberer, P2SetVisitor v) {
+      for (int i = 0; i < size; i++) {
+        v.visit(numberer.get(base | values[i]));
+      }
+    }
+
+    private BitmapContainer toBitmap() {
+      long[] words = new long[WORDS];
+      toWords(words);
+      return new BitmapContainer(words, size);
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    boolean contains(int low) {
+      return (words[low >>> 6] & (1L << low)) != 0L;
+    }
+
+    int cardinality() {
+      return cardinality;
+    }
+
+    Container add(int low) {
+      words[low >>> 6] |= 1L << low;
+      cardinality++;
+      return this;
+    }
+
+    Container addSorted(int[] lows, int n) {
+      for (int j = 0; j < n; j++) {
+        words[lows[j] >>> 6] |= 1L << lows[j];
+      }
+      cardinality += n;
+      return this;
+    }
+
+    Container orWords(long[] other, int added) {
+      for (int w = 0; w < WORDS; w++) {
+        words[w] |= other[w];
+      }
+      cardinality += added;
+      // A bulk update may have closed the gaps between ranges, so check
+      // whether runs are cheaper now. Stay a bitmap if they are only a little
+      // cheaper, to avoid converting back and forth on the next additions.
+      int runs = countRuns(words);
+      if (runs <= MAX_RUNS / 2) {
+        return new RunContainer(words, runs, cardinality);
+      }
+      return this;
+    }
+
+    void toWords(long[] other) {
+      System.arraycopy(words, 0, other, 0, WORDS);
+    }
+
+    void andNotInto(long[] other) {
+      for (int w = 0; w < WORDS; w++) {
+        other[w] &= ~words[w];
+      }
+    }
+
+    boolean intersects(Container other) {
+      if (!(other instanceof BitmapContainer)) {
+        return other.intersects(this);
+      }
+      long[] otherWords = ((BitmapContainer) other).words;
+      for (int w = 0; w < WORDS; w++) {
+        if ((words[w] & otherWords[w]) != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void forall(int base, ArrayNumberer<AllocNode> numberer, P2SetVisitor v) {
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0L) {
+          v.visit(numberer.get(base | (w << 6) | Long.numberOfTrailingZeros(word)));
+          word &= word - 1;
+        }
+      }
+    }
+
+    private static int countRuns(long[] words) {
+      int runs = 0;
+      long prev = 0L;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        // A run starts at every set bit whose predecessor is not set
+        runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+        prev = word;
+      }
+      return runs;
+    }
+  }
+
+  private static final class RunContainer extends Container {
+    /** Pairs of the first element of a run and its length minus one, sorted by first element. */
+    private char[] runs;
+    private int numRuns;
+    private int cardinality;
+
+    RunContainer(long[] words, int numRuns, int cardinality) {
+      this.runs = new char[Math.max(2 * numRuns, 2)];
+      this.cardinality = cardinality;
+      int prevEnd = -2;
+      for (int w = 0; w < WORDS; w++) {
+        long word = words[w];
+        while (word != 0L) {
+          int tz = Long.numberOfTrailingZeros(word);
+          long inverted = ~(word >>> tz);
+          int len = inverted == 0L ? 64 : Long.numberOfTrailingZeros(inverted);
+          int start = (w << 6) + tz;
+          int end = start + len - 1;
+          if (start == prevEnd + 1) {
+            runs[2 * this.numRuns - 1] = (char) (end - runs[2 * this.numRuns - 2]);
+          } else {
+            runs[2 * this.numRuns] = (char) start;
+            runs[2 * this.numRuns + 1] = (char) (len - 1);
+            this.numRuns++;
+          }
+          prevEnd = end;
+          word = tz + len >= 64 ? 0L : word & (-1L << (tz + len));
+        }
+      }
+    }
+
+    /** Returns the index of the last run that starts at or before low, or -1 if there is none. */
+    private int runBefore(int low) {
+      int lo = 0;
+      int hi = numRuns - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (runs[2 * mid] <= low) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return hi;
+    }
+
+    boolean contains(int low) {
+      int i = runBefore(low);
+      return i >= 0 && low <= runs[2 * i] + runs[2 * i + 1];
+    }
+
+    int cardinality() {
+      return cardinality;
+    }
+
+    Container add(int low) {
+      int i = runBefore(low);
+      boolean joinPrev = i >= 0 && runs[2 * i] + runs[2 * i + 1] + 1 == low;
+      boolean joinNext = i + 1 < numRuns && runs[2 * (i + 1)] == low + 1;
+      if (joinPrev && joinNext) {
+        runs[2 * i + 1] = (char) (runs[2 * i + 1] + runs[2 * i + 3] + 2);
+        System.arraycopy(runs, 2 * (i + 2), runs, 2 * (i + 1), 2 * (numRuns - i - 2));
+        numRuns--;
+      } else if (joinPrev) {
+        runs[2 * i + 1]++;
+      } else if (joinNext) {
+        runs[2 * (i + 1)]--;
+        runs[2 * (i + 1) + 1]++;
+      } else {
+        if (numRuns == MAX_RUNS) {
+          return toBitmap().add(low);
+        }
+        if (2 * numRuns == runs.length) {
+          runs = Arrays.copyOf(runs, Math.min(2 * MAX_RUNS, 2 * runs.length));
+        }
+        int pos = i + 1;
+        System.arraycopy(runs, 2 * pos, runs, 2 * pos + 2, 2 * (numRuns - pos));
+        runs[2 * pos] = (char) low;
+        runs[2 * pos + 1] = 0;
+        numRuns++;
+      }
+      cardinality++;
+      return this;
+    }
+
+    Container addSorted(int[] lows, int n) {
+      Container c = this;
+      for (int j = 0; j < n; j++) {
+        c = c.add(lows[j]);
+      }
+      return c;
+    }
+
+    Container orWords(long[] words, int added) {
+      return toBitmap().orWords(words, added);
+    }
+
+    void toWords(long[] words) {
+      Arrays.fill(words, 0L);
+      for (int i = 0; i < numRuns; i++) {
+        setRange(words, runs[2 * i], runs[2 * i] + runs[2 * i + 1]);
+      }
+    }
+
+    void andNotInto(long[] words) {
+      for (int i = 0; i < numRuns; i++) {
+        clearRange(words, runs[2 * i], runs[2 * i] + runs[2 * i + 1]);
+      }
+    }
+
+    boolean intersects(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.intersects(this);
+      }
+      if (other instanceof BitmapContainer) {
+        long[] words = ((BitmapContainer) other).words;
+        for (int i = 0; i < numRuns; i++) {
+          if (intersectsRange(words, runs[2 * i], runs[2 * i] + runs[2 * i + 1])) {
+            return true;
+          }
+        }
+        return false;
+      }
+      RunContainer o = (RunContainer) other;
+      int i = 0;
+      int j = 0;
+      while (i < numRuns && j < o.numRuns) {
+        int end = runs[2 * i] + runs[2 * i + 1];
+        int oend = o.runs[2 * j] + o.runs[2 * j + 1];
+        if (end < o.runs[2 * j]) {
+          i++;
+        } else if (oend < runs[2 * i]) {
+          j++;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void forall(int base, ArrayNumberer<AllocNode> numberer, P2SetVisitor v) {
+      for (int i = 0; i < numRuns; i++) {
+        int start = base | runs[2 * i];
+        int end = start + runs[2 * i + 1];
+        for (int n = start; n <= end; n++) {
+          v.visit(numberer.get(n));
+        }
+      }
+    }
+
+    private BitmapContainer toBitmap() {
+      long[] words = new long[WORDS];
+      toWords(words);
+      return new BitmapContainer(words, cardinality);
+    }
+  }
+
+  private int[] keys = null;
+  private Container[] containers = null;
+  private int numContainers = 0;
+  private PAG pag = null;
+}
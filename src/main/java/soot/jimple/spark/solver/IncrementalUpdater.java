@@ -0,0 +1,388 @@
+package soot.jimple.spark.solver;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.G;
+import soot.SootMethod;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.spark.pag.AllocDotField;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.FieldRefNode;
+import soot.jimple.spark.pag.MethodPAG;
+import soot.jimple.spark.pag.NewInstanceNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.pag.SparkField;
+import soot.jimple.spark.pag.VarNode;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.SparkOptions;
+import soot.toolkits.scalar.Pair;
+import soot.util.queue.QueueReader;
+
+/**
+ * Updates a solved pointer assignment graph after the bodies of some methods have changed. The method PAGs of the changed
+ * methods are rebuilt, their old edges and the call graph edges out of them are removed, and the new ones are added.
+ * Points-to sets that may have depended on a removed edge are emptied and computed again from their predecessors; all other
+ * points-to sets are kept and only propagated along the new edges.
+ *
+ * <p>
+ * {@link #update(Collection)} returns false when it cannot update the solution, and the caller then has to solve from
+ * scratch. This happens when the change may alter virtual dispatch, when edges to or from reflective instantiation nodes
+ * change, or when the emptied region grows beyond {@value #MAX_AFFECTED_PERCENT} percent of the graph. Call edges found
+ * from points-to sets that shrink are kept, so the call graph may be less precise than after a full solve.
+ * </p>
+ */
+public final class IncrementalUpdater {
+  private static final Logger logger = LoggerFactory.getLogger(IncrementalUpdater.class);
+
+  /** Give up once more than this percentage of the variable and field nodes would be recomputed. */
+  private static final int MAX_AFFECTED_PERCENT = 25;
+
+  private final PAG pag;
+  private final OnFlyCallGraph ofcg;
+  private final Set<VarNode> affectedVars = new HashSet<VarNode>();
+  private final Set<AllocDotField> affectedFields = new HashSet<AllocDotField>();
+  private final Deque<Node> worklist = new ArrayDeque<Node>();
+  private Map<SparkField, List<FieldRefNode>> fieldToLoads;
+  private int limit;
+
+  public IncrementalUpdater(PAG pag) {
+    this.pag = pag;
+    this.ofcg = pag.getOnFlyCallGraph();
+  }
+
+  /**
+   * Returns true if the solution in pag was computed with options that allow it to be updated. Options that may merge nodes
+   * are rejected, since the updater works on the nodes of the method PAGs and not on their replacements.
+   */
+  public static boolean supports(PAG pag) {
+    SparkOptions opts = pag.getOpts();
+    return pag.getOnFlyCallGraph() != null && opts.propagator() == SparkOptions.propagator_worklist && !opts.geom_pta()
+        && !opts.cs_demand() && !opts.vta() && !opts.simplify_sccs() && !opts.simplify_offline()
+        && !pag.getCGOpts().types_for_invoke();
+  }
+
+  /**
+   * Updates the solution after the bodies of the given methods have been changed, or the methods have been added to or
+   * removed from their classes. Returns false if the solution could not be updated; the graph must then be discarded.
+   */
+  public boolean update(Collection<SootMethod> changed) {
+    if (!supports(pag)) {
+      return false;
+    }
+    CallGraph cg = ofcg.callGraph();
+    for (SootMethod m : changed) {
+      if (!canUpdate(m, changed, cg)) {
+        return false;
+      }
+    }
+
+    // Retract the old edges of the changed methods and of their call sites
+    List<Node> removed = new ArrayList<Node>();
+    List<SootMethod> rebuild = new ArrayList<SootMethod>();
+    for (SootMethod m : changed) {
+      MethodPAG old = G.v().MethodPAG_methodToPag.get(m);
+      if (old == null) {
+        // Not in the graph yet; it is built when it becomes reachable
+        continue;
+      }
+      MethodPAG.invalidate(m);
+      if (!old.hasBeenAdded()) {
+        continue;
+      }
+      retract(old.getEdges(), removed);
+      retractCallEdges(m, cg, removed);
+      rebuild.add(m);
+    }
+
+    // Add the edges of the new bodies
+    QueueReader<Node> addedEdges = pag.edgeReader();
+    for (SootMethod m : rebuild) {
+      if (isPresent(m)) {
+        MethodPAG mpag = MethodPAG.v(pag, m);
+        mpag.build();
+        mpag.addToPAG(null);
+      }
+    }
+    for (SootMethod m : rebuild) {
+      ofcg.reprocessMethod(m);
+    }
+
+    List<Node> added = new ArrayList<Node>();
+    while (addedEdges.hasNext()) {
+      added.add(addedEdges.next());
+    }
+    if (involvesNewInstance(added) || involvesNewInstance(removed)) {
+      return false;
+    }
+    List<Node> deleted = new ArrayList<Node>();
+    for (int i = 0; i < removed.size(); i += 2) {
+      if (!hasEdge(removed.get(i), removed.get(i + 1))) {
+        deleted.add(removed.get(i));
+        deleted.add(removed.get(i + 1));
+      }
+    }
+    if (!collectAffected(deleted)) {
+      return false;
+    }
+    if (pag.getOpts().verbose()) {
+      logger.debug("[Spark] Incremental update: " + rebuild.size() + " methods rebuilt, " + deleted.size() / 2
+          + " edges removed, " + added.size() / 2 + " edges added, " + (affectedVars.size() + affectedFields.size())
+          + " nodes recomputed");
+    }
+
+    // Recompute the affected points-to sets from their predecessors, then propagate
+    for (VarNode v : affectedVars) {
+      v.discardP2Set();
+    }
+    for (AllocDotField adf : affectedFields) {
+      adf.discardP2Set();
+    }
+    Set<VarNode> seeds = new HashSet<VarNode>(affectedVars);
+    for (int i = 1; i < added.size(); i += 2) {
+      if (added.get(i) instanceof VarNode) {
+        seeds.add((VarNode) added.get(i));
+      }
+    }
+    for (VarNode v : seeds) {
+      pull(v);
+    }
+    new PropWorklist(pag).propagate(seeds);
+    return true;
+  }
+
+  private boolean canUpdate(SootMethod m, Collection<SootMethod> changed, CallGraph cg) {
+    MethodPAG old = G.v().MethodPAG_methodToPag.get(m);
+    if (old == null) {
+      // A new method that may override another one changes virtual dispatch
+      return !isPresent(m) || m.isStatic() || m.isPrivate() || m.isConstructor() || m.isStaticInitializer();
+    }
+    if (!isPresent(m)) {
+      // Callers that have not changed would keep calling a removed method
+      for (Iterator<Edge> it = cg.edgesInto(m); it.hasNext();) {
+        if (!changed.contains(it.next().src())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPresent(SootMethod m) {
+    return m.isDeclared() && (m.isConcrete() || m.isNative());
+  }
+
+  private void retract(List<Node> edges, List<Node> removed) {
+    for (int i = 0; i < edges.size(); i += 2) {
+      Node src = edges.get(i);
+      Node dst = edges.get(i + 1);
+      if (pag.removeEdge(src, dst)) {
+        removed.add(src);
+        removed.add(dst);
+      }
+    }
+  }
+
+  private void retractCallEdges(SootMethod m, CallGraph cg, List<Node> removed) {
+    List<Edge> edges = new ArrayList<Edge>();
+    for (Iterator<Edge> it = cg.edgesOutOf(m); it.hasNext();) {
+      edges.add(it.next());
+    }
+    for (Edge e : edges) {
+      Stmt s = e.srcStmt();
+      if (s != null && s.containsInvokeExpr()) {
+        InvokeExpr ie = s.getInvokeExpr();
+        Set<Pair<Node, Node>> assigns = pag.callAssigns.get(ie);
+        if (assigns != null) {
+          for (Pair<Node, Node> p : assigns) {
+            if (pag.removeEdge(p.getO1(), p.getO2())) {
+              removed.add(p.getO1());
+              removed.add(p.getO2());
+            }
+          }
+        }
+        pag.callAssigns.remove(ie);
+        pag.callToMethod.remove(ie);
+        pag.virtualCallsToReceivers.remove(ie);
+      }
+      cg.removeEdge(e);
+    }
+  }
+
+  private boolean hasEdge(Node src, Node dst) {
+    Node[] targets;
+    if (src instanceof VarNode) {
+      if (dst instanceof VarNode) {
+        targets = pag.simpleLookup((VarNode) src);
+      } else {
+        targets = pag.storeLookup((VarNode) src);
+      }
+    } else if (src instanceof FieldRefNode) {
+      targets = pag.loadLookup((FieldRefNode) src);
+    } else {
+      targets = pag.allocLookup((AllocNode) src);
+    }
+    for (Node element : targets) {
+      if (element == dst) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean involvesNewInstance(List<Node> edges) {
+    for (Node n : edges) {
+      if (n instanceof NewInstanceNode) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Collects the nodes whose points-to sets may have depended on one of the deleted edges, using the old points-to sets.
+   * Returns false if there are too many of them.
+   */
+  private boolean collectAffected(List<Node> deleted) {
+    limit = (pag.getVarNodeNumberer().size() + pag.getAllocDotFieldNodeNumberer().size()) * MAX_AFFECTED_PERCENT / 100;
+    for (int i = 1; i < deleted.size(); i += 2) {
+      Node tgt = deleted.get(i);
+      if (tgt instanceof VarNode) {
+        addAffected((VarNode) tgt);
+      } else {
+        addAffectedFields((FieldRefNode) tgt);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      if (affectedVars.size() + affectedFields.size() > limit) {
+        return false;
+      }
+      Node n = worklist.removeFirst();
+      if (n instanceof VarNode) {
+        VarNode v = (VarNode) n;
+        if (pag.newInstanceLookup(v).length > 0) {
+          return false;
+        }
+        for (Node element : pag.simpleLookup(v)) {
+          addAffected((VarNode) element);
+        }
+        for (Node element : pag.storeLookup(v)) {
+          addAffectedFields((FieldRefNode) element);
+        }
+        // v may be the base of field references that now lead elsewhere
+        for (FieldRefNode fr : v.getAllFieldRefs()) {
+          for (Node element : pag.loadLookup(fr)) {
+            addAffected((VarNode) element);
+          }
+          if (pag.storeInvLookup(fr).length > 0) {
+            addAffectedFields(fr);
+          }
+        }
+      } else {
+        AllocDotField adf = (AllocDotField) n;
+        List<FieldRefNode> loads = loadsOf(adf.getField());
+        for (FieldRefNode fr : loads) {
+          if (fr.getBase().getP2Set().contains(adf.getBase())) {
+            for (Node element : pag.loadLookup(fr)) {
+              addAffected((VarNode) element);
+            }
+          }
+        }
+      }
+    }
+    return affectedVars.size() + affectedFields.size() <= limit;
+  }
+
+  private void addAffected(VarNode v) {
+    if (affectedVars.add(v)) {
+      worklist.add(v);
+    }
+  }
+
+  private void addAffectedFields(FieldRefNode fr) {
+    final SparkField field = fr.getField();
+    fr.getBase().getP2Set().forall(new P2SetVisitor() {
+      public final void visit(Node n) {
+        AllocDotField adf = ((AllocNode) n).dot(field);
+        if (adf != null && affectedFields.add(adf)) {
+          worklist.add(adf);
+        }
+      }
+    });
+  }
+
+  private List<FieldRefNode> loadsOf(SparkField field) {
+    if (fieldToLoads == null) {
+      fieldToLoads = new HashMap<SparkField, List<FieldRefNode>>();
+      for (FieldRefNode fr : pag.loadSources()) {
+        List<FieldRefNode> loads = fieldToLoads.get(fr.getField());
+        if (loads == null) {
+          fieldToLoads.put(fr.getField(), loads = new ArrayList<FieldRefNode>());
+        }
+        loads.add(fr);
+      }
+    }
+    List<FieldRefNode> ret = fieldToLoads.get(field);
+    return ret == null ? new ArrayList<FieldRefNode>() : ret;
+  }
+
+  /** Adds the points-to sets of all direct predecessors of v to its own. */
+  private void pull(final VarNode v) {
+    for (Node element : pag.allocInvLookup(v)) {
+      v.makeP2Set().add(element);
+    }
+    for (Node element : pag.simpleInvLookup(v)) {
+      v.makeP2Set().addAll(element.getP2Set(), null);
+    }
+    for (Node element : pag.loadInvLookup(v)) {
+      final SparkField field = ((FieldRefNode) element).getField();
+      ((FieldRefNode) element).getBase().getP2Set().forall(new P2SetVisitor() {
+        public final void visit(Node n) {
+          AllocDotField adf = ((AllocNode) n).dot(field);
+          if (adf != null) {
+            PointsToSetInternal p2set = adf.getP2Set();
+            v.makeP2Set().addAll(p2set, null);
+          }
+        }
+      });
+    }
+  }
+}
@@ -22,10 +22,16 @@ package soot.jimple.spark.solver;
  * #L%
  */
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import soot.BodyResidencyManager;
 import soot.Context;
 import soot.Local;
 import soot.MethodOrMethodContext;
 import soot.Scene;
+import soot.SootMethod;
 import soot.Type;
 import soot.jimple.IntConstant;
 import soot.jimple.NewArrayExpr;
@@ -92,6 +98,7 @@ public class OnFlyCallGraph {
       MethodPAG mpag = MethodPAG.v(pag, m.method());
       mpag.build();
       mpag.addToPAG(m.context());
+      BodyResidencyManager.v().safePoint();
     }
   }
 
@@ -124,6 +131,36 @@ public class OnFlyCallGraph {
   }
 
   public void updatedNode(VarNode vn) {
+    updatedNode(vn, vn.getP2Set().getNewSet());
+  }
+
+  /**
+   * Re-registers the call sites of method m after its body has been replaced, and feeds them the points-to sets their
+   * receivers already have. Edges out of m must have been removed from the call graph before.
+   */
+  public void reprocessMethod(SootMethod m) {
+    ofcgb.reprocessMethod(m);
+    Set<Local> locals = new HashSet<Local>();
+    addAll(locals, ofcgb.methodToReceivers().get(m));
+    addAll(locals, ofcgb.methodToStringConstants().get(m));
+    addAll(locals, ofcgb.methodToInvokeBases().get(m));
+    addAll(locals, ofcgb.methodToInvokeArgs().get(m));
+    for (Local l : locals) {
+      VarNode vn = pag.findLocalVarNode(l);
+      if (vn != null && !vn.getP2Set().isEmpty()) {
+        updatedNode(vn, vn.getP2Set());
+      }
+    }
+    build();
+  }
+
+  private static void addAll(Set<Local> locals, List<Local> toAdd) {
+    if (toAdd != null) {
+      locals.addAll(toAdd);
+    }
+  }
+
+  private void updatedNode(VarNode vn, PointsToSetInternal p2set) {
     Object r = vn.getVariable();
     if (!(r instanceof Local)) {
       return;
@@ -131,7 +168,6 @@ public class OnFlyCallGraph {
     final Local receiver = (Local) r;
     final Context context = vn.context();
 
-    PointsToSetInternal p2set = vn.getP2Set().getNewSet();
     if (ofcgb.wantTypes(receiver)) {
       p2set.forall(new P2SetVisitor() {
         public final void visit(Node n) {
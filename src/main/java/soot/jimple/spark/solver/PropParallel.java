@@ -0,0 +1,654 @@
+package soot.jimple.spark.solver;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.G;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.jimple.spark.builder.ContextInsensitiveBuilder;
+import soot.jimple.spark.pag.AllocDotField;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.ClassConstantNode;
+import soot.jimple.spark.pag.FieldRefNode;
+import soot.jimple.spark.pag.MethodPAG;
+import soot.jimple.spark.pag.NewInstanceNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.pag.SparkField;
+import soot.jimple.spark.pag.VarNode;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.jimple.toolkits.callgraph.ReachableMethods;
+import soot.options.Options;
+import soot.options.SparkOptions;
+import soot.toolkits.scalar.Pair;
+import soot.util.queue.QueueReader;
+
+/**
+ * Propagates points-to sets along the pointer assignment graph using a worklist that is processed in rounds by several
+ * threads.
+ *
+ * <p>
+ * Each round takes the whole worklist as its frontier. The on-the-fly call graph is updated sequentially for the frontier
+ * first. Then the new part of every points-to set in the frontier is captured and flushed, and the captured sets are pushed
+ * along the simple assignment edges in parallel. Every target node is owned by exactly one thread, which is the only one
+ * to write its points-to set, so the points-to sets themselves need no synchronization. Stores and loads, which create
+ * nodes in the pointer assignment graph, are handled sequentially at the end of the round.
+ * </p>
+ *
+ * <p>
+ * The result is the same as that of {@link PropWorklist}. This propagator requires the <code>double</code> set
+ * implementation, because it relies on the split into old and new sets; with any other implementation it falls back to
+ * {@link PropWorklist}.
+ * </p>
+ */
+public final class PropParallel extends Propagator {
+  private static final Logger logger = LoggerFactory.getLogger(PropParallel.class);
+  private static final int MAX_REPORTED_DIFFERENCES = 20;
+
+  protected final Set<VarNode> varNodeWorkList = new TreeSet<VarNode>();
+  protected PAG pag;
+  protected OnFlyCallGraph ofcg;
+  private final int numThreads;
+  private ExecutorService executor;
+
+  public PropParallel(PAG pag) {
+    this(pag, Options.v().num_threads() > 0 ? Options.v().num_threads() : Runtime.getRuntime().availableProcessors());
+  }
+
+  public PropParallel(PAG pag, int numThreads) {
+    this.pag = pag;
+    this.numThreads = Math.max(1, numThreads);
+  }
+
+  /** Actually does the propagation. */
+  public final void propagate() {
+    SparkOptions opts = pag.getOpts();
+    if (opts.set_impl() != SparkOptions.set_impl_double) {
+      logger.warn("The parallel propagator requires the double set implementation; using the worklist propagator instead");
+      new PropWorklist(pag).propagate();
+      return;
+    }
+
+    ofcg = pag.getOnFlyCallGraph();
+    new TopoSorter(pag, false).sort();
+    executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (AllocNode object : pag.allocSources()) {
+        handleAllocNode(object);
+      }
+
+      boolean verbose = opts.verbose();
+      do {
+        if (verbose) {
+          logger.debug("Worklist has " + varNodeWorkList.size() + " nodes.");
+        }
+        int rounds = 0;
+        while (!varNodeWorkList.isEmpty()) {
+          VarNode[] frontier = varNodeWorkList.toArray(new VarNode[varNodeWorkList.size()]);
+          varNodeWorkList.clear();
+          handleFrontier(frontier);
+          rounds++;
+        }
+        if (verbose) {
+          logger.debug("Propagated in " + rounds + " rounds on " + numThreads + " threads.");
+          logger.debug("Now handling field references");
+        }
+        handleFieldRefs();
+      } while (!varNodeWorkList.isEmpty());
+    } finally {
+      executor.shutdown();
+      executor = null;
+    }
+
+    if (opts.check_parallel()) {
+      check();
+    }
+  }
+
+  /* End of public methods. */
+  /* End of package methods. */
+
+  /**
+   * Propagates new points-to information of node src to all its successors.
+   */
+  protected final boolean handleAllocNode(AllocNode src) {
+    boolean ret = false;
+    Node[] targets = pag.allocLookup(src);
+    for (Node element : targets) {
+      if (element.makeP2Set().add(src)) {
+        varNodeWorkList.add((VarNode) element);
+        ret = true;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Propagates the new points-to information of all nodes in the frontier to their successors. The frontier is sorted in
+   * the same order as the worklist.
+   */
+  private void handleFrontier(final VarNode[] frontier) {
+    for (VarNode src : frontier) {
+      if (src.getReplacement() != src) {
+        throw new RuntimeException("Got bad node " + src + " with rep " + src.getReplacement());
+      }
+    }
+
+    // The call graph builder looks at the new sets, so it has to run before they are flushed
+    if (ofcg != null) {
+      for (VarNode src : frontier) {
+        if (!src.getP2Set().getNewSet().isEmpty()) {
+          updateCallGraph(src);
+        }
+      }
+    }
+
+    // Make sure that all nodes and type masks exist, so that the parallel phase only reads shared state
+    for (VarNode src : frontier) {
+      for (Node element : pag.simpleLookup(src)) {
+        element.makeP2Set();
+      }
+    }
+    pag.getTypeManager().updateTypeMasks();
+
+    // Capture and flush the new sets, and sort the edges by the thread that owns their target
+    final int slices = Math.min(numThreads, frontier.length);
+    final PointsToSetInternal[] deltas = new PointsToSetInternal[frontier.length];
+    final EdgeBucket[][] buckets = new EdgeBucket[slices][numThreads];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(slices);
+    for (int s = 0; s < slices; s++) {
+      final int slice = s;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          EdgeBucket[] mine = buckets[slice];
+          for (int i = 0; i < numThreads; i++) {
+            mine[i] = new EdgeBucket();
+          }
+          for (int i = slice; i < frontier.length; i += slices) {
+            PointsToSetInternal p2Set = frontier[i].getP2Set();
+            PointsToSetInternal newP2Set = p2Set.getNewSet();
+            if (newP2Set.isEmpty()) {
+              continue;
+            }
+            deltas[i] = newP2Set;
+            p2Set.flushNew();
+            for (Node element : pag.simpleLookup(frontier[i])) {
+              Node target = element.getReplacement();
+              mine[ownerOf(target)].add(i, target);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+
+    // Push the captured sets to the targets; each thread writes only to the targets it owns
+    @SuppressWarnings("unchecked")
+    final List<VarNode>[] changed = new List[numThreads];
+    tasks.clear();
+    for (int o = 0; o < numThreads; o++) {
+      final int owner = o;
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          List<VarNode> mine = new ArrayList<VarNode>();
+          for (EdgeBucket[] sliceBuckets : buckets) {
+            EdgeBucket bucket = sliceBuckets[owner];
+            for (int i = 0; i < bucket.size; i++) {
+              Node target = bucket.targets[i];
+              if (target.makeP2Set().addAll(deltas[bucket.sources[i]], null)) {
+                mine.add((VarNode) target);
+              }
+            }
+          }
+          changed[owner] = mine;
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+    for (List<VarNode> mine : changed) {
+      varNodeWorkList.addAll(mine);
+    }
+
+    for (int i = 0; i < frontier.length; i++) {
+      if (deltas[i] != null) {
+        handleFieldAccesses(frontier[i], deltas[i]);
+      }
+    }
+  }
+
+  private int ownerOf(Node target) {
+    return (target.getNumber() & Integer.MAX_VALUE) % numThreads;
+  }
+
+  private void invokeAll(List<Callable<Void>> tasks) {
+    try {
+      for (Future<Void> f : executor.invokeAll(tasks)) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Lets the on-the-fly call graph builder look at the new points-to set of src, and propagates along the edges it adds.
+   */
+  private void updateCallGraph(final VarNode src) {
+    QueueReader<Node> addedEdges = pag.edgeReader();
+    ofcg.updatedNode(src);
+    ofcg.build();
+
+    while (addedEdges.hasNext()) {
+      Node addedSrc = (Node) addedEdges.next();
+      Node addedTgt = (Node) addedEdges.next();
+      if (addedSrc instanceof VarNode) {
+        VarNode edgeSrc = (VarNode) addedSrc.getReplacement();
+        if (addedTgt instanceof VarNode) {
+          VarNode edgeTgt = (VarNode) addedTgt.getReplacement();
+          if (edgeTgt.makeP2Set().addAll(edgeSrc.getP2Set(), null)) {
+            varNodeWorkList.add(edgeTgt);
+          }
+        } else if (addedTgt instanceof NewInstanceNode) {
+          NewInstanceNode edgeTgt = (NewInstanceNode) addedTgt.getReplacement();
+          if (edgeTgt.makeP2Set().addAll(edgeSrc.getP2Set(), null)) {
+            for (Node element : pag.assignInstanceLookup(edgeTgt)) {
+              varNodeWorkList.add((VarNode) element);
+            }
+          }
+        }
+      } else if (addedSrc instanceof AllocNode) {
+        VarNode edgeTgt = (VarNode) addedTgt.getReplacement();
+        if (edgeTgt.makeP2Set().add(addedSrc)) {
+          varNodeWorkList.add(edgeTgt);
+        }
+      } else if (addedSrc instanceof NewInstanceNode && addedTgt instanceof VarNode) {
+        final NewInstanceNode edgeSrc = (NewInstanceNode) addedSrc.getReplacement();
+        final VarNode edgeTgt = (VarNode) addedTgt.getReplacement();
+        addedSrc.getP2Set().forall(new P2SetVisitor() {
+
+          @Override
+          public void visit(Node n) {
+            if (n instanceof ClassConstantNode) {
+              ClassConstantNode ccn = (ClassConstantNode) n;
+              Type ccnType = ccn.getClassConstant().toSootType();
+
+              // If the referenced class has not been loaded,
+              // we do this now
+              SootClass targetClass = ((RefType) ccnType).getSootClass();
+              if (targetClass.resolvingLevel() == SootClass.DANGLING) {
+                Scene.v().forceResolve(targetClass.getName(), SootClass.SIGNATURES);
+              }
+
+              // We can only create alloc nodes for types that
+              // we know
+              edgeTgt.makeP2Set().add(pag.makeAllocNode(edgeSrc.getValue(), ccnType, ccn.getMethod()));
+              varNodeWorkList.add(edgeTgt);
+            }
+          }
+
+        });
+        edgeTgt.makeP2Set().add(addedSrc);
+      }
+    }
+  }
+
+  /**
+   * Propagates the points-to information newP2Set, which has just been added to src, through the stores and loads that
+   * involve src.
+   */
+  private void handleFieldAccesses(final VarNode src, final PointsToSetInternal newP2Set) {
+    Node[] storeTargets = pag.storeLookup(src);
+    for (Node element : storeTargets) {
+      final FieldRefNode fr = (FieldRefNode) element;
+      final SparkField f = fr.getField();
+      fr.getBase().getP2Set().forall(new P2SetVisitor() {
+        public final void visit(Node n) {
+          AllocDotField nDotF = pag.makeAllocDotField((AllocNode) n, f);
+          nDotF.makeP2Set().addAll(newP2Set, null);
+        }
+      });
+    }
+
+    final HashSet<Node[]> storesToPropagate = new HashSet<Node[]>();
+    final HashSet<Node[]> loadsToPropagate = new HashSet<Node[]>();
+    for (final FieldRefNode fr : src.getAllFieldRefs()) {
+      final SparkField field = fr.getField();
+      final Node[] storeSources = pag.storeInvLookup(fr);
+      if (storeSources.length > 0) {
+        newP2Set.forall(new P2SetVisitor() {
+          public final void visit(Node n) {
+            AllocDotField nDotF = pag.makeAllocDotField((AllocNode) n, field);
+            for (Node element : storeSources) {
+              Node[] pair = { element, nDotF.getReplacement() };
+              storesToPropagate.add(pair);
+            }
+          }
+        });
+      }
+
+      final Node[] loadTargets = pag.loadLookup(fr);
+      if (loadTargets.length > 0) {
+        newP2Set.forall(new P2SetVisitor() {
+          public final void visit(Node n) {
+            AllocDotField nDotF = pag.makeAllocDotField((AllocNode) n, field);
+            if (nDotF != null) {
+              for (Node element : loadTargets) {
+                Node[] pair = { nDotF.getReplacement(), element };
+                loadsToPropagate.add(pair);
+              }
+            }
+          }
+        });
+      }
+    }
+    for (Node[] p : storesToPropagate) {
+      VarNode storeSource = (VarNode) p[0];
+      AllocDotField nDotF = (AllocDotField) p[1];
+      nDotF.makeP2Set().addAll(storeSource.getP2Set(), null);
+    }
+    for (Node[] p : loadsToPropagate) {
+      AllocDotField nDotF = (AllocDotField) p[0];
+      VarNode loadTarget = (VarNode) p[1];
+      if (loadTarget.makeP2Set().addAll(nDotF.getP2Set(), null)) {
+        varNodeWorkList.add(loadTarget);
+      }
+    }
+  }
+
+  /**
+   * Propagates along all stores and loads, like the corresponding step of {@link PropWorklist}.
+   */
+  private void handleFieldRefs() {
+    for (Object object : pag.storeSources()) {
+      final VarNode src = (VarNode) object;
+      Node[] targets = pag.storeLookup(src);
+      for (Node element0 : targets) {
+        final FieldRefNode target = (FieldRefNode) element0;
+        target.getBase().makeP2Set().forall(new P2SetVisitor() {
+          public final void visit(Node n) {
+            AllocDotField nDotF = pag.makeAllocDotField((AllocNode) n, target.getField());
+            if (ofcg != null) {
+              ofcg.updatedFieldRef(nDotF, src.getP2Set());
+            }
+            nDotF.makeP2Set().addAll(src.getP2Set(), null);
+          }
+        });
+      }
+    }
+    HashSet<Object[]> edgesToPropagate = new HashSet<Object[]>();
+    for (Object object : pag.loadSources()) {
+      handleFieldRefNode((FieldRefNode) object, edgesToPropagate);
+    }
+    Set<PointsToSetInternal> nodesToFlush = Collections.newSetFromMap(new IdentityHashMap<PointsToSetInternal, Boolean>());
+    for (Object[] pair : edgesToPropagate) {
+      PointsToSetInternal nDotF = (PointsToSetInternal) pair[0];
+      PointsToSetInternal newP2Set = nDotF.getNewSet();
+      VarNode loadTarget = (VarNode) pair[1];
+      if (loadTarget.makeP2Set().addAll(newP2Set, null)) {
+        varNodeWorkList.add(loadTarget);
+      }
+      nodesToFlush.add(nDotF);
+    }
+    for (PointsToSetInternal nDotF : nodesToFlush) {
+      nDotF.flushNew();
+    }
+  }
+
+  /**
+   * Propagates new points-to information of node src to all its successors.
+   */
+  protected final void handleFieldRefNode(FieldRefNode src, final HashSet<Object[]> edgesToPropagate) {
+    final Node[] loadTargets = pag.loadLookup(src);
+    if (loadTargets.length == 0) {
+      return;
+    }
+    final SparkField field = src.getField();
+
+    src.getBase().getP2Set().forall(new P2SetVisitor() {
+
+      public final void visit(Node n) {
+        AllocDotField nDotF = pag.makeAllocDotField((AllocNode) n, field);
+        if (nDotF != null) {
+          PointsToSetInternal p2Set = nDotF.getP2Set();
+          if (!p2Set.getNewSet().isEmpty()) {
+            for (Node element : loadTargets) {
+              Object[] pair = { p2Set, element };
+              edgesToPropagate.add(pair);
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Builds a new pointer assignment graph from the same bodies and options, propagates it with {@link PropWorklist}, and
+   * compares the points-to sets of all variables and fields and, with the on-the-fly call graph, the call edges to the ones
+   * computed by this propagator in both directions. Throws an exception if they differ.
+   */
+  private void check() {
+    logger.info("Checking the result of the parallel propagator against the worklist propagator");
+    PAG sequential = solveSequentially();
+
+    int differences = compare("points-to sets", pointsToSets(pag), pointsToSets(sequential));
+    if (ofcg != null) {
+      differences += compare("call edges", callEdges(ofcg), callEdges(sequential.getOnFlyCallGraph()));
+    }
+    if (differences > 0) {
+      throw new RuntimeException("The parallel propagator computed " + differences
+          + " different points-to sets or call edges than the worklist propagator");
+    }
+    logger.info("The parallel propagator computed the same points-to sets and call edges as the worklist propagator");
+  }
+
+  /**
+   * Builds and propagates a new pointer assignment graph the way {@link soot.jimple.spark.SparkTransformer} does, leaving
+   * the method graphs and the call graph of the checked run in place.
+   */
+  private PAG solveSequentially() {
+    SparkOptions opts = pag.getOpts();
+    Map<SootMethod, MethodPAG> methodPags = new HashMap<SootMethod, MethodPAG>(G.v().MethodPAG_methodToPag);
+    CallGraph callGraph = Scene.v().hasCallGraph() ? Scene.v().getCallGraph() : null;
+    ReachableMethods reachables = Scene.v().hasReachableMethods() ? Scene.v().getReachableMethods() : null;
+    G.v().MethodPAG_methodToPag.clear();
+    try {
+      ContextInsensitiveBuilder b = new ContextInsensitiveBuilder();
+      PAG ret = b.setup(opts);
+      b.build();
+      ret.getTypeManager().makeTypeMask();
+      if ((opts.simplify_sccs() && !opts.on_fly_cg()) || opts.vta()) {
+        new SCCCollapser(ret, opts.ignore_types_for_sccs()).collapse();
+      }
+      if (opts.simplify_offline() && !opts.on_fly_cg()) {
+        new EBBCollapser(ret).collapse();
+      }
+      ret.cleanUpMerges();
+      new PropWorklist(ret).propagate();
+      return ret;
+    } finally {
+      G.v().MethodPAG_methodToPag.clear();
+      G.v().MethodPAG_methodToPag.putAll(methodPags);
+      Scene.v().setCallGraph(callGraph);
+      Scene.v().setReachableMethods(reachables);
+    }
+  }
+
+  /**
+   * Returns the points-to sets of all variables and fields of the given graph that have a name which does not depend on
+   * the order in which the graph was built, keyed by that name. Merged nodes are included with the set of their
+   * representative.
+   */
+  private static Map<Object, Set<Object>> pointsToSets(PAG pag) {
+    Map<Object, Set<Object>> ret = new HashMap<Object, Set<Object>>();
+    for (VarNode vn : pag.getVarNodeNumberer()) {
+      Object key = key(vn);
+      if (key != null) {
+        ret.put(key, allocSites(vn.getReplacement().getP2Set()));
+      }
+    }
+    for (AllocDotField adf : pag.getAllocDotFieldNodeNumberer()) {
+      ret.put(key(adf), allocSites(adf.getReplacement().getP2Set()));
+    }
+    return ret;
+  }
+
+  private static Set<Edge> callEdges(OnFlyCallGraph ofcg) {
+    Set<Edge> ret = new HashSet<Edge>();
+    for (Edge e : ofcg.callGraph()) {
+      ret.add(e);
+    }
+    return ret;
+  }
+
+  private static <K, V> int compare(String what, Map<K, V> parallel, Map<K, V> sequential) {
+    int differences = 0;
+    Set<K> keys = new HashSet<K>(parallel.keySet());
+    keys.addAll(sequential.keySet());
+    for (K key : keys) {
+      V p = parallel.get(key);
+      V s = sequential.get(key);
+      if (p == null ? s != null : !p.equals(s)) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+          logger.warn("The " + what + " differ at " + key + ": parallel " + p + ", sequential " + s);
+        }
+        differences++;
+      }
+    }
+    return differences;
+  }
+
+  private static int compare(String what, Set<Edge> parallel, Set<Edge> sequential) {
+    int differences = 0;
+    for (Edge e : parallel) {
+      if (!sequential.contains(e)) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+          logger.warn("The " + what + " differ: only the parallel propagator found " + e);
+        }
+        differences++;
+      }
+    }
+    for (Edge e : sequential) {
+      if (!parallel.contains(e)) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+          logger.warn("The " + what + " differ: only the worklist propagator found " + e);
+        }
+        differences++;
+      }
+    }
+    return differences;
+  }
+
+  private static Set<Object> allocSites(PointsToSetInternal p2Set) {
+    final Set<Object> ret = new HashSet<Object>();
+    p2Set.forall(new P2SetVisitor() {
+      public final void visit(Node n) {
+        ret.add(key(n));
+      }
+    });
+    return ret;
+  }
+
+  /**
+   * Names a node by the program element it stands for. Returns null for the temporary variables of the native method
+   * simulation and the library helper, whose names are generated while the graph is built.
+   */
+  private static Object key(Node n) {
+    if (n instanceof AllocNode) {
+      AllocNode an = (AllocNode) n;
+      Object newExpr = an.getNewExpr();
+      if (newExpr.getClass() == Object.class) {
+        return Arrays.asList(an.getType(), an.getMethod());
+      }
+      return Arrays.asList(AllocNode.class, newExpr);
+    }
+    if (n instanceof AllocDotField) {
+      AllocDotField adf = (AllocDotField) n;
+      return Arrays.asList(key(adf.getBase()), adf.getField());
+    }
+    Object variable = ((VarNode) n).getVariable();
+    if (variable instanceof AllocNode) {
+      return Arrays.asList(VarNode.class, key((AllocNode) variable));
+    }
+    if (variable.getClass() == Object.class
+        || (variable instanceof Pair && "TempVar".equals(((Pair<?, ?>) variable).getO1()))) {
+      return null;
+    }
+    return variable;
+  }
+
+  /** A growable list of edges from an index into the frontier to a target node. */
+  private static final class EdgeBucket {
+    int[] sources = new int[16];
+    Node[] targets = new Node[16];
+    int size;
+
+    void add(int source, Node target) {
+      if (size == sources.length) {
+        sources = Arrays.copyOf(sources, size * 2);
+        targets = Arrays.copyOf(targets, size * 2);
+      }
+      sources[size] = source;
+      targets[size] = target;
+      size++;
+    }
+  }
+}
@@ -22,6 +22,7 @@ package soot.jimple.spark.solver;
  * #L%
  */
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -64,8 +65,17 @@ public final class PropWorklist extends Propagator {
 
   /** Actually does the propagation. */
   public final void propagate() {
+    propagate(Collections.<VarNode>emptySet());
+  }
+
+  /**
+   * Does the propagation, also starting from the new points-to sets of the given nodes. Used to update a solution after
+   * edges have been added to an already solved graph.
+   */
+  public final void propagate(Collection<? extends VarNode> seeds) {
     ofcg = pag.getOnFlyCallGraph();
     new TopoSorter(pag, false).sort();
+    varNodeWorkList.addAll(seeds);
     for (AllocNode object : pag.allocSources()) {
       handleAllocNode(object);
     }
@@ -33,7 +33,7 @@ import soot.Singletons;
 import soot.jimple.Stmt;
 import soot.tagkit.LinkTag;
 import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.MHGDominatorsFinder;
+import soot.toolkits.graph.DominatorsFinder;
 
 /**
  * A body transformer that records avail expression information in tags. - both pessimistic and optimistic options
@@ -48,7 +48,7 @@ public class DominatorsTagger extends BodyTransformer {
 
   protected void internalTransform(Body b, String phaseName, Map opts) {
 
-    MHGDominatorsFinder analysis = new MHGDominatorsFinder(new ExceptionalUnitGraph(b));
+    DominatorsFinder analysis = DominatorsFinder.Factory.newDominatorsFinder(new ExceptionalUnitGraph(b));
     Iterator it = b.getUnits().iterator();
     while (it.hasNext()) {
       Stmt s = (Stmt) it.next();
@@ -36,7 +36,7 @@ import soot.BodyTransformer;
 import soot.Unit;
 import soot.jimple.Stmt;
 import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.MHGDominatorsFinder;
+import soot.toolkits.graph.DominatorsFinder;
 import soot.toolkits.graph.UnitGraph;
 
 public class LoopFinder extends BodyTransformer {
@@ -63,7 +63,7 @@ public class LoopFinder extends BodyTransformer {
       return loops;
     }
 
-    MHGDominatorsFinder<Unit> a = new MHGDominatorsFinder<Unit>(g);
+    DominatorsFinder<Unit> a = DominatorsFinder.Factory.newDominatorsFinder(g);
     Map<Stmt, List<Stmt>> loops = new HashMap<Stmt, List<Stmt>>();
 
     for (Unit u : g.getBody().getUnits()) {
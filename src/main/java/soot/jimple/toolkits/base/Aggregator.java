@@ -32,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import soot.Body;
+import soot.BodyAnalysisCache;
 import soot.BodyTransformer;
 import soot.G;
 import soot.Local;
@@ -122,13 +123,21 @@ public class Aggregator extends BodyTransformer {
 
   }
 
+  // Every aggregation removes the def from the unit chain, so the
+  // cached analyses are dropped whenever a use box is changed
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
+
   private static boolean internalAggregate(StmtBody body, Map<ValueBox, Zone> boxToZone, boolean onlyStackVars) {
     boolean hadAggregation = false;
     Chain<Unit> units = body.getUnits();
 
-    ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body);
-    LocalDefs localDefs = LocalDefs.Factory.newLocalDefs(graph);
-    LocalUses localUses = LocalUses.Factory.newLocalUses(body, localDefs);
+    BodyAnalysisCache cache = body.getAnalysisCache();
+    ExceptionalUnitGraph graph = cache.getExceptionalUnitGraph();
+    LocalDefs localDefs = cache.getLocalDefs(graph);
+    LocalUses localUses = cache.getLocalUses(graph);
 
     List<Unit> unitList = new PseudoTopologicalOrderer<Unit>().newList(graph, false);
     for (Unit u : unitList) {
@@ -22,10 +22,14 @@ package soot.jimple.toolkits.callgraph;
  * #L%
  */
 
+import heros.solver.CountingThreadPoolExecutor;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,9 +37,11 @@ import org.slf4j.LoggerFactory;
 import soot.EntryPoints;
 import soot.Local;
 import soot.MethodOrMethodContext;
+import soot.PhaseOptions;
 import soot.PointsToAnalysis;
 import soot.PointsToSet;
 import soot.Scene;
+import soot.SootMethod;
 import soot.Type;
 import soot.Value;
 import soot.jimple.IntConstant;
@@ -45,6 +51,9 @@ import soot.jimple.spark.pag.ArrayElement;
 import soot.jimple.spark.pag.Node;
 import soot.jimple.spark.sets.P2SetVisitor;
 import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
+import soot.options.CGOptions;
+import soot.options.Options;
 import soot.util.queue.QueueReader;
 
 /**
@@ -58,6 +67,7 @@ public final class CallGraphBuilder {
   private final ReachableMethods reachables;
   private final OnFlyCallGraphBuilder ofcgb;
   private final CallGraph cg;
+  private BodyPreparer preparer;
 
   public CallGraph getCallGraph() {
     return cg;
@@ -81,6 +91,7 @@ public final class CallGraphBuilder {
     reachables = Scene.v().getReachableMethods();
     ContextManager cm = makeContextManager(cg);
     ofcgb = new OnFlyCallGraphBuilder(cm, reachables);
+    setupPreparer();
   }
 
   /**
@@ -99,9 +110,38 @@ public final class CallGraphBuilder {
     reachables = new ReachableMethods(cg, entryPoints);
     ContextManager cm = new ContextInsensitiveContextManager(cg);
     ofcgb = new OnFlyCallGraphBuilder(cm, reachables, true);
+    setupPreparer();
+  }
+
+  /**
+   * With the <code>parallel-bodies</code> option and without points-to information (CHA), the bodies of each batch of newly
+   * reachable methods are built concurrently. Only body construction is parallel: the reachable methods and call edges are
+   * still found by a single thread. The call graph has the same edges, but classes may be resolved in a different order,
+   * which can change the order in which the targets of a virtual call are found.
+   */
+  private void setupPreparer() {
+    if (!new CGOptions(PhaseOptions.v().getPhaseOptions("cg")).parallel_bodies()) {
+      return;
+    }
+    int n = Options.v().num_threads();
+    int threadNum = n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    if (pa instanceof DumbPointerAnalysis && threadNum > 1) {
+      preparer = new BodyPreparer(threadNum);
+      ofcgb.setMethodPreparer(preparer);
+    }
   }
 
   public void build() {
+    try {
+      buildCallGraph();
+    } finally {
+      if (preparer != null) {
+        preparer.shutdown();
+      }
+    }
+  }
+
+  private void buildCallGraph() {
     QueueReader<MethodOrMethodContext> worklist = reachables.listener();
     while (true) {
       ofcgb.processReachables();
@@ -179,4 +219,56 @@ public final class CallGraphBuilder {
       }
     }
   }
+
+  /** Builds the bodies of a batch of methods on a thread pool. */
+  private static final class BodyPreparer implements OnFlyCallGraphBuilder.MethodPreparer {
+    private final int threadNum;
+    private CountingThreadPoolExecutor executor;
+
+    BodyPreparer(int threadNum) {
+      this.threadNum = threadNum;
+    }
+
+    @Override
+    public void prepare(List<SootMethod> methods) {
+      if (methods.size() < 2) {
+        // Not worth a hand-off, the builder retrieves the body itself
+        return;
+      }
+      if (executor == null) {
+        executor = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+      }
+      for (final SootMethod m : methods) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (m.isConcrete()) {
+              m.retrieveActiveBody();
+            }
+          }
+        });
+      }
+
+      try {
+        executor.awaitCompletion();
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Could not wait for body construction to finish: " + e.getMessage(), e);
+      }
+      if (executor.getException() != null) {
+        if (executor.getException() instanceof RuntimeException) {
+          throw (RuntimeException) executor.getException();
+        } else {
+          throw new RuntimeException(executor.getException());
+        }
+      }
+    }
+
+    void shutdown() {
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
+  }
 }
@@ -35,7 +35,7 @@ import soot.options.CGOptions;
 
 /**
  * A radio pack implementation for the call graph pack that calls the intra-procedural clinit eliminator after the call graph
- * has been built.
+ * has been built, and optionally replaces the call graph by a {@link CompactCallGraph}.
  */
 public class CallGraphPack extends RadioScenePack {
   public CallGraphPack(String name) {
@@ -67,5 +67,9 @@ public class CallGraphPack extends RadioScenePack {
         }
       }
     }
+
+    if (options.compact() && Scene.v().hasCallGraph()) {
+      Scene.v().setCallGraph(new CompactCallGraph(Scene.v().getCallGraph()));
+    }
   }
 }
@@ -0,0 +1,463 @@
+package soot.jimple.toolkits.callgraph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import soot.MethodOrMethodContext;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.util.queue.QueueReader;
+
+/**
+ * An immutable call graph in compressed sparse row form, instead of the hash maps and linked edge lists used by
+ * {@link CallGraph}.
+ *
+ * <p>
+ * Edges are identified by their position in an array, in which they are grouped by the number of their source method and,
+ * within each source method, by their source unit. The successors of a method are the method numbers in
+ * <code>succ[srcStart[n] .. srcStart[n + 1]]</code>, where <code>n</code> is the number of the method. Its predecessors are
+ * the method numbers in <code>pred[tgtStart[n] .. tgtStart[n + 1]]</code>, and the corresponding edges are given by the
+ * parallel array <code>predEdge</code>. The {@link Edge} objects themselves are only kept so that the queries of
+ * {@link CallGraph} can return them. Methods with contexts share the row of their method; queries for a context filter
+ * the edges of that row. The call sites of each row are kept in a hash map from units to ranges of edges, to support
+ * {@link #edgesOutOf(Unit)}.
+ * </p>
+ *
+ * <p>
+ * A compact call graph is created from a finished call graph, e.g. by setting the <code>compact</code> option of the
+ * <code>cg</code> phase. All methods that modify the graph throw an {@link UnsupportedOperationException}.
+ * </p>
+ */
+public class CompactCallGraph extends CallGraph {
+  private static final int[] NO_EDGES = new int[0];
+
+  /** The edges, grouped by source method and source unit. */
+  private final Edge[] edges;
+  private final int size;
+
+  /** The numbers of the target methods of the edges, grouped by source method. */
+  private final int[] srcStart;
+  private final int[] succ;
+
+  /** The numbers of the source methods and the positions of the edges, grouped by target method. */
+  private final int[] tgtStart;
+  private final int[] pred;
+  private final int[] predEdge;
+
+  /**
+   * For each source unit, the start and end positions of its edges. A unit usually has one range, but it has one per source
+   * method if it appears in the edges of several of them.
+   */
+  private final Map<Unit, int[]> unitRanges;
+
+  /**
+   * Creates a compact copy of the given call graph.
+   */
+  public CompactCallGraph(CallGraph cg) {
+    this(cg.listener(), cg.size());
+  }
+
+  /**
+   * Creates a compact call graph from the given edges, which must not contain duplicates.
+   *
+   * @param edges
+   *          the edges of the call graph
+   * @param expectedSize
+   *          the number of edges, used to size the internal arrays
+   */
+  public CompactCallGraph(Iterator<Edge> edges, int expectedSize) {
+    Edge[] all = new Edge[Math.max(expectedSize, 0)];
+    int n = 0;
+    int maxNumber = 0;
+    while (edges.hasNext()) {
+      Edge e = edges.next();
+      if (n == all.length) {
+        all = Arrays.copyOf(all, Math.max(16, n * 2));
+      }
+      all[n++] = e;
+      maxNumber = Math.max(maxNumber, Math.max(numberOf(e.getSrc()), numberOf(e.getTgt())));
+    }
+    this.size = n;
+    final int rows = maxNumber + 1;
+
+    // counting sort by source method number
+    srcStart = new int[rows + 1];
+    for (int i = 0; i < n; i++) {
+      srcStart[numberOf(all[i].getSrc()) + 1]++;
+    }
+    for (int r = 0; r < rows; r++) {
+      srcStart[r + 1] += srcStart[r];
+    }
+    int[] fill = Arrays.copyOf(srcStart, rows);
+    Edge[] bySrc = new Edge[n];
+    for (int i = 0; i < n; i++) {
+      bySrc[fill[numberOf(all[i].getSrc())]++] = all[i];
+    }
+    all = null;
+
+    // within each row, group the edges by source unit, keeping the order in which the call sites appeared
+    this.edges = new Edge[n];
+    unitRanges = new HashMap<Unit, int[]>();
+    Map<Unit, Integer> unitCount = new HashMap<Unit, Integer>();
+    for (int r = 0; r < rows; r++) {
+      int from = srcStart[r];
+      int to = srcStart[r + 1];
+      unitCount.clear();
+      for (int i = from; i < to; i++) {
+        Unit u = bySrc[i].srcUnit();
+        Integer c = unitCount.get(u);
+        unitCount.put(u, c == null ? 1 : c + 1);
+      }
+      Map<Unit, Integer> next = new HashMap<Unit, Integer>(unitCount.size() * 2);
+      int pos = from;
+      for (int i = from; i < to; i++) {
+        Unit u = bySrc[i].srcUnit();
+        if (!next.containsKey(u)) {
+          next.put(u, pos);
+          int count = unitCount.get(u);
+          if (u != null) {
+            addRange(u, pos, pos + count);
+          }
+          pos += count;
+        }
+      }
+      for (int i = from; i < to; i++) {
+        Unit u = bySrc[i].srcUnit();
+        int p = next.get(u);
+        this.edges[p] = bySrc[i];
+        next.put(u, p + 1);
+      }
+    }
+
+    succ = n == 0 ? NO_EDGES : new int[n];
+    for (int i = 0; i < n; i++) {
+      succ[i] = numberOf(this.edges[i].getTgt());
+    }
+
+    // counting sort of the edge positions by target method number
+    tgtStart = new int[rows + 1];
+    for (int i = 0; i < n; i++) {
+      tgtStart[succ[i] + 1]++;
+    }
+    for (int r = 0; r < rows; r++) {
+      tgtStart[r + 1] += tgtStart[r];
+    }
+    fill = Arrays.copyOf(tgtStart, rows);
+    pred = n == 0 ? NO_EDGES : new int[n];
+    predEdge = n == 0 ? NO_EDGES : new int[n];
+    for (int r = 0; r < rows; r++) {
+      for (int i = srcStart[r]; i < srcStart[r + 1]; i++) {
+        int p = fill[succ[i]]++;
+        pred[p] = r;
+        predEdge[p] = i;
+      }
+    }
+  }
+
+  private void addRange(Unit u, int start, int end) {
+    int[] ranges = unitRanges.get(u);
+    if (ranges == null) {
+      ranges = new int[] { start, end };
+    } else {
+      ranges = Arrays.copyOf(ranges, ranges.length + 2);
+      ranges[ranges.length - 2] = start;
+      ranges[ranges.length - 1] = end;
+    }
+    unitRanges.put(u, ranges);
+  }
+
+  /**
+   * Returns the row of the given method. Edges without a source method and methods that have not been numbered by the Scene
+   * share row 0; queries filter them by identity.
+   */
+  private static int numberOf(MethodOrMethodContext m) {
+    if (m == null) {
+      return 0;
+    }
+    SootMethod sm = m.method();
+    return sm == null ? 0 : Math.max(sm.getNumber(), 0);
+  }
+
+  /**
+   * Returns the numbers of the targets of all edges out of the given method, in all contexts, with one element per edge.
+   */
+  public int[] getSuccessorNumbers(SootMethod m) {
+    int r = numberOf(m);
+    return r + 1 < srcStart.length ? Arrays.copyOfRange(succ, srcStart[r], srcStart[r + 1]) : NO_EDGES;
+  }
+
+  /**
+   * Returns the numbers of the sources of all edges into the given method, in all contexts, with one element per edge.
+   */
+  public int[] getPredecessorNumbers(SootMethod m) {
+    int r = numberOf(m);
+    return r + 1 < tgtStart.length ? Arrays.copyOfRange(pred, tgtStart[r], tgtStart[r + 1]) : NO_EDGES;
+  }
+
+  @Override
+  public boolean addEdge(Edge e) {
+    throw new UnsupportedOperationException("A compact call graph cannot be modified");
+  }
+
+  @Override
+  public boolean removeAllEdgesOutOf(Unit u) {
+    throw new UnsupportedOperationException("A compact call graph cannot be modified");
+  }
+
+  @Override
+  public boolean swapEdgesOutOf(Stmt out, Stmt in) {
+    throw new UnsupportedOperationException("A compact call graph cannot be modified");
+  }
+
+  @Override
+  public boolean removeEdge(Edge e) {
+    throw new UnsupportedOperationException("A compact call graph cannot be modified");
+  }
+
+  @Override
+  public boolean isEntryMethod(SootMethod method) {
+    return !edgesInto(method).hasNext();
+  }
+
+  @Override
+  public Edge findEdge(Unit u, SootMethod callee) {
+    for (Iterator<Edge> it = edgesOutOf(u); it.hasNext();) {
+      Edge e = it.next();
+      if (e.tgt() == callee) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Iterator<MethodOrMethodContext> sourceMethods() {
+    Set<MethodOrMethodContext> sources = new LinkedHashSet<MethodOrMethodContext>();
+    for (int i = 0; i < size; i++) {
+      sources.add(edges[i].getSrc());
+    }
+    return sources.iterator();
+  }
+
+  @Override
+  public Iterator<Edge> edgesOutOf(final Unit u) {
+    if (u == null) {
+      throw new RuntimeException();
+    }
+    final int[] ranges = unitRanges.get(u);
+    if (ranges == null) {
+      return new EdgeIterator(0, 0);
+    }
+    if (ranges.length == 2) {
+      return new EdgeIterator(ranges[0], ranges[1]);
+    }
+    return new Iterator<Edge>() {
+      private int range = 0;
+      private int pos = ranges[0];
+
+      @Override
+      public boolean hasNext() {
+        while (pos == ranges[range + 1] && range + 2 < ranges.length) {
+          range += 2;
+          pos = ranges[range];
+        }
+        return pos < ranges[range + 1];
+      }
+
+      @Override
+      public Edge next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return edges[pos++];
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Edge> edgesOutOf(final MethodOrMethodContext m) {
+    if (m == null) {
+      throw new RuntimeException();
+    }
+    int r = numberOf(m);
+    if (r + 1 >= srcStart.length) {
+      return new EdgeIterator(0, 0);
+    }
+    return new EdgeIterator(srcStart[r], srcStart[r + 1]) {
+      @Override
+      boolean accept(Edge e) {
+        return e.getSrc() == m;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Edge> edgesInto(final MethodOrMethodContext m) {
+    if (m == null) {
+      throw new RuntimeException();
+    }
+    int r = numberOf(m);
+    if (r + 1 >= tgtStart.length) {
+      return new EdgeIterator(0, 0);
+    }
+    return new EdgeIterator(tgtStart[r], tgtStart[r + 1]) {
+      @Override
+      Edge get(int i) {
+        return edges[predEdge[i]];
+      }
+
+      @Override
+      boolean accept(Edge e) {
+        return e.getTgt() == m;
+      }
+    };
+  }
+
+  /**
+   * Returns a reader over all edges of this call graph. Since the graph is immutable, no edges are added later.
+   */
+  @Override
+  public QueueReader<Edge> listener() {
+    return new ArrayQueueReader(0);
+  }
+
+  /**
+   * Returns a reader that will never return any edge, since no edges can be added to this call graph.
+   */
+  @Override
+  public QueueReader<Edge> newListener() {
+    return new ArrayQueueReader(size);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterator<Edge> iterator() {
+    return new EdgeIterator(0, size);
+  }
+
+  /**
+   * Iterates over a range of edges, skipping those that are not accepted.
+   */
+  private class EdgeIterator implements Iterator<Edge> {
+    private int pos;
+    private final int end;
+    private Edge next;
+
+    EdgeIterator(int start, int end) {
+      this.pos = start;
+      this.end = end;
+    }
+
+    Edge get(int i) {
+      return edges[i];
+    }
+
+    boolean accept(Edge e) {
+      return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && pos < end) {
+        Edge e = get(pos++);
+        if (accept(e)) {
+          next = e;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Edge next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Edge ret = next;
+      next = null;
+      return ret;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A queue reader over the edge array. It reads the array itself rather than the chunks of a queue, and neither it nor its
+   * clones can remove edges.
+   */
+  private class ArrayQueueReader extends QueueReader<Edge> {
+    private int pos;
+
+    ArrayQueueReader(int pos) {
+      super(null, 0);
+      this.pos = pos;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return pos < size;
+    }
+
+    @Override
+    public Edge next() {
+      if (pos >= size) {
+        throw new NoSuchElementException();
+      }
+      return edges[pos++];
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("A compact call graph cannot be modified");
+    }
+
+    @Override
+    public void remove(Edge o) {
+      throw new UnsupportedOperationException("A compact call graph cannot be modified");
+    }
+
+    @Override
+    public QueueReader<Edge> clone() {
+      return new ArrayQueueReader(pos);
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package soot.jimple.toolkits.callgraph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import heros.solver.CountingThreadPoolExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import soot.FastHierarchy;
+import soot.RefType;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.util.NumberedString;
+
+/**
+ * An index of the virtual dispatch of all classes of a {@link FastHierarchy}, as used by {@link VirtualCalls} when the
+ * <code>dispatch-index</code> option of the call graph phase is set. Every class has a compact vtable that maps the numbers
+ * of subsignatures to the methods they dispatch to; the vtables of all classes are built in parallel when the index is
+ * created. The concrete classes below a type, and the targets of a call on any subtype of a type, are computed on their
+ * first use and shared from then on.
+ *
+ * <p>
+ * The index reflects the classes and methods of the Scene at the time it was built; classes that are added later get their
+ * vtables on their first use. Any number of threads may query the index at the same time.
+ * </p>
+ */
+public final class DispatchIndex {
+  private static final SootMethod[] NO_TARGETS = new SootMethod[0];
+  private static final Vtable EMPTY = new Vtable(new int[0], NO_TARGETS);
+
+  private final FastHierarchy hierarchy;
+  private final ConcurrentHashMap<SootClass, Vtable> vtables = new ConcurrentHashMap<SootClass, Vtable>();
+  private final ConcurrentHashMap<SootClass, SootClass[]> cones = new ConcurrentHashMap<SootClass, SootClass[]>();
+  private final ConcurrentHashMap<VirtualCalls.DispatchKey, SootMethod[]> coneTargets
+      = new ConcurrentHashMap<VirtualCalls.DispatchKey, SootMethod[]>();
+
+  /**
+   * Builds the index of the given classes.
+   *
+   * @param hierarchy
+   *          the hierarchy of the classes
+   * @param classes
+   *          the classes whose vtables are built eagerly
+   * @param threadNum
+   *          the number of threads building the vtables
+   */
+  public DispatchIndex(FastHierarchy hierarchy, Iterable<SootClass> classes, int threadNum) {
+    this.hierarchy = hierarchy;
+
+    final List<SootClass> indexed = new ArrayList<SootClass>();
+    for (SootClass cl : classes) {
+      if (cl.resolvingLevel() < SootClass.SIGNATURES) {
+        continue;
+      }
+      indexed.add(cl);
+      if (cl.isInterface()) {
+        // The hierarchy computes these lazily and without locking, so
+        // they must be known before several threads query it
+        hierarchy.getAllSubinterfaces(cl);
+        hierarchy.getAllImplementersOfInterface(cl);
+      }
+    }
+
+    if (threadNum <= 1) {
+      for (SootClass cl : indexed) {
+        getVtable(cl);
+      }
+      return;
+    }
+
+    CountingThreadPoolExecutor executor
+        = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    try {
+      for (final SootClass cl : indexed) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            getVtable(cl);
+          }
+        });
+      }
+      executor.awaitCompletion();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Could not wait for the dispatch index to be built: " + e.getMessage(), e);
+    } finally {
+      executor.shutdown();
+    }
+    if (executor.getException() != null) {
+      if (executor.getException() instanceof RuntimeException) {
+        throw (RuntimeException) executor.getException();
+      } else {
+        throw new RuntimeException(executor.getException());
+      }
+    }
+  }
+
+  /** Returns the hierarchy the index was built from. */
+  public FastHierarchy getHierarchy() {
+    return hierarchy;
+  }
+
+  /**
+   * Returns the method that a call of <code>subSig</code> on an object of class <code>cls</code> dispatches to, or null if
+   * there is none or <code>appOnly</code> is set and <code>cls</code> is a library class. This is the answer of
+   * {@link VirtualCalls#resolveNonSpecial(RefType, NumberedString, boolean)}.
+   */
+  public SootMethod resolveNonSpecial(SootClass cls, NumberedString subSig, boolean appOnly) {
+    if (appOnly && cls.isLibraryClass()) {
+      return null;
+    }
+    return getVtable(cls).get(subSig.getNumber());
+  }
+
+  /**
+   * Returns the targets of a call of <code>subSig</code> on any subtype of <code>base</code> whose type can be stored in
+   * <code>declaredType</code> and <code>sigType</code>, either of which may be null. The targets are those of the concrete
+   * classes below <code>base</code>, in the breadth-first order in which {@link VirtualCalls} first visits them, and
+   * include duplicates. The returned array must not be modified.
+   */
+  public SootMethod[] resolveAnySubType(Type declaredType, Type sigType, NumberedString subSig, boolean appOnly,
+      RefType base) {
+    VirtualCalls.DispatchKey key = new VirtualCalls.DispatchKey(base, declaredType, sigType, subSig, appOnly);
+    SootMethod[] ret = coneTargets.get(key);
+    if (ret == null) {
+      List<SootMethod> targets = new ArrayList<SootMethod>();
+      for (SootClass cl : getCone(base.getSootClass())) {
+        RefType t = cl.getType();
+        if (declaredType != null && !hierarchy.canStoreType(t, declaredType)) {
+          continue;
+        }
+        if (sigType != null && !hierarchy.canStoreType(t, sigType)) {
+          continue;
+        }
+        SootMethod target = resolveNonSpecial(cl, subSig, appOnly);
+        if (target != null) {
+          targets.add(target);
+        }
+      }
+      ret = targets.isEmpty() ? NO_TARGETS : targets.toArray(new SootMethod[targets.size()]);
+      SootMethod[] existing = coneTargets.putIfAbsent(key, ret);
+      if (existing != null) {
+        ret = existing;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the concrete classes that are subclasses or implementers of <code>base</code>, including <code>base</code>
+   * itself, in breadth-first order.
+   */
+  private SootClass[] getCone(SootClass base) {
+    SootClass[] ret = cones.get(base);
+    if (ret == null) {
+      List<SootClass> cone = new ArrayList<SootClass>();
+      ArrayDeque<SootClass> worklist = new ArrayDeque<SootClass>();
+      Set<SootClass> workset = new HashSet<SootClass>();
+      workset.add(base);
+      worklist.add(base);
+      while (!worklist.isEmpty()) {
+        SootClass cl = worklist.removeFirst();
+        Iterable<SootClass> children;
+        if (cl.isInterface()) {
+          children = hierarchy.getAllImplementersOfInterface(cl);
+        } else {
+          if (cl.isConcrete()) {
+            cone.add(cl);
+          }
+          children = hierarchy.getSubclassesOf(cl);
+        }
+        for (SootClass c : children) {
+          if (workset.add(c)) {
+            worklist.add(c);
+          }
+        }
+      }
+      ret = cone.toArray(new SootClass[cone.size()]);
+      SootClass[] existing = cones.putIfAbsent(base, ret);
+      if (existing != null) {
+        ret = existing;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the vtable of <code>cls</code>, building it and those of its superclasses if needed. Threads that build the
+   * same vtable at the same time build equal ones, of which the first one is kept.
+   */
+  private Vtable getVtable(SootClass cls) {
+    Vtable ret = vtables.get(cls);
+    if (ret == null) {
+      SootClass superClass = cls.getSuperclassUnsafe();
+      ret = Vtable.extend(superClass == null ? EMPTY : getVtable(superClass), cls.getMethods());
+      Vtable existing = vtables.putIfAbsent(cls, ret);
+      if (existing != null) {
+        ret = existing;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * The methods that the calls on objects of one class dispatch to, sorted by the numbers of their subsignatures.
+   * Subsignatures without a target, because the class or the nearest superclass declaring them declares them abstract, are
+   * left out.
+   */
+  private static final class Vtable {
+    final int[] subSigs;
+    final SootMethod[] targets;
+
+    Vtable(int[] subSigs, SootMethod[] targets) {
+      this.subSigs = subSigs;
+      this.targets = targets;
+    }
+
+    SootMethod get(int subSig) {
+      int i = Arrays.binarySearch(subSigs, subSig);
+      return i < 0 ? null : targets[i];
+    }
+
+    /** Returns the vtable of a class that declares <code>methods</code> and extends the class of <code>parent</code>. */
+    static Vtable extend(Vtable parent, List<SootMethod> methods) {
+      if (methods.isEmpty()) {
+        return parent;
+      }
+
+      SootMethod[] declared = methods.toArray(new SootMethod[methods.size()]);
+      long[] order = new long[declared.length];
+      for (int i = 0; i < declared.length; i++) {
+        order[i] = ((long) declared[i].getNumberedSubSignature().getNumber() << 32) | i;
+      }
+      Arrays.sort(order);
+
+      // Merge the declared methods into the inherited ones, abstract
+      // methods hiding the inherited targets
+      int[] subSigs = new int[parent.subSigs.length + declared.length];
+      SootMethod[] targets = new SootMethod[subSigs.length];
+      int n = 0;
+      int p = 0;
+      for (long o : order) {
+        int subSig = (int) (o >>> 32);
+        SootMethod m = declared[(int) o];
+        while (p < parent.subSigs.length && parent.subSigs[p] < subSig) {
+          subSigs[n] = parent.subSigs[p];
+          targets[n++] = parent.targets[p++];
+        }
+        if (p < parent.subSigs.length && parent.subSigs[p] == subSig) {
+          p++;
+        }
+        if (!m.isAbstract()) {
+          subSigs[n] = subSig;
+          targets[n++] = m;
+        }
+      }
+      while (p < parent.subSigs.length) {
+        subSigs[n] = parent.subSigs[p];
+        targets[n++] = parent.targets[p++];
+      }
+      return new Vtable(Arrays.copyOf(subSigs, n), Arrays.copyOf(targets, n));
+    }
+  }
+}
@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import soot.AnySubType;
 import soot.ArrayType;
 import soot.Body;
+import soot.BodyResidencyManager;
 import soot.BooleanType;
 import soot.ByteType;
 import soot.CharType;
@@ -208,6 +209,7 @@ public final class OnFlyCallGraphBuilder {
   private NullnessAnalysis nullnessCache = null;
   private ConstantArrayAnalysis arrayCache = null;
   private SootMethod analysisKey = null;
+  private MethodPreparer preparer;
 
   public OnFlyCallGraphBuilder(ContextManager cm, ReachableMethods rm) {
     this.cm = cm;
@@ -252,7 +254,24 @@ public final class OnFlyCallGraphBuilder {
     return methodToStringConstants;
   }
 
+  /**
+   * Prepares methods that have just become reachable before the builder processes them. A preparer must not change the call
+   * graph, but it may, for instance, build the bodies of the methods concurrently.
+   */
+  public interface MethodPreparer {
+    void prepare(List<SootMethod> methods);
+  }
+
+  /**
+   * Sets the preparer that is given every batch of newly reachable methods before they are processed. Processing the methods
+   * of a batch one after another is what the builder would do without a preparer, so the call graph has the same edges.
+   */
+  public void setMethodPreparer(MethodPreparer preparer) {
+    this.preparer = preparer;
+  }
+
   public void processReachables() {
+    List<MethodOrMethodContext> batch = new ArrayList<MethodOrMethodContext>();
     while (true) {
       if (!worklist.hasNext()) {
         rm.update();
@@ -260,18 +279,112 @@ public final class OnFlyCallGraphBuilder {
           break;
         }
       }
-      MethodOrMethodContext momc = worklist.next();
+      if (preparer == null) {
+        processReachable(worklist.next());
+        continue;
+      }
+
+      // Processing the methods does not update the reachable methods,
+      // so the batch ends where the sequential processing would call
+      // update() next
+      batch.clear();
+      while (worklist.hasNext()) {
+        batch.add(worklist.next());
+      }
+      prepare(batch);
+      for (MethodOrMethodContext momc : batch) {
+        processReachable(momc);
+      }
+    }
+  }
+
+  private void processReachable(MethodOrMethodContext momc) {
+    SootMethod m = momc.method();
+    if (appOnly && !m.getDeclaringClass().isApplicationClass()) {
+      return;
+    }
+    if (analyzedMethods.add(m)) {
+      processNewMethod(m);
+    }
+    processNewMethodContext(momc);
+    BodyResidencyManager.v().safePoint();
+  }
+
+  private void prepare(List<MethodOrMethodContext> batch) {
+    Set<SootMethod> seen = new HashSet<SootMethod>();
+    List<SootMethod> methods = new ArrayList<SootMethod>();
+    for (MethodOrMethodContext momc : batch) {
       SootMethod m = momc.method();
       if (appOnly && !m.getDeclaringClass().isApplicationClass()) {
         continue;
       }
-      if (analyzedMethods.add(m)) {
-        processNewMethod(m);
+      if (!analyzedMethods.contains(m) && seen.add(m)) {
+        methods.add(m);
+      }
+    }
+    if (!methods.isEmpty()) {
+      preparer.prepare(methods);
+    }
+  }
+
+  /**
+   * Forgets the call sites found in method m and, if m has already been analyzed and is still declared, finds them again
+   * in its current body. Used after the body of m has been replaced or m has been removed. Edges out of m that were already
+   * added through the context manager are not removed.
+   */
+  public void reprocessMethod(SootMethod m) {
+    List<Local> receivers = methodToReceivers.get(m);
+    if (receivers != null) {
+      for (Local receiver : receivers) {
+        receiverToSites.put(receiver, null);
+      }
+      methodToReceivers.put(m, null);
+    }
+    List<Local> stringConstants = methodToStringConstants.get(m);
+    if (stringConstants != null) {
+      for (Local l : stringConstants) {
+        stringConstToSites.put(l, null);
+      }
+      methodToStringConstants.put(m, null);
+    }
+    for (Local base : new ArrayList<Local>(baseToInvokeSite.keySet())) {
+      if (removeSitesOf(m, baseToInvokeSite, base)) {
+        reachingBaseTypes.remove(base);
+      }
+    }
+    for (Local argArray : new ArrayList<Local>(invokeArgsToInvokeSite.keySet())) {
+      if (removeSitesOf(m, invokeArgsToInvokeSite, argArray)) {
+        reachingArgTypes.remove(argArray);
+        invokeArgsToSize.remove(argArray);
       }
-      processNewMethodContext(momc);
+    }
+    List<Edge> oldEdges = new ArrayList<Edge>();
+    for (Iterator<Edge> it = cicg.edgesOutOf(m); it.hasNext();) {
+      oldEdges.add(it.next());
+    }
+    for (Edge e : oldEdges) {
+      cicg.removeEdge(e);
+    }
+    // The cached analyses belong to the old body
+    analysisKey = null;
+    if (!m.isDeclared()) {
+      analyzedMethods.remove(m);
+    } else if (analyzedMethods.contains(m)) {
+      processNewMethod(m);
+      processNewMethodContext(m);
     }
   }
 
+  /** Removes the sites in method m from the sites of local l, returns true if no site is left. */
+  private static boolean removeSitesOf(SootMethod m, MultiMap<Local, InvokeCallSite> sites, Local l) {
+    for (InvokeCallSite ics : new ArrayList<InvokeCallSite>(sites.get(l))) {
+      if (ics.container() == m) {
+        sites.remove(l, ics);
+      }
+    }
+    return !sites.containsKey(l);
+  }
+
   public boolean wantTypes(Local receiver) {
     return receiverToSites.get(receiver) != null || baseToInvokeSite.get(receiver) != null;
   }
@@ -755,6 +868,28 @@ public final class OnFlyCallGraphBuilder {
     Body b = m.retrieveActiveBody();
     getImplicitTargets(m);
     findReceivers(m, b);
+    pinIfReferenced(m, b);
+  }
+
+  /**
+   * Keeps the body of m in memory if the call graph or the call sites of this builder refer to its statements or locals.
+   * They only refer to the statements that invoke a method or that lead to edges to static initializers.
+   */
+  private void pinIfReferenced(SootMethod m, Body b) {
+    BodyResidencyManager brm = BodyResidencyManager.v();
+    if (!brm.isEnabled()) {
+      return;
+    }
+    if (cicg.edgesOutOf(m).hasNext()) {
+      brm.pin(m);
+      return;
+    }
+    for (Unit u : b.getUnits()) {
+      if (((Stmt) u).containsInvokeExpr()) {
+        brm.pin(m);
+        return;
+      }
+    }
   }
 
   private void findReceivers(SootMethod m, Body b) {
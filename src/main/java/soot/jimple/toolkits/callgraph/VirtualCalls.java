@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import soot.AnySubType;
 import soot.ArrayType;
@@ -43,6 +44,7 @@ import soot.SootMethod;
 import soot.Type;
 import soot.jimple.SpecialInvokeExpr;
 import soot.options.CGOptions;
+import soot.options.Options;
 import soot.toolkits.scalar.Pair;
 import soot.util.Chain;
 import soot.util.HashMultiMap;
@@ -51,6 +53,7 @@ import soot.util.MultiMap;
 import soot.util.NumberedString;
 import soot.util.SmallNumberedMap;
 import soot.util.queue.ChunkedQueue;
+import soot.util.queue.QueueReader;
 
 /**
  * Resolves virtual calls.
@@ -93,6 +96,9 @@ public class VirtualCalls {
   }
 
   public SootMethod resolveNonSpecial(RefType t, NumberedString subSig, boolean appOnly) {
+    if (options.dispatch_index()) {
+      return getDispatchIndex().resolveNonSpecial(t.getSootClass(), subSig, appOnly);
+    }
     SmallNumberedMap<SootMethod> vtbl = typeToVtbl.get(t);
     if (vtbl == null) {
       typeToVtbl.put(t, vtbl = new SmallNumberedMap<SootMethod>());
@@ -122,6 +128,8 @@ public class VirtualCalls {
   }
 
   protected MultiMap<Type, Type> baseToSubTypes = new HashMultiMap<Type, Type>();
+  private volatile DispatchTable dispatchTable;
+  private volatile DispatchIndex dispatchIndex;
   protected MultiMap<Pair<Type, NumberedString>, Pair<Type, NumberedString>> baseToPossibleSubTypes
       = new HashMultiMap<Pair<Type, NumberedString>, Pair<Type, NumberedString>>();
 
@@ -180,7 +188,7 @@ public class VirtualCalls {
       if (options.library() == CGOptions.library_signature_resolution && base.getSootClass().isInterface()) {
         resolveLibrarySignature(declaredType, sigType, subSig, container, targets, appOnly, base);
       } else {
-        resolveAnySubType(declaredType, sigType, subSig, container, targets, appOnly, base);
+        resolveAnySubTypeCached(declaredType, sigType, subSig, container, targets, appOnly, base);
       }
     } else if (t instanceof NullType) {
     } else {
@@ -225,6 +233,74 @@ public class VirtualCalls {
     }
   }
 
+  /**
+   * Adds the targets of {@link #resolveAnySubType} to <code>targets</code>, computing them only once for every combination
+   * of arguments as long as the hierarchy of the {@link Scene} does not change. With a pointer analysis that does not know
+   * the run-time types, such as in CHA, every call site would otherwise enumerate all subtypes of its receiver type.
+   * Cached targets are read without locking, so this may be called by several threads.
+   */
+  private void resolveAnySubTypeCached(Type declaredType, Type sigType, NumberedString subSig, SootMethod container,
+      ChunkedQueue<SootMethod> targets, boolean appOnly, RefType base) {
+    if (options.dispatch_index()) {
+      for (SootMethod target : getDispatchIndex().resolveAnySubType(declaredType, sigType, subSig, appOnly, base)) {
+        targets.add(target);
+      }
+      return;
+    }
+
+    FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+    DispatchTable table = dispatchTable;
+    if (table == null || table.hierarchy != fh) {
+      table = new DispatchTable(fh);
+      dispatchTable = table;
+    }
+
+    DispatchKey key = new DispatchKey(base, declaredType, sigType, subSig, appOnly);
+    SootMethod[] ret = table.targets.get(key);
+    if (ret == null) {
+      // The other caches of this class are not thread-safe
+      synchronized (this) {
+        ret = table.targets.get(key);
+        if (ret == null) {
+          ChunkedQueue<SootMethod> queue = new ChunkedQueue<SootMethod>();
+          QueueReader<SootMethod> reader = queue.reader();
+          resolveAnySubType(declaredType, sigType, subSig, container, queue, appOnly, base);
+          List<SootMethod> resolved = new ArrayList<SootMethod>();
+          while (reader.hasNext()) {
+            resolved.add(reader.next());
+          }
+          ret = resolved.toArray(new SootMethod[resolved.size()]);
+          table.targets.put(key, ret);
+        }
+      }
+    }
+    for (SootMethod target : ret) {
+      targets.add(target);
+    }
+  }
+
+  /**
+   * Returns the dispatch index of the current hierarchy of the {@link Scene}, building it from all classes of the Scene if
+   * there is none yet or the hierarchy has changed since. With the <code>dispatch-index</code> option of the call graph
+   * phase, calls are resolved with this index, so that they may be resolved by several threads.
+   */
+  public DispatchIndex getDispatchIndex() {
+    FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+    DispatchIndex index = dispatchIndex;
+    if (index == null || index.getHierarchy() != fh) {
+      synchronized (this) {
+        index = dispatchIndex;
+        if (index == null || index.getHierarchy() != fh) {
+          int n = Options.v().num_threads();
+          int threadNum = n > 0 ? n : Runtime.getRuntime().availableProcessors();
+          index = new DispatchIndex(fh, Scene.v().getClasses().getElementsUnsorted(), threadNum);
+          dispatchIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
   protected void resolveAnySubType(Type declaredType, Type sigType, NumberedString subSig, SootMethod container,
       ChunkedQueue<SootMethod> targets, boolean appOnly, RefType base) {
     FastHierarchy fastHierachy = Scene.v().getOrMakeFastHierarchy();
@@ -369,4 +445,49 @@ public class VirtualCalls {
   public final NumberedString sigClinit = Scene.v().getSubSigNumberer().findOrAdd("void <clinit>()");
   public final NumberedString sigStart = Scene.v().getSubSigNumberer().findOrAdd("void start()");
   public final NumberedString sigRun = Scene.v().getSubSigNumberer().findOrAdd("void run()");
+
+  /** The targets of calls on any subtype of a type, for one hierarchy of the {@link Scene}. */
+  private static final class DispatchTable {
+    final FastHierarchy hierarchy;
+    final ConcurrentHashMap<DispatchKey, SootMethod[]> targets = new ConcurrentHashMap<DispatchKey, SootMethod[]>();
+
+    DispatchTable(FastHierarchy hierarchy) {
+      this.hierarchy = hierarchy;
+    }
+  }
+
+  static final class DispatchKey {
+    final RefType base;
+    final Type declaredType;
+    final Type sigType;
+    final NumberedString subSig;
+    final boolean appOnly;
+
+    DispatchKey(RefType base, Type declaredType, Type sigType, NumberedString subSig, boolean appOnly) {
+      this.base = base;
+      this.declaredType = declaredType;
+      this.sigType = sigType;
+      this.subSig = subSig;
+      this.appOnly = appOnly;
+    }
+
+    @Override
+    public int hashCode() {
+      int h = base.hashCode();
+      h = 31 * h + (declaredType == null ? 0 : declaredType.hashCode());
+      h = 31 * h + (sigType == null ? 0 : sigType.hashCode());
+      h = 31 * h + subSig.hashCode();
+      return 31 * h + (appOnly ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof DispatchKey)) {
+        return false;
+      }
+      DispatchKey k = (DispatchKey) o;
+      return base == k.base && declaredType == k.declaredType && sigType == k.sigType && subSig == k.subSig
+          && appOnly == k.appOnly;
+    }
+  }
 }
@@ -22,23 +22,17 @@ package soot.jimple.toolkits.ide;
  * #L%
  */
 
-import com.google.common.collect.Table.Cell;
-
 import heros.IFDSTabulationProblem;
 import heros.InterproceduralCFG;
 import heros.solver.IFDSSolver;
+import heros.solver.IFDSSolver.BinaryDomain;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import soot.PatchingChain;
 import soot.SootMethod;
 import soot.Unit;
 
@@ -64,32 +58,17 @@ public class JimpleIFDSSolver<D, I extends InterproceduralCFG<Unit, SootMethod>>
     }
   }
 
+  /** Returns a view of the results of {@link #solve()}, grouped by method and statement. */
+  public SolverResults<D, BinaryDomain> getResults() {
+    return new SolverResults<D, BinaryDomain>(val, icfg);
+  }
+
+  /** Writes the results to a CSV file <code>ideSolverDump&lt;time&gt;.csv</code> in the working directory. */
   public void dumpResults() {
+    File file = new File("ideSolverDump" + System.currentTimeMillis() + ".csv");
     try {
-      PrintWriter out = new PrintWriter(new FileOutputStream("ideSolverDump" + System.currentTimeMillis() + ".csv"));
-      List<SortableCSVString> res = new ArrayList<SortableCSVString>();
-      for (Cell<Unit, D, ?> entry : val.cellSet()) {
-        SootMethod methodOf = (SootMethod) icfg.getMethodOf(entry.getRowKey());
-        PatchingChain<Unit> units = methodOf.getActiveBody().getUnits();
-        int i = 0;
-        for (Unit unit : units) {
-          if (unit == entry.getRowKey()) {
-            break;
-          }
-          i++;
-        }
-
-        res.add(new SortableCSVString(
-            methodOf + ";" + entry.getRowKey() + "@" + i + ";" + entry.getColumnKey() + ";" + entry.getValue(), i));
-      }
-      Collections.sort(res);
-      // replacement is bugfix for excel view:
-      for (SortableCSVString string : res) {
-        out.println(string.value.replace("\"", "'"));
-      }
-      out.flush();
-      out.close();
-    } catch (FileNotFoundException e) {
+      getResults().writeCSV(file);
+    } catch (IOException e) {
       logger.error(e.getMessage(), e);
     }
   }
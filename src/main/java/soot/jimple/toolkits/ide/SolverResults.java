@@ -0,0 +1,299 @@
+package soot.jimple.toolkits.ide;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import com.google.common.collect.Table;
+
+import heros.InterproceduralCFG;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.SootMethod;
+import soot.Unit;
+
+/**
+ * A read-only view of the results of a {@link JimpleIDESolver} or {@link JimpleIFDSSolver}, grouped by method and ordered
+ * by the position of the statements in their bodies. The statements of every method with results are numbered once, when
+ * the view is created, so that neither queries nor exports have to search the unit chains.
+ *
+ * <p>
+ * The view must not be used after the solver or the bodies of the methods change.
+ * </p>
+ *
+ * @param <D>
+ *          the type of the data-flow facts
+ * @param <V>
+ *          the type of the values associated with the facts
+ */
+public class SolverResults<D, V> {
+  /** The first int of a file written by {@link #writeBinary(File)}. */
+  public static final int BINARY_MAGIC = 0x534f5231; // "SOR1"
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Table<Unit, D, V> results;
+  private final Map<SootMethod, List<Unit>> statementsByMethod;
+  private final Map<Unit, Integer> indices;
+
+  /**
+   * Builds the view of the given results.
+   *
+   * @param results
+   *          the values of the facts holding at each statement
+   * @param icfg
+   *          the ICFG the results were computed on, which is used to find the method of each statement
+   */
+  public SolverResults(Table<Unit, D, V> results, InterproceduralCFG<Unit, SootMethod> icfg) {
+    this.results = results;
+
+    Map<SootMethod, Set<Unit>> unitsByMethod = new HashMap<SootMethod, Set<Unit>>();
+    for (Unit u : results.rowKeySet()) {
+      SootMethod m = icfg.getMethodOf(u);
+      Set<Unit> us = unitsByMethod.get(m);
+      if (us == null) {
+        us = new HashSet<Unit>();
+        unitsByMethod.put(m, us);
+      }
+      us.add(u);
+    }
+
+    // Order the methods like the former dumps did, by their signatures
+    SootMethod[] methods = unitsByMethod.keySet().toArray(new SootMethod[unitsByMethod.size()]);
+    Arrays.sort(methods, new Comparator<SootMethod>() {
+      @Override
+      public int compare(SootMethod m1, SootMethod m2) {
+        return m1.toString().compareTo(m2.toString());
+      }
+    });
+
+    this.statementsByMethod = new LinkedHashMap<SootMethod, List<Unit>>(methods.length * 2);
+    this.indices = new HashMap<Unit, Integer>(results.rowKeySet().size() * 2);
+    for (SootMethod m : methods) {
+      Set<Unit> us = unitsByMethod.get(m);
+      List<Unit> ordered = new ArrayList<Unit>(us.size());
+      int i = 0;
+      for (Unit u : m.getActiveBody().getUnits()) {
+        if (us.contains(u)) {
+          ordered.add(u);
+          indices.put(u, i);
+          if (ordered.size() == us.size()) {
+            break;
+          }
+        }
+        i++;
+      }
+      statementsByMethod.put(m, Collections.unmodifiableList(ordered));
+    }
+  }
+
+  /** Returns the methods that contain statements with results, ordered by their signatures. */
+  public Set<SootMethod> getMethods() {
+    return Collections.unmodifiableSet(statementsByMethod.keySet());
+  }
+
+  /** Returns the statements of <code>m</code> with results, in the order of its unit chain. */
+  public List<Unit> getStatementsOf(SootMethod m) {
+    List<Unit> ret = statementsByMethod.get(m);
+    return ret == null ? Collections.<Unit>emptyList() : ret;
+  }
+
+  /**
+   * Returns the position of <code>stmt</code> in the unit chain of its method, or -1 if there are no results for it.
+   */
+  public int getIndex(Unit stmt) {
+    Integer i = indices.get(stmt);
+    return i == null ? -1 : i;
+  }
+
+  /** Returns the facts holding at <code>stmt</code> and their values. */
+  public Map<D, V> resultsAt(Unit stmt) {
+    return Collections.unmodifiableMap(results.row(stmt));
+  }
+
+  /** Returns the facts holding at <code>stmt</code>. */
+  public Set<D> factsAt(Unit stmt) {
+    return Collections.unmodifiableSet(results.row(stmt).keySet());
+  }
+
+  /** Returns the results of all statements of <code>m</code>, in the order of its unit chain. */
+  public Map<Unit, Map<D, V>> resultsIn(SootMethod m) {
+    List<Unit> stmts = getStatementsOf(m);
+    Map<Unit, Map<D, V>> ret = new LinkedHashMap<Unit, Map<D, V>>(stmts.size() * 2);
+    for (Unit u : stmts) {
+      ret.put(u, resultsAt(u));
+    }
+    return ret;
+  }
+
+  /** Returns the number of (statement, fact) pairs. */
+  public int size() {
+    return results.size();
+  }
+
+  /**
+   * Writes the results to <code>file</code> with one line <code>method;statement@index;fact;value</code> per fact, ordered
+   * by method, statement index and the text of the fact and its value, so that two runs with the same results write the
+   * same file. Double quotes are written as single quotes so that spreadsheets do not split the fields.
+   */
+  public void writeCSV(File file) throws IOException {
+    try (FileChannel channel = new FileOutputStream(file).getChannel();
+        Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+            BUFFER_SIZE)) {
+      writeCSV(out);
+    }
+  }
+
+  /** Writes the results as CSV to <code>out</code>, as described in {@link #writeCSV(File)}. */
+  public void writeCSV(Writer out) throws IOException {
+    for (Map.Entry<SootMethod, List<Unit>> e : statementsByMethod.entrySet()) {
+      String method = csv(e.getKey().toString());
+      for (Unit u : e.getValue()) {
+        String stmt = csv(u.toString()) + "@" + indices.get(u);
+        for (FactText<D> r : sortedFacts(u)) {
+          out.write(method);
+          out.write(';');
+          out.write(stmt);
+          out.write(';');
+          out.write(csv(r.fact));
+          out.write(';');
+          out.write(csv(r.value));
+          out.write('\n');
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static String csv(String s) {
+    return s.replace('"', '\'');
+  }
+
+  /**
+   * Returns the facts holding at <code>stmt</code> and their values as text, sorted by the text of the facts and then of
+   * the values. The rows of the results are hash maps, whose order may differ from run to run.
+   */
+  private List<FactText<D>> sortedFacts(Unit stmt) {
+    Map<D, V> row = results.row(stmt);
+    List<FactText<D>> ret = new ArrayList<FactText<D>>(row.size());
+    for (Map.Entry<D, V> r : row.entrySet()) {
+      ret.add(new FactText<D>(r.getKey(), String.valueOf(r.getKey()), String.valueOf(r.getValue())));
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+
+  private static final class FactText<D> implements Comparable<FactText<D>> {
+    final D key;
+    final String fact;
+    final String value;
+
+    FactText(D key, String fact, String value) {
+      this.key = key;
+      this.fact = fact;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(FactText<D> o) {
+      int c = fact.compareTo(o.fact);
+      return c != 0 ? c : value.compareTo(o.value);
+    }
+  }
+
+  /**
+   * Writes the results to <code>file</code> in a compact binary form. All numbers are big-endian ints and all strings are
+   * their length in bytes followed by their UTF-8 encoding:
+   *
+   * <pre>
+   * file      := BINARY_MAGIC #methods method*
+   * method    := signature #statements statement*
+   * statement := index text #facts fact*
+   * fact      := id [text] value
+   * </pre>
+   *
+   * The facts of a statement are ordered as in {@link #writeCSV(File)}. Facts are numbered in the order they first occur,
+   * and their text is only written on that first occurrence, where <code>id</code> equals the number of facts seen before.
+   */
+  public void writeBinary(File file) throws IOException {
+    try (FileChannel channel = new FileOutputStream(file).getChannel();
+        DataOutputStream out
+            = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+      writeBinary(out);
+    }
+  }
+
+  /** Writes the results in binary form to <code>out</code>, as described in {@link #writeBinary(File)}. */
+  public void writeBinary(DataOutputStream out) throws IOException {
+    Map<D, Integer> factIds = new HashMap<D, Integer>();
+    out.writeInt(BINARY_MAGIC);
+    out.writeInt(statementsByMethod.size());
+    for (Map.Entry<SootMethod, List<Unit>> e : statementsByMethod.entrySet()) {
+      writeString(out, e.getKey().toString());
+      out.writeInt(e.getValue().size());
+      for (Unit u : e.getValue()) {
+        List<FactText<D>> row = sortedFacts(u);
+        out.writeInt(indices.get(u));
+        writeString(out, u.toString());
+        out.writeInt(row.size());
+        for (FactText<D> r : row) {
+          Integer id = factIds.get(r.key);
+          if (id == null) {
+            id = factIds.size();
+            factIds.put(r.key, id);
+            out.writeInt(id);
+            writeString(out, r.fact);
+          } else {
+            out.writeInt(id);
+          }
+          writeString(out, r.value);
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
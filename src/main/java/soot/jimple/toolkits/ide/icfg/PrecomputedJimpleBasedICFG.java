@@ -0,0 +1,611 @@
+package soot.jimple.toolkits.ide.icfg;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import heros.DontSynchronize;
+import heros.ThreadSafe;
+import heros.solver.CountingThreadPoolExecutor;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.Body;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.UnitBox;
+import soot.Value;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+import soot.toolkits.graph.CompactBriefUnitGraph;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * An interprocedural CFG over the same statements and call edges as {@link JimpleBasedInterproceduralCFG}, for solvers
+ * that query it from many threads. Instead of filling caches on demand, it numbers the statements of all reachable
+ * methods with an active body and computes their owners, unit graphs, start and exit points, callees and callers up front,
+ * in parallel over the methods. Afterwards it is never modified, so every query is answered without locking.
+ *
+ * <p>
+ * Methods and statements outside of the reachable methods are still answered, but by consulting the call graph or building
+ * a unit graph on every query. The set of reachable methods, their bodies and the call graph must not change while the
+ * ICFG is in use.
+ * </p>
+ *
+ * <p>
+ * Subclasses may override {@link #makeGraph(Body)} and {@link #isFollowed(Edge)}. Both are called by the constructor of
+ * this class, from several threads at once, before the constructor of the subclass has run, so overrides must be
+ * thread-safe and must not read fields of the subclass.
+ * </p>
+ */
+@ThreadSafe
+public class PrecomputedJimpleBasedICFG implements BiDiInterproceduralCFG<Unit, SootMethod> {
+  private static final Logger logger = LoggerFactory.getLogger(PrecomputedJimpleBasedICFG.class);
+
+  /** Assumed size of a reference in the estimate of {@link #getMemoryFootprint()}. */
+  private static final int REFERENCE_BYTES = 4;
+
+  protected final boolean enableExceptions;
+  protected final boolean includeReflectiveCalls;
+  protected final boolean includePhantomCallees;
+
+  @DontSynchronize("readonly")
+  protected final CallGraph cg;
+
+  /** The reachable methods with an active body. */
+  private final SootMethod[] methods;
+  /** The position of each method in {@link #methods}, indexed by method number, or -1. */
+  private final int[] methodIndex;
+  private final DirectedGraph<Unit>[] graphs;
+  private final List<Value>[] parameterRefs;
+
+  /** The units of all methods; those of method <code>m</code> start at <code>unitStart[m]</code>, in chain order. */
+  private final Unit[] units;
+  private final int[] unitStart;
+  private final int[] unitOwner;
+  /** Position plus one of the unit hashed to each slot, 0 marks a free slot. */
+  private final int[] unitTable;
+
+  private final long[] startPoints;
+  private final long[] exitPoints;
+  private final long[] callStmts;
+  private final int[] callCount;
+
+  /** The callees of unit <code>u</code> start at <code>calleeStart[u]</code> in {@link #callees}. */
+  private final int[] calleeStart;
+  private final SootMethod[] callees;
+  /** The callers of method <code>m</code> start at <code>callerStart[m]</code> in {@link #callers}. */
+  private final int[] callerStart;
+  private final Unit[] callers;
+
+  private final long edgeCount;
+
+  public PrecomputedJimpleBasedICFG() {
+    this(true);
+  }
+
+  public PrecomputedJimpleBasedICFG(boolean enableExceptions) {
+    this(enableExceptions, false, false);
+  }
+
+  /**
+   * Builds the ICFG of the reachable methods of the {@link Scene}.
+   *
+   * @param enableExceptions
+   *          whether the unit graphs include exceptional edges
+   * @param includeReflectiveCalls
+   *          whether reflective call edges are followed
+   * @param includePhantomCallees
+   *          whether methods without an active body are reported as callees
+   */
+  @SuppressWarnings("unchecked")
+  public PrecomputedJimpleBasedICFG(boolean enableExceptions, boolean includeReflectiveCalls,
+      boolean includePhantomCallees) {
+    this.enableExceptions = enableExceptions;
+    this.includeReflectiveCalls = includeReflectiveCalls;
+    this.includePhantomCallees = includePhantomCallees;
+    this.cg = Scene.v().getCallGraph();
+
+    List<SootMethod> reachable = new ArrayList<SootMethod>();
+    int[] index = new int[Scene.v().getMethodNumberer().size() + 1];
+    Arrays.fill(index, -1);
+    for (Iterator<MethodOrMethodContext> iter = Scene.v().getReachableMethods().listener(); iter.hasNext();) {
+      SootMethod m = iter.next().method();
+      int n = m.getNumber();
+      if (m.hasActiveBody() && n > 0 && n < index.length && index[n] < 0) {
+        index[n] = reachable.size();
+        reachable.add(m);
+      }
+    }
+    this.methods = reachable.toArray(new SootMethod[reachable.size()]);
+    this.methodIndex = index;
+
+    final int numMethods = methods.length;
+    this.graphs = new DirectedGraph[numMethods];
+    this.parameterRefs = new List[numMethods];
+    final Unit[][] unitsOf = new Unit[numMethods][];
+    final SootMethod[][][] calleesOf = new SootMethod[numMethods][][];
+    final Unit[][] callersOf = new Unit[numMethods][];
+    computeMethods(unitsOf, calleesOf, callersOf);
+
+    // Number the units method by method
+    this.unitStart = new int[numMethods + 1];
+    for (int m = 0; m < numMethods; m++) {
+      unitStart[m + 1] = unitStart[m] + unitsOf[m].length;
+    }
+    final int numUnits = unitStart[numMethods];
+    this.units = new Unit[numUnits];
+    this.unitOwner = new int[numUnits];
+    this.unitTable = new int[Integer.highestOneBit(Math.max(numUnits, 1)) << 2];
+    this.startPoints = new long[(numUnits + 63) >>> 6];
+    this.exitPoints = new long[startPoints.length];
+    this.callStmts = new long[startPoints.length];
+    this.callCount = new int[numMethods];
+    this.calleeStart = new int[numUnits + 1];
+    int numCallees = 0;
+    for (int m = 0; m < numMethods; m++) {
+      for (SootMethod[] c : calleesOf[m]) {
+        numCallees += c == null ? 0 : c.length;
+      }
+    }
+    this.callees = new SootMethod[numCallees];
+
+    int mask = unitTable.length - 1;
+    int next = 0;
+    int nextCallee = 0;
+    long edges = 0;
+    for (int m = 0; m < numMethods; m++) {
+      DirectedGraph<Unit> graph = graphs[m];
+      Unit[] us = unitsOf[m];
+      for (int j = 0; j < us.length; j++, next++) {
+        Unit u = us[j];
+        units[next] = u;
+        unitOwner[next] = m;
+        int slot = slot(u, mask);
+        while (unitTable[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        unitTable[slot] = next + 1;
+        edges += graph.getSuccsOf(u).size();
+
+        calleeStart[next] = nextCallee;
+        if (isCallStmt(u)) {
+          setBit(callStmts, next);
+          callCount[m]++;
+          SootMethod[] c = calleesOf[m][j];
+          if (c != null) {
+            System.arraycopy(c, 0, callees, nextCallee, c.length);
+            nextCallee += c.length;
+          }
+        }
+      }
+      for (Unit u : graph.getHeads()) {
+        setBit(startPoints, checkedIndexOf(u));
+      }
+      for (Unit u : graph.getTails()) {
+        setBit(exitPoints, checkedIndexOf(u));
+      }
+    }
+    calleeStart[numUnits] = nextCallee;
+    this.edgeCount = edges;
+
+    this.callerStart = new int[numMethods + 1];
+    for (int m = 0; m < numMethods; m++) {
+      callerStart[m + 1] = callerStart[m] + callersOf[m].length;
+    }
+    this.callers = new Unit[callerStart[numMethods]];
+    for (int m = 0; m < numMethods; m++) {
+      System.arraycopy(callersOf[m], 0, callers, callerStart[m], callersOf[m].length);
+    }
+
+    logger.info("Precomputed ICFG of " + numMethods + " methods and " + numUnits + " statements with " + callees.length
+        + " call edges, about " + (getMemoryFootprint() >> 10) + " KB");
+  }
+
+  /**
+   * Computes the unit graph, the units, the parameter refs, the callees of every call statement and the callers of each
+   * method, in parallel.
+   */
+  private void computeMethods(final Unit[][] unitsOf, final SootMethod[][][] calleesOf, final Unit[][] callersOf) {
+    int n = Options.v().num_threads();
+    int threadNum = n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    CountingThreadPoolExecutor executor
+        = new CountingThreadPoolExecutor(threadNum, threadNum, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    for (int i = 0; i < methods.length; i++) {
+      final int m = i;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Body body = methods[m].getActiveBody();
+          graphs[m] = makeGraph(body);
+          parameterRefs[m] = Collections.unmodifiableList(body.getParameterRefs());
+          Unit[] us = body.getUnits().toArray(new Unit[body.getUnits().size()]);
+          unitsOf[m] = us;
+          SootMethod[][] cs = new SootMethod[us.length][];
+          for (int j = 0; j < us.length; j++) {
+            if (isCallStmt(us[j])) {
+              cs[j] = computeCalleesOfCallAt(us[j]);
+            }
+          }
+          calleesOf[m] = cs;
+          callersOf[m] = computeCallersOf(methods[m]);
+        }
+      });
+    }
+
+    try {
+      executor.awaitCompletion();
+      executor.shutdown();
+    } catch (InterruptedException e) {
+      throw new RuntimeException("Could not wait for ICFG threads to finish: " + e.getMessage(), e);
+    }
+    if (executor.getException() != null) {
+      if (executor.getException() instanceof RuntimeException) {
+        throw (RuntimeException) executor.getException();
+      } else {
+        throw new RuntimeException(executor.getException());
+      }
+    }
+  }
+
+  /**
+   * Builds the unit graph of a body. This is called for the reachable methods by the worker threads of the constructor, and
+   * on every query for other methods; see the class comment for what overrides must observe.
+   */
+  protected DirectedGraph<Unit> makeGraph(Body body) {
+    return enableExceptions ? new CompactExceptionalUnitGraph(body) : new CompactBriefUnitGraph(body);
+  }
+
+  /**
+   * Retains only callers that are explicit call sites or Thread.start(), as {@link JimpleBasedInterproceduralCFG}. This is
+   * called by the worker threads of the constructor, and on every query for statements and methods that are not reachable;
+   * see the class comment for what overrides must observe.
+   */
+  protected boolean isFollowed(Edge e) {
+    return e.kind().isExplicit() || e.kind().isThread() || e.kind().isExecutor() || e.kind().isAsyncTask()
+        || e.kind().isClinit() || e.kind().isPrivileged() || (includeReflectiveCalls && e.kind().isReflection());
+  }
+
+  private SootMethod[] computeCalleesOfCallAt(Unit u) {
+    List<SootMethod> res = new ArrayList<SootMethod>();
+    for (Iterator<Edge> edgeIter = cg.edgesOutOf(u); edgeIter.hasNext();) {
+      Edge edge = edgeIter.next();
+      if (isFollowed(edge)) {
+        SootMethod m = edge.getTgt().method();
+        if (includePhantomCallees || m.hasActiveBody()) {
+          res.add(m);
+        }
+      }
+    }
+    return res.toArray(new SootMethod[res.size()]);
+  }
+
+  private Unit[] computeCallersOf(SootMethod m) {
+    List<Unit> res = new ArrayList<Unit>();
+    for (Iterator<Edge> edgeIter = cg.edgesInto(m); edgeIter.hasNext();) {
+      Edge edge = edgeIter.next();
+      if (isFollowed(edge)) {
+        res.add(edge.srcUnit());
+      }
+    }
+    return res.toArray(new Unit[res.size()]);
+  }
+
+  private static int slot(Unit u, int mask) {
+    return (System.identityHashCode(u) * 0x9E3779B9) >>> 7 & mask;
+  }
+
+  private int checkedIndexOf(Unit u) {
+    int i = indexOf(u);
+    if (i < 0) {
+      throw new RuntimeException("Unit " + u + " is not in the body of its graph");
+    }
+    return i;
+  }
+
+  private static void setBit(long[] bits, int i) {
+    bits[i >>> 6] |= 1L << i;
+  }
+
+  private static boolean getBit(long[] bits, int i) {
+    return (bits[i >>> 6] & (1L << i)) != 0L;
+  }
+
+  /** Returns the number of <code>u</code>, or -1 if it is not a statement of a reachable method. */
+  private int indexOf(Unit u) {
+    int mask = unitTable.length - 1;
+    for (int slot = slot(u, mask);; slot = (slot + 1) & mask) {
+      int i = unitTable[slot];
+      if (i == 0) {
+        return -1;
+      }
+      if (units[i - 1] == u) {
+        return i - 1;
+      }
+    }
+  }
+
+  private int indexOf(SootMethod m) {
+    int n = m.getNumber();
+    return n > 0 && n < methodIndex.length ? methodIndex[n] : -1;
+  }
+
+  /**
+   * Returns an estimate of the memory used by the tables of this ICFG and its unit graphs, in bytes. The estimate counts
+   * {@value #REFERENCE_BYTES} bytes per reference and a reference per edge and direction in the unit graphs; it does not
+   * count the statements and methods themselves.
+   */
+  public long getMemoryFootprint() {
+    long ints = methodIndex.length + unitStart.length + unitOwner.length + unitTable.length + callCount.length
+        + calleeStart.length + callerStart.length;
+    long longs = startPoints.length + exitPoints.length + callStmts.length;
+    long refs = methods.length * 3L + units.length + callees.length + callers.length + edgeCount * 2;
+    return ints * 4 + longs * 8 + refs * REFERENCE_BYTES;
+  }
+
+  @Override
+  public SootMethod getMethodOf(Unit u) {
+    int i = indexOf(u);
+    return i < 0 ? null : methods[unitOwner[i]];
+  }
+
+  @Override
+  public List<Unit> getSuccsOf(Unit u) {
+    int i = indexOf(u);
+    return i < 0 ? Collections.<Unit>emptyList() : graphs[unitOwner[i]].getSuccsOf(u);
+  }
+
+  @Override
+  public List<Unit> getPredsOf(Unit u) {
+    int i = indexOf(u);
+    return i < 0 ? Collections.<Unit>emptyList() : graphs[unitOwner[i]].getPredsOf(u);
+  }
+
+  @Override
+  public DirectedGraph<Unit> getOrCreateUnitGraph(SootMethod m) {
+    int i = indexOf(m);
+    return i < 0 ? makeGraph(m.getActiveBody()) : graphs[i];
+  }
+
+  @Override
+  public List<Value> getParameterRefs(SootMethod m) {
+    int i = indexOf(m);
+    return i < 0 ? m.getActiveBody().getParameterRefs() : parameterRefs[i];
+  }
+
+  @Override
+  public boolean isExitStmt(Unit u) {
+    int i = indexOf(u);
+    return i >= 0 && getBit(exitPoints, i);
+  }
+
+  @Override
+  public boolean isStartPoint(Unit u) {
+    int i = indexOf(u);
+    return i >= 0 && getBit(startPoints, i);
+  }
+
+  @Override
+  public boolean isFallThroughSuccessor(Unit u, Unit succ) {
+    assert getSuccsOf(u).contains(succ);
+    if (!u.fallsThrough()) {
+      return false;
+    }
+    int i = indexOf(u);
+    return i >= 0 && i + 1 < unitStart[unitOwner[i] + 1] && units[i + 1] == succ;
+  }
+
+  @Override
+  public boolean isBranchTarget(Unit u, Unit succ) {
+    assert getSuccsOf(u).contains(succ);
+    if (!u.branches()) {
+      return false;
+    }
+    for (UnitBox ub : u.getUnitBoxes()) {
+      if (ub.getUnit() == succ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Collection<Unit> getStartPointsOf(SootMethod m) {
+    if (m.hasActiveBody()) {
+      return getOrCreateUnitGraph(m).getHeads();
+    }
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Collection<Unit> getEndPointsOf(SootMethod m) {
+    if (m.hasActiveBody()) {
+      return getOrCreateUnitGraph(m).getTails();
+    }
+    return Collections.emptySet();
+  }
+
+  @Override
+  public boolean isCallStmt(Unit u) {
+    return ((Stmt) u).containsInvokeExpr();
+  }
+
+  @Override
+  public Collection<SootMethod> getCalleesOfCallAt(Unit u) {
+    int i = indexOf(u);
+    if (i < 0) {
+      return Arrays.asList(computeCalleesOfCallAt(u));
+    }
+    int from = calleeStart[i];
+    int to = calleeStart[i + 1];
+    return from == to ? Collections.<SootMethod>emptySet()
+        : Collections.unmodifiableList(Arrays.asList(callees).subList(from, to));
+  }
+
+  @Override
+  public Collection<Unit> getCallersOf(SootMethod m) {
+    int i = indexOf(m);
+    if (i < 0) {
+      return Arrays.asList(computeCallersOf(m));
+    }
+    return Collections.unmodifiableList(Arrays.asList(callers).subList(callerStart[i], callerStart[i + 1]));
+  }
+
+  @Override
+  public Set<Unit> getCallsFromWithin(SootMethod m) {
+    int i = indexOf(m);
+    if (i < 0) {
+      Set<Unit> res = new LinkedHashSet<Unit>();
+      for (Unit u : m.getActiveBody().getUnits()) {
+        if (isCallStmt(u)) {
+          res.add(u);
+        }
+      }
+      return res;
+    }
+    return callCount[i] == 0 ? Collections.<Unit>emptySet() : new CallSet(i);
+  }
+
+  @Override
+  public Collection<Unit> getReturnSitesOfCallAt(Unit u) {
+    return getSuccsOf(u);
+  }
+
+  @Override
+  public List<Unit> getPredsOfCallAt(Unit u) {
+    return getPredsOf(u);
+  }
+
+  @Override
+  public Set<Unit> allNonCallStartNodes() {
+    Set<Unit> res = new LinkedHashSet<Unit>();
+    for (int i = 0; i < units.length; i++) {
+      if (!getBit(startPoints, i) && !getBit(callStmts, i)) {
+        res.add(units[i]);
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public Set<Unit> allNonCallEndNodes() {
+    Set<Unit> res = new LinkedHashSet<Unit>();
+    for (int i = 0; i < units.length; i++) {
+      if (!getBit(exitPoints, i) && !getBit(callStmts, i)) {
+        res.add(units[i]);
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public boolean isReturnSite(Unit n) {
+    for (Unit pred : getPredsOf(n)) {
+      if (isCallStmt(pred)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isReachable(Unit u) {
+    return indexOf(u) >= 0;
+  }
+
+  /** The call statements of one method, in chain order. */
+  private final class CallSet extends AbstractSet<Unit> {
+    private final int method;
+
+    CallSet(int method) {
+      this.method = method;
+    }
+
+    @Override
+    public Iterator<Unit> iterator() {
+      return new Iterator<Unit>() {
+        private int next = advance(unitStart[method]);
+
+        private int advance(int i) {
+          int end = unitStart[method + 1];
+          while (i < end && !getBit(callStmts, i)) {
+            i++;
+          }
+          return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return next < unitStart[method + 1];
+        }
+
+        @Override
+        public Unit next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          Unit u = units[next];
+          next = advance(next + 1);
+          return u;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return callCount[method];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Unit)) {
+        return false;
+      }
+      int i = indexOf((Unit) o);
+      return i >= 0 && unitOwner[i] == method && getBit(callStmts, i);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import soot.Body;
+import soot.BodyAnalysisCache;
 import soot.BodyTransformer;
 import soot.G;
 import soot.Local;
@@ -44,7 +45,6 @@ import soot.jimple.NullConstant;
 import soot.jimple.NumericConstant;
 import soot.jimple.StringConstant;
 import soot.options.Options;
-import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.toolkits.graph.Orderer;
 import soot.toolkits.graph.PseudoTopologicalOrderer;
 import soot.toolkits.graph.UnitGraph;
@@ -72,8 +72,9 @@ public class ConstantPropagatorAndFolder extends BodyTransformer {
       logger.debug("[" + b.getMethod().getName() + "] Propagating and folding constants...");
     }
 
-    UnitGraph g = new ExceptionalUnitGraph(b);
-    LocalDefs localDefs = LocalDefs.Factory.newLocalDefs(g);
+    BodyAnalysisCache cache = b.getAnalysisCache();
+    UnitGraph g = cache.getExceptionalUnitGraph();
+    LocalDefs localDefs = cache.getLocalDefs(g);
 
     // Perform a constant/local propagation pass.
     Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
@@ -121,10 +122,19 @@ public class ConstantPropagatorAndFolder extends BodyTransformer {
       }
     }
 
+    if (numPropagated + numFolded > 0) {
+      b.invalidateAnalyses();
+    }
+
     if (Options.v().verbose()) {
       logger.debug("[" + b.getMethod().getName() + "]     Propagated: " + numPropagated + ", Folded:  " + numFolded);
     }
 
   } // optimizeConstants
 
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
+
 }
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import soot.Body;
+import soot.BodyAnalysisCache;
 import soot.BodyTransformer;
 import soot.G;
 import soot.Local;
@@ -53,7 +54,6 @@ import soot.jimple.StmtBody;
 import soot.options.CPOptions;
 import soot.options.Options;
 import soot.toolkits.exceptions.ThrowAnalysis;
-import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.toolkits.graph.PseudoTopologicalOrderer;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.LocalDefs;
@@ -98,6 +98,7 @@ public class CopyPropagator extends BodyTransformer {
     StmtBody stmtBody = (StmtBody) b;
     int fastCopyPropagationCount = 0;
     int slowCopyPropagationCount = 0;
+    boolean changed = false;
 
     if (Options.v().verbose()) {
       logger.debug("[" + stmtBody.getMethod().getName() + "] Propagating copies...");
@@ -134,9 +135,10 @@ public class CopyPropagator extends BodyTransformer {
     }
 
     // Go through the definitions, building the webs
-    UnitGraph graph = new ExceptionalUnitGraph(stmtBody, throwAnalysis, forceOmitExceptingUnitEdges);
+    BodyAnalysisCache cache = stmtBody.getAnalysisCache();
+    UnitGraph graph = cache.getExceptionalUnitGraph(throwAnalysis, forceOmitExceptingUnitEdges);
 
-    LocalDefs localDefs = LocalDefs.Factory.newLocalDefs(graph);
+    LocalDefs localDefs = cache.getLocalDefs(graph);
 
     // Perform a local propagation pass.
     {
@@ -196,6 +198,7 @@ public class CopyPropagator extends BodyTransformer {
               if (def.getRightOp() instanceof Constant) {
                 if (useBox.canContainValue(def.getRightOp())) {
                   useBox.setValue(def.getRightOp());
+                  changed = true;
                 }
               } else if (def.getRightOp() instanceof CastExpr) {
                 CastExpr ce = (CastExpr) def.getRightOp();
@@ -205,6 +208,7 @@ public class CopyPropagator extends BodyTransformer {
                   if (isConstNull) {
                     if (useBox.canContainValue(NullConstant.v())) {
                       useBox.setValue(NullConstant.v());
+                      changed = true;
                     }
                   }
 
@@ -221,6 +225,7 @@ public class CopyPropagator extends BodyTransformer {
                   if (defCount == 1) {
                     useBox.setValue(m);
                     fastCopyPropagationCount++;
+                    changed = true;
                     continue;
                   }
 
@@ -266,6 +271,7 @@ public class CopyPropagator extends BodyTransformer {
 
                   useBox.setValue(m);
                   slowCopyPropagationCount++;
+                  changed = true;
                 }
               }
             }
@@ -275,6 +281,10 @@ public class CopyPropagator extends BodyTransformer {
       }
     }
 
+    if (changed) {
+      stmtBody.invalidateAnalyses();
+    }
+
     if (Options.v().verbose()) {
       logger.debug("[" + stmtBody.getMethod().getName() + "]     Propagated: " + fastCopyPropagationCount + " fast copies  "
           + slowCopyPropagationCount + " slow copies");
@@ -285,4 +295,9 @@ public class CopyPropagator extends BodyTransformer {
     }
   }
 
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
+
 }
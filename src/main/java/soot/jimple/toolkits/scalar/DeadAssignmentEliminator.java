@@ -236,7 +236,7 @@ public class DeadAssignmentEliminator extends BodyTransformer {
       // Add all the statements which are used to compute values
       // for the essential statements, recursively
 
-      final LocalDefs localDefs = LocalDefs.Factory.newLocalDefs(b);
+      final LocalDefs localDefs = b.getAnalysis(LocalDefs.class);
 
       if (!allEssential) {
         Set<Unit> essential = new HashSet<Unit>(b.getUnits().size());
@@ -302,4 +302,9 @@ public class DeadAssignmentEliminator extends BodyTransformer {
       Timers.v().deadCodeTimer.end();
     }
   }
+
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
 }
@@ -80,4 +80,9 @@ public class NopEliminator extends BodyTransformer {
       }
     }
   }
+
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
 }
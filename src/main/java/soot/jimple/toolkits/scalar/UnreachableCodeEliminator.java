@@ -78,7 +78,7 @@ public class UnreachableCodeEliminator extends BodyTransformer {
           = PhaseOptions.getBoolean(options, "remove-unreachable-traps", true) ? Scene.v().getDefaultThrowAnalysis()
               : PedanticThrowAnalysis.v();
     }
-    ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body, throwAnalysis, false);
+    ExceptionalUnitGraph graph = body.getAnalysisCache().getExceptionalUnitGraph(throwAnalysis, false);
 
     Chain<Unit> units = body.getUnits();
     int numPruned = units.size();
@@ -135,6 +135,11 @@ public class UnreachableCodeEliminator extends BodyTransformer {
     }
   }
 
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
+
   // Used to be: "mark first statement and all its successors, recursively"
   // Bad idea! Some methods are extremely long. It broke because the recursion reached the
   // 3799th level.
@@ -40,6 +40,7 @@ import soot.RefType;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
+import soot.Unit;
 import soot.Value;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InvokeExpr;
@@ -54,7 +55,7 @@ import soot.jimple.toolkits.callgraph.Filter;
 import soot.jimple.toolkits.callgraph.TransitiveTargets;
 import soot.jimple.toolkits.pointer.LocalMustAliasAnalysis;
 import soot.toolkits.graph.BriefUnitGraph;
-import soot.toolkits.graph.MHGPostDominatorsFinder;
+import soot.toolkits.graph.DominatorsFinder;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.ArraySparseSet;
 import soot.toolkits.scalar.FlowSet;
@@ -95,7 +96,8 @@ public class StartJoinAnalysis extends ForwardFlowAnalysis {
 
     if (!startStatements.isEmpty()) {
       // Get supporting info and analyses
-      MHGPostDominatorsFinder pd = new MHGPostDominatorsFinder(new BriefUnitGraph(sm.getActiveBody()));
+      DominatorsFinder<Unit> pd
+          = DominatorsFinder.Factory.newPostDominatorsFinder(new BriefUnitGraph(sm.getActiveBody()));
       // EqualUsesAnalysis lif = new EqualUsesAnalysis(g);
       LocalMustAliasAnalysis lma = new LocalMustAliasAnalysis(g);
       TransitiveTargets runMethodTargets = new TransitiveTargets(callGraph, new Filter(new RunMethodsPred()));
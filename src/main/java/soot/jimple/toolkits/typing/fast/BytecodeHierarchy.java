@@ -1,13 +1,15 @@
 package soot.jimple.toolkits.typing.fast;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
 
 import soot.ArrayType;
+import soot.FastHierarchy;
 import soot.FloatType;
 import soot.IntType;
 import soot.IntegerType;
@@ -54,10 +56,10 @@ public class BytecodeHierarchy implements IHierarchy {
       return Collections.emptyList();
     }
 
-    LinkedList<AncestryTreeNode> leafs = new LinkedList<AncestryTreeNode>();
+    Deque<AncestryTreeNode> leafs = new ArrayDeque<AncestryTreeNode>();
     leafs.add(new AncestryTreeNode(null, root));
 
-    LinkedList<AncestryTreeNode> r = new LinkedList<AncestryTreeNode>();
+    List<AncestryTreeNode> r = new ArrayList<AncestryTreeNode>();
     final RefType objectType = RefType.v("java.lang.Object");
     while (!leafs.isEmpty()) {
       AncestryTreeNode node = leafs.remove();
@@ -91,7 +93,18 @@ public class BytecodeHierarchy implements IHierarchy {
     return r;
   }
 
+  /**
+   * Returns the least common ancestors of <code>a</code> and <code>b</code>. The answers for pairs of distinct reference and
+   * array types come from the {@link TypeLatticeCache}; the returned collection must not be modified.
+   */
   public static Collection<Type> lcas_(Type a, Type b) {
+    if (TypeLatticeCache.isCached(a) && TypeLatticeCache.isCached(b) && !TypeResolver.typesEqual(a, b)) {
+      return TypeLatticeCache.v().lcas(a, b);
+    }
+    return computeLcas(a, b);
+  }
+
+  static Collection<Type> computeLcas(Type a, Type b) {
     if (TypeResolver.typesEqual(a, b)) {
       return Collections.<Type>singletonList(a);
     } else if (a instanceof BottomType) {
@@ -121,7 +134,7 @@ public class BytecodeHierarchy implements IHierarchy {
         ts = lcas_(eta, etb);
       }
 
-      LinkedList<Type> r = new LinkedList<Type>();
+      List<Type> r = new ArrayList<Type>(3);
       if (ts.isEmpty()) {
         // From Java Language Spec 2nd ed., Chapter 10, Arrays
         r.add(RefType.v("java.lang.Object"));
@@ -146,7 +159,7 @@ public class BytecodeHierarchy implements IHierarchy {
        * only one is Object.
        */
 
-      LinkedList<Type> r = new LinkedList<Type>();
+      List<Type> r = new ArrayList<Type>(2);
       /*
        * Do not consider Object to be a subtype of Serializable or Cloneable (it can appear this way if phantom-refs is
        * enabled and rt.jar is not available) otherwise an infinite loop can result.
@@ -169,7 +182,7 @@ public class BytecodeHierarchy implements IHierarchy {
     else {
       Collection<AncestryTreeNode> treea = buildAncestryTree((RefType) a), treeb = buildAncestryTree((RefType) b);
 
-      LinkedList<Type> r = new LinkedList<Type>();
+      List<Type> r = new ArrayList<Type>();
       for (AncestryTreeNode nodea : treea) {
         for (AncestryTreeNode nodeb : treeb) {
           RefType t = leastCommonNode(nodea, nodeb);
@@ -220,11 +233,17 @@ public class BytecodeHierarchy implements IHierarchy {
       return true;
     } else if (ancestor instanceof NullType) {
       return false;
+    } else if (TypeLatticeCache.isCached(ancestor) && TypeLatticeCache.isCached(child)) {
+      return TypeLatticeCache.v().ancestor(ancestor, child);
     } else {
-      return Scene.v().getOrMakeFastHierarchy().canStoreType(child, ancestor);
+      return computeAncestor(Scene.v().getOrMakeFastHierarchy(), ancestor, child);
     }
   }
 
+  static boolean computeAncestor(FastHierarchy hierarchy, Type ancestor, Type child) {
+    return hierarchy.canStoreType(child, ancestor);
+  }
+
   /*
    * Returns a list of the super classes of a given type in which the anchor will always be the first element even when the
    * types class is phantom. Note anchor should always be type Throwable as this is the root of all exception types.
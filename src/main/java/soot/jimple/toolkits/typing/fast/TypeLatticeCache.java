@@ -0,0 +1,159 @@
+package soot.jimple.toolkits.typing.fast;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.ArrayType;
+import soot.FastHierarchy;
+import soot.G;
+import soot.RefType;
+import soot.Scene;
+import soot.Singletons;
+import soot.Type;
+
+/**
+ * A scene-wide cache of the least common ancestors and the ancestor relation of reference and array types, as computed by
+ * {@link BytecodeHierarchy}. The answers are memoized in hash maps keyed by the numbers of both types in the type numberer
+ * of the {@link Scene}. They are computed with the {@link FastHierarchy} that was active when the cache was filled, which
+ * the cache holds on to, and the Scene drops them whenever it modifies, replaces or releases its hierarchy.
+ *
+ * <p>
+ * The cache may be used by several threads typing different bodies at the same time.
+ * </p>
+ */
+public class TypeLatticeCache {
+  private volatile Table table;
+  private volatile boolean enabled = true;
+
+  /** Counts the calls of {@link #clear()}, so that a table built from an outdated hierarchy is not kept. */
+  private volatile long generation = 0;
+
+  public TypeLatticeCache(Singletons.Global g) {
+  }
+
+  public static TypeLatticeCache v() {
+    return G.v().soot_jimple_toolkits_typing_fast_TypeLatticeCache();
+  }
+
+  /** Returns true if pairs of <code>t</code> with other such types are cached. */
+  static boolean isCached(Type t) {
+    return t instanceof RefType || t instanceof ArrayType;
+  }
+
+  private static long key(Type a, Type b) {
+    return ((long) a.getNumber() << 32) | (b.getNumber() & 0xFFFFFFFFL);
+  }
+
+  private Table getTable() {
+    Table t = table;
+    if (t == null) {
+      long g = generation;
+      t = new Table(Scene.v().getOrMakeFastHierarchy());
+      synchronized (this) {
+        if (g == generation) {
+          table = t;
+        }
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Returns the least common ancestors of two distinct reference or array types, computing them with
+   * {@link BytecodeHierarchy} if they are not cached yet. The returned collection is unmodifiable.
+   */
+  Collection<Type> lcas(Type a, Type b) {
+    if (!enabled) {
+      return BytecodeHierarchy.computeLcas(a, b);
+    }
+    Table t = getTable();
+    long k = key(a, b);
+    Collection<Type> r = t.lcas.get(k);
+    if (r == null) {
+      // Not computeIfAbsent: the lcas of array types are computed
+      // from those of their element types, which updates the map
+      Collection<Type> computed = BytecodeHierarchy.computeLcas(a, b);
+      computed = computed.size() == 1 ? Collections.singletonList(computed.iterator().next())
+          : Collections.unmodifiableList(new ArrayList<Type>(computed));
+      r = t.lcas.putIfAbsent(k, computed);
+      if (r == null) {
+        r = computed;
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Returns true if <code>ancestor</code> is an ancestor of <code>child</code>, both being reference or array types,
+   * computing the answer with {@link BytecodeHierarchy} if it is not cached yet.
+   */
+  boolean ancestor(Type ancestor, Type child) {
+    if (!enabled) {
+      return BytecodeHierarchy.computeAncestor(Scene.v().getOrMakeFastHierarchy(), ancestor, child);
+    }
+    Table t = getTable();
+    long k = key(ancestor, child);
+    Boolean r = t.ancestors.get(k);
+    if (r == null) {
+      r = BytecodeHierarchy.computeAncestor(t.hierarchy, ancestor, child);
+      t.ancestors.putIfAbsent(k, r);
+    }
+    return r;
+  }
+
+  /** Drops all cached answers. This is done by the {@link Scene} whenever its {@link FastHierarchy} changes. */
+  public synchronized void clear() {
+    generation++;
+    table = null;
+  }
+
+  /**
+   * Turns the cache on or off. While it is off, every query is computed with {@link BytecodeHierarchy} again, which gives
+   * the same answers more slowly. The cache is on by default.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      clear();
+    }
+  }
+
+  /** Returns true if answers are cached, see {@link #setEnabled(boolean)}. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  private static final class Table {
+    final FastHierarchy hierarchy;
+    final ConcurrentHashMap<Long, Collection<Type>> lcas = new ConcurrentHashMap<Long, Collection<Type>>();
+    final ConcurrentHashMap<Long, Boolean> ancestors = new ConcurrentHashMap<Long, Boolean>();
+
+    Table(FastHierarchy hierarchy) {
+      this.hierarchy = hierarchy;
+    }
+  }
+}
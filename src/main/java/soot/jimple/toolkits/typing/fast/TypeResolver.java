@@ -24,12 +24,12 @@ package soot.jimple.toolkits.typing.fast;
  * #L%
  */
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
 import soot.ArrayType;
@@ -417,25 +417,27 @@ public class TypeResolver {
   private Collection<Typing> applyAssignmentConstraints(Typing tg, IEvalFunction ef, IHierarchy h) {
     final int numAssignments = this.assignments.size();
 
-    LinkedList<Typing> sigma = new LinkedList<Typing>(), r = new LinkedList<Typing>();
     if (numAssignments == 0) {
-      return sigma;
+      return Collections.<Typing>emptyList();
     }
 
-    HashMap<Typing, BitSet> worklists = new HashMap<Typing, BitSet>();
+    // The candidate typings and their worklists, in lockstep
+    ArrayDeque<Typing> sigma = new ArrayDeque<Typing>();
+    ArrayDeque<BitSet> worklists = new ArrayDeque<BitSet>();
+    List<Typing> r = new ArrayList<Typing>();
 
     sigma.add(tg);
     BitSet wl = new BitSet(numAssignments - 1);
     wl.set(0, numAssignments);
-    worklists.put(tg, wl);
+    worklists.add(wl);
 
     while (!sigma.isEmpty()) {
       tg = sigma.element();
-      wl = worklists.get(tg);
+      wl = worklists.element();
       if (wl.isEmpty()) {
         r.add(tg);
         sigma.remove();
-        worklists.remove(tg);
+        worklists.remove();
       } else {
         // Get the next definition statement
         int defIdx = wl.nextSetBit(0);
@@ -493,7 +495,7 @@ public class TypeResolver {
                 wl_ = new BitSet(numAssignments - 1);
                 wl_.or(wl);
                 sigma.add(tg_);
-                worklists.put(tg_, wl_);
+                worklists.add(wl_);
               }
               tg_.set(v, t);
 
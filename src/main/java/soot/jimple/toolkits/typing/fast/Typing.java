@@ -24,49 +24,64 @@ package soot.jimple.toolkits.typing.fast;
  * #L%
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import soot.Local;
 import soot.Type;
 
 /**
+ * An assignment of types to locals. The types are kept in an array indexed by the position of each local in a
+ * {@link LocalIndex} shared by a typing and all typings copied from it, so copying a typing only copies the array.
+ *
  * @author Ben Bellamy
  */
 public class Typing {
-  private HashMap<Local, Type> map;
+  private final LocalIndex index;
+  private Type[] types;
 
   public Typing(Collection<Local> vs) {
-    map = new HashMap<Local, Type>(vs.size());
-    final BottomType bottomType = BottomType.v();
-    for (Local v : vs) {
-      this.map.put(v, bottomType);
-    }
+    this.index = new LocalIndex(vs);
+    this.types = new Type[vs.size()];
+    Arrays.fill(this.types, BottomType.v());
   }
 
   public Typing(Typing tg) {
-    this.map = new HashMap<Local, Type>(tg.map);
+    this.index = tg.index;
+    this.types = tg.types.clone();
   }
 
   public Type get(Local v) {
-    return this.map.get(v);
+    int i = this.index.indexOf(v);
+    return i < 0 || i >= this.types.length ? null : this.types[i];
   }
 
   public Type set(Local v, Type t) {
-    return this.map.put(v, t);
+    int i = this.index.add(v);
+    if (i >= this.types.length) {
+      this.types = Arrays.copyOf(this.types, Math.max(i + 1, this.types.length + (this.types.length >> 1)));
+    }
+    Type old = this.types[i];
+    this.types[i] = t;
+    return old;
   }
 
   @Override
   public String toString() {
     StringBuffer sb = new StringBuffer();
     sb.append('{');
-    for (Local v : this.map.keySet()) {
-      sb.append(v);
-      sb.append(':');
-      sb.append(this.get(v));
-      sb.append(',');
+    for (int i = 0; i < this.types.length; i++) {
+      if (this.types[i] != null) {
+        sb.append(this.index.get(i));
+        sb.append(':');
+        sb.append(this.types[i]);
+        sb.append(',');
+      }
     }
     sb.append('}');
     return sb.toString();
@@ -92,8 +107,17 @@ public class Typing {
 
   public static int compare(Typing a, Typing b, IHierarchy h) {
     int r = 0;
-    for (Local v : a.map.keySet()) {
-      Type ta = a.get(v), tb = b.get(v);
+    for (int i = 0; i < a.types.length; i++) {
+      Type ta = a.types[i];
+      if (ta == null) {
+        continue;
+      }
+      Type tb;
+      if (a.index == b.index) {
+        tb = i < b.types.length ? b.types[i] : null;
+      } else {
+        tb = b.get(a.index.get(i));
+      }
 
       int cmp;
       if (TypeResolver.typesEqual(ta, tb)) {
@@ -115,4 +139,40 @@ public class Typing {
     }
     return r;
   }
-}
\ No newline at end of file
+
+  /**
+   * The positions of locals in the arrays of typings. Locals are only ever added, so a typing copied before a local was
+   * added simply has no type for it.
+   */
+  private static final class LocalIndex {
+    private final Map<Local, Integer> positions;
+    private final List<Local> locals;
+
+    LocalIndex(Collection<Local> vs) {
+      this.positions = new HashMap<Local, Integer>(vs.size() * 2);
+      this.locals = new ArrayList<Local>(vs.size());
+      for (Local v : vs) {
+        add(v);
+      }
+    }
+
+    int indexOf(Local v) {
+      Integer i = this.positions.get(v);
+      return i == null ? -1 : i;
+    }
+
+    int add(Local v) {
+      Integer i = this.positions.get(v);
+      if (i == null) {
+        i = this.locals.size();
+        this.positions.put(v, i);
+        this.locals.add(v);
+      }
+      return i;
+    }
+
+    Local get(int i) {
+      return this.locals.get(i);
+    }
+  }
+}
@@ -33,6 +33,7 @@ import soot.toolkits.graph.Block;
 import soot.toolkits.graph.BlockGraph;
 import soot.toolkits.graph.BlockGraphConverter;
 import soot.toolkits.graph.CytronDominanceFrontier;
+import soot.toolkits.graph.DirectedGraph;
 import soot.toolkits.graph.DominanceFrontier;
 import soot.toolkits.graph.DominatorTree;
 import soot.toolkits.graph.DominatorsFinder;
@@ -40,7 +41,6 @@ import soot.toolkits.graph.ExceptionalBlockGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.toolkits.graph.HashReversibleGraph;
 import soot.toolkits.graph.ReversibleGraph;
-import soot.toolkits.graph.SimpleDominatorsFinder;
 import soot.toolkits.graph.UnitGraph;
 
 /**
@@ -107,7 +107,7 @@ public class DefaultShimpleFactory implements ShimpleFactory {
       return rdFinder;
     }
 
-    rdFinder = new SimpleDominatorsFinder<Block>(getReverseBlockGraph());
+    rdFinder = newDominatorsFinder(getReverseBlockGraph());
     return rdFinder;
   }
 
@@ -155,10 +155,20 @@ public class DefaultShimpleFactory implements ShimpleFactory {
       return dFinder;
     }
 
-    dFinder = new SimpleDominatorsFinder<Block>(getBlockGraph());
+    dFinder = newDominatorsFinder(getBlockGraph());
     return dFinder;
   }
 
+  /**
+   * The block graphs have a single start and stop node, for which all dominators finders agree, so the one selected with
+   * the <code>-dominators</code> option is used.
+   *
+   * @see DominatorsFinder.Factory#newDominatorsFinder(DirectedGraph)
+   **/
+  protected DominatorsFinder<Block> newDominatorsFinder(DirectedGraph<Block> graph) {
+    return DominatorsFinder.Factory.newDominatorsFinder(graph);
+  }
+
   public DominatorTree<Block> getDominatorTree() {
     if (dTree != null) {
       return dTree;
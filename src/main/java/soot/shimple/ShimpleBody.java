@@ -132,6 +132,10 @@ public class ShimpleBody extends StmtBody {
    * <p>
    * The eliminate Phi nodes stage is harmless, but if you *know* that no Phi nodes are present and you wish to avoid the
    * transformations involved in eliminating Phi nodes, use rebuild(false).
+   *
+   * <p>
+   * Rebuilding recomputes the block graph, the dominators and the Phi nodes of the whole body; it is not incremental. Only
+   * renaming is skipped for Locals that are assigned only once, since it would leave them unchanged.
    **/
   public void rebuild(boolean hasPhiNodes) {
     isExtendedSSA = options.extended();
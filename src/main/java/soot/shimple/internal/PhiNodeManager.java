@@ -22,10 +22,14 @@ package soot.shimple.internal;
  * #L%
  */
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -79,6 +83,8 @@ public class PhiNodeManager {
     cfg = sf.getBlockGraph();
     dt = sf.getDominatorTree();
     df = sf.getDominanceFrontier();
+    unitToBlock = null;
+    unitToIndexInBlock = null;
   }
 
   protected MultiMap<Local, Block> varToBlocks;
@@ -89,12 +95,22 @@ public class PhiNodeManager {
    * <p>
    * Special Java case: If a variable is not defined along all paths of entry to a node, a Phi node is not needed.
    * </p>
+   *
+   * <p>
+   * Locals and blocks are numbered, and no Phi node is inserted for a local in a block that already has one for it. With
+   * the <code>pruned</code> option, no Phi node is inserted where the local is not live either, since it would be dead.
+   * </p>
    **/
   public boolean insertTrivialPhiNodes() {
     update();
     boolean change = false;
     varToBlocks = new HashMultiMap<Local, Block>();
-    Map<Local, List<Block>> localsToDefPoints = new HashMap<Local, List<Block>>();
+
+    // number the locals in the order they are first defined
+    Map<Local, Integer> localToIndex = new HashMap<Local, Integer>();
+    List<Local> locals = new ArrayList<Local>();
+    List<List<Block>> localsToDefPoints = new ArrayList<List<Block>>();
+    int multiplyDefined = 0;
 
     // compute localsToDefPoints and varToBlocks
     for (Block block : cfg) {
@@ -104,14 +120,18 @@ public class PhiNodeManager {
           Value def = vb.getValue();
           if (def instanceof Local) {
             Local local = (Local) def;
-            List<Block> def_points = null;
-            if (localsToDefPoints.containsKey(local)) {
-              def_points = localsToDefPoints.get(local);
-            } else {
-              def_points = new ArrayList<Block>();
-              localsToDefPoints.put(local, def_points);
+            Integer index = localToIndex.get(local);
+            if (index == null) {
+              index = locals.size();
+              localToIndex.put(local, index);
+              locals.add(local);
+              localsToDefPoints.add(new ArrayList<Block>());
             }
+            List<Block> def_points = localsToDefPoints.get(index);
             def_points.add(block);
+            if (def_points.size() == 2) {
+              multiplyDefined++;
+            }
           }
         }
 
@@ -121,27 +141,30 @@ public class PhiNodeManager {
       }
     }
 
+    // if every local is only defined once, no need for phi nodes
+    if (multiplyDefined == 0) {
+      return false;
+    }
+
+    BitSet[] liveIn = body.getOptions().pruned() ? computeLiveIn(localToIndex) : null;
+
     /* Routine initialisations. */
 
     int[] workFlags = new int[cfg.size()];
+    int[] hasAlreadyFlags = new int[cfg.size()];
     int iterCount = 0;
     Stack<Block> workList = new Stack<Block>();
 
-    Map<Integer, Integer> has_already = new HashMap<Integer, Integer>();
-    for (Iterator<Block> blocksIt = cfg.iterator(); blocksIt.hasNext();) {
-      Block block = blocksIt.next();
-      has_already.put(block.getIndexInMethod(), 0);
-    }
-
     /* Main Cytron algorithm. */
 
     {
-      for (Local local : localsToDefPoints.keySet()) {
+      for (int localIndex = 0; localIndex < locals.size(); localIndex++) {
+        Local local = locals.get(localIndex);
         iterCount++;
 
         // initialise worklist
         {
-          List<Block> def_points = localsToDefPoints.get(local);
+          List<Block> def_points = localsToDefPoints.get(localIndex);
           // if the local is only defined once, no need for phi nodes
           if (def_points.size() == 1) {
             continue;
@@ -166,8 +189,14 @@ public class PhiNodeManager {
               continue;
             }
 
-            if (has_already.get(frontierBlock.getIndexInMethod()) < iterCount) {
-              has_already.put(frontierBlock.getIndexInMethod(), iterCount);
+            if (hasAlreadyFlags[fBIndex] < iterCount) {
+              hasAlreadyFlags[fBIndex] = iterCount;
+              if (liveIn != null && !liveIn[fBIndex].get(localIndex)) {
+                continue;
+              }
+              if (varToBlocks.get(local).contains(frontierBlock)) {
+                continue;
+              }
               prependTrivialPhiNode(local, frontierBlock);
               change = true;
 
@@ -184,6 +213,107 @@ public class PhiNodeManager {
     return change;
   }
 
+  /**
+   * Computes the locals that are live at the start of each block, indexed by the index of the block in the method and the
+   * given index of the local. Locals that are not numbered are ignored. An argument of a Phi node counts as a use at the end
+   * of its predecessor block, or in the block of the Phi node if the predecessor is not the tail of a block. A block does
+   * not kill the locals that are live at the start of the handlers it may throw to, since it may throw before its
+   * definitions.
+   **/
+  protected BitSet[] computeLiveIn(Map<Local, Integer> localToIndex) {
+    int n = cfg.size();
+    BitSet[] use = new BitSet[n];
+    BitSet[] def = new BitSet[n];
+    BitSet[] phiUse = new BitSet[n];
+    Map<Unit, Integer> tailToBlock = new HashMap<Unit, Integer>(n * 2 + 1, 0.7f);
+    for (Block block : cfg) {
+      int b = block.getIndexInMethod();
+      tailToBlock.put(block.getTail(), b);
+      phiUse[b] = new BitSet();
+    }
+    for (Block block : cfg) {
+      int b = block.getIndexInMethod();
+      BitSet blockUse = new BitSet();
+      BitSet blockDef = new BitSet();
+      for (Unit unit : block) {
+        if (Shimple.isPhiNode(unit)) {
+          for (ValueUnitPair arg : Shimple.getPhiExpr(unit).getArgs()) {
+            Integer index = localToIndex.get(arg.getValue());
+            if (index == null) {
+              continue;
+            }
+            Integer pred = tailToBlock.get(arg.getUnit());
+            if (pred != null) {
+              phiUse[pred].set(index);
+            } else if (!blockDef.get(index)) {
+              blockUse.set(index);
+            }
+          }
+        } else {
+          for (ValueBox vb : unit.getUseBoxes()) {
+            Integer index = localToIndex.get(vb.getValue());
+            if (index != null && !blockDef.get(index)) {
+              blockUse.set(index);
+            }
+          }
+        }
+        for (ValueBox vb : unit.getDefBoxes()) {
+          Integer index = localToIndex.get(vb.getValue());
+          if (index != null) {
+            blockDef.set(index);
+          }
+        }
+      }
+      use[b] = blockUse;
+      def[b] = blockDef;
+    }
+
+    Set<Unit> handlerUnits = new HashSet<Unit>();
+    for (Trap trap : body.getTraps()) {
+      handlerUnits.add(trap.getHandlerUnit());
+    }
+
+    BitSet[] liveIn = new BitSet[n];
+    boolean[] queued = new boolean[n];
+    Deque<Block> workList = new ArrayDeque<Block>();
+    for (Block block : cfg) {
+      int b = block.getIndexInMethod();
+      liveIn[b] = (BitSet) use[b].clone();
+      queued[b] = true;
+      workList.push(block);
+    }
+    while (!workList.isEmpty()) {
+      Block block = workList.pop();
+      int b = block.getIndexInMethod();
+      queued[b] = false;
+
+      BitSet liveOut = (BitSet) phiUse[b].clone();
+      BitSet handlerLiveIn = new BitSet();
+      for (Block succ : cfg.getSuccsOf(block)) {
+        BitSet succLiveIn = liveIn[succ.getIndexInMethod()];
+        liveOut.or(succLiveIn);
+        if (handlerUnits.contains(succ.getHead())) {
+          handlerLiveIn.or(succLiveIn);
+        }
+      }
+      liveOut.andNot(def[b]);
+      liveOut.or(handlerLiveIn);
+      liveOut.or(use[b]);
+
+      if (!liveOut.equals(liveIn[b])) {
+        liveIn[b] = liveOut;
+        for (Block pred : cfg.getPredsOf(block)) {
+          int p = pred.getIndexInMethod();
+          if (!queued[p]) {
+            queued[p] = true;
+            workList.push(pred);
+          }
+        }
+      }
+    }
+    return liveIn;
+  }
+
   /**
    * Inserts a trivial Phi node with the appropriate number of arguments.
    **/
@@ -244,10 +374,15 @@ public class PhiNodeManager {
      * build the MultiMap valueToPairs for convenience.
      */
 
-    MultiMap<Value, ValueUnitPair> valueToPairs = new HashMultiMap<Value, ValueUnitPair>();
+    Map<Value, List<ValueUnitPair>> valueToPairs = new LinkedHashMap<Value, List<ValueUnitPair>>();
     for (ValueUnitPair argPair : phiExpr.getArgs()) {
       Value value = argPair.getValue();
-      valueToPairs.put(value, argPair);
+      List<ValueUnitPair> pairs = valueToPairs.get(value);
+      if (pairs == null) {
+        pairs = new ArrayList<ValueUnitPair>();
+        valueToPairs.put(value, pairs);
+      }
+      pairs.add(argPair);
     }
 
     /*
@@ -255,14 +390,14 @@ public class PhiNodeManager {
      * the rest of the redundant arguments can be trimmed.
      */
 
-    Iterator<Value> valuesIt = valueToPairs.keySet().iterator();
-    while (valuesIt.hasNext()) {
-      Value value = valuesIt.next();
+    for (List<ValueUnitPair> pairsSet : valueToPairs.values()) {
+      if (pairsSet.size() == 1) {
+        continue;
+      }
 
       // although the champs list constantly shrinks, guaranteeing
       // termination, the challengers list never does. This could
       // be optimised.
-      Set<ValueUnitPair> pairsSet = valueToPairs.get(value);
       List<ValueUnitPair> champs = new LinkedList<ValueUnitPair>(pairsSet);
       List<ValueUnitPair> challengers = new LinkedList<ValueUnitPair>(pairsSet);
 
@@ -329,6 +464,7 @@ public class PhiNodeManager {
   }
 
   protected Map<Unit, Block> unitToBlock;
+  protected Map<Unit, Integer> unitToIndexInBlock;
 
   /**
    * Returns true if champ dominates challenger. Note that false doesn't necessarily mean that challenger dominates champ.
@@ -345,25 +481,20 @@ public class PhiNodeManager {
 
     if (unitToBlock == null) {
       unitToBlock = getUnitToBlockMap(cfg);
+      unitToIndexInBlock = new HashMap<Unit, Integer>(unitToBlock.size() * 2 + 1, 0.7f);
+      for (Block block : cfg) {
+        int i = 0;
+        for (Unit unit : block) {
+          unitToIndexInBlock.put(unit, i++);
+        }
+      }
     }
 
     Block champBlock = unitToBlock.get(champ);
     Block challengerBlock = unitToBlock.get(challenger);
 
     if (champBlock.equals(challengerBlock)) {
-      Iterator<Unit> unitsIt = champBlock.iterator();
-
-      while (unitsIt.hasNext()) {
-        Unit unit = unitsIt.next();
-        if (unit.equals(champ)) {
-          return true;
-        }
-        if (unit.equals(challenger)) {
-          return false;
-        }
-      }
-
-      throw new RuntimeException("Assertion failed.");
+      return unitToIndexInBlock.get(champ) < unitToIndexInBlock.get(challenger);
     }
 
     DominatorNode<Block> champNode = dt.getDode(champBlock);
@@ -482,7 +613,7 @@ public class PhiNodeManager {
    * Convenience function that maps units to blocks. Should probably be in BlockGraph.
    **/
   public Map<Unit, Block> getUnitToBlockMap(BlockGraph blocks) {
-    Map<Unit, Block> unitToBlock = new HashMap<Unit, Block>();
+    Map<Unit, Block> unitToBlock = new HashMap<Unit, Block>(body.getUnits().size() * 2 + 1, 0.7f);
 
     Iterator<Block> blocksIt = blocks.iterator();
     while (blocksIt.hasNext()) {
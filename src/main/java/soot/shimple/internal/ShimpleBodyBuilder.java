@@ -85,10 +85,16 @@ public class ShimpleBodyBuilder {
   protected BlockGraph cfg;
 
   /**
-   * A fixed list of all original Locals.
+   * A fixed list of the original Locals that are assigned more than once, and so are renamed. Renaming a Local that is
+   * assigned only once would leave it unchanged.
    **/
   protected List<Local> origLocals;
 
+  /**
+   * Maps the Locals in origLocals to their index in it.
+   **/
+  protected Map<Local, Integer> origLocalToIndex;
+
   public PhiNodeManager phi;
   public PiNodeManager pi;
 
@@ -117,10 +123,35 @@ public class ShimpleBodyBuilder {
   public void update() {
     cfg = sf.getBlockGraph();
     dt = sf.getDominatorTree();
-    origLocals = new ArrayList<Local>(body.getLocals());
+
+    Set<Local> assigned = new HashSet<Local>();
+    Set<Local> reassigned = new HashSet<Local>();
+    for (Unit unit : body.getUnits()) {
+      if (unit instanceof DefinitionStmt) {
+        Value lhs = ((DefinitionStmt) unit).getLeftOp();
+        if (lhs instanceof Local && !assigned.add((Local) lhs)) {
+          reassigned.add((Local) lhs);
+        }
+      }
+    }
+
+    origLocals = new ArrayList<Local>(reassigned.size());
+    origLocalToIndex = new HashMap<Local, Integer>(reassigned.size() * 2 + 1, 0.7f);
+    for (Local local : body.getLocals()) {
+      if (reassigned.contains(local)) {
+        origLocalToIndex.put(local, origLocals.size());
+        origLocals.add(local);
+      }
+    }
   }
 
+  /**
+   * Puts the body in SSA form. Calling this again after an SSA body was edited recomputes everything from scratch; only the
+   * Locals that are assigned more than once are renamed, since renaming the others would leave them unchanged.
+   **/
   public void transform() {
+    // The body may have been edited since the graphs were cached
+    sf.clearCache();
     phi.insertTrivialPhiNodes();
 
     boolean change = false;
@@ -277,7 +308,7 @@ public class ShimpleBodyBuilder {
           Value lhsValue = defStmt.getLeftOp();
 
           // not something we're interested in
-          if (!origLocals.contains(lhsValue)) {
+          if (!origLocalToIndex.containsKey(lhsValue)) {
             continue;
           }
 
@@ -327,13 +358,14 @@ public class ShimpleBodyBuilder {
 
           ValueBox phiArgBox = phiExpr.getArgBox(argIndex);
 
-          Local phiArg = (Local) phiArgBox.getValue();
-
-          int localIndex = indexOfLocal(phiArg);
+          // constants and Locals that are assigned only once stay as they are
+          int localIndex = indexOfLocal(phiArgBox.getValue());
           if (localIndex == -1) {
-            throw new RuntimeException("Assertion failed.");
+            continue;
           }
 
+          Local phiArg = (Local) phiArgBox.getValue();
+
           if (namingStacks[localIndex].empty()) {
             continue;
           }
@@ -386,7 +418,7 @@ public class ShimpleBodyBuilder {
   protected Local fetchNewLocal(Local local, Integer subscript) {
     Local oldLocal = local;
 
-    if (!origLocals.contains(local)) {
+    if (!origLocalToIndex.containsKey(local)) {
       oldLocal = newLocalsToOldLocal.get(local);
     }
 
@@ -417,16 +449,16 @@ public class ShimpleBodyBuilder {
    * structures.
    **/
   protected int indexOfLocal(Value local) {
-    int localIndex = origLocals.indexOf(local);
+    Integer localIndex = origLocalToIndex.get(local);
 
-    if (localIndex == -1) {
+    if (localIndex == null) {
       // might be null
       Local oldLocal = newLocalsToOldLocal.get(local);
 
-      localIndex = origLocals.indexOf(oldLocal);
+      localIndex = origLocalToIndex.get(oldLocal);
     }
 
-    return localIndex;
+    return localIndex == null ? -1 : localIndex;
   }
 
   /**
@@ -0,0 +1,300 @@
+package soot.toolkits.exceptions;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import soot.AnySubType;
+import soot.FastHierarchy;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+
+/**
+ * A numbering of the non-phantom subclasses of <code>java.lang.Throwable</code> in one {@link FastHierarchy}, used by
+ * {@link ThrowableSet} to answer subtype queries without walking the hierarchy.
+ *
+ * <p>
+ * Classes are numbered in depth-first preorder, so the subclasses of a class <code>c</code> are exactly the numbers from
+ * <code>number(c)</code> up to, but excluding, <code>end(number(c))</code>. A set of exception types is then a bitset over
+ * this numbering in which an {@link AnySubType} sets the whole range of its base, and the union of two sets, or of a set and
+ * an {@link AnySubType}, is an OR of such bitsets. Phantom classes, and everything below them, are not numbered; sets
+ * mentioning them are left to the hierarchy searches in {@link ThrowableSet}.
+ * </p>
+ */
+final class ThrowableNumbering {
+  final FastHierarchy hierarchy;
+
+  /** Masks of the sets that contain types without a number. */
+  private final Masks unnumbered = new Masks(this, null, null, null);
+
+  /** Preorder number of each numbered class, indexed by the class number in the Scene, -1 if none. */
+  private final int[] classToNumber;
+  /** End of the preorder range of each number. */
+  private final int[] ends;
+  private final int size;
+
+  ThrowableNumbering(FastHierarchy hierarchy) {
+    this.hierarchy = hierarchy;
+    Scene sc = Scene.v();
+    classToNumber = new int[sc.getClassNumberer().size() + 1];
+    Arrays.fill(classToNumber, -1);
+    ends = new int[classToNumber.length];
+
+    int next = 0;
+    SootClass throwable = sc.getSootClassUnsafe("java.lang.Throwable", false);
+    if (throwable != null && !throwable.isPhantom() && throwable.resolvingLevel() >= SootClass.HIERARCHY) {
+      next = dfsVisit(0, throwable);
+    }
+    size = next;
+  }
+
+  private int dfsVisit(int start, SootClass c) {
+    int cn = c.getNumber();
+    if (cn <= 0 || cn >= classToNumber.length || classToNumber[cn] >= 0) {
+      return start;
+    }
+    int n = start++;
+    classToNumber[cn] = n;
+    for (SootClass sub : hierarchy.getSubclassesOf(c)) {
+      if (!sub.isPhantom() && !sub.isInterface()) {
+        start = dfsVisit(start, sub);
+      }
+    }
+    ends[n] = start;
+    return start;
+  }
+
+  /** Returns the number of <code>t</code>, or -1 if it is not a numbered subclass of <code>java.lang.Throwable</code>. */
+  int number(RefType t) {
+    int cn = t.getSootClass().getNumber();
+    return cn > 0 && cn < classToNumber.length ? classToNumber[cn] : -1;
+  }
+
+  /** Returns true if the class numbered <code>child</code> is the class numbered <code>parent</code> or a subclass. */
+  boolean isSubtype(int child, int parent) {
+    return child >= parent && child < ends[parent];
+  }
+
+  /** Returns the number of the base of <code>t</code>, or of <code>t</code> itself if it is a {@link RefType}. */
+  private int numberOf(RefLikeType t) {
+    return number(t instanceof RefType ? (RefType) t : ((AnySubType) t).getBase());
+  }
+
+  /**
+   * Computes the bitsets of the types included in and excluded from a set. If any of them has no number, the returned
+   * masks have <code>null</code> bitsets.
+   */
+  Masks masksOf(Set<RefLikeType> included, Set<AnySubType> excluded) {
+    long[] inc = new long[(size + 63) >>> 6];
+    long[] sub = new long[inc.length];
+    for (RefLikeType t : included) {
+      if (t instanceof RefType) {
+        int n = number((RefType) t);
+        if (n < 0) {
+          return unnumbered;
+        }
+        inc[n >>> 6] |= 1L << n;
+      } else {
+        int n = number(((AnySubType) t).getBase());
+        if (n < 0) {
+          return unnumbered;
+        }
+        setRange(inc, n, ends[n]);
+        setRange(sub, n, ends[n]);
+      }
+    }
+    long[] exc = null;
+    for (AnySubType t : excluded) {
+      int n = number(t.getBase());
+      if (n < 0) {
+        return unnumbered;
+      }
+      if (exc == null) {
+        exc = new long[inc.length];
+      }
+      setRange(exc, n, ends[n]);
+    }
+    return new Masks(this, inc, sub, exc);
+  }
+
+  /**
+   * Returns the included types of the union of two sets without exclusions, whose masks are <code>m1</code> and
+   * <code>m2</code>, with the types that an {@link AnySubType} of the union covers left out.
+   */
+  Set<RefLikeType> union(Set<RefLikeType> s1, Masks m1, Set<RefLikeType> s2, Masks m2) {
+    long[] sub = new long[m1.subtypes.length];
+    // The ranges of the AnySubTypes without their bases, which leave out
+    // the AnySubTypes covered by another one
+    long[] below = new long[sub.length];
+    for (int i = 0; i < sub.length; i++) {
+      sub[i] = m1.subtypes[i] | m2.subtypes[i];
+    }
+    addRangesBelow(below, s1);
+    addRangesBelow(below, s2);
+
+    Set<RefLikeType> ret = new HashSet<RefLikeType>(s1.size() + s2.size());
+    addUncovered(ret, s1, sub, below);
+    addUncovered(ret, s2, sub, below);
+    return ret;
+  }
+
+  /**
+   * Returns the included types of a set without exclusions, whose masks are <code>m</code>, after adding the
+   * {@link AnySubType} of the class numbered <code>n</code>, or <code>null</code> if the set already covers it.
+   */
+  Set<RefLikeType> add(Set<RefLikeType> s, Masks m, AnySubType e, int n) {
+    if (Masks.get(m.subtypes, n)) {
+      return null;
+    }
+    Set<RefLikeType> ret = new HashSet<RefLikeType>(s.size() + 1);
+    for (RefLikeType t : s) {
+      if (!isSubtype(numberOf(t), n)) {
+        ret.add(t);
+      }
+    }
+    ret.add(e);
+    return ret;
+  }
+
+  private void addRangesBelow(long[] bits, Set<RefLikeType> s) {
+    for (RefLikeType t : s) {
+      if (t instanceof AnySubType) {
+        int n = numberOf(t);
+        if (n + 1 < ends[n]) {
+          setRange(bits, n + 1, ends[n]);
+        }
+      }
+    }
+  }
+
+  private void addUncovered(Set<RefLikeType> ret, Set<RefLikeType> s, long[] sub, long[] below) {
+    for (RefLikeType t : s) {
+      if (!Masks.get(t instanceof RefType ? sub : below, numberOf(t))) {
+        ret.add(t);
+      }
+    }
+  }
+
+  private static void setRange(long[] bits, int from, int to) {
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      bits[first] |= firstMask & lastMask;
+      return;
+    }
+    bits[first] |= firstMask;
+    for (int i = first + 1; i < last; i++) {
+      bits[i] = -1L;
+    }
+    bits[last] |= lastMask;
+  }
+
+  /**
+   * The bitsets of one {@link ThrowableSet} over a numbering. <code>included</code> has the bit of every included
+   * {@link RefType} and the range of every included {@link AnySubType}; <code>subtypes</code> has the ranges of the included
+   * {@link AnySubType}s only; <code>excluded</code>, which is <code>null</code> if nothing is excluded, has the ranges of
+   * the excluded types.
+   */
+  static final class Masks {
+    final ThrowableNumbering numbering;
+    final long[] included;
+    final long[] subtypes;
+    final long[] excluded;
+
+    Masks(ThrowableNumbering numbering, long[] included, long[] subtypes, long[] excluded) {
+      this.numbering = numbering;
+      this.included = included;
+      this.subtypes = subtypes;
+      this.excluded = excluded;
+    }
+
+    /**
+     * Returns true if adding the types of a set whose masks are <code>o</code> to the set of these masks leaves its types
+     * unchanged. Both sets must be without exclusions.
+     */
+    boolean contains(Masks o) {
+      for (int i = 0; i < included.length; i++) {
+        if ((o.included[i] & ~included[i]) != 0L || (o.subtypes[i] & ~subtypes[i]) != 0L) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    static boolean get(long[] bits, int n) {
+      return bits != null && (bits[n >>> 6] & (1L << n)) != 0L;
+    }
+
+    /** Returns true if any number of the subclasses of the class numbered <code>n</code> is set in <code>bits</code>. */
+    boolean intersectsSubtypes(long[] bits, int n) {
+      int to = numbering.ends[n];
+      int first = n >>> 6;
+      int last = (to - 1) >>> 6;
+      long firstMask = -1L << n;
+      long lastMask = -1L >>> -to;
+      if (first == last) {
+        return (bits[first] & firstMask & lastMask) != 0L;
+      }
+      if ((bits[first] & firstMask) != 0L || (bits[last] & lastMask) != 0L) {
+        return true;
+      }
+      for (int i = first + 1; i < last; i++) {
+        if (bits[i] != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Returns true if every number set in <code>bits</code> belongs to a subclass of the class numbered <code>n</code>. */
+    boolean withinSubtypes(long[] bits, int n) {
+      int to = numbering.ends[n];
+      int first = n >>> 6;
+      int last = (to - 1) >>> 6;
+      for (int i = 0; i < bits.length; i++) {
+        long inside;
+        if (i < first || i > last) {
+          inside = 0L;
+        } else {
+          inside = -1L;
+          if (i == first) {
+            inside &= -1L << n;
+          }
+          if (i == last) {
+            inside &= -1L >>> -to;
+          }
+        }
+        if ((bits[i] & ~inside) != 0L) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
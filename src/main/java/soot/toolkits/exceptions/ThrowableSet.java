@@ -27,11 +27,12 @@ import com.google.common.cache.CacheBuilder;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import soot.AnySubType;
 import soot.FastHierarchy;
@@ -100,9 +101,15 @@ public class ThrowableSet {
     /**
      * This map stores all referenced <code>ThrowableSet</code>s.
      */
-    private final Map<ThrowableSet, ThrowableSet> registry
+    private final ConcurrentMap<ThrowableSet, ThrowableSet> registry
         = CacheBuilder.newBuilder().weakValues().<ThrowableSet, ThrowableSet>build().asMap();
 
+    /**
+     * Numbering of the <code>Throwable</code> classes in the current {@link FastHierarchy}, rebuilt whenever the
+     * <code>Scene</code> gets a new hierarchy.
+     */
+    private volatile ThrowableNumbering numbering;
+
     /**
      * <code>ThrowableSet</code> containing no exception classes.
      */
@@ -289,8 +296,20 @@ public class ThrowableSet {
       if (null != ref) {
         return ref;
       }
-      registry.put(result, result);
-      return result;
+      ref = registry.putIfAbsent(result, result);
+      return ref == null ? result : ref;
+    }
+
+    /**
+     * Returns the numbering of the <code>Throwable</code> classes in <code>hierarchy</code>, which must be the current
+     * hierarchy of the <code>Scene</code>.
+     */
+    ThrowableNumbering numbering(FastHierarchy hierarchy) {
+      ThrowableNumbering n = numbering;
+      if (n == null || n.hierarchy != hierarchy) {
+        numbering = n = new ThrowableNumbering(hierarchy);
+      }
+      return n;
     }
 
     /**
@@ -351,17 +370,57 @@ public class ThrowableSet {
    * elements in k to <code>this</code>. If (k,v) is in <code>memoizedAdds</code> and k is a {@link RefLikeType}, then v is
    * the set that results from adding k to <code>this</code>.
    */
-  protected Map<Object, ThrowableSet> memoizedAdds;
+  protected volatile Map<Object, ThrowableSet> memoizedAdds;
+
+  /**
+   * The bitsets of this set over the current {@link ThrowableNumbering}, computed on first use.
+   */
+  private volatile ThrowableNumbering.Masks masks;
 
   private ThrowableSet getMemoizedAdds(Object key) {
-    return memoizedAdds == null ? null : memoizedAdds.get(key);
+    Map<Object, ThrowableSet> m = memoizedAdds;
+    return m == null ? null : m.get(key);
   }
 
   private void addToMemoizedAdds(Object key, ThrowableSet value) {
-    if (memoizedAdds == null) {
-      memoizedAdds = new HashMap<Object, ThrowableSet>();
+    Map<Object, ThrowableSet> m = memoizedAdds;
+    if (m == null) {
+      synchronized (this) {
+        m = memoizedAdds;
+        if (m == null) {
+          memoizedAdds = m = new ConcurrentHashMap<Object, ThrowableSet>();
+        }
+      }
+    }
+    m.put(key, value);
+  }
+
+  /**
+   * Returns the bitsets of this set over <code>numbering</code>, or <code>null</code> if this set contains
+   * a type that is not numbered, such as a phantom class.
+   */
+  private ThrowableNumbering.Masks getMasks(ThrowableNumbering numbering) {
+    ThrowableNumbering.Masks m = masks;
+    if (m == null || m.numbering != numbering) {
+      masks = m = numbering.masksOf(exceptionsIncluded, exceptionsExcluded);
+    }
+    return m.included == null ? null : m;
+  }
+
+  /**
+   * Same as <code>hierarchy.canStoreType(child, parent)</code>, but answered from <code>numbering</code> when both classes
+   * are numbered.
+   */
+  private static boolean canStoreType(ThrowableNumbering numbering, FastHierarchy hierarchy, RefType child,
+      RefType parent) {
+    int c = numbering.number(child);
+    if (c >= 0) {
+      int p = numbering.number(parent);
+      if (p >= 0) {
+        return numbering.isSubtype(c, p);
+      }
     }
-    memoizedAdds.put(key, value);
+    return hierarchy.canStoreType(child, parent);
   }
 
   /**
@@ -456,11 +515,29 @@ public class ThrowableSet {
       }
     }
     FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering numbering = Manager.v().numbering(hierarchy);
+
+    // With numbered types, both the exclusion check and the search for an
+    // incumbent AnySubType covering e are single bit tests. Excluded types
+    // go on to the search below, which reports the exclusion.
+    ThrowableNumbering.Masks m = getMasks(numbering);
+    int en = m == null ? -1 : numbering.number(e);
+    if (en >= 0 && !ThrowableNumbering.Masks.get(m.excluded, en)) {
+      if (ThrowableNumbering.Masks.get(m.included, en)) {
+        addToMemoizedAdds(e, this);
+        return this;
+      }
+      Set<RefLikeType> resultSet = new HashSet<RefLikeType>(this.exceptionsIncluded);
+      resultSet.add(e);
+      result = Manager.v().registerSetIfNew(resultSet, this.exceptionsExcluded);
+      addToMemoizedAdds(e, result);
+      return result;
+    }
 
     for (AnySubType excludedType : exceptionsExcluded) {
       RefType exclusionBase = excludedType.getBase();
       if ((e.getSootClass().isPhantom() && exclusionBase.equals(e))
-          || (!e.getSootClass().isPhantom() && hierarchy.canStoreType(e, exclusionBase))) {
+          || (!e.getSootClass().isPhantom() && canStoreType(numbering, hierarchy, e, exclusionBase))) {
         throw new AlreadyHasExclusionsException("ThrowableSet.add(RefType): adding" + e.toString() + " to the set [ "
             + this.toString() + "] where " + exclusionBase.toString() + " is excluded.");
       }
@@ -475,7 +552,7 @@ public class ThrowableSet {
           // hierarchy.canStoreType() assumes that parent
           // is not an AnySubType.
           RefType incumbentBase = ((AnySubType) incumbent).getBase();
-          if (hierarchy.canStoreType(e, incumbentBase)) {
+          if (canStoreType(numbering, hierarchy, e, incumbentBase)) {
             addToMemoizedAdds(e, this);
             return this;
           }
@@ -542,6 +619,7 @@ public class ThrowableSet {
     }
 
     FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering numbering = Manager.v().numbering(hierarchy);
     RefType newBase = e.getBase();
 
     if (INSTRUMENTING) {
@@ -551,12 +629,13 @@ public class ThrowableSet {
         Manager.v().addsExclusionWithSearch++;
       }
     }
+
     for (AnySubType excludedType : exceptionsExcluded) {
       RefType exclusionBase = excludedType.getBase();
 
       boolean isExcluded = exclusionBase.getSootClass().isPhantom() && exclusionBase.equals(newBase);
-      isExcluded |= !exclusionBase.getSootClass().isPhantom()
-          && (hierarchy.canStoreType(newBase, exclusionBase) || hierarchy.canStoreType(exclusionBase, newBase));
+      isExcluded |= !exclusionBase.getSootClass().isPhantom() && (canStoreType(numbering, hierarchy, newBase, exclusionBase)
+          || canStoreType(numbering, hierarchy, exclusionBase, newBase));
 
       if (isExcluded) {
         if (INSTRUMENTING) {
@@ -579,13 +658,24 @@ public class ThrowableSet {
       Manager.v().addsInclusionFromSearch++;
     }
 
+    // Without exclusions, e is covered iff the subtype ranges of this set
+    // contain its base, and otherwise it replaces the types in its range.
+    ThrowableNumbering.Masks m = exceptionsExcluded.isEmpty() ? getMasks(numbering) : null;
+    int bn = m == null ? -1 : numbering.number(newBase);
+    if (bn >= 0) {
+      Set<RefLikeType> resultSet = numbering.add(this.exceptionsIncluded, m, e, bn);
+      result = resultSet == null ? this : Manager.v().registerSetIfNew(resultSet, this.exceptionsExcluded);
+      addToMemoizedAdds(e, result);
+      return result;
+    }
+
     int changes = 0;
     boolean addNewException = true;
     Set<RefLikeType> resultSet = new HashSet<RefLikeType>();
 
     for (RefLikeType incumbent : this.exceptionsIncluded) {
       if (incumbent instanceof RefType) {
-        if (hierarchy.canStoreType(incumbent, newBase)) {
+        if (canStoreType(numbering, hierarchy, (RefType) incumbent, newBase)) {
           // Omit incumbent from result.
           changes++;
         } else {
@@ -603,10 +693,10 @@ public class ThrowableSet {
         // because we want to know if _all_ possible
         // types represented by e can be represented by
         // the incumbent, or vice versa.
-        else if (hierarchy.canStoreType(newBase, incumbentBase)) {
+        else if (canStoreType(numbering, hierarchy, newBase, incumbentBase)) {
           addNewException = false;
           resultSet.add(incumbent);
-        } else if (hierarchy.canStoreType(incumbentBase, newBase)) {
+        } else if (canStoreType(numbering, hierarchy, incumbentBase, newBase)) {
           // Omit incumbent from result;
           changes++;
         } else {
@@ -658,7 +748,10 @@ public class ThrowableSet {
         Manager.v().addsInclusionFromSearch++;
         Manager.v().addsExclusionWithoutSearch++;
       }
-      result = this.add(s.exceptionsIncluded);
+      result = this.addNumbered(s);
+      if (result == null) {
+        result = this.add(s.exceptionsIncluded);
+      }
       addToMemoizedAdds(s, result);
     } else if (INSTRUMENTING) {
       Manager.v().addsInclusionFromMemo++;
@@ -667,6 +760,27 @@ public class ThrowableSet {
     return result;
   }
 
+  /**
+   * Returns the union of this set and <code>s</code>, both without exclusions, computed from their bitsets, or
+   * <code>null</code> if one of them contains a type that is not numbered.
+   */
+  private ThrowableSet addNumbered(ThrowableSet s) {
+    ThrowableNumbering numbering = Manager.v().numbering(Scene.v().getOrMakeFastHierarchy());
+    ThrowableNumbering.Masks m1 = getMasks(numbering);
+    ThrowableNumbering.Masks m2 = m1 == null ? null : s.getMasks(numbering);
+    if (m2 == null) {
+      return null;
+    }
+    if (m1.contains(m2)) {
+      return this;
+    }
+    if (m2.contains(m1)) {
+      return s;
+    }
+    return Manager.v().registerSetIfNew(numbering.union(this.exceptionsIncluded, m1, s.exceptionsIncluded, m2),
+        this.exceptionsExcluded);
+  }
+
   /**
    * Returns a <code>ThrowableSet</code> which contains all the exceptions in <code>addedExceptions</code> in addition to
    * those in this <code>ThrowableSet</code>.
@@ -681,6 +795,7 @@ public class ThrowableSet {
     Set<RefLikeType> resultSet = new HashSet<RefLikeType>(this.exceptionsIncluded);
     int changes = 0;
     FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering numbering = Manager.v().numbering(hierarchy);
 
     // This algorithm is O(n m), where n and m are the sizes of the
     // two sets, so hope that the sets are small.
@@ -698,7 +813,7 @@ public class ThrowableSet {
               }
             } else if (incumbentType instanceof AnySubType) {
               RefType incumbentBase = ((AnySubType) incumbentType).getBase();
-              if (hierarchy.canStoreType(newType, incumbentBase)) {
+              if (canStoreType(numbering, hierarchy, (RefType) newType, incumbentBase)) {
                 // No need to add this class.
                 addNewType = false;
               }
@@ -713,7 +828,7 @@ public class ThrowableSet {
             RefLikeType incumbentType = j.next();
             if (incumbentType instanceof RefType) {
               RefType incumbentBase = (RefType) incumbentType;
-              if (hierarchy.canStoreType(incumbentBase, newBase)) {
+              if (canStoreType(numbering, hierarchy, incumbentBase, newBase)) {
                 j.remove();
                 changes++;
               }
@@ -723,10 +838,10 @@ public class ThrowableSet {
                 // assertion failure.
                 throw new IllegalStateException(
                     "ThrowableSet.add(Set): resultSet.contains() failed to screen duplicate AnySubType " + newBase);
-              } else if (hierarchy.canStoreType(incumbentBase, newBase)) {
+              } else if (canStoreType(numbering, hierarchy, incumbentBase, newBase)) {
                 j.remove();
                 changes++;
-              } else if (hierarchy.canStoreType(newBase, incumbentBase)) {
+              } else if (canStoreType(numbering, hierarchy, newBase, incumbentBase)) {
                 // No need to add this class.
                 addNewType = false;
               }
@@ -830,6 +945,16 @@ public class ThrowableSet {
     }
 
     FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering numbering = Manager.v().numbering(h);
+
+    ThrowableNumbering.Masks m = getMasks(numbering);
+    int cn = m == null ? -1 : numbering.number(catcher);
+    if (cn >= 0) {
+      // Unless an exclusion covers the catcher, it catches something iff
+      // some included type lies below it or an included AnySubType lies
+      // above it, and in both cases a bit in its range is set.
+      return !ThrowableNumbering.Masks.get(m.excluded, cn) && m.intersectsSubtypes(m.included, cn);
+    }
 
     if (exceptionsExcluded.size() > 0) {
       if (INSTRUMENTING) {
@@ -840,7 +965,7 @@ public class ThrowableSet {
           if (exclusion.getBase().equals(catcher)) {
             return false;
           }
-        } else if (h.canStoreType(catcher, exclusion.getBase())) {
+        } else if (canStoreType(numbering, h, catcher, exclusion.getBase())) {
           return false;
         }
       }
@@ -867,7 +992,7 @@ public class ThrowableSet {
             // assertion failure.
             throw new IllegalStateException(
                 "ThrowableSet.catchableAs(RefType): exceptions.contains() failed to match contained RefType " + catcher);
-          } else if (!catcher.getSootClass().isPhantom() && h.canStoreType(thrownType, catcher)) {
+          } else if (!catcher.getSootClass().isPhantom() && canStoreType(numbering, h, (RefType) thrownType, catcher)) {
             return true;
           }
         } else {
@@ -879,7 +1004,7 @@ public class ThrowableSet {
           }
           // At runtime, thrownType might be instantiated by any
           // of thrownBase's subtypes, so:
-          else if (h.canStoreType(thrownBase, catcher) || h.canStoreType(catcher, thrownBase)) {
+          else if (canStoreType(numbering, h, thrownBase, catcher) || canStoreType(numbering, h, catcher, thrownBase)) {
             return true;
           }
         }
@@ -905,6 +1030,7 @@ public class ThrowableSet {
     }
 
     FastHierarchy h = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering numbering = Manager.v().numbering(h);
     Set<RefLikeType> caughtIncluded = null;
     Set<AnySubType> caughtExcluded = null;
     Set<RefLikeType> uncaughtIncluded = null;
@@ -914,6 +1040,19 @@ public class ThrowableSet {
       Manager.v().removesFromSearch++;
     }
 
+    // Without exclusions, a catcher that catches none or all of the
+    // included types leaves this set unsplit.
+    ThrowableNumbering.Masks m = exceptionsExcluded.isEmpty() ? getMasks(numbering) : null;
+    int cn = m == null ? -1 : numbering.number(catcher);
+    if (cn >= 0) {
+      if (!m.intersectsSubtypes(m.included, cn)) {
+        return new Pair(ThrowableSet.Manager.v().EMPTY, this);
+      }
+      if (m.withinSubtypes(m.included, cn)) {
+        return new Pair(this, ThrowableSet.Manager.v().EMPTY);
+      }
+    }
+
     for (AnySubType exclusion : exceptionsExcluded) {
       RefType exclusionBase = exclusion.getBase();
 
@@ -922,12 +1061,12 @@ public class ThrowableSet {
         return new Pair(ThrowableSet.Manager.v().EMPTY, this);
       }
 
-      if (h.canStoreType(catcher, exclusionBase)) {
+      if (canStoreType(numbering, h, catcher, exclusionBase)) {
         // Because the add() operations ban additions to sets
         // with exclusions, we can be sure no types in this are
         // caught by catcher.
         return new Pair(ThrowableSet.Manager.v().EMPTY, this);
-      } else if (h.canStoreType(exclusionBase, catcher)) {
+      } else if (canStoreType(numbering, h, exclusionBase, catcher)) {
         // exclusion wouldn't be in exceptionsExcluded if one
         // of its supertypes were not in exceptionsIncluded,
         // so we know the next loop will add either that supertype
@@ -948,7 +1087,7 @@ public class ThrowableSet {
           } else {
             uncaughtIncluded = addExceptionToSet(inclusion, uncaughtIncluded);
           }
-        } else if (h.canStoreType(inclusion, catcher)) {
+        } else if (canStoreType(numbering, h, (RefType) inclusion, catcher)) {
           caughtIncluded = addExceptionToSet(inclusion, caughtIncluded);
         } else {
           uncaughtIncluded = addExceptionToSet(inclusion, uncaughtIncluded);
@@ -966,12 +1105,12 @@ public class ThrowableSet {
             }
             uncaughtIncluded = addExceptionToSet(inclusion, uncaughtIncluded);
           }
-        } else if (h.canStoreType(base, catcher)) {
+        } else if (canStoreType(numbering, h, base, catcher)) {
           // All subtypes of base will be caught. Any exclusions
           // will already have been copied to caughtExcluded by
           // the preceding loop.
           caughtIncluded = addExceptionToSet(inclusion, caughtIncluded);
-        } else if (h.canStoreType(catcher, base)) {
+        } else if (canStoreType(numbering, h, catcher, base)) {
           // Some subtypes of base will be caught, and
           // we know that not all of those catchable subtypes
           // are among exceptionsExcluded, since in that case we
@@ -80,8 +80,10 @@ public final class TrapTightener extends TrapTransformer {
     Chain<Trap> trapChain = body.getTraps();
     Chain<Unit> unitChain = body.getUnits();
     if (trapChain.size() > 0) {
-      ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body, throwAnalysis);
+      ExceptionalUnitGraph graph
+          = body.getAnalysisCache().getExceptionalUnitGraph(throwAnalysis, Options.v().omit_excepting_unit_edges());
       Set<Unit> unitsWithMonitor = getUnitsWithMonitor(graph);
+      boolean changed = false;
 
       for (Iterator<Trap> trapIt = trapChain.iterator(); trapIt.hasNext();) {
         Trap trap = trapIt.next();
@@ -129,18 +131,28 @@ public final class TrapTightener extends TrapTransformer {
         } else {
           if (firstTrappedThrower != null && firstTrappedUnit != firstTrappedThrower) {
             trap.setBeginUnit(firstTrappedThrower);
+            changed = true;
           }
           if (lastTrappedThrower == null) {
             lastTrappedThrower = firstTrappedUnit;
           }
           if (lastTrappedUnit != lastTrappedThrower) {
             trap.setEndUnit(unitChain.getSuccOf(lastTrappedThrower));
+            changed = true;
           }
         }
       }
+      if (changed) {
+        body.invalidateAnalyses();
+      }
     }
   }
 
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
+  }
+
   /**
    * A utility routine which determines if a particular {@link Unit} might throw an exception to a particular {@link Trap},
    * according to the information supplied by a particular control flow graph.
@@ -0,0 +1,261 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dominators finder for multi-headed graphs that computes the immediate dominator of every node directly, using the
+ * algorithm of K. D. Cooper, T. J. Harvey and K. Kennedy, "A Simple, Fast Dominance Algorithm":
+ *
+ * <pre>
+ *       number the nodes in postorder, a virtual root above all heads last
+ *       idom(h) := root for all heads h
+ *       while changes to any idom(n) occur do
+ *         for n in N - heads in reverse postorder do
+ *             idom(n) := common ancestor of the processed predecessors p of n in the idom tree
+ * </pre>
+ *
+ * The common ancestor of two nodes is found by walking up the tree from the one with the smaller postorder number. Only
+ * the idom tree is stored, numbered by a preorder walk, so that dominance queries take constant time and memory stays
+ * linear in the number of nodes, where {@link MHGDominatorsFinder} keeps a set of dominators per node.
+ *
+ * <p>
+ * The heads of the graph are dominated by themselves only, as with {@link MHGDominatorsFinder}. Nodes that cannot be
+ * reached from a head are also dominated by themselves only.
+ * </p>
+ **/
+public class CHKDominatorsFinder<N> implements DominatorsFinder<N> {
+  protected DirectedGraph<N> graph;
+
+  /** The nodes that can be reached from a head, in postorder. */
+  protected List<N> nodes;
+  protected Map<N, Integer> nodeToIndex;
+
+  /** The postorder number of the immediate dominator of every node; the root is numbered <code>nodes.size()</code>. */
+  protected int[] idom;
+
+  /** The preorder number of every node in the idom tree, and the largest preorder number in its subtree. */
+  protected int[] preorder;
+  protected int[] lastDescendant;
+
+  public CHKDominatorsFinder(DirectedGraph<N> graph) {
+    this.graph = graph;
+    doAnalysis();
+  }
+
+  protected void doAnalysis() {
+    List<N> heads = graph.getHeads();
+    numberNodes(heads);
+    int n = nodes.size();
+    int root = n;
+
+    // The predecessors of every node that can be reached from a head
+    int[] keys = new int[n];
+    int[] values = new int[n];
+    int m = 0;
+    for (int i = 0; i < n; i++) {
+      for (N p : graph.getPredsOf(nodes.get(i))) {
+        Integer pi = nodeToIndex.get(p);
+        if (pi == null) {
+          continue;
+        }
+        if (m == keys.length) {
+          keys = Arrays.copyOf(keys, 2 * m);
+          values = Arrays.copyOf(values, 2 * m);
+        }
+        keys[m] = i;
+        values[m++] = pi;
+      }
+    }
+    CompactAdjacency preds = CompactAdjacency.group(n, keys, values, m);
+
+    idom = new int[n + 1];
+    Arrays.fill(idom, -1);
+    idom[root] = root;
+    boolean[] isHead = new boolean[n];
+    for (N h : heads) {
+      Integer hi = nodeToIndex.get(h);
+      if (hi != null) {
+        isHead[hi] = true;
+        idom[hi] = root;
+      }
+    }
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = n - 1; i >= 0; i--) {
+        if (isHead[i]) {
+          continue;
+        }
+        int newIdom = -1;
+        for (int e = preds.start[i], end = preds.start[i + 1]; e < end; e++) {
+          int p = preds.targets[e];
+          if (idom[p] < 0) {
+            continue;
+          }
+          newIdom = newIdom < 0 ? p : intersect(p, newIdom);
+        }
+        if (idom[i] != newIdom) {
+          idom[i] = newIdom;
+          changed = true;
+        }
+      }
+    }
+
+    numberTree(n);
+  }
+
+  /** Numbers the nodes that can be reached from the heads in postorder, with an explicit stack. */
+  private void numberNodes(List<N> heads) {
+    nodes = new ArrayList<N>(graph.size());
+    nodeToIndex = new HashMap<N, Integer>(graph.size() * 2 + 1, 0.7f);
+
+    // Nodes on the stack are mapped to -1 until they are finished
+    ArrayDeque<N> nodeStack = new ArrayDeque<N>();
+    ArrayDeque<Iterator<N>> succStack = new ArrayDeque<Iterator<N>>();
+    for (N h : heads) {
+      if (nodeToIndex.containsKey(h)) {
+        continue;
+      }
+      nodeToIndex.put(h, -1);
+      nodeStack.push(h);
+      succStack.push(graph.getSuccsOf(h).iterator());
+      while (!nodeStack.isEmpty()) {
+        Iterator<N> succs = succStack.peek();
+        if (succs.hasNext()) {
+          N s = succs.next();
+          if (!nodeToIndex.containsKey(s)) {
+            nodeToIndex.put(s, -1);
+            nodeStack.push(s);
+            succStack.push(graph.getSuccsOf(s).iterator());
+          }
+        } else {
+          succStack.pop();
+          N done = nodeStack.pop();
+          nodeToIndex.put(done, nodes.size());
+          nodes.add(done);
+        }
+      }
+    }
+  }
+
+  private int intersect(int a, int b) {
+    while (a != b) {
+      while (a < b) {
+        a = idom[a];
+      }
+      while (b < a) {
+        b = idom[b];
+      }
+    }
+    return a;
+  }
+
+  /** Numbers the idom tree in preorder, so that subtrees are intervals. */
+  private void numberTree(int n) {
+    int root = n;
+    int[] keys = new int[n];
+    int[] values = new int[n];
+    int[] size = new int[n + 1];
+    Arrays.fill(size, 1);
+    for (int i = 0; i < n; i++) {
+      keys[i] = idom[i];
+      values[i] = i;
+      // A dominator is finished after the nodes it dominates
+      size[idom[i]] += size[i];
+    }
+    CompactAdjacency children = CompactAdjacency.group(n + 1, keys, values, n);
+
+    preorder = new int[n + 1];
+    lastDescendant = new int[n + 1];
+    int[] stack = new int[n + 1];
+    int sp = 0;
+    int next = 0;
+    stack[sp++] = root;
+    while (sp > 0) {
+      int v = stack[--sp];
+      preorder[v] = next++;
+      lastDescendant[v] = preorder[v] + size[v] - 1;
+      for (int e = children.start[v], end = children.start[v + 1]; e < end; e++) {
+        stack[sp++] = children.targets[e];
+      }
+    }
+  }
+
+  public DirectedGraph<N> getGraph() {
+    return graph;
+  }
+
+  /**
+   * Returns the dominators of <code>node</code>, from the head that dominates it down to <code>node</code> itself.
+   **/
+  public List<N> getDominators(N node) {
+    Integer index = nodeToIndex.get(node);
+    if (index == null) {
+      return Collections.singletonList(node);
+    }
+    List<N> result = new ArrayList<N>();
+    for (int i = index, root = nodes.size(); i != root; i = idom[i]) {
+      result.add(nodes.get(i));
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  public N getImmediateDominator(N node) {
+    Integer index = nodeToIndex.get(node);
+    if (index == null) {
+      return null;
+    }
+    int d = idom[index];
+    return d == nodes.size() ? null : nodes.get(d);
+  }
+
+  public boolean isDominatedBy(N node, N dominator) {
+    Integer i = nodeToIndex.get(node);
+    Integer d = nodeToIndex.get(dominator);
+    if (i == null || d == null) {
+      return node.equals(dominator);
+    }
+    return preorder[d] <= preorder[i] && preorder[i] <= lastDescendant[d];
+  }
+
+  public boolean isDominatedByAll(N node, Collection<N> dominators) {
+    for (N d : dominators) {
+      if (!isDominatedBy(node, d)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
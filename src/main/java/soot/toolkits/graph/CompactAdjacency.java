@@ -0,0 +1,90 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Adjacency lists over densely numbered nodes in compressed sparse row form: the neighbours of node <code>i</code> are
+ * <code>targets[start[i]]</code> up to, but excluding, <code>targets[start[i + 1]]</code>.
+ */
+final class CompactAdjacency {
+  private static final int[] NO_TARGETS = new int[0];
+
+  final int[] start;
+  final int[] targets;
+
+  CompactAdjacency(int[] start, int[] targets) {
+    this.start = start;
+    this.targets = targets;
+  }
+
+  /** Returns adjacency lists over <code>n</code> nodes without any edges. */
+  static CompactAdjacency empty(int n) {
+    return new CompactAdjacency(new int[n + 1], NO_TARGETS);
+  }
+
+  /**
+   * Groups the first <code>m</code> edges <code>keys[e] -&gt; values[e]</code> by key. The lists keep the order in which
+   * the edges are given.
+   */
+  static CompactAdjacency group(int n, int[] keys, int[] values, int m) {
+    int[] start = new int[n + 1];
+    for (int e = 0; e < m; e++) {
+      start[keys[e] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] next = Arrays.copyOf(start, n);
+    int[] targets = m == 0 ? NO_TARGETS : new int[m];
+    for (int e = 0; e < m; e++) {
+      targets[next[keys[e]]++] = values[e];
+    }
+    return new CompactAdjacency(start, targets);
+  }
+
+  /** Returns the reversed lists; the predecessors of each node are ordered by source, as if added source by source. */
+  CompactAdjacency transpose() {
+    int n = start.length - 1;
+    int m = targets.length;
+    int[] sources = new int[m];
+    for (int i = 0; i < n; i++) {
+      Arrays.fill(sources, start[i], start[i + 1], i);
+    }
+    return group(n, targets, sources, m);
+  }
+
+  int degree(int i) {
+    return start[i + 1] - start[i];
+  }
+
+  boolean contains(int i, int target) {
+    for (int e = start[i], end = start[i + 1]; e < end; e++) {
+      if (targets[e] == target) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,159 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import soot.Body;
+import soot.Timers;
+import soot.Unit;
+import soot.UnitBox;
+import soot.options.Options;
+
+/**
+ * A {@link BriefUnitGraph} that numbers the units of the body densely and keeps its edges in <code>int</code> arrays
+ * instead of maps from units to lists. It has the same nodes, edges, heads and tails, in the same order, but allocates a
+ * few arrays per graph rather than a list per unit. The lists returned by {@link #getSuccsOf(Unit)} and
+ * {@link #getPredsOf(Unit)} are unmodifiable views.
+ *
+ * @see BriefUnitGraph
+ */
+public class CompactBriefUnitGraph extends UnitGraph implements IndexedDirectedGraph<Unit> {
+  private final DenseUnitIndex index;
+  private final CompactAdjacency succs;
+  private final CompactAdjacency preds;
+
+  /**
+   * Constructs a CompactBriefUnitGraph given a Body instance.
+   *
+   * @param body
+   *          The underlying body we want to make a graph for.
+   */
+  public CompactBriefUnitGraph(Body body) {
+    super(body);
+
+    if (Options.v().time()) {
+      Timers.v().graphTimer.start();
+    }
+
+    index = new DenseUnitIndex(unitChain);
+    succs = buildUnexceptionalSuccs(index);
+    preds = succs.transpose();
+
+    buildHeadsAndTails();
+
+    if (Options.v().time()) {
+      Timers.v().graphTimer.end();
+    }
+
+    soot.util.PhaseDumper.v().dumpGraph(this, body);
+  }
+
+  /** Returns the position of <code>u</code> in the unit chain of the body, or -1 if it is not a unit of the body. */
+  @Override
+  public int indexOf(Unit u) {
+    return index.indexOf(u);
+  }
+
+  /**
+   * Computes the unexceptional successors of every unit, in the order used by
+   * {@link UnitGraph#buildUnexceptionalEdges(java.util.Map, java.util.Map)}: the fall-through unit first, then the branch
+   * targets without duplicates.
+   */
+  static CompactAdjacency buildUnexceptionalSuccs(DenseUnitIndex index) {
+    Unit[] units = index.units;
+    int n = units.length;
+    int[] start = new int[n + 1];
+    int[] targets = new int[n + (n >> 1) + 1];
+    int m = 0;
+    for (int i = 0; i < n; i++) {
+      start[i] = m;
+      Unit u = units[i];
+      if (u.fallsThrough() && i + 1 < n) {
+        if (m == targets.length) {
+          targets = Arrays.copyOf(targets, m * 2);
+        }
+        targets[m++] = i + 1;
+      }
+      if (u.branches()) {
+        for (UnitBox targetBox : u.getUnitBoxes()) {
+          int t = index.checkedIndexOf(targetBox.getUnit());
+          // Arbitrary bytecode can branch to the same
+          // target it falls through to, so we screen for duplicates:
+          boolean duplicate = false;
+          for (int e = start[i]; e < m; e++) {
+            if (targets[e] == t) {
+              duplicate = true;
+              break;
+            }
+          }
+          if (!duplicate) {
+            if (m == targets.length) {
+              targets = Arrays.copyOf(targets, m * 2);
+            }
+            targets[m++] = t;
+          }
+        }
+      }
+    }
+    start[n] = m;
+    return new CompactAdjacency(start, m == targets.length ? targets : Arrays.copyOf(targets, m));
+  }
+
+  @Override
+  protected void buildHeadsAndTails() {
+    tails = new ArrayList<Unit>();
+    heads = new ArrayList<Unit>();
+
+    Unit[] units = index.units;
+    for (int i = 0; i < units.length; i++) {
+      if (succs.degree(i) == 0) {
+        tails.add(units[i]);
+      }
+      if (preds.degree(i) == 0) {
+        heads.add(units[i]);
+      }
+    }
+
+    // Add the first Unit, even if it is the target of
+    // a branch.
+    if (units.length > 0 && preds.degree(0) != 0) {
+      heads.add(units[0]);
+    }
+  }
+
+  @Override
+  public List<Unit> getPredsOf(Unit u) {
+    int i = index.indexOf(u);
+    return i < 0 ? Collections.<Unit>emptyList() : index.adjacent(preds, i);
+  }
+
+  @Override
+  public List<Unit> getSuccsOf(Unit u) {
+    int i = index.indexOf(u);
+    return i < 0 ? Collections.<Unit>emptyList() : index.adjacent(succs, i);
+  }
+}
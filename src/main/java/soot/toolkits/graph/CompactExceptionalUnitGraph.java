@@ -0,0 +1,524 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import soot.Body;
+import soot.RefType;
+import soot.Scene;
+import soot.Timers;
+import soot.Trap;
+import soot.Unit;
+import soot.baf.ThrowInst;
+import soot.jimple.ThrowStmt;
+import soot.options.Options;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.exceptions.ThrowableSet;
+import soot.util.ArraySet;
+
+/**
+ * <p>
+ * An {@link ExceptionalUnitGraph} that numbers the units of the body densely and keeps its unexceptional, exceptional and
+ * combined edges in <code>int</code> arrays, with the {@link ExceptionalUnitGraph.ExceptionDest ExceptionDest}s of all
+ * units in one shared table. It has the same nodes, edges, heads, tails and exception destinations, in the same order, as
+ * an <code>ExceptionalUnitGraph</code> built with the same arguments, but allocates a few arrays per graph instead of maps
+ * holding a list per unit.
+ * </p>
+ *
+ * <p>
+ * The lists returned by the accessors are unmodifiable views. The map-based <code>protected</code> members inherited from
+ * <code>ExceptionalUnitGraph</code> and {@link UnitGraph} are not filled in, so subclasses that work on those maps should
+ * extend <code>ExceptionalUnitGraph</code> instead.
+ * </p>
+ */
+public class CompactExceptionalUnitGraph extends ExceptionalUnitGraph implements IndexedDirectedGraph<Unit> {
+  private DenseUnitIndex index;
+  private CompactAdjacency unexceptionalSuccs;
+  private CompactAdjacency unexceptionalPreds;
+  private CompactAdjacency exceptionalSuccs;
+  private CompactAdjacency exceptionalPreds;
+  private CompactAdjacency succs;
+  private CompactAdjacency preds;
+
+  /**
+   * The destinations of the unit with index <code>i</code> are <code>dests[destStart[i]]</code> up to, but excluding,
+   * <code>dests[destStart[i + 1]]</code>. Units that throw nothing to a trap of the body have none, as in
+   * {@link ExceptionalUnitGraph#buildExceptionDests(ThrowAnalysis)}. <code>null</code> if the body has no traps.
+   */
+  private int[] destStart;
+  private ExceptionDest[] dests;
+
+  /**
+   * Constructs the graph for a given Body instance, using the <code>ThrowAnalysis</code> and
+   * <code>omitExceptingUnitEdges</code> value that are passed as parameters.
+   *
+   * @see ExceptionalUnitGraph#ExceptionalUnitGraph(Body, ThrowAnalysis, boolean)
+   */
+  public CompactExceptionalUnitGraph(Body body, ThrowAnalysis throwAnalysis, boolean omitExceptingUnitEdges) {
+    super(body, true);
+    initialize(throwAnalysis, omitExceptingUnitEdges);
+  }
+
+  /**
+   * Constructs the graph from a given Body instance using the passed {@link ThrowAnalysis} and a default value, provided by
+   * the {@link Options} class, for the <code>omitExceptingUnitEdges</code> parameter.
+   */
+  public CompactExceptionalUnitGraph(Body body, ThrowAnalysis throwAnalysis) {
+    this(body, throwAnalysis, Options.v().omit_excepting_unit_edges());
+  }
+
+  /**
+   * Constructs the graph from a given Body instance, using the {@link Scene} 's default {@link ThrowAnalysis} and a default
+   * value, provided by the {@link Options} class, for the <code>omitExceptingUnitEdges</code> parameter.
+   */
+  public CompactExceptionalUnitGraph(Body body) {
+    this(body, Scene.v().getDefaultThrowAnalysis(), Options.v().omit_excepting_unit_edges());
+  }
+
+  @Override
+  protected void initialize(ThrowAnalysis throwAnalysis, boolean omitExceptingUnitEdges) {
+    Set<Unit> trapUnitsThatAreHeads = Collections.emptySet();
+
+    if (Options.v().time()) {
+      Timers.v().graphTimer.start();
+    }
+
+    index = new DenseUnitIndex(unitChain);
+    unexceptionalSuccs = CompactBriefUnitGraph.buildUnexceptionalSuccs(index);
+    unexceptionalPreds = unexceptionalSuccs.transpose();
+    this.throwAnalysis = throwAnalysis;
+
+    if (body.getTraps().size() == 0) {
+      // No handlers, so all exceptional control flow exits the
+      // method.
+      exceptionalSuccs = exceptionalPreds = CompactAdjacency.empty(index.size());
+      succs = unexceptionalSuccs;
+      preds = unexceptionalPreds;
+    } else {
+      int[] throwers = buildDests(throwAnalysis);
+      trapUnitsThatAreHeads = buildEdges(throwers, omitExceptingUnitEdges);
+      succs = combine(unexceptionalSuccs, exceptionalSuccs);
+      preds = combine(unexceptionalPreds, exceptionalPreds);
+    }
+
+    buildHeadsAndTails(trapUnitsThatAreHeads);
+
+    if (Options.v().time()) {
+      Timers.v().graphTimer.end();
+    }
+
+    soot.util.PhaseDumper.v().dumpGraph(this);
+  }
+
+  /**
+   * Fills {@link #destStart} and {@link #dests} the way {@link ExceptionalUnitGraph#buildExceptionDests(ThrowAnalysis)}
+   * fills its map: for every unit, the exceptions caught by each trap in turn, then the exceptions that escape, if any trap
+   * caught something.
+   *
+   * @return the indices of the units with caught exceptions, in the order in which they got the first one, which is the
+   *         order of the map built by <code>ExceptionalUnitGraph</code>.
+   */
+  private int[] buildDests(ThrowAnalysis throwAnalysis) {
+    final Unit[] units = index.units;
+    final int n = units.length;
+    final ThrowableSet empty = ThrowableSet.Manager.v().EMPTY;
+    ThrowableSet[] uncaught = new ThrowableSet[n];
+    int[] caughtCount = new int[n];
+    int[] throwers = new int[n];
+    int numThrowers = 0;
+
+    // Record the caught exceptions.
+    int numDests = 0;
+    int[] destUnits = new int[16];
+    Trap[] destTraps = new Trap[16];
+    ThrowableSet[] destSets = new ThrowableSet[16];
+    for (Trap trap : body.getTraps()) {
+      RefType catcher = trap.getException().getType();
+      int end = index.checkedIndexOf(trap.getEndUnit());
+      for (int i = index.checkedIndexOf(trap.getBeginUnit()); i < end; i++) {
+        ThrowableSet thrownSet = uncaught[i];
+        if (thrownSet == null) {
+          uncaught[i] = thrownSet = throwAnalysis.mightThrow(units[i]);
+        }
+        ThrowableSet.Pair catchableAs = thrownSet.whichCatchableAs(catcher);
+        if (!catchableAs.getCaught().equals(empty)) {
+          if (numDests == destUnits.length) {
+            destUnits = Arrays.copyOf(destUnits, numDests * 2);
+            destTraps = Arrays.copyOf(destTraps, numDests * 2);
+            destSets = Arrays.copyOf(destSets, numDests * 2);
+          }
+          destUnits[numDests] = i;
+          destTraps[numDests] = trap;
+          destSets[numDests++] = catchableAs.getCaught();
+          if (caughtCount[i]++ == 0) {
+            throwers[numThrowers++] = i;
+          }
+          uncaught[i] = catchableAs.getUncaught();
+        }
+      }
+    }
+
+    // Group the destinations by unit, each followed by its escaping exceptions.
+    int[] start = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      int count = caughtCount[i];
+      if (count > 0 && uncaught[i] != empty) {
+        count++;
+      }
+      start[i + 1] = start[i] + count;
+    }
+    ExceptionDest[] table = new ExceptionDest[start[n]];
+    int[] next = Arrays.copyOf(start, n);
+    for (int d = 0; d < numDests; d++) {
+      table[next[destUnits[d]]++] = new ExceptionDest(destTraps[d], destSets[d]);
+    }
+    for (int i = 0; i < n; i++) {
+      if (next[i] < start[i + 1]) {
+        table[next[i]] = new ExceptionDest(null, uncaught[i]);
+      }
+    }
+    destStart = start;
+    dests = table;
+    return Arrays.copyOf(throwers, numThrowers);
+  }
+
+  private boolean throwsToIntraproceduralCatcher(int i) {
+    // Only units with a caught exception have destinations
+    return destStart != null && destStart[i] < destStart[i + 1];
+  }
+
+  /**
+   * Computes the exceptional edges the way
+   * {@link ExceptionalUnitGraph#buildExceptionalEdges(ThrowAnalysis, java.util.Map, java.util.Map, java.util.Map, boolean)}
+   * does, adding them in the same order.
+   *
+   * @param throwers
+   *          the units with caught exceptions, in the order returned by {@link #buildDests(ThrowAnalysis)}.
+   *
+   * @return the trap units that might catch exceptions thrown by the first unit in the body.
+   */
+  private Set<Unit> buildEdges(int[] throwers, boolean omitExceptingUnitEdges) {
+    final Unit[] units = index.units;
+    final int n = units.length;
+    Set<Unit> trapsThatAreHeads = new ArraySet<Unit>();
+    EdgeLists edges = new EdgeLists(n);
+
+    for (int thrower : throwers) {
+      Unit throwerUnit = units[thrower];
+
+      // See ExceptionalUnitGraph.buildExceptionalEdges() for when edges
+      // go from the thrower itself and when from its predecessors.
+      boolean alwaysAddSelfEdges = ((!omitExceptingUnitEdges) || mightHaveSideEffects(throwerUnit));
+      ThrowableSet predThrowables = null;
+      ThrowableSet selfThrowables = null;
+      if (throwerUnit instanceof ThrowInst) {
+        ThrowInst throwInst = (ThrowInst) throwerUnit;
+        predThrowables = throwAnalysis.mightThrowImplicitly(throwInst);
+        selfThrowables = throwAnalysis.mightThrowExplicitly(throwInst);
+      } else if (throwerUnit instanceof ThrowStmt) {
+        ThrowStmt throwStmt = (ThrowStmt) throwerUnit;
+        predThrowables = throwAnalysis.mightThrowImplicitly(throwStmt);
+        selfThrowables = throwAnalysis.mightThrowExplicitly(throwStmt);
+      }
+
+      for (int d = destStart[thrower]; d < destStart[thrower + 1]; d++) {
+        Trap trap = dests[d].getTrap();
+        if (trap != null) {
+          int catcher = index.checkedIndexOf(trap.getHandlerUnit());
+          RefType trapsType = trap.getException().getType();
+          if (predThrowables == null || predThrowables.catchableAs(trapsType)) {
+            if (thrower == 0) {
+              trapsThatAreHeads.add(units[catcher]);
+            }
+            for (int e = unexceptionalPreds.start[thrower]; e < unexceptionalPreds.start[thrower + 1]; e++) {
+              edges.add(unexceptionalPreds.targets[e], catcher);
+            }
+          }
+          if (alwaysAddSelfEdges || (selfThrowables != null && selfThrowables.catchableAs(trapsType))) {
+            edges.add(thrower, catcher);
+          }
+        }
+      }
+    }
+
+    // Transitive exceptional edges, for handlers which may themselves
+    // throw an exception caught within the method. The worklist holds
+    // pairs of edge head and tail; a head of -1 stands for the
+    // fictitious predecessor of the first unit.
+    int[] workList = new int[16];
+    int workHead = 0;
+    int workTail = 0;
+    for (Trap trap : body.getTraps()) {
+      int handlerStart = index.checkedIndexOf(trap.getHandlerUnit());
+      if (throwsToIntraproceduralCatcher(handlerStart)) {
+        int numPreds = unexceptionalPreds.degree(handlerStart) + edges.predCount[handlerStart] + 1;
+        if (workTail + 2 * numPreds > workList.length) {
+          workList = Arrays.copyOf(workList, Math.max(workList.length * 2, workTail + 2 * numPreds));
+        }
+        for (int e = unexceptionalPreds.start[handlerStart]; e < unexceptionalPreds.start[handlerStart + 1]; e++) {
+          workList[workTail++] = unexceptionalPreds.targets[e];
+          workList[workTail++] = handlerStart;
+        }
+        for (int e = 0; e < edges.predCount[handlerStart]; e++) {
+          workList[workTail++] = edges.preds[handlerStart][e];
+          workList[workTail++] = handlerStart;
+        }
+        if (trapsThatAreHeads.contains(units[handlerStart])) {
+          workList[workTail++] = -1;
+          workList[workTail++] = handlerStart;
+        }
+      }
+    }
+
+    while (workHead < workTail) {
+      int pred = workList[workHead++];
+      int thrower = workList[workHead++];
+      if (!throwsToIntraproceduralCatcher(thrower)) {
+        continue;
+      }
+      for (int d = destStart[thrower]; d < destStart[thrower + 1]; d++) {
+        Trap trap = dests[d].getTrap();
+        if (trap != null) {
+          int handlerStart = index.checkedIndexOf(trap.getHandlerUnit());
+          boolean edgeAdded;
+          if (pred < 0) {
+            edgeAdded = trapsThatAreHeads.add(units[handlerStart]);
+          } else {
+            edgeAdded = edges.add(pred, handlerStart);
+          }
+          if (edgeAdded && throwsToIntraproceduralCatcher(handlerStart)) {
+            if (workTail + 2 > workList.length) {
+              // Drop the consumed prefix before growing
+              workTail -= workHead;
+              System.arraycopy(workList, workHead, workList, 0, workTail);
+              workHead = 0;
+              if (workTail + 2 > workList.length) {
+                workList = Arrays.copyOf(workList, workList.length * 2);
+              }
+            }
+            workList[workTail++] = pred;
+            workList[workTail++] = handlerStart;
+          }
+        }
+      }
+    }
+
+    exceptionalSuccs = edges.toAdjacency(edges.succs, edges.succCount);
+    exceptionalPreds = edges.toAdjacency(edges.preds, edges.predCount);
+    return trapsThatAreHeads;
+  }
+
+  /**
+   * Merges two adjacency lists like {@link UnitGraph#combineMapValues(java.util.Map, java.util.Map)}: the longer list of
+   * each unit first, then the elements of the shorter one that it does not contain.
+   */
+  private static CompactAdjacency combine(CompactAdjacency a, CompactAdjacency b) {
+    int n = a.start.length - 1;
+    int[] start = new int[n + 1];
+    int[] targets = new int[a.targets.length + b.targets.length];
+    int m = 0;
+    for (int i = 0; i < n; i++) {
+      start[i] = m;
+      CompactAdjacency first = a.degree(i) >= b.degree(i) ? a : b;
+      CompactAdjacency second = first == a ? b : a;
+      for (int e = first.start[i]; e < first.start[i + 1]; e++) {
+        targets[m++] = first.targets[e];
+      }
+      int firstEnd = m;
+      for (int e = second.start[i]; e < second.start[i + 1]; e++) {
+        int t = second.targets[e];
+        boolean duplicate = false;
+        for (int f = start[i]; f < firstEnd; f++) {
+          if (targets[f] == t) {
+            duplicate = true;
+            break;
+          }
+        }
+        if (!duplicate) {
+          targets[m++] = t;
+        }
+      }
+    }
+    start[n] = m;
+    return new CompactAdjacency(start, m == targets.length ? targets : Arrays.copyOf(targets, m));
+  }
+
+  /**
+   * Defines the heads and tails as {@link ExceptionalUnitGraph} does: the first unit and <code>additionalHeads</code>, and
+   * the returns together with the throws whose exceptions may escape the method.
+   */
+  private void buildHeadsAndTails(Set<Unit> additionalHeads) {
+    heads = new ArrayList<Unit>(additionalHeads.size() + 1);
+    heads.addAll(additionalHeads);
+
+    if (unitChain.isEmpty()) {
+      throw new IllegalStateException("No body for method " + body.getMethod().getSignature());
+    }
+
+    Unit entryPoint = index.units[0];
+    if (!heads.contains(entryPoint)) {
+      heads.add(entryPoint);
+    }
+
+    tails = new ArrayList<Unit>();
+    Unit[] units = index.units;
+    for (int i = 0; i < units.length; i++) {
+      Unit u = units[i];
+      if (u instanceof soot.jimple.ReturnStmt || u instanceof soot.jimple.ReturnVoidStmt || u instanceof soot.baf.ReturnInst
+          || u instanceof soot.baf.ReturnVoidInst) {
+        tails.add(u);
+      } else if (u instanceof soot.jimple.ThrowStmt || u instanceof soot.baf.ThrowInst) {
+        // Units without destinations let all their exceptions escape,
+        // the others have an escaping destination last, if any.
+        if (destStart == null || destStart[i] == destStart[i + 1] || dests[destStart[i + 1] - 1].getTrap() == null) {
+          tails.add(u);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Collection<ExceptionDest> getExceptionDests(final Unit u) {
+    int i = index.indexOf(u);
+    if (i < 0 || destStart == null || destStart[i] == destStart[i + 1]) {
+      ExceptionDest e = new ExceptionDest(null, null) {
+        private ThrowableSet throwables;
+
+        @Override
+        public ThrowableSet getThrowables() {
+          if (null == throwables) {
+            throwables = throwAnalysis.mightThrow(u);
+          }
+          return throwables;
+        }
+      };
+      return Collections.singletonList(e);
+    }
+    return Collections.unmodifiableList(Arrays.asList(dests).subList(destStart[i], destStart[i + 1]));
+  }
+
+  /** Returns the position of <code>u</code> in the unit chain of the body, or -1 if it is not a unit of the body. */
+  @Override
+  public int indexOf(Unit u) {
+    return index.indexOf(u);
+  }
+
+  private List<Unit> adjacent(CompactAdjacency adj, Unit u) {
+    int i = index.indexOf(u);
+    return i < 0 ? Collections.<Unit>emptyList() : index.adjacent(adj, i);
+  }
+
+  @Override
+  public List<Unit> getPredsOf(Unit u) {
+    return adjacent(preds, u);
+  }
+
+  @Override
+  public List<Unit> getSuccsOf(Unit u) {
+    return adjacent(succs, u);
+  }
+
+  @Override
+  public List<Unit> getUnexceptionalPredsOf(Unit u) {
+    return adjacent(unexceptionalPreds, u);
+  }
+
+  @Override
+  public List<Unit> getUnexceptionalSuccsOf(Unit u) {
+    return adjacent(unexceptionalSuccs, u);
+  }
+
+  @Override
+  public List<Unit> getExceptionalPredsOf(Unit u) {
+    return adjacent(exceptionalPreds, u);
+  }
+
+  @Override
+  public List<Unit> getExceptionalSuccsOf(Unit u) {
+    return adjacent(exceptionalSuccs, u);
+  }
+
+  /**
+   * Growable successor and predecessor lists used while the exceptional edges are computed, in the order the edges are
+   * added.
+   */
+  private static final class EdgeLists {
+    final int[][] succs;
+    final int[] succCount;
+    final int[][] preds;
+    final int[] predCount;
+    int numEdges;
+
+    EdgeLists(int n) {
+      succs = new int[n][];
+      succCount = new int[n];
+      preds = new int[n][];
+      predCount = new int[n];
+    }
+
+    /** Adds the edge from head to tail, returns false if it was present already. */
+    boolean add(int head, int tail) {
+      int[] list = succs[head];
+      for (int e = 0; e < succCount[head]; e++) {
+        if (list[e] == tail) {
+          return false;
+        }
+      }
+      append(succs, succCount, head, tail);
+      append(preds, predCount, tail, head);
+      numEdges++;
+      return true;
+    }
+
+    private static void append(int[][] lists, int[] counts, int i, int value) {
+      int[] list = lists[i];
+      int count = counts[i];
+      if (list == null) {
+        lists[i] = list = new int[3];
+      } else if (count == list.length) {
+        lists[i] = list = Arrays.copyOf(list, count * 2);
+      }
+      list[count] = value;
+      counts[i] = count + 1;
+    }
+
+    CompactAdjacency toAdjacency(int[][] lists, int[] counts) {
+      int n = counts.length;
+      int[] start = new int[n + 1];
+      int[] targets = new int[numEdges];
+      for (int i = 0; i < n; i++) {
+        start[i + 1] = start[i] + counts[i];
+        if (counts[i] > 0) {
+          System.arraycopy(lists[i], 0, targets, start[i], counts[i]);
+        }
+      }
+      return new CompactAdjacency(start, targets);
+    }
+  }
+}
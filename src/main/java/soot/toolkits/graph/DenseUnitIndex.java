@@ -0,0 +1,132 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import soot.Unit;
+import soot.util.Chain;
+
+/**
+ * Numbers the units of a body densely, in chain order, for the graphs that keep their edges in {@link CompactAdjacency}
+ * arrays. Units are looked up by identity in an open-addressing table, so no per-unit objects are allocated.
+ */
+final class DenseUnitIndex {
+  final Unit[] units;
+  /** Index plus one of the unit hashed to each slot, 0 marks a free slot. */
+  private final int[] table;
+
+  DenseUnitIndex(Chain<Unit> chain) {
+    units = chain.toArray(new Unit[chain.size()]);
+    table = new int[Integer.highestOneBit(Math.max(units.length, 1)) << 2];
+    int mask = table.length - 1;
+    for (int i = 0; i < units.length; i++) {
+      int slot = slot(units[i], mask);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = i + 1;
+    }
+  }
+
+  private static int slot(Unit u, int mask) {
+    return (System.identityHashCode(u) * 0x9E3779B9) >>> 7 & mask;
+  }
+
+  int size() {
+    return units.length;
+  }
+
+  /** Returns the index of <code>u</code>, or -1 if it is not a unit of the body. */
+  int indexOf(Unit u) {
+    int mask = table.length - 1;
+    for (int slot = slot(u, mask);; slot = (slot + 1) & mask) {
+      int i = table[slot];
+      if (i == 0) {
+        return -1;
+      }
+      if (units[i - 1] == u) {
+        return i - 1;
+      }
+    }
+  }
+
+  /** Returns the index of <code>u</code>, failing if it does not belong to the body. */
+  int checkedIndexOf(Unit u) {
+    int i = indexOf(u);
+    if (i < 0) {
+      throw new RuntimeException("Unit " + u + " is not in the body of the graph");
+    }
+    return i;
+  }
+
+  /** Returns an unmodifiable view of the units of <code>adj</code> adjacent to the unit with index <code>i</code>. */
+  List<Unit> adjacent(CompactAdjacency adj, int i) {
+    int from = adj.start[i];
+    int to = adj.start[i + 1];
+    if (from == to) {
+      return Collections.emptyList();
+    }
+    return new UnitSlice(units, adj.targets, from, to);
+  }
+
+  private static final class UnitSlice extends AbstractList<Unit> implements RandomAccess {
+    private final Unit[] units;
+    private final int[] indices;
+    private final int from;
+    private final int size;
+
+    UnitSlice(Unit[] units, int[] indices, int from, int to) {
+      this.units = units;
+      this.indices = indices;
+      this.from = from;
+      this.size = to - from;
+    }
+
+    @Override
+    public Unit get(int i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+      }
+      return units[indices[from + i]];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      for (int i = from, end = from + size; i < end; i++) {
+        if (units[indices[i]] == o) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -25,12 +25,47 @@ package soot.toolkits.graph;
 import java.util.Collection;
 import java.util.List;
 
+import soot.options.Options;
+
 /**
  * General interface for a dominators analysis.
  *
  * @author Navindra Umanee
  **/
 public interface DominatorsFinder<N> {
+  static final public class Factory {
+    private Factory() {
+    }
+
+    /**
+     * Creates a finder for the dominators of a multi-headed graph, using the algorithm selected with the
+     * <code>-dominators</code> option.
+     *
+     * @see MHGDominatorsFinder
+     * @see CHKDominatorsFinder
+     */
+    public static <N> DominatorsFinder<N> newDominatorsFinder(DirectedGraph<N> graph) {
+      if (Options.v().dominators() == Options.dominators_chk) {
+        return new CHKDominatorsFinder<N>(graph);
+      }
+      return new MHGDominatorsFinder<N>(graph);
+    }
+
+    /**
+     * Creates a finder for the post-dominators of a multi-headed graph, using the algorithm selected with the
+     * <code>-dominators</code> option.
+     *
+     * @see MHGPostDominatorsFinder
+     * @see CHKPostDominatorsFinder
+     */
+    public static <N> DominatorsFinder<N> newPostDominatorsFinder(DirectedGraph<N> graph) {
+      if (Options.v().dominators() == Options.dominators_chk) {
+        return new CHKPostDominatorsFinder<N>(graph);
+      }
+      return new MHGPostDominatorsFinder<N>(graph);
+    }
+  }
+
   /**
    * Returns the graph to which the analysis pertains.
    **/
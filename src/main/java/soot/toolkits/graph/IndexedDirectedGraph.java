@@ -0,0 +1,38 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+/**
+ * A directed graph that numbers its nodes densely, from 0 to <code>size() - 1</code> in the order of its iterator, so that
+ * analyses can keep the data of each node in arrays.
+ *
+ * @param N
+ *          node type
+ */
+public interface IndexedDirectedGraph<N> extends DirectedGraph<N> {
+  /**
+   * Returns the number of the given node, or -1 if it is not a node of this graph.
+   */
+  public int indexOf(N node);
+}
@@ -45,8 +45,7 @@ import soot.toolkits.graph.DominatorNode;
 import soot.toolkits.graph.DominatorTree;
 import soot.toolkits.graph.ExceptionalBlockGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.MHGDominatorsFinder;
-import soot.toolkits.graph.MHGPostDominatorsFinder;
+import soot.toolkits.graph.DominatorsFinder;
 import soot.toolkits.graph.UnitGraph;
 
 /**
@@ -110,11 +109,11 @@ public class RegionAnalysis {
       throw new RuntimeException("Unsupported CFG passed into the RegionAnalyis constructor!");
     }
 
-    this.m_dom = new MHGDominatorTree<Block>(new MHGDominatorsFinder<Block>(this.m_blockCFG));
+    this.m_dom = new MHGDominatorTree<Block>(DominatorsFinder.Factory.newDominatorsFinder(this.m_blockCFG));
 
     try {
 
-      this.m_pdom = new MHGDominatorTree<Block>(new MHGPostDominatorsFinder<Block>(m_blockCFG));
+      this.m_pdom = new MHGDominatorTree<Block>(DominatorsFinder.Factory.newPostDominatorsFinder(m_blockCFG));
 
       if (Options.v().verbose()) {
         logger.debug("[RegionAnalysis] PostDominator tree: ");
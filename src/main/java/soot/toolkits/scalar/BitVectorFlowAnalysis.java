@@ -0,0 +1,504 @@
+package soot.toolkits.scalar;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.IndexedDirectedGraph;
+
+/**
+ * A gen/kill data-flow analysis over a finite universe of facts that are numbered <code>0 .. universeSize - 1</code>.
+ *
+ * <p>
+ * Unlike {@link FlowAnalysis}, this analysis does not allocate a flow set per node. The nodes of the graph are numbered
+ * densely in the order of the graph's iterator, reusing the numbering of an {@link IndexedDirectedGraph}, and the flow
+ * sets before and after all nodes as well as the gen and kill sets are kept in a few contiguous <code>long[]</code>
+ * slabs, one bit per fact. Merging and the transfer function are computed in place, one word at a
+ * time. The transfer function is fixed to {@code out = gen | (in & ~kill)}; subclasses only describe the gen and
+ * kill sets of each node in {@link #initGenKill(Object, int)}.
+ * </p>
+ *
+ * <p>
+ * Subclasses call {@link #doAnalysis(int)} once their universe is known and then answer queries through
+ * {@link #isSetBefore(Object, int)}, {@link #getFlowBefore(Object)} and the related methods.
+ * </p>
+ *
+ * @param <N>
+ *          node type of the graph
+ */
+public abstract class BitVectorFlowAnalysis<N> {
+  private static final int[] NO_PREDS = new int[0];
+
+  protected final DirectedGraph<N> graph;
+  private final boolean forward;
+  private final boolean intersection;
+
+  private final N[] nodes;
+  /**
+   * The numbering of the graph, or null if it does not number its nodes. Nodes are then looked up in {@link #table}.
+   */
+  private final IndexedDirectedGraph<N> indexedGraph;
+  /** Index plus one of the node hashed to each slot, 0 marks a free slot. */
+  private final int[] table;
+
+  private int words;
+  private long[] flowIn;
+  private long[] flowOut;
+  private long[] gen;
+  private long[] kill;
+
+  /**
+   * @param graph
+   *          the graph to analyze
+   * @param forward
+   *          true for a forward analysis, false for a backward analysis
+   * @param intersection
+   *          true if flow sets are merged by intersection (a must analysis), false if they are merged by union (a may
+   *          analysis)
+   */
+  public BitVectorFlowAnalysis(DirectedGraph<N> graph, boolean forward, boolean intersection) {
+    this.graph = graph;
+    this.forward = forward;
+    this.intersection = intersection;
+
+    final List<N> list = new ArrayList<N>(graph.size());
+    for (N node : graph) {
+      list.add(node);
+    }
+    @SuppressWarnings("unchecked")
+    final N[] nodes = (N[]) list.toArray();
+    this.nodes = nodes;
+    final int n = nodes.length;
+
+    if (graph instanceof IndexedDirectedGraph) {
+      this.indexedGraph = (IndexedDirectedGraph<N>) graph;
+      this.table = null;
+    } else {
+      this.indexedGraph = null;
+      this.table = new int[Integer.highestOneBit(Math.max(n, 1)) << 2];
+      final int mask = table.length - 1;
+      for (int i = 0; i < n; i++) {
+        int slot = slot(nodes[i], mask);
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = i + 1;
+      }
+    }
+  }
+
+  private static int slot(Object node, int mask) {
+    return (node.hashCode() * 0x9E3779B9) >>> 7 & mask;
+  }
+
+  /**
+   * Describes the gen and kill sets of the given node by calling {@link #gen(int, int)}, {@link #kill(int, int)} and
+   * {@link #killRange(int, int, int)}. Facts that are both generated and killed are generated.
+   *
+   * @param node
+   *          the node
+   * @param index
+   *          the dense index of the node, to be passed to the gen and kill methods
+   */
+  protected abstract void initGenKill(N node, int index);
+
+  /**
+   * Returns true if the flow along the edge from <code>from</code> to <code>to</code> (in the direction of the
+   * analysis) carries the flow set before <code>from</code> instead of the one after it. This is used for exceptional
+   * edges to handlers, where the exception may be thrown before <code>from</code> had any effect.
+   */
+  protected boolean isInFlowEdge(N from, N to) {
+    return false;
+  }
+
+  /** Marks the given fact as generated by the node with the given index. */
+  protected final void gen(int index, int fact) {
+    gen[index * words + (fact >>> 6)] |= 1L << fact;
+  }
+
+  /** Marks the given fact as killed by the node with the given index. */
+  protected final void kill(int index, int fact) {
+    kill[index * words + (fact >>> 6)] |= 1L << fact;
+  }
+
+  /** Marks the facts <code>from</code> (inclusive) to <code>to</code> (exclusive) as killed by the given node. */
+  protected final void killRange(int index, int from, int to) {
+    setRange(kill, index * words, from, to);
+  }
+
+  /**
+   * Returns the dense index of the given node, or -1 if it is not part of the graph.
+   */
+  protected final int indexOf(N node) {
+    if (indexedGraph != null) {
+      return indexedGraph.indexOf(node);
+    }
+    final int mask = table.length - 1;
+    for (int slot = slot(node, mask);; slot = (slot + 1) & mask) {
+      int i = table[slot];
+      if (i == 0) {
+        return -1;
+      }
+      if (nodes[i - 1].equals(node)) {
+        return i - 1;
+      }
+    }
+  }
+
+  /**
+   * Runs the analysis to a fixed point.
+   *
+   * @param universeSize
+   *          the number of facts
+   */
+  protected void doAnalysis(int universeSize) {
+    final int n = nodes.length;
+    final int w = (universeSize + 63) >>> 6;
+    this.words = w;
+    this.flowIn = new long[n * w];
+    this.flowOut = new long[n * w];
+    this.gen = new long[n * w];
+    this.kill = new long[n * w];
+
+    for (int i = 0; i < n; i++) {
+      initGenKill(nodes[i], i);
+    }
+
+    // Predecessors in the direction of the analysis. An encoded predecessor ~p denotes an edge that carries the flow
+    // set before p (see isInFlowEdge).
+    final int[][] preds = new int[n][];
+    final int[][] succs = new int[n][];
+    for (int i = 0; i < n; i++) {
+      N node = nodes[i];
+      preds[i] = toPredIndexes(node, forward ? graph.getPredsOf(node) : graph.getSuccsOf(node));
+      succs[i] = toIndexes(forward ? graph.getSuccsOf(node) : graph.getPredsOf(node));
+    }
+
+    final boolean[] entry = new boolean[n];
+    for (N node : forward ? graph.getHeads() : graph.getTails()) {
+      int i = indexOf(node);
+      if (i >= 0) {
+        entry[i] = true;
+      }
+    }
+
+    // All flow sets start at the top element of the lattice
+    if (intersection) {
+      Arrays.fill(flowIn, -1L);
+      Arrays.fill(flowOut, -1L);
+      trimUniverse(flowIn, universeSize);
+      trimUniverse(flowOut, universeSize);
+    }
+
+    final boolean[] reachable = new boolean[n];
+    final int[] order = newPseudoTopologicalOrder(preds, succs, entry, reachable);
+    final int[] rank = new int[n];
+    for (int r = 0; r < n; r++) {
+      rank[order[r]] = r;
+    }
+
+    final long lastWordMask = (universeSize & 63) == 0 ? -1L : -1L >>> -universeSize;
+    final long[] tmp = new long[w];
+    BitSet pending = new BitSet(n);
+    pending.set(0, n);
+    int cursor = 0;
+    while (!pending.isEmpty()) {
+      int r = pending.nextSetBit(cursor);
+      if (r < 0) {
+        r = pending.nextSetBit(0);
+      }
+      pending.clear(r);
+      cursor = r + 1;
+
+      final int i = order[r];
+      final int base = i * w;
+      final int[] ps = preds[i];
+
+      // merge
+      boolean isEntry = entry[i] || ps.length == 0;
+      if (isEntry || !intersection) {
+        Arrays.fill(tmp, 0L);
+      } else {
+        Arrays.fill(tmp, -1L);
+      }
+      if (!(isEntry && intersection)) {
+        for (int p : ps) {
+          long[] src = flowOut;
+          if (p < 0) {
+            p = ~p;
+            src = flowIn;
+          }
+          final int pbase = p * w;
+          if (intersection) {
+            for (int k = 0; k < w; k++) {
+              tmp[k] &= src[pbase + k];
+            }
+          } else {
+            for (int k = 0; k < w; k++) {
+              tmp[k] |= src[pbase + k];
+            }
+          }
+        }
+        if (w > 0) {
+          tmp[w - 1] &= lastWordMask;
+        }
+      }
+
+      // transfer
+      boolean changed = false;
+      for (int k = 0; k < w; k++) {
+        long in = tmp[k];
+        long out = gen[base + k] | (in & ~kill[base + k]);
+        if (flowIn[base + k] != in) {
+          flowIn[base + k] = in;
+          changed = true;
+        }
+        if (flowOut[base + k] != out) {
+          flowOut[base + k] = out;
+          changed = true;
+        }
+      }
+
+      if (changed) {
+        for (int s : succs[i]) {
+          pending.set(rank[s]);
+        }
+      }
+    }
+
+    // Nodes that cannot be reached from an entry would keep the top element of a must analysis; report the entry flow
+    // instead, so that no fact is claimed to hold in dead code
+    if (intersection) {
+      for (int i = 0; i < n; i++) {
+        if (!reachable[i]) {
+          int base = i * w;
+          for (int k = 0; k < w; k++) {
+            flowIn[base + k] = 0L;
+            flowOut[base + k] = gen[base + k];
+          }
+        }
+      }
+    }
+
+    // The gen and kill sets are not needed for answering queries
+    gen = null;
+    kill = null;
+  }
+
+  private int[] toIndexes(List<N> list) {
+    if (list.isEmpty()) {
+      return NO_PREDS;
+    }
+    int[] result = new int[list.size()];
+    int j = 0;
+    for (N node : list) {
+      int i = indexOf(node);
+      if (i >= 0) {
+        result[j++] = i;
+      }
+    }
+    return j == result.length ? result : Arrays.copyOf(result, j);
+  }
+
+  private int[] toPredIndexes(N node, List<N> list) {
+    int[] result = toIndexes(list);
+    for (int j = 0; j < result.length; j++) {
+      if (isInFlowEdge(nodes[result[j]], node)) {
+        result[j] = ~result[j];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Orders the nodes in reverse post-order of a depth-first traversal in the direction of the analysis, starting at the
+   * entries. Nodes that are not reachable from any entry are appended in graph order; all others are marked in
+   * <code>reachable</code>.
+   */
+  private static int[] newPseudoTopologicalOrder(int[][] preds, int[][] succs, boolean[] entry, boolean[] reachable) {
+    final int n = succs.length;
+    final int[] postOrder = new int[n];
+    int post = 0;
+
+    final boolean[] visited = new boolean[n];
+    final int[] stack = new int[n];
+    final int[] edge = new int[n];
+    for (int pass = 0; pass < 2; pass++) {
+      for (int root = 0; root < n; root++) {
+        if (visited[root] || (pass == 0 && !entry[root] && preds[root].length != 0)) {
+          continue;
+        }
+        int sp = 0;
+        stack[sp] = root;
+        edge[sp] = 0;
+        visited[root] = true;
+        while (sp >= 0) {
+          int v = stack[sp];
+          reachable[v] |= pass == 0;
+          int[] ss = succs[v];
+          if (edge[sp] < ss.length) {
+            int s = ss[edge[sp]++];
+            if (!visited[s]) {
+              visited[s] = true;
+              stack[++sp] = s;
+              edge[sp] = 0;
+            }
+          } else {
+            postOrder[post++] = v;
+            sp--;
+          }
+        }
+      }
+    }
+
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = postOrder[n - 1 - i];
+    }
+    return order;
+  }
+
+  private static void setRange(long[] slab, int base, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      slab[base + first] |= firstMask & lastMask;
+      return;
+    }
+    slab[base + first] |= firstMask;
+    for (int k = first + 1; k < last; k++) {
+      slab[base + k] = -1L;
+    }
+    slab[base + last] |= lastMask;
+  }
+
+  /** Clears the bits beyond the universe in the last word of every flow set. */
+  private void trimUniverse(long[] slab, int universeSize) {
+    if ((universeSize & 63) == 0) {
+      return;
+    }
+    long mask = -1L >>> -universeSize;
+    for (int k = words - 1; k < slab.length; k += words) {
+      slab[k] &= mask;
+    }
+  }
+
+  private long[] beforeSlab() {
+    return forward ? flowIn : flowOut;
+  }
+
+  private long[] afterSlab() {
+    return forward ? flowOut : flowIn;
+  }
+
+  private int checkedIndexOf(N node) {
+    int i = indexOf(node);
+    if (i < 0) {
+      throw new IllegalArgumentException("Node is not part of the analyzed graph: " + node);
+    }
+    return i;
+  }
+
+  /** Returns true if the given fact holds just before the given node. */
+  public boolean isSetBefore(N node, int fact) {
+    return isSet(beforeSlab(), checkedIndexOf(node), fact);
+  }
+
+  /** Returns true if the given fact holds just after the given node. */
+  public boolean isSetAfter(N node, int fact) {
+    return isSet(afterSlab(), checkedIndexOf(node), fact);
+  }
+
+  private boolean isSet(long[] slab, int index, int fact) {
+    return (slab[index * words + (fact >>> 6)] & (1L << fact)) != 0;
+  }
+
+  /** Returns a copy of the facts that hold just before the given node. */
+  public BitSet getFlowBefore(N node) {
+    int base = checkedIndexOf(node) * words;
+    return BitSet.valueOf(Arrays.copyOfRange(beforeSlab(), base, base + words));
+  }
+
+  /** Returns a copy of the facts that hold just after the given node. */
+  public BitSet getFlowAfter(N node) {
+    int base = checkedIndexOf(node) * words;
+    return BitSet.valueOf(Arrays.copyOfRange(afterSlab(), base, base + words));
+  }
+
+  /**
+   * Returns the elements of <code>universe</code> in the range <code>from .. to - 1</code> whose facts hold just before
+   * the given node.
+   */
+  protected <E> List<E> getElementsBefore(N node, E[] universe, int from, int to) {
+    return toList(beforeSlab(), checkedIndexOf(node) * words, universe, from, to);
+  }
+
+  /**
+   * Returns the elements of <code>universe</code> in the range <code>from .. to - 1</code> whose facts hold just after
+   * the given node.
+   */
+  protected <E> List<E> getElementsAfter(N node, E[] universe, int from, int to) {
+    return toList(afterSlab(), checkedIndexOf(node) * words, universe, from, to);
+  }
+
+  private static <E> List<E> toList(long[] slab, int base, E[] universe, int from, int to) {
+    List<E> result = null;
+    E single = null;
+    for (int k = from >>> 6, end = (to + 63) >>> 6; k < end; k++) {
+      long word = slab[base + k];
+      if (k == from >>> 6) {
+        word &= -1L << from;
+      }
+      while (word != 0) {
+        int fact = (k << 6) + Long.numberOfTrailingZeros(word);
+        if (fact >= to) {
+          break;
+        }
+        word &= word - 1;
+        if (single == null && result == null) {
+          single = universe[fact];
+        } else {
+          if (result == null) {
+            result = new ArrayList<E>();
+            result.add(single);
+          }
+          result.add(universe[fact]);
+        }
+      }
+    }
+    if (result != null) {
+      return result;
+    }
+    return single == null ? Collections.<E>emptyList() : Collections.singletonList(single);
+  }
+}
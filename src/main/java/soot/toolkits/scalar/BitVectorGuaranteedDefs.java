@@ -0,0 +1,101 @@
+package soot.toolkits.scalar;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.List;
+
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Finds all locals guaranteed to be defined at (just before) a given program point, like {@link GuaranteedDefs}, using
+ * a {@link BitVectorFlowAnalysis}.
+ *
+ * <p>
+ * The analysis is a forward must analysis whose gen set is the set of locals defined by a unit. {@link GuaranteedDefs}
+ * additionally adds the definitions of all dominators to the gen set, which is implied by the intersection over all
+ * paths and therefore not needed here.
+ * </p>
+ *
+ * <p>
+ * The flow sets start at the set of all locals rather than at the empty set, so the result may be larger than the one of
+ * {@link GuaranteedDefs}: a local defined on every path into a loop is also guaranteed to be defined inside the loop.
+ * </p>
+ */
+public class BitVectorGuaranteedDefs {
+  private final Local[] locals;
+  private final Analysis analysis;
+
+  public BitVectorGuaranteedDefs(UnitGraph graph) {
+    this.locals = graph.getBody().getLocals().toArray(new Local[graph.getBody().getLocalCount()]);
+    this.analysis = new Analysis(graph, locals);
+  }
+
+  /**
+   * Returns a list of locals guaranteed to be defined at (just before) program point <tt>s</tt>.
+   */
+  public List<Local> getGuaranteedDefs(Unit s) {
+    return analysis.getElementsBefore(s, locals, 0, locals.length);
+  }
+
+  private static class Analysis extends BitVectorFlowAnalysis<Unit> {
+    private final Local[] locals;
+
+    Analysis(UnitGraph graph, Local[] locals) {
+      super(graph, true, true);
+      this.locals = locals;
+
+      // number the locals densely while computing the gen sets
+      final int n = locals.length;
+      int[] oldNumbers = new int[n];
+      for (int i = 0; i < n; i++) {
+        oldNumbers[i] = locals[i].getNumber();
+        locals[i].setNumber(i);
+      }
+      try {
+        doAnalysis(n);
+      } finally {
+        for (int i = 0; i < n; i++) {
+          locals[i].setNumber(oldNumbers[i]);
+        }
+      }
+    }
+
+    @Override
+    protected void initGenKill(Unit unit, int index) {
+      // the kill set is empty
+      for (ValueBox box : unit.getDefBoxes()) {
+        Value v = box.getValue();
+        if (v instanceof Local) {
+          int lno = ((Local) v).getNumber();
+          if (lno >= 0 && lno < locals.length && locals[lno] == v) {
+            gen(index, lno);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package soot.toolkits.scalar;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.List;
+
+import soot.Local;
+import soot.Timers;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.options.Options;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * An implementation of the LiveLocals interface on top of {@link BitVectorFlowAnalysis}. It computes the same results
+ * as {@link SimpleLiveLocals}, but keeps all flow sets in a single bit vector per direction instead of one set per
+ * unit.
+ */
+public class BitVectorLiveLocals implements LiveLocals {
+  private final Local[] locals;
+  private final Analysis analysis;
+
+  public BitVectorLiveLocals(UnitGraph graph) {
+    if (Options.v().time()) {
+      Timers.v().liveTimer.start();
+    }
+
+    this.locals = graph.getBody().getLocals().toArray(new Local[graph.getBody().getLocalCount()]);
+    this.analysis = new Analysis(graph, locals);
+
+    if (Options.v().time()) {
+      Timers.v().liveTimer.end();
+    }
+  }
+
+  @Override
+  public List<Local> getLiveLocalsAfter(Unit s) {
+    return analysis.getElementsAfter(s, locals, 0, locals.length);
+  }
+
+  @Override
+  public List<Local> getLiveLocalsBefore(Unit s) {
+    return analysis.getElementsBefore(s, locals, 0, locals.length);
+  }
+
+  private static class Analysis extends BitVectorFlowAnalysis<Unit> {
+    private final Local[] locals;
+
+    Analysis(UnitGraph graph, Local[] locals) {
+      super(graph, false, false);
+      this.locals = locals;
+
+      // number the locals densely while computing the gen and kill sets
+      final int n = locals.length;
+      int[] oldNumbers = new int[n];
+      for (int i = 0; i < n; i++) {
+        oldNumbers[i] = locals[i].getNumber();
+        locals[i].setNumber(i);
+      }
+      try {
+        doAnalysis(n);
+      } finally {
+        for (int i = 0; i < n; i++) {
+          locals[i].setNumber(oldNumbers[i]);
+        }
+      }
+    }
+
+    @Override
+    protected void initGenKill(Unit unit, int index) {
+      for (ValueBox box : unit.getDefBoxes()) {
+        int lno = numberOf(box.getValue());
+        if (lno >= 0) {
+          kill(index, lno);
+        }
+      }
+      for (ValueBox box : unit.getUseBoxes()) {
+        int lno = numberOf(box.getValue());
+        if (lno >= 0) {
+          gen(index, lno);
+        }
+      }
+    }
+
+    private int numberOf(Value v) {
+      if (v instanceof Local) {
+        int lno = ((Local) v).getNumber();
+        if (lno >= 0 && lno < locals.length && locals[lno] == v) {
+          return lno;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package soot.toolkits.scalar;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.IdentityUnit;
+import soot.Local;
+import soot.Timers;
+import soot.Trap;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.options.Options;
+import soot.toolkits.graph.ExceptionalGraph;
+import soot.toolkits.graph.ExceptionalGraph.ExceptionDest;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * An implementation of the LocalDefs interface on top of {@link BitVectorFlowAnalysis}. It computes the same reaching
+ * definitions as {@link SimpleLocalDefs}.
+ *
+ * <p>
+ * The definitions of each local are numbered consecutively, so that the definitions of a local form a contiguous range
+ * of bits. A definition of a local kills the whole range and generates its own bit.
+ * </p>
+ */
+public class BitVectorLocalDefs implements LocalDefs {
+  private final Map<Local, Integer> localToNumber;
+  private final int[] localRange;
+  private final Unit[] universe;
+  private final Analysis analysis;
+
+  public BitVectorLocalDefs(UnitGraph graph) {
+    final Options options = Options.v();
+    if (options.time()) {
+      Timers.v().defsTimer.start();
+    }
+
+    final Local[] locals = graph.getBody().getLocals().toArray(new Local[graph.getBody().getLocalCount()]);
+    final int n = locals.length;
+
+    // reassign local numbers
+    int[] oldNumbers = new int[n];
+    for (int i = 0; i < n; i++) {
+      oldNumbers[i] = locals[i].getNumber();
+      locals[i].setNumber(i);
+    }
+
+    try {
+      // count the definitions of each local
+      int[] defCount = new int[n];
+      int defs = 0;
+      for (Unit u : graph) {
+        for (ValueBox box : u.getDefBoxes()) {
+          int lno = numberOf(locals, box.getValue());
+          if (lno >= 0) {
+            defCount[lno]++;
+            defs++;
+          }
+        }
+      }
+
+      localRange = new int[n + 1];
+      localToNumber = new HashMap<Local, Integer>((n * 4) / 3 + 1);
+      for (int i = 0; i < n; i++) {
+        localRange[i + 1] = localRange[i] + defCount[i];
+        if (defCount[i] > 0) {
+          localToNumber.put(locals[i], i);
+        }
+      }
+
+      // assign a bit to each definition
+      universe = new Unit[defs];
+      int[] nextBit = Arrays.copyOf(localRange, n);
+      analysis = new Analysis(graph, locals, localRange, universe);
+      int[] firstBitOfUnit = analysis.firstBitOfUnit;
+      Arrays.fill(firstBitOfUnit, -1);
+      for (Unit u : graph) {
+        for (ValueBox box : u.getDefBoxes()) {
+          int lno = numberOf(locals, box.getValue());
+          if (lno >= 0) {
+            int bit = nextBit[lno]++;
+            universe[bit] = u;
+            int index = analysis.indexOf(u);
+            if (firstBitOfUnit[index] < 0) {
+              firstBitOfUnit[index] = bit;
+            }
+          }
+        }
+      }
+
+      analysis.doAnalysis(defs);
+    } finally {
+      // restore local numbering
+      for (int i = 0; i < n; i++) {
+        locals[i].setNumber(oldNumbers[i]);
+      }
+    }
+
+    if (options.time()) {
+      Timers.v().defsTimer.end();
+    }
+  }
+
+  private static int numberOf(Local[] locals, Value v) {
+    if (v instanceof Local) {
+      int lno = ((Local) v).getNumber();
+      if (lno >= 0 && lno < locals.length && locals[lno] == v) {
+        return lno;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<Unit> getDefsOfAt(Local l, Unit s) {
+    Integer lno = localToNumber.get(l);
+    if (lno == null) {
+      return Collections.emptyList();
+    }
+    int from = localRange[lno];
+    int to = localRange[lno + 1];
+    if (to - from == 1) {
+      // a single definition always reaches, as in SimpleLocalDefs
+      return Collections.singletonList(universe[from]);
+    }
+    return analysis.getElementsBefore(s, universe, from, to);
+  }
+
+  @Override
+  public List<Unit> getDefsOf(Local l) {
+    Integer lno = localToNumber.get(l);
+    if (lno == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(Arrays.asList(universe).subList(localRange[lno], localRange[lno + 1]));
+  }
+
+  private static class Analysis extends BitVectorFlowAnalysis<Unit> {
+    private final Local[] locals;
+    private final int[] localRange;
+    private final Unit[] universe;
+    final int[] firstBitOfUnit;
+
+    Analysis(UnitGraph graph, Local[] locals, int[] localRange, Unit[] universe) {
+      super(graph, true, false);
+      this.locals = locals;
+      this.localRange = localRange;
+      this.universe = universe;
+      this.firstBitOfUnit = new int[graph.size()];
+    }
+
+    @Override
+    protected void initGenKill(Unit unit, int index) {
+      int bit = firstBitOfUnit[index];
+      if (bit < 0) {
+        return;
+      }
+      for (ValueBox box : unit.getDefBoxes()) {
+        int lno = numberOf(locals, box.getValue());
+        if (lno < 0) {
+          continue;
+        }
+        int from = localRange[lno];
+        int to = localRange[lno + 1];
+        killRange(index, from, to);
+
+        // units rarely define more than one local; look up the bits of the others
+        if (bit < from || bit >= to || universe[bit] != unit) {
+          bit = from;
+          while (universe[bit] != unit) {
+            bit++;
+          }
+        }
+        gen(index, bit);
+      }
+    }
+
+    @Override
+    protected boolean isInFlowEdge(Unit from, Unit to) {
+      // an exception raised by from reaches the handler before from had any effect
+      if (to instanceof IdentityUnit && graph instanceof ExceptionalGraph) {
+        ExceptionalGraph<Unit> g = (ExceptionalGraph<Unit>) graph;
+        if (!g.getExceptionalPredsOf(to).isEmpty()) {
+          for (ExceptionDest<Unit> exd : g.getExceptionDests(from)) {
+            Trap trap = exd.getTrap();
+            if (trap != null && trap.getHandlerUnit() == to) {
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -40,6 +40,7 @@ import soot.Value;
 import soot.ValueBox;
 import soot.options.Options;
 import soot.toolkits.exceptions.PedanticThrowAnalysis;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.util.ArraySet;
 
@@ -56,7 +57,7 @@ public class FastColorer {
     // To understand why a pedantic throw analysis is required, see comment
     // in assignColorsToLocals method
     ExceptionalUnitGraph unitGraph
-        = new ExceptionalUnitGraph(unitBody, PedanticThrowAnalysis.v(), Options.v().omit_excepting_unit_edges());
+        = new CompactExceptionalUnitGraph(unitBody, PedanticThrowAnalysis.v(), Options.v().omit_excepting_unit_edges());
 
     LiveLocals liveLocals;
     liveLocals = new SimpleLiveLocals(unitGraph);
@@ -170,7 +171,7 @@ public class FastColorer {
     // Build a CFG using a pedantic throw analysis to prevent JVM
     // "java.lang.VerifyError: Incompatible argument to function" errors.
     ExceptionalUnitGraph unitGraph
-        = new ExceptionalUnitGraph(unitBody, PedanticThrowAnalysis.v(), Options.v().omit_excepting_unit_edges());
+        = new CompactExceptionalUnitGraph(unitBody, PedanticThrowAnalysis.v(), Options.v().omit_excepting_unit_edges());
     LiveLocals liveLocals;
 
     liveLocals = new SimpleLiveLocals(unitGraph);
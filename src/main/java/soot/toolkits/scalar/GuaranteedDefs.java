@@ -36,7 +36,6 @@ import soot.Unit;
 import soot.ValueBox;
 import soot.options.Options;
 import soot.toolkits.graph.DominatorsFinder;
-import soot.toolkits.graph.MHGDominatorsFinder;
 import soot.toolkits.graph.UnitGraph;
 
 /**
@@ -85,7 +84,7 @@ class GuaranteedDefsAnalysis extends ForwardFlowAnalysis {
 
   GuaranteedDefsAnalysis(UnitGraph graph) {
     super(graph);
-    DominatorsFinder df = new MHGDominatorsFinder(graph);
+    DominatorsFinder df = DominatorsFinder.Factory.newDominatorsFinder(graph);
     unitToGenerateSet = new HashMap<Unit, FlowSet>(graph.size() * 2 + 1, 0.7f);
 
     // pre-compute generate sets
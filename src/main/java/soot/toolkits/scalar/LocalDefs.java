@@ -27,6 +27,7 @@ import java.util.List;
 import soot.Body;
 import soot.Local;
 import soot.Unit;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.SimpleLocalDefs.FlowAnalysisMode;
@@ -62,7 +63,7 @@ public interface LocalDefs {
      * @return a new LocalDefs instance
      */
     public static LocalDefs newLocalDefs(Body body, boolean expectUndefined) {
-      return newLocalDefs(new ExceptionalUnitGraph(body), expectUndefined);
+      return newLocalDefs(new CompactExceptionalUnitGraph(body), expectUndefined);
     }
 
     /**
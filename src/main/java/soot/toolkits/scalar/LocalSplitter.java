@@ -44,6 +44,7 @@ import soot.Value;
 import soot.ValueBox;
 import soot.options.Options;
 import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
 import soot.toolkits.graph.ExceptionalUnitGraph;
 import soot.util.LocalBitSetPacker;
 
@@ -113,7 +114,7 @@ public class LocalSplitter extends BodyTransformer {
     localPacker.pack();
 
     // Go through the definitions, building the webs
-    ExceptionalUnitGraph graph = new ExceptionalUnitGraph(body, throwAnalysis, omitExceptingUnitEdges);
+    ExceptionalUnitGraph graph = new CompactExceptionalUnitGraph(body, throwAnalysis, omitExceptingUnitEdges);
 
     // run in panic mode on first split (maybe change this depending on the input
     // source)
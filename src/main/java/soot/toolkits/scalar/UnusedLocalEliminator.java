@@ -103,8 +103,17 @@ public class UnusedLocalEliminator extends BodyTransformer {
         keep.add(local);
       }
     }
-    body.getLocals().clear();
-    body.getLocals().addAll(keep);
+    // Leave the chain untouched if all locals are used, which keeps
+    // the analyses cached on the body valid
+    if (keep.size() != n) {
+      body.getLocals().clear();
+      body.getLocals().addAll(keep);
+    }
+  }
+
+  @Override
+  protected boolean preservesCachedAnalyses() {
+    return true;
   }
 
 }
@@ -0,0 +1,431 @@
+package soot.util;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A read-only view of a zip archive (jar, zip or apk) that is opened once and can be shared by all class providers.
+ *
+ * <p>
+ * The archive is memory-mapped and its central directory is parsed into an index from entry names to the position of the
+ * entry data, so looking up an entry does not require opening the archive again. Entries that are stored without
+ * compression are handed out as read-only views of the mapped file. Archives that cannot be mapped (e.g. ZIP64 archives or
+ * archives larger than 2GB) are read through a single shared {@link ZipFile} instead.
+ * </p>
+ *
+ * <p>
+ * A mapped file is only unmapped when the garbage collector frees its buffer, not when the archive is closed. On Windows, a
+ * mapped file cannot be deleted or replaced while it is still mapped, so archives are always read through a {@link ZipFile}
+ * there, which releases the file when the archive is closed, e.g. by {@link soot.G#reset()}.
+ * </p>
+ *
+ * <p>
+ * Instances are safe for concurrent use.
+ * </p>
+ */
+public class MappedArchive implements Closeable {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_HEADER_SIGNATURE = 0x06054b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_HEADER_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+  private static final int INFLATE_CHUNK_SIZE = 1 << 16;
+
+  /** Whether archives are memory-mapped, see the class documentation. */
+  private static final boolean MAP_ARCHIVES = !System.getProperty("os.name", "").startsWith("Windows");
+
+  private final File file;
+  private final ByteBuffer data;
+  private final ZipFile zipFile;
+  private final Map<String, Entry> entries;
+  private volatile boolean closed = false;
+
+  private MappedArchive(File file, ByteBuffer data, Map<String, Entry> entries) {
+    this.file = file;
+    this.data = data;
+    this.zipFile = null;
+    this.entries = entries;
+  }
+
+  private MappedArchive(File file, ZipFile zipFile, Map<String, Entry> entries) {
+    this.file = file;
+    this.data = null;
+    this.zipFile = zipFile;
+    this.entries = entries;
+  }
+
+  /**
+   * Opens the given archive, memory-mapping it if possible. Like {@link ZipFile}, this does not fail if the current thread
+   * has been interrupted; the interrupt status is kept for the caller.
+   */
+  public static MappedArchive open(File file) throws IOException {
+    return open(file, MAP_ARCHIVES);
+  }
+
+  /**
+   * Opens the given archive, memory-mapping it if <code>map</code> is true and the archive can be mapped.
+   */
+  static MappedArchive open(File file, boolean map) throws IOException {
+    // File channels are closed when the thread that uses them is interrupted
+    boolean interrupted = Thread.interrupted();
+    try {
+      if (map) {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+          FileChannel channel = raf.getChannel();
+          long size = channel.size();
+          if (size <= Integer.MAX_VALUE) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            Map<String, Entry> entries = readCentralDirectory(data);
+            if (entries != null) {
+              return new MappedArchive(file, data, entries);
+            }
+          }
+        } catch (ClosedByInterruptException e) {
+          // Interrupted meanwhile, read the archive through a ZipFile instead
+          interrupted |= Thread.interrupted();
+        } finally {
+          // The mapping stays valid after the channel has been closed
+          raf.close();
+        }
+      }
+
+      ZipFile zipFile = new ZipFile(file);
+      Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+      for (Enumeration<? extends ZipEntry> it = zipFile.entries(); it.hasMoreElements();) {
+        ZipEntry ze = it.nextElement();
+        entries.put(ze.getName(), new Entry(ze.getMethod(), -1, ze.getCompressedSize(), ze.getSize()));
+      }
+      return new MappedArchive(file, zipFile, entries);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Parses the central directory of a mapped archive. Returns null if the archive uses features that are not supported by
+   * this reader, in which case the caller falls back to {@link ZipFile}.
+   */
+  private static Map<String, Entry> readCentralDirectory(ByteBuffer data) throws IOException {
+    int end = findEndHeader(data);
+    if (end < 0) {
+      throw new IOException("Not a zip archive: end of central directory not found");
+    }
+    int count = data.getShort(end + 10) & 0xFFFF;
+    long cdSize = data.getInt(end + 12) & 0xFFFFFFFFL;
+    long cdOffset = data.getInt(end + 16) & 0xFFFFFFFFL;
+    if (count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > end) {
+      // ZIP64 archive or archive with a prefix such as a self-extracting stub
+      return null;
+    }
+
+    Map<String, Entry> entries = new LinkedHashMap<String, Entry>(count * 4 / 3 + 1);
+    int pos = (int) cdOffset;
+    for (int i = 0; i < count; i++) {
+      if (data.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+        throw new IOException("Invalid central directory header at offset " + pos);
+      }
+      int method = data.getShort(pos + 10) & 0xFFFF;
+      long compressedSize = data.getInt(pos + 20) & 0xFFFFFFFFL;
+      long size = data.getInt(pos + 24) & 0xFFFFFFFFL;
+      int nameLength = data.getShort(pos + 28) & 0xFFFF;
+      int extraLength = data.getShort(pos + 30) & 0xFFFF;
+      int commentLength = data.getShort(pos + 32) & 0xFFFF;
+      long localOffset = data.getInt(pos + 42) & 0xFFFFFFFFL;
+      if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+        return null;
+      }
+
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameView = data.duplicate();
+      nameView.position(pos + CENTRAL_HEADER_SIZE);
+      nameView.get(name);
+      entries.put(new String(name, StandardCharsets.UTF_8), new Entry(method, localOffset, compressedSize, size));
+
+      pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  private static int findEndHeader(ByteBuffer data) {
+    int limit = Math.max(0, data.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+    for (int pos = data.limit() - END_HEADER_SIZE; pos >= limit; pos--) {
+      if (data.getInt(pos) == END_HEADER_SIGNATURE) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns true if the archive is memory-mapped, false if it is read through a {@link ZipFile}.
+   */
+  public boolean isMapped() {
+    return data != null;
+  }
+
+  /**
+   * Returns the names of all entries in this archive, in the order of the central directory.
+   */
+  public Set<String> getEntryNames() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  public boolean containsEntry(String name) {
+    return entries.containsKey(name);
+  }
+
+  /**
+   * Returns the uncompressed contents of the given entry, or null if the archive does not contain it. For mapped archives,
+   * entries stored without compression are returned as read-only views of the mapped file, without copying.
+   */
+  public ByteBuffer getEntry(String name) throws IOException {
+    Entry e = entries.get(name);
+    if (e == null) {
+      return null;
+    }
+    if (data == null) {
+      return ByteBuffer.wrap(readFromZipFile(name, e.size));
+    }
+
+    ByteBuffer raw = getRawData(name, e);
+    switch (e.method) {
+      case ZipEntry.STORED:
+        return raw.asReadOnlyBuffer();
+      case ZipEntry.DEFLATED:
+        return ByteBuffer.wrap(inflate(name, raw, e.size));
+      default:
+        throw new IOException("Unsupported compression method " + e.method + " for entry '" + name + "' in " + file);
+    }
+  }
+
+  /**
+   * Returns the first <code>length</code> bytes of the uncompressed contents of the given entry, or all of them if the entry
+   * is shorter, or null if the archive does not contain it. Compressed entries are only inflated as far as needed, so this
+   * is a cheap way to look at the header of an entry.
+   */
+  public byte[] getEntryPrefix(String name, int length) throws IOException {
+    Entry e = entries.get(name);
+    if (e == null) {
+      return null;
+    }
+    long size = Math.min(length, e.size);
+    if (data == null) {
+      return readFromZipFile(name, size);
+    }
+
+    ByteBuffer raw = getRawData(name, e);
+    switch (e.method) {
+      case ZipEntry.STORED:
+        byte[] out = new byte[(int) size];
+        raw.get(out);
+        return out;
+      case ZipEntry.DEFLATED:
+        return inflate(name, raw, size);
+      default:
+        throw new IOException("Unsupported compression method " + e.method + " for entry '" + name + "' in " + file);
+    }
+  }
+
+  /**
+   * Returns a stream over the uncompressed contents of the given entry, or null if the archive does not contain it.
+   */
+  public InputStream getInputStream(String name) throws IOException {
+    Entry e = entries.get(name);
+    if (e == null) {
+      return null;
+    }
+    if (data == null) {
+      return new ByteArrayInputStream(readFromZipFile(name, e.size));
+    }
+    return new ByteBufferInputStream(getEntry(name));
+  }
+
+  private ByteBuffer getRawData(String name, Entry e) throws IOException {
+    int offset = (int) e.localOffset;
+    if (data.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+      throw new IOException("Invalid local header for entry '" + name + "' in " + file);
+    }
+    int nameLength = data.getShort(offset + 26) & 0xFFFF;
+    int extraLength = data.getShort(offset + 28) & 0xFFFF;
+    int start = offset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+    // Never modify the position of the shared buffer
+    ByteBuffer view = data.duplicate();
+    view.position(start);
+    view.limit(start + (int) e.compressedSize);
+    return view.slice();
+  }
+
+  /**
+   * Inflates the first <code>size</code> bytes of a deflated entry. The compressed data is passed to the inflater in chunks,
+   * so that inflating a prefix does not copy the whole entry.
+   */
+  private byte[] inflate(String name, ByteBuffer raw, long size) throws IOException {
+    byte[] in = new byte[Math.min(raw.remaining(), INFLATE_CHUNK_SIZE)];
+    byte[] out = new byte[(int) size];
+    Inflater inflater = new Inflater(true);
+    try {
+      int n = 0;
+      while (n < out.length) {
+        if (inflater.needsInput()) {
+          if (!raw.hasRemaining()) {
+            break;
+          }
+          int k = Math.min(in.length, raw.remaining());
+          raw.get(in, 0, k);
+          inflater.setInput(in, 0, k);
+        }
+        int len = inflater.inflate(out, n, out.length - n);
+        if (len == 0 && (inflater.finished() || inflater.needsDictionary())) {
+          break;
+        }
+        n += len;
+      }
+      if (n != out.length) {
+        throw new IOException("Truncated entry '" + name + "' in " + file);
+      }
+      return out;
+    } catch (DataFormatException ex) {
+      throw new IOException("Corrupt entry '" + name + "' in " + file, ex);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private byte[] readFromZipFile(String name, long size) throws IOException {
+    ZipEntry ze = zipFile.getEntry(name);
+    InputStream is = zipFile.getInputStream(ze);
+    try {
+      byte[] out = new byte[(int) size];
+      int n = 0;
+      while (n < out.length) {
+        int len = is.read(out, n, out.length - n);
+        if (len < 0) {
+          throw new IOException("Truncated entry '" + name + "' in " + file);
+        }
+        n += len;
+      }
+      return out;
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Returns true if {@link #close()} has been called.
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    // Mapped buffers are released by the garbage collector, see the class
+    // documentation
+    if (zipFile != null) {
+      zipFile.close();
+    }
+  }
+
+  private static final class Entry {
+    final int method;
+    final long localOffset;
+    final long compressedSize;
+    final long size;
+
+    Entry(int method, long localOffset, long compressedSize, long size) {
+      this.method = method;
+      this.localOffset = localOffset;
+      this.compressedSize = compressedSize;
+      this.size = size;
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) {
+      int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + k);
+      return k;
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+  }
+}
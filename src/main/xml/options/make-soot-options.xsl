@@ -289,7 +289,13 @@ public class Options extends OptionsBase {
                 else {
                     G.v().out.println("Duplicate values " + <xsl:copy-of select="$name"/> + " and " + value + " for option -" + option);
                     return false;
-                }
+                }<xsl:text/>
+        <xsl:if test="min or max">
+                if (false<xsl:if test="min"> || <xsl:copy-of select="$name"/> &lt; <xsl:value-of select="min"/></xsl:if><xsl:if test="max"> || <xsl:copy-of select="$name"/> &gt; <xsl:value-of select="max"/></xsl:if>) {
+                    G.v().out.println(String.format("Invalid value %s given for option -%s", value, option));
+                    return false;
+                }<xsl:text/>
+        </xsl:if>
             }<xsl:text/>
     </xsl:template>
 
@@ -0,0 +1,163 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.jimple.AssignStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.options.Options;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.LocalUses;
+
+public class BodyAnalysisCacheTest {
+
+  private static final String TARGET_CLASS = "soot.toolkits.exceptions.targets.MethodThrowableSetClass";
+  private static final String TARGET_METHOD = "<" + TARGET_CLASS + ": void nestedTry()>";
+
+  private Body body;
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    body = Scene.v().getMethod(TARGET_METHOD).retrieveActiveBody();
+    Assert.assertFalse(body.getTraps().isEmpty());
+  }
+
+  /** A transformer that changes the operand of an assignment in place, without touching the chains of the body. */
+  private static class InPlaceTransformer extends BodyTransformer {
+    @Override
+    protected void internalTransform(Body b, String phaseName, Map<String, String> options) {
+      for (Unit u : b.getUnits()) {
+        if (u instanceof AssignStmt && ((AssignStmt) u).getRightOp() instanceof IntConstant) {
+          ((AssignStmt) u).setRightOp(IntConstant.v(4711));
+          return;
+        }
+      }
+      Assert.fail("No assignment of a constant in " + b.getMethod());
+    }
+  }
+
+  @Test
+  public void testHit() {
+    BodyAnalysisCache cache = body.getAnalysisCache();
+    // The counts include the requests of the phases that built the body
+    long hits = cache.getHits();
+    long misses = cache.getMisses();
+    ExceptionalUnitGraph graph = body.getAnalysis(ExceptionalUnitGraph.class);
+    Assert.assertEquals(hits, cache.getHits());
+    Assert.assertEquals(misses + 1, cache.getMisses());
+
+    Assert.assertSame(graph, body.getAnalysis(ExceptionalUnitGraph.class));
+    Assert.assertSame(graph, body.getAnalysis(UnitGraph.class));
+    Assert.assertSame(graph, cache.getExceptionalUnitGraph());
+    Assert.assertEquals(hits + 3, cache.getHits());
+    Assert.assertEquals(misses + 1, cache.getMisses());
+
+    // The local uses are built on the cached graph and local defs
+    LocalDefs defs = body.getAnalysis(LocalDefs.class);
+    Assert.assertSame(defs, cache.getLocalDefs(graph));
+    LocalUses uses = body.getAnalysis(LocalUses.class);
+    Assert.assertSame(uses, body.getAnalysis(LocalUses.class));
+    Assert.assertEquals(misses + 3, cache.getMisses());
+  }
+
+  @Test
+  public void testChainChangeInvalidates() {
+    ExceptionalUnitGraph graph = body.getAnalysis(ExceptionalUnitGraph.class);
+    LocalDefs defs = body.getAnalysis(LocalDefs.class);
+
+    Local l = Jimple.v().newLocal("added", IntType.v());
+    body.getLocals().add(l);
+    Assert.assertNotSame(defs, body.getAnalysis(LocalDefs.class));
+
+    Unit added = Jimple.v().newAssignStmt(l, IntConstant.v(1));
+    body.getUnits().insertBefore(added, body.getUnits().getLast());
+    ExceptionalUnitGraph newGraph = body.getAnalysis(ExceptionalUnitGraph.class);
+    Assert.assertNotSame(graph, newGraph);
+    Assert.assertTrue(newGraph.getBody().getUnits().contains(added));
+    Assert.assertFalse(newGraph.getPredsOf(added).isEmpty());
+  }
+
+  @Test
+  public void testNonPreservingTransformerInvalidates() {
+    ExceptionalUnitGraph graph = body.getAnalysis(ExceptionalUnitGraph.class);
+    LocalDefs defs = body.getAnalysis(LocalDefs.class);
+    long modifications = body.getModificationCount();
+
+    new InPlaceTransformer().transform(body);
+
+    // The chains did not change, so only the transformer could tell the
+    // cache that its entries are stale
+    Assert.assertEquals(modifications, body.getModificationCount());
+    Assert.assertNotSame(graph, body.getAnalysis(ExceptionalUnitGraph.class));
+    Assert.assertNotSame(defs, body.getAnalysis(LocalDefs.class));
+  }
+
+  @Test
+  public void testPreservingTransformerKeepsCache() {
+    ExceptionalUnitGraph graph = body.getAnalysis(ExceptionalUnitGraph.class);
+
+    new BodyTransformer() {
+      @Override
+      protected void internalTransform(Body b, String phaseName, Map<String, String> options) {
+        Assert.assertSame(graph, b.getAnalysis(ExceptionalUnitGraph.class));
+      }
+
+      @Override
+      protected boolean preservesCachedAnalyses() {
+        return true;
+      }
+    }.transform(body);
+
+    Assert.assertSame(graph, body.getAnalysis(ExceptionalUnitGraph.class));
+
+    // An in-place change is only seen after an explicit invalidation
+    new InPlaceTransformer() {
+      @Override
+      protected boolean preservesCachedAnalyses() {
+        return true;
+      }
+    }.transform(body);
+    Assert.assertSame(graph, body.getAnalysis(ExceptionalUnitGraph.class));
+    body.invalidateAnalyses();
+    Assert.assertNotSame(graph, body.getAnalysis(ExceptionalUnitGraph.class));
+  }
+}
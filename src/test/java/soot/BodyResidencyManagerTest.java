@@ -0,0 +1,219 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.jimple.AssignStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+import soot.tagkit.LineNumberTag;
+import soot.tagkit.StringTag;
+
+public class BodyResidencyManagerTest {
+
+  private static final String TARGET_CLASS = "soot.toolkits.exceptions.targets.MethodThrowableSetClass";
+  private static final String TARGET_METHOD = "<" + TARGET_CLASS + ": void recursion()>";
+  private static final String PROGRAM_PACKAGE = "soot/jimple/toolkits/callgraph/targets";
+  private static final String PROGRAM_MAIN_CLASS = "soot.jimple.toolkits.callgraph.targets.DispatchTarget";
+  /**
+   * The library classes whose bodies are built, enough to exceed the smallest budget. The call graph of java.util.stream is
+   * not the same from run to run, so it is left out.
+   */
+  private static final List<String> PROGRAM_LIBRARY = Arrays.asList("java.util.ArrayList", "java.util.ArrayList$*",
+      "java.util.Collections", "java.util.Arrays", "java.util.TimSort", "java.util.ComparableTimSort",
+      "java.lang.AbstractStringBuilder", "java.lang.StringBuilder");
+
+  private long evictionsDuringCallGraph;
+
+  private SootMethod method;
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Options.v().set_body_memory_budget(1);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    method = Scene.v().getMethod(TARGET_METHOD);
+  }
+
+  @Test
+  public void testEditAfterEvictionSurvives() {
+    Body b = method.retrieveActiveBody();
+    b.addTag(new StringTag("body tag"));
+    b.getUnits().getFirst().addTag(new LineNumberTag(42));
+    int unitCount = b.getUnits().size();
+
+    BodyResidencyManager.v().evict(0);
+    Assert.assertEquals(1, BodyResidencyManager.v().getEvictions());
+    Assert.assertTrue(method.hasActiveBody());
+
+    // Edit the body that has been read back
+    Body reloaded = method.getActiveBody();
+    Assert.assertNotSame(b, reloaded);
+    Assert.assertEquals(1, BodyResidencyManager.v().getReloads());
+    Local l = Jimple.v().newLocal("edited", IntType.v());
+    reloaded.getLocals().add(l);
+    reloaded.getUnits().insertBefore(Jimple.v().newAssignStmt(l, IntConstant.v(4711)), reloaded.getUnits().getLast());
+
+    BodyResidencyManager.v().evict(0);
+    Assert.assertEquals(2, BodyResidencyManager.v().getEvictions());
+
+    Body again = method.getActiveBody();
+    Assert.assertNotSame(reloaded, again);
+    Assert.assertEquals(unitCount + 1, again.getUnits().size());
+    Unit edit = again.getUnits().getPredOf(again.getUnits().getLast());
+    Assert.assertTrue(edit instanceof AssignStmt);
+    Assert.assertEquals("edited", ((Local) ((AssignStmt) edit).getLeftOp()).getName());
+    Assert.assertEquals(IntConstant.v(4711), ((AssignStmt) edit).getRightOp());
+
+    // The tags survive both round-trips
+    Assert.assertEquals("body tag", ((StringTag) again.getTag("StringTag")).getInfo());
+    Assert.assertEquals(42, ((LineNumberTag) again.getUnits().getFirst().getTag("LineNumberTag")).getLineNumber());
+  }
+
+  @Test
+  public void testNoEvictionOfPinnedBody() {
+    BodyResidencyManager.v().pin(method);
+    Body b = method.retrieveActiveBody();
+    Assert.assertTrue(BodyResidencyManager.v().isPinned(method));
+    Assert.assertTrue(BodyResidencyManager.v().getResidentBytes() > 0);
+
+    BodyResidencyManager.v().evict(0);
+    Assert.assertEquals(0, BodyResidencyManager.v().getEvictions());
+    Assert.assertSame(b, method.getActiveBody());
+
+    // Releasing the body ends the pin
+    method.releaseActiveBody();
+    Assert.assertFalse(BodyResidencyManager.v().isPinned(method));
+    Assert.assertEquals(0, BodyResidencyManager.v().getResidentBytes());
+  }
+
+  /**
+   * Runs the whole-program packs with a CHA call graph and writes Jimple, once without and once with the smallest budget,
+   * and checks that bodies have been evicted while the call graph was built and read back later, without changing the call
+   * graph or the output.
+   */
+  @Test
+  public void testWholeProgramWithBudget() throws IOException {
+    File program = Files.createTempDirectory("soot-program").toFile();
+    File packageDir = new File(program, PROGRAM_PACKAGE);
+    packageDir.mkdirs();
+    for (File f : new File("./target/test-classes", PROGRAM_PACKAGE).listFiles()) {
+      if (f.getName().startsWith("DispatchTarget")) {
+        Files.copy(f.toPath(), new File(packageDir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    File unbudgetedOut = Files.createTempDirectory("soot-out").toFile();
+    List<String> unbudgetedEdges = runWholeProgram(program, unbudgetedOut, 0);
+    Assert.assertEquals(0, BodyResidencyManager.v().getEvictions());
+
+    File budgetedOut = Files.createTempDirectory("soot-out").toFile();
+    List<String> budgetedEdges = runWholeProgram(program, budgetedOut, 1);
+    Assert.assertTrue(evictionsDuringCallGraph > 0);
+    Assert.assertTrue(BodyResidencyManager.v().getReloads() > 0);
+
+    Assert.assertTrue(unbudgetedEdges.size() > 1000);
+    Assert.assertEquals(unbudgetedEdges, budgetedEdges);
+    Map<String, String> unbudgeted = readJimpleFiles(unbudgetedOut);
+    Assert.assertEquals(20, unbudgeted.size());
+    Assert.assertEquals(unbudgeted, readJimpleFiles(budgetedOut));
+  }
+
+  /** Runs Soot on the given program and returns the edges of the call graph, without the names of locals. */
+  private List<String> runWholeProgram(File program, File out, int budget) throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(program.getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_main_class(PROGRAM_MAIN_CLASS);
+    Options.v().set_output_format(Options.output_format_jimple);
+    Options.v().set_output_dir(out.getCanonicalPath());
+    Options.v().set_body_memory_budget(budget);
+    Options.v().set_no_bodies_for_excluded(true);
+    Options.v().set_include(PROGRAM_LIBRARY);
+    Options.v().setPhaseOption("cg.cha", "on");
+    PackManager.v().getPack("wjtp").add(new Transform("wjtp.checkpins", new SceneTransformer() {
+      @Override
+      protected void internalTransform(String phaseName, Map<String, String> options) {
+        evictionsDuringCallGraph = BodyResidencyManager.v().getEvictions();
+        if (BodyResidencyManager.v().isEnabled()) {
+          // The statements of all edges are still those of the resident bodies
+          for (Edge e : Scene.v().getCallGraph()) {
+            if (e.srcStmt() != null) {
+              Assert.assertTrue(e.toString(), BodyResidencyManager.v().isPinned(e.src()));
+              Assert.assertTrue(e.toString(), e.src().getActiveBody().getUnits().contains(e.srcStmt()));
+            }
+          }
+        }
+      }
+    }));
+    Scene.v().loadNecessaryClasses();
+    PackManager.v().runPacks();
+    if (!PackManager.v().isStreamingOutput()) {
+      PackManager.v().writeOutput();
+    }
+
+    List<String> edges = new ArrayList<String>();
+    for (Iterator<Edge> it = Scene.v().getCallGraph().iterator(); it.hasNext();) {
+      Edge e = it.next();
+      Stmt s = e.srcStmt();
+      String site = s == null ? "-" : s.containsInvokeExpr() ? s.getInvokeExpr().getMethodRef().getSignature() : "clinit";
+      edges.add(e.src() + " " + site + " " + e.tgt() + " " + e.kind());
+    }
+    Collections.sort(edges);
+    return edges;
+  }
+
+  private static Map<String, String> readJimpleFiles(File dir) throws IOException {
+    Map<String, String> files = new TreeMap<String, String>();
+    for (File f : dir.listFiles()) {
+      files.put(f.getName(), new String(Files.readAllBytes(f.toPath()), "UTF-8"));
+    }
+    return files;
+  }
+}
@@ -0,0 +1,118 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import soot.options.Options;
+import soot.tagkit.LineNumberTag;
+
+public class JimpleBodyCacheTest {
+
+  private static final String TARGET_CLASS = "soot.toolkits.exceptions.targets.MethodThrowableSetClass";
+
+  @Rule
+  public TemporaryFolder cacheDir = new TemporaryFolder();
+
+  private void setUp(boolean keepLineNumbers) throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Options.v().set_keep_line_number(keepLineNumbers);
+    Options.v().set_body_cache_dir(cacheDir.getRoot().getPath());
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+  }
+
+  /** Retrieves the bodies of all concrete methods of the target class and returns them printed, by signature. */
+  private static Map<String, String> retrieveBodies() {
+    Map<String, String> ret = new LinkedHashMap<String, String>();
+    for (SootMethod m : new ArrayList<SootMethod>(Scene.v().getSootClass(TARGET_CLASS).getMethods())) {
+      if (m.isConcrete()) {
+        Body b = m.retrieveActiveBody();
+        b.validate();
+        ret.put(m.getSignature(), b.toString());
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    setUp(false);
+    Map<String, String> built = retrieveBodies();
+    Assert.assertFalse(built.isEmpty());
+    Assert.assertEquals(0, JimpleBodyCache.v().getHits());
+    Assert.assertEquals(built.size(), JimpleBodyCache.v().getMisses());
+
+    setUp(false);
+    Map<String, String> loaded = retrieveBodies();
+    Assert.assertEquals(built.size(), JimpleBodyCache.v().getHits());
+    Assert.assertEquals(0, JimpleBodyCache.v().getMisses());
+    Assert.assertEquals(built, loaded);
+  }
+
+  @Test
+  public void testGlobalOptionsInKey() throws IOException {
+    setUp(false);
+    int count = retrieveBodies().size();
+
+    setUp(false);
+    Options.v().set_throw_analysis(Options.throw_analysis_pedantic);
+    retrieveBodies();
+    Assert.assertEquals(0, JimpleBodyCache.v().getHits());
+    Assert.assertEquals(count, JimpleBodyCache.v().getMisses());
+  }
+
+  @Test
+  public void testBypassedWhenTagsAreKept() throws IOException {
+    setUp(true);
+    retrieveBodies();
+    setUp(true);
+    retrieveBodies();
+    Assert.assertEquals(0, JimpleBodyCache.v().getHits());
+    Assert.assertEquals(0, cacheDir.getRoot().list().length);
+
+    // The line numbers are still there
+    SootMethod m = Scene.v().getMethod("<" + TARGET_CLASS + ": void recursion()>");
+    boolean tagged = false;
+    for (Unit u : m.getActiveBody().getUnits()) {
+      tagged |= u.getTag("LineNumberTag") instanceof LineNumberTag;
+    }
+    Assert.assertTrue(tagged);
+  }
+}
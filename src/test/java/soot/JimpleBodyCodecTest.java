@@ -0,0 +1,95 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+public class JimpleBodyCodecTest {
+
+  /** Classes whose bodies contain switches, monitors, invokedynamic, multi-dimensional arrays and special constants. */
+  private static final List<String> CLASSES = Arrays.asList("java.lang.Character", "java.lang.Math", "java.lang.Float",
+      "java.util.HashMap", "java.util.concurrent.ConcurrentHashMap", "java.util.stream.Collectors",
+      "java.util.Comparator", "java.lang.reflect.Array", "soot.asm.backend.targets.Arrays",
+      "soot.toolkits.exceptions.targets.MethodThrowableSetClass");
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    G.reset();
+    Options.v().set_soot_classpath(new File("./target/test-classes").getCanonicalPath());
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    for (String c : CLASSES) {
+      Scene.v().addBasicClass(c, SootClass.BODIES);
+    }
+    Scene.v().loadNecessaryClasses();
+
+    int count = 0;
+    StringBuilder all = new StringBuilder();
+    for (String c : CLASSES) {
+      for (SootMethod m : new ArrayList<SootMethod>(Scene.v().getSootClass(c).getMethods())) {
+        if (!m.isConcrete()) {
+          continue;
+        }
+        JimpleBody b = (JimpleBody) m.retrieveActiveBody();
+        byte[] data = JimpleBodyCodec.encode(b);
+        JimpleBody decoded = JimpleBodyCodec.decode(data, m);
+        decoded.validate();
+        Assert.assertEquals(m.getSignature(), b.toString(), decoded.toString());
+        all.append(decoded);
+        count++;
+      }
+    }
+    Assert.assertTrue(count > 400);
+    for (String feature : Arrays.asList("dynamicinvoke", "tableswitch", "lookupswitch", "entermonitor", "newmultiarray",
+        "catch java.lang.Throwable", "#NaN", "#Infinity")) {
+      Assert.assertTrue(feature, all.indexOf(feature) >= 0);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedData() throws IOException {
+    G.reset();
+    Options.v().set_soot_classpath(new File("./target/test-classes").getCanonicalPath());
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Scene.v().addBasicClass(CLASSES.get(CLASSES.size() - 1), SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    SootMethod m = Scene.v().getMethod("<soot.toolkits.exceptions.targets.MethodThrowableSetClass: void recursion()>");
+    byte[] data = JimpleBodyCodec.encode((JimpleBody) m.retrieveActiveBody());
+    JimpleBodyCodec.decode(Arrays.copyOf(data, data.length - 1), m);
+  }
+}
@@ -0,0 +1,201 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.options.Options;
+
+/**
+ * Checks the Jar file written with the <code>-output-jar</code> option when classes are printed by several threads.
+ */
+public class OutputJarTest {
+
+  private static final String PROGRAM_PACKAGE = "soot/asm/backend/targets";
+
+  private static File copyProgram() throws IOException {
+    File program = Files.createTempDirectory("soot-program").toFile();
+    File packageDir = new File(program, PROGRAM_PACKAGE);
+    packageDir.mkdirs();
+    for (File f : new File("./target/test-classes", PROGRAM_PACKAGE).listFiles()) {
+      Files.copy(f.toPath(), new File(packageDir, f.getName()).toPath());
+    }
+    return program;
+  }
+
+  /**
+   * Runs Soot on the given program and returns the names of the files written, in the order in which they were written
+   * for a Jar file, mapped to their contents.
+   */
+  private static Map<String, byte[]> run(File program, int format, boolean jar, boolean stored, int threads)
+      throws IOException {
+    File out = Files.createTempDirectory("soot-out").toFile();
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(program.getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(format);
+    Options.v().set_output_dir(out.getCanonicalPath());
+    Options.v().set_output_jar(jar);
+    Options.v().set_output_jar_stored(stored);
+    Options.v().set_num_threads(threads);
+    // the order of the locals built by jb differs between runs with several threads
+    PhaseOptions.v().setPhaseOption("jb.lns", "sort-locals:true");
+    Scene.v().loadNecessaryClasses();
+    PackManager.v().runPacks();
+    PackManager.v().writeOutput();
+
+    Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+    if (jar) {
+      try (ZipInputStream in = new ZipInputStream(Files.newInputStream(new File(out, "out.jar").toPath()))) {
+        for (ZipEntry e = in.getNextEntry(); e != null; e = in.getNextEntry()) {
+          if (!e.isDirectory() && !e.getName().startsWith("META-INF/")) {
+            files.put(e.getName(), readAll(in));
+          }
+        }
+      }
+    } else {
+      readFiles(out, "", files);
+    }
+    return files;
+  }
+
+  private static void readFiles(File dir, String prefix, Map<String, byte[]> files) throws IOException {
+    File[] children = dir.listFiles();
+    Arrays.sort(children);
+    for (File f : children) {
+      if (f.isDirectory()) {
+        readFiles(f, prefix + f.getName() + "/", files);
+      } else {
+        files.put(prefix + f.getName(), Files.readAllBytes(f.toPath()));
+      }
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private static void assertSameFiles(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+    Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+    for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+      Assert.assertArrayEquals(e.getKey(), e.getValue(), actual.get(e.getKey()));
+    }
+  }
+
+  @Test
+  public void testEntriesInClassOrder() throws IOException {
+    Map<String, byte[]> files = run(copyProgram(), Options.output_format_class, true, false, 4);
+    List<String> expected = new ArrayList<String>();
+    for (SootClass c : Scene.v().getApplicationClasses()) {
+      expected.add(c.getName().replace('.', '/') + ".class");
+    }
+    Assert.assertTrue(expected.size() > 30);
+    Assert.assertEquals(expected, new ArrayList<String>(files.keySet()));
+  }
+
+  @Test
+  public void testSameAsSequentialOutput() throws IOException {
+    File program = copyProgram();
+    Map<String, byte[]> sequential = run(program, Options.output_format_class, true, false, 1);
+    assertSameFiles(sequential, run(program, Options.output_format_class, true, false, 4));
+    assertSameFiles(sequential, run(program, Options.output_format_class, true, true, 4));
+
+    // the directory output is read in the order of the file names
+    Map<String, byte[]> sorted = new TreeMap<String, byte[]>(sequential);
+    Map<String, byte[]> files = run(program, Options.output_format_class, false, false, 4);
+    assertSameFiles(sorted, new TreeMap<String, byte[]>(files));
+  }
+
+  @Test
+  public void testSameJimpleAsFileOutput() throws IOException {
+    File program = copyProgram();
+    Map<String, byte[]> files = run(program, Options.output_format_jimple, false, false, 4);
+    Assert.assertTrue(files.size() > 30);
+    Map<String, byte[]> jar = run(program, Options.output_format_jimple, true, false, 4);
+    assertSameFiles(files, new TreeMap<String, byte[]>(jar));
+  }
+
+  @Test
+  public void testStoredEntries() throws IOException {
+    File program = copyProgram();
+    Map<String, byte[]> files = run(program, Options.output_format_class, true, true, 4);
+    try (ZipFile jar = new ZipFile(new File(Options.v().output_dir(), "out.jar"))) {
+      int entries = 0;
+      for (Enumeration<? extends ZipEntry> it = jar.entries(); it.hasMoreElements();) {
+        ZipEntry e = it.nextElement();
+        if (!files.containsKey(e.getName())) {
+          continue;
+        }
+        byte[] data = files.get(e.getName());
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Assert.assertEquals(e.getName(), ZipEntry.STORED, e.getMethod());
+        Assert.assertEquals(e.getName(), data.length, e.getSize());
+        Assert.assertEquals(e.getName(), data.length, e.getCompressedSize());
+        Assert.assertEquals(e.getName(), crc.getValue(), e.getCrc());
+        entries++;
+      }
+      Assert.assertEquals(files.size(), entries);
+    }
+  }
+
+  @Test
+  public void testCompressionLevelIsValidated() {
+    G.reset();
+    Assert.assertTrue(Options.v().parse(new String[] { "-output-jar-compression-level", "9" }));
+    Assert.assertEquals(9, Options.v().output_jar_compression_level());
+    G.reset();
+    Assert.assertTrue(Options.v().parse(new String[] { "-output-jar-compression-level", "-1" }));
+    G.reset();
+    Assert.assertFalse(Options.v().parse(new String[] { "-output-jar-compression-level", "10" }));
+    G.reset();
+    Assert.assertFalse(Options.v().parse(new String[] { "-output-jar-compression-level", "-2" }));
+  }
+}
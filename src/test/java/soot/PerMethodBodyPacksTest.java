@@ -0,0 +1,152 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.options.Options;
+
+/**
+ * Compares the output of the body packs run per method with the output of the body packs run per class.
+ */
+public class PerMethodBodyPacksTest {
+
+  private static final String PROGRAM_PACKAGE = "soot/asm/backend/targets";
+
+  private static File copyProgram() throws IOException {
+    File program = Files.createTempDirectory("soot-program").toFile();
+    File packageDir = new File(program, PROGRAM_PACKAGE);
+    packageDir.mkdirs();
+    for (File f : new File("./target/test-classes", PROGRAM_PACKAGE).listFiles()) {
+      Files.copy(f.toPath(), new File(packageDir, f.getName()).toPath());
+    }
+    return program;
+  }
+
+  private static void setUp(File program, File out, int format, boolean perMethod) throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(program.getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(format);
+    Options.v().set_output_dir(out.getCanonicalPath());
+    Options.v().set_per_method_body_packs(perMethod);
+    Options.v().set_num_threads(4);
+    for (String pack : Arrays.asList("jop", "jop.cse", "jop.lcm", "bop")) {
+      PhaseOptions.v().setPhaseOption(pack, "enabled:true");
+    }
+    // the order of the locals built by jb differs between runs with several threads, even per class
+    PhaseOptions.v().setPhaseOption("jb.lns", "sort-locals:true");
+    Scene.v().loadNecessaryClasses();
+  }
+
+  private static Map<String, String> run(File program, int format, boolean perMethod) throws IOException {
+    File out = Files.createTempDirectory("soot-out").toFile();
+    setUp(program, out, format, perMethod);
+    if (perMethod) {
+      Assert.assertNull(PackManager.v().findNonLocalBodyPhase());
+    }
+    PackManager.v().runPacks();
+    PackManager.v().writeOutput();
+    return readFiles(out, "");
+  }
+
+  private static Map<String, String> readFiles(File dir, String prefix) throws IOException {
+    Map<String, String> files = new TreeMap<String, String>();
+    for (File f : dir.listFiles()) {
+      if (f.isDirectory()) {
+        files.putAll(readFiles(f, prefix + f.getName() + "/"));
+      } else {
+        files.put(prefix + f.getName(), new String(Files.readAllBytes(f.toPath()), "ISO-8859-1"));
+      }
+    }
+    return files;
+  }
+
+  @Test
+  public void testSameJimple() throws IOException {
+    File program = copyProgram();
+    Map<String, String> perClass = run(program, Options.output_format_jimple, false);
+    Assert.assertTrue(perClass.size() > 30);
+    Assert.assertEquals(perClass, run(program, Options.output_format_jimple, true));
+  }
+
+  @Test
+  public void testSameClassFiles() throws IOException {
+    File program = copyProgram();
+    Map<String, String> perClass = run(program, Options.output_format_class, false);
+    Assert.assertTrue(perClass.size() > 30);
+    Assert.assertEquals(perClass, run(program, Options.output_format_class, true));
+  }
+
+  @Test
+  public void testSizeEstimatedBeforeBodiesAreBuilt() throws IOException {
+    setUp(copyProgram(), Files.createTempDirectory("soot-out").toFile(), Options.output_format_none, true);
+    SootMethod m = Scene.v().getMethod("<soot.asm.backend.targets.ControlStructures: java.util.List get(int)>");
+    Assert.assertFalse(m.hasActiveBody());
+    Assert.assertTrue(m.getSource().estimateBodySize() > 10);
+  }
+
+  /** A phase added by a user may touch the whole class, so the methods of a class must not be transformed at once. */
+  @Test
+  public void testUserPhaseRunsPerClass() throws IOException {
+    setUp(copyProgram(), Files.createTempDirectory("soot-out").toFile(), Options.output_format_none, true);
+    final Map<SootClass, AtomicInteger> running = new ConcurrentHashMap<SootClass, AtomicInteger>();
+    final AtomicInteger overlaps = new AtomicInteger();
+    final AtomicInteger methods = new AtomicInteger();
+    PackManager.v().getPack("jtp").add(new Transform("jtp.perclass", new BodyTransformer() {
+      @Override
+      protected void internalTransform(Body b, String phaseName, Map<String, String> options) {
+        SootClass c = b.getMethod().getDeclaringClass();
+        running.putIfAbsent(c, new AtomicInteger());
+        if (running.get(c).incrementAndGet() > 1) {
+          overlaps.incrementAndGet();
+        }
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        running.get(c).decrementAndGet();
+        methods.incrementAndGet();
+      }
+    }));
+    Assert.assertEquals("jtp.perclass", PackManager.v().findNonLocalBodyPhase());
+    PackManager.v().runPacks();
+    Assert.assertTrue(methods.get() > 100);
+    Assert.assertEquals(0, overlaps.get());
+  }
+}
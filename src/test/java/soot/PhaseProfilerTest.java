@@ -0,0 +1,125 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.options.Options;
+
+public class PhaseProfilerTest {
+
+  @Before
+  public void setUp() {
+    G.reset();
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    Assert.assertFalse(PhaseProfiler.v().isEnabled());
+    Assert.assertNull(PhaseProfiler.v().start("wjtp.test", null));
+    PhaseProfiler.v().stop(null);
+    Assert.assertTrue(PhaseProfiler.v().getStatistics().isEmpty());
+  }
+
+  @Test
+  public void testBodyPhase() throws IOException {
+    PhaseProfiler.v().setEnabled(true);
+    JimpleBody b = Jimple.v().newBody();
+    b.getUnits().add(Jimple.v().newNopStmt());
+
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start("jtp.test", b);
+    b.getUnits().add(Jimple.v().newNopStmt());
+    b.getUnits().add(Jimple.v().newNopStmt());
+    PhaseProfiler.v().stop(m);
+
+    m = PhaseProfiler.v().start("jtp.test", b);
+    b.getUnits().removeFirst();
+    PhaseProfiler.v().stop(m);
+
+    PhaseProfiler.PhaseStatistics stats = PhaseProfiler.v().getStatistics("jtp.test");
+    Assert.assertEquals(2, stats.getApplications());
+    Assert.assertEquals(2, stats.getBodies());
+    Assert.assertEquals(2, stats.getUnitsAdded());
+    Assert.assertEquals(1, stats.getUnitsRemoved());
+    Assert.assertTrue(stats.getWallNanos() >= 0);
+
+    StringWriter out = new StringWriter();
+    PhaseProfiler.v().writeJson(out);
+    Assert.assertTrue(out.toString().contains("\"phase\": \"jtp.test\", \"applications\": 2"));
+  }
+
+  @Test
+  public void testReplacedUnitsAreCounted() {
+    PhaseProfiler.v().setEnabled(true);
+    JimpleBody b = Jimple.v().newBody();
+    b.getUnits().add(Jimple.v().newNopStmt());
+    b.getUnits().add(Jimple.v().newNopStmt());
+
+    // The size of the body does not change
+    PhaseProfiler.Measurement m = PhaseProfiler.v().start("jtp.test", b);
+    Unit removed = b.getUnits().getFirst();
+    b.getUnits().removeFirst();
+    b.getUnits().addFirst(Jimple.v().newNopStmt());
+    b.getUnits().remove(b.getUnits().getLast());
+    b.getUnits().addLast(removed);
+    PhaseProfiler.v().stop(m);
+
+    PhaseProfiler.PhaseStatistics stats = PhaseProfiler.v().getStatistics("jtp.test");
+    Assert.assertEquals(1, stats.getUnitsAdded());
+    Assert.assertEquals(1, stats.getUnitsRemoved());
+  }
+
+  @Test
+  public void testChromeTrace() throws IOException {
+    Options.v().set_phase_trace("trace.json");
+    Assert.assertTrue(PhaseProfiler.v().isEnabled());
+
+    PhaseProfiler.v().stop(PhaseProfiler.v().start("wjtp.\"quoted\"", null));
+
+    StringWriter out = new StringWriter();
+    PhaseProfiler.v().writeChromeTrace(out);
+    String trace = out.toString();
+    Assert.assertTrue(trace.startsWith("{\"displayTimeUnit\": \"ms\", \"traceEvents\": ["));
+    Assert.assertTrue(trace.contains("{\"name\": \"wjtp.\\\"quoted\\\"\", \"cat\": \"phase\", \"ph\": \"X\""));
+    Assert.assertEquals(1, PhaseProfiler.v().getStatistics().size());
+  }
+
+  @Test
+  public void testTraceBodyWithoutMethod() throws IOException {
+    Options.v().set_phase_trace("trace.json");
+    JimpleBody b = Jimple.v().newBody();
+    PhaseProfiler.v().stop(PhaseProfiler.v().start("jtp.test", b));
+
+    StringWriter out = new StringWriter();
+    PhaseProfiler.v().writeChromeTrace(out);
+    Assert.assertTrue(out.toString().contains("\"name\": \"jtp.test\""));
+    Assert.assertFalse(out.toString().contains("\"method\""));
+  }
+}
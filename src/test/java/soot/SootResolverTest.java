@@ -0,0 +1,94 @@
+package soot;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.options.Options;
+
+/**
+ * Checks that the resolver creates and numbers the same classes, members and types whether class files are parsed by one
+ * thread or by several.
+ */
+public class SootResolverTest {
+
+  private static final String PROGRAM_PACKAGE = "soot/asm/backend/targets";
+
+  private static File copyProgram() throws IOException {
+    File program = Files.createTempDirectory("soot-program").toFile();
+    File packageDir = new File(program, PROGRAM_PACKAGE);
+    packageDir.mkdirs();
+    for (File f : new File("./target/test-classes", PROGRAM_PACKAGE).listFiles()) {
+      Files.copy(f.toPath(), new File(packageDir, f.getName()).toPath());
+    }
+    return program;
+  }
+
+  /**
+   * Resolves the whole program transitively over the class path of the JDK and returns every class with its resolving
+   * level and number, followed by the numbered members and types.
+   */
+  private static List<String> resolve(File program, int threads) throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(program.getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_no_bodies_for_excluded(true);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_num_threads(threads);
+    Scene.v().loadNecessaryClasses();
+
+    List<String> result = new ArrayList<String>();
+    for (SootClass c : Scene.v().getClasses()) {
+      result.add(c.getNumber() + " " + c.getName() + " " + c.resolvingLevel());
+      for (SootField f : c.getFields()) {
+        result.add(f.getNumber() + " " + f.getSignature());
+      }
+      for (SootMethod m : c.getMethods()) {
+        result.add(m.getNumber() + " " + m.getSignature());
+      }
+    }
+    for (Type t : Scene.v().getTypeNumberer()) {
+      result.add(t.getNumber() + " " + t);
+    }
+    return result;
+  }
+
+  @Test
+  public void testSameClassesAsSequential() throws IOException {
+    File program = copyProgram();
+    List<String> sequential = resolve(program, 1);
+    Assert.assertTrue(sequential.size() > 10000);
+    Assert.assertEquals(sequential, resolve(program, 4));
+    Assert.assertEquals(sequential, resolve(program, 4));
+  }
+}
@@ -0,0 +1,107 @@
+package soot.dexpler;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.options.Options;
+
+public class DexFileCacheTest {
+
+  private static final int HEADER_ITEM_SIZE = 0x70;
+  private static final int API = 24;
+
+  @Before
+  public void setUp() {
+    G.reset();
+    Options.v().set_dex_cache_size(1);
+    DexFileCache.v().clear();
+  }
+
+  @After
+  public void tearDown() {
+    DexFileCache.v().clear();
+  }
+
+  /**
+   * Builds an empty dex file whose header states the given size, followed by the given trailing bytes.
+   */
+  private static byte[] dex(int statedSize, byte... trailer) {
+    byte[] buf = new byte[HEADER_ITEM_SIZE + trailer.length];
+    byte[] magic = { 'd', 'e', 'x', '\n', '0', '3', '5', 0 };
+    System.arraycopy(magic, 0, buf, 0, magic.length);
+    writeInt(buf, 32, statedSize);
+    writeInt(buf, 36, HEADER_ITEM_SIZE);
+    writeInt(buf, 40, 0x12345678);
+    System.arraycopy(trailer, 0, buf, HEADER_ITEM_SIZE, trailer.length);
+    return buf;
+  }
+
+  private static void writeInt(byte[] buf, int offset, int value) {
+    buf[offset] = (byte) value;
+    buf[offset + 1] = (byte) (value >> 8);
+    buf[offset + 2] = (byte) (value >> 16);
+    buf[offset + 3] = (byte) (value >> 24);
+  }
+
+  @Test
+  public void testSameHeaderDifferentContents() {
+    byte[] first = dex(HEADER_ITEM_SIZE, (byte) 1, (byte) 2);
+    byte[] second = dex(HEADER_ITEM_SIZE, (byte) 3, (byte) 4);
+    for (int i = 0; i < HEADER_ITEM_SIZE; i++) {
+      Assert.assertEquals(first[i], second[i]);
+    }
+
+    long hits = DexFileCache.v().getHits();
+    DexImage a = DexFileCache.v().get(first, API);
+    DexImage b = DexFileCache.v().get(second, API);
+    Assert.assertNotSame(a, b);
+    Assert.assertEquals(hits, DexFileCache.v().getHits());
+    Assert.assertEquals(first.length + second.length, DexFileCache.v().getSize());
+  }
+
+  @Test
+  public void testSameContentsHit() {
+    byte[] contents = dex(HEADER_ITEM_SIZE, (byte) 1);
+    long hits = DexFileCache.v().getHits();
+    DexImage a = DexFileCache.v().get(contents, API);
+    DexImage b = DexFileCache.v().get(contents.clone(), API);
+    Assert.assertSame(a, b);
+    Assert.assertEquals(hits + 1, DexFileCache.v().getHits());
+
+    // A different API level is parsed separately
+    Assert.assertNotSame(a, DexFileCache.v().get(contents, API - 1));
+  }
+
+  @Test
+  public void testSizeIgnoresHeader() {
+    // The header claims a huge file, but only the actual bytes are accounted
+    byte[] contents = dex(Integer.MAX_VALUE, (byte) 1);
+    DexFileCache.v().get(contents, API);
+    Assert.assertEquals(contents.length, DexFileCache.v().getSize());
+  }
+}
@@ -0,0 +1,157 @@
+package soot.jimple.spark.pag;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.G;
+import soot.PhaseOptions;
+import soot.RefType;
+import soot.Scene;
+import soot.options.Options;
+import soot.options.SparkOptions;
+
+/**
+ * Checks that random sequences of insertions and removals leave a {@link NumberedEdgeStore} with the same edges as a map
+ * from sources to sets of targets.
+ */
+public class NumberedEdgeStoreTest {
+
+  private static PAG pag;
+  private static List<AllocNode> sources;
+  private static List<VarNode> targets;
+
+  @BeforeClass
+  public static void setUp() {
+    G.reset();
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Scene.v().loadNecessaryClasses();
+    pag = new PAG(new SparkOptions(PhaseOptions.v().getPhaseOptions("cg.spark")));
+
+    RefType object = RefType.v("java.lang.Object");
+    sources = new ArrayList<AllocNode>();
+    for (int i = 0; i < 40; i++) {
+      sources.add(pag.makeAllocNode("source" + i, object, null));
+    }
+    targets = new ArrayList<VarNode>();
+    for (int i = 0; i < 100; i++) {
+      targets.add(pag.makeGlobalVarNode("target" + i, object));
+    }
+  }
+
+  private static void assertSameEdges(Map<AllocNode, LinkedHashSet<Node>> expected, NumberedEdgeStore<AllocNode> store) {
+    Set<AllocNode> expectedSources = new HashSet<AllocNode>();
+    for (Map.Entry<AllocNode, LinkedHashSet<Node>> e : expected.entrySet()) {
+      if (!e.getValue().isEmpty()) {
+        expectedSources.add(e.getKey());
+      }
+    }
+    Assert.assertEquals(expectedSources, new HashSet<AllocNode>(store.sources()));
+    Assert.assertEquals(expectedSources.size(), store.sources().size());
+    for (AllocNode src : sources) {
+      Assert.assertEquals(expectedSources.contains(src), store.sources().contains(src));
+      LinkedHashSet<Node> tgts = expected.get(src);
+      // Targets keep the order in which they were added
+      Assert.assertEquals(tgts == null ? new ArrayList<Node>() : new ArrayList<Node>(tgts),
+          Arrays.asList(store.lookup(src, false)));
+    }
+  }
+
+  @Test
+  public void testInsertRemoveEquivalence() {
+    Random r = new Random(7);
+    for (int round = 0; round < 20; round++) {
+      NumberedEdgeStore<AllocNode> store = new NumberedEdgeStore<AllocNode>(pag.getAllocNodeNumberer());
+      Map<AllocNode, LinkedHashSet<Node>> expected = new HashMap<AllocNode, LinkedHashSet<Node>>();
+      List<Node[]> handedOut = new ArrayList<Node[]>();
+      List<Node[]> handedOutCopies = new ArrayList<Node[]>();
+
+      for (int op = 0; op < 3000; op++) {
+        // A few sources get many targets, so that their lists are indexed
+        AllocNode src = sources.get(r.nextBoolean() ? r.nextInt(4) : r.nextInt(sources.size()));
+        VarNode tgt = targets.get(r.nextInt(targets.size()));
+        LinkedHashSet<Node> tgts = expected.get(src);
+        if (tgts == null) {
+          expected.put(src, tgts = new LinkedHashSet<Node>());
+        }
+        int kind = r.nextInt(20);
+        if (kind < 12) {
+          Assert.assertEquals(tgts.add(tgt), store.add(src, tgt));
+        } else if (kind < 18) {
+          Assert.assertEquals(tgts.remove(tgt), store.remove(src, tgt));
+        } else if (kind < 19) {
+          tgts.clear();
+          store.remove(src);
+        } else {
+          Node[] list = store.lookup(src, false);
+          handedOut.add(list);
+          handedOutCopies.add(list.clone());
+        }
+      }
+      assertSameEdges(expected, store);
+
+      // Arrays returned by lookup are never changed by later updates
+      for (int i = 0; i < handedOut.size(); i++) {
+        Assert.assertArrayEquals(handedOutCopies.get(i), handedOut.get(i));
+      }
+
+      store.clear();
+      Assert.assertTrue(store.sources().isEmpty());
+      Assert.assertEquals(0, store.lookup(sources.get(0), false).length);
+    }
+  }
+
+  @Test
+  public void testRemoveFromIndexedList() {
+    NumberedEdgeStore<AllocNode> store = new NumberedEdgeStore<AllocNode>(pag.getAllocNodeNumberer());
+    AllocNode src = sources.get(0);
+    for (VarNode tgt : targets) {
+      Assert.assertTrue(store.add(src, tgt));
+    }
+    // Remove all but the last target, which must still be found through the
+    // index that is rebuilt after every removal
+    for (int i = 0; i < targets.size() - 1; i++) {
+      Assert.assertTrue(store.remove(src, targets.get(i)));
+      Assert.assertFalse(store.remove(src, targets.get(i)));
+      Assert.assertFalse(store.add(src, targets.get(targets.size() - 1)));
+      Assert.assertEquals(targets.size() - i - 1, store.lookup(src, false).length);
+    }
+    Assert.assertTrue(store.remove(src, targets.get(targets.size() - 1)));
+    Assert.assertTrue(store.sources().isEmpty());
+  }
+}
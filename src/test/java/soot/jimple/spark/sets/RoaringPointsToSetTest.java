@@ -0,0 +1,263 @@
+package soot.jimple.spark.sets;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.G;
+import soot.PhaseOptions;
+import soot.RefType;
+import soot.Scene;
+import soot.Type;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.options.Options;
+import soot.options.SparkOptions;
+
+/**
+ * Compares {@link RoaringPointsToSet} with {@link HybridPointsToSet} on sets whose nodes span several containers.
+ */
+public class RoaringPointsToSetTest {
+
+  /** Number of allocation nodes, enough for three containers. */
+  private static final int NODES = 3 * 65536 + 100;
+
+  private static PAG pag;
+  private static List<AllocNode> nodes;
+
+  @BeforeClass
+  public static void setUp() {
+    G.reset();
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Scene.v().loadNecessaryClasses();
+    pag = new PAG(new SparkOptions(PhaseOptions.v().getPhaseOptions("cg.spark")));
+
+    Type[] types = { RefType.v("java.lang.String"), RefType.v("java.lang.Integer"), RefType.v("java.lang.Object") };
+    nodes = new ArrayList<AllocNode>(NODES);
+    for (int i = 0; i < NODES; i++) {
+      nodes.add(pag.makeAllocNode(i, types[i % types.length], null));
+    }
+    pag.getTypeManager().makeTypeMask();
+  }
+
+  /** Returns a random selection of nodes, sparse, dense or in ranges of consecutive numbers. */
+  private static List<AllocNode> randomNodes(Random r) {
+    List<AllocNode> ret = new ArrayList<AllocNode>();
+    switch (r.nextInt(4)) {
+      case 0:
+        for (int i = r.nextInt(200); i >= 0; i--) {
+          ret.add(nodes.get(r.nextInt(NODES)));
+        }
+        break;
+      case 1: {
+        // More elements than an array container holds
+        int base = r.nextInt(3) * 65536;
+        for (int i = 5000 + r.nextInt(3000); i >= 0; i--) {
+          ret.add(nodes.get(base + r.nextInt(65536)));
+        }
+        break;
+      }
+      case 2:
+        for (int i = r.nextInt(4); i >= 0; i--) {
+          // Ranges around the container boundaries
+          int start = Math.max(0, (1 + r.nextInt(2)) * 65536 - r.nextInt(3000));
+          int end = Math.min(NODES, start + r.nextInt(6000));
+          ret.addAll(nodes.subList(start, end));
+        }
+        break;
+      default:
+        ret.addAll(randomNodes(r));
+        ret.addAll(randomNodes(r));
+        break;
+    }
+    return ret;
+  }
+
+  private static PointsToSetInternal roaring(Type type, List<AllocNode> ns) {
+    PointsToSetInternal ret = RoaringPointsToSet.getFactory().newSet(type, pag);
+    for (AllocNode n : ns) {
+      ret.add(n);
+    }
+    return ret;
+  }
+
+  private static PointsToSetInternal hybrid(Type type, List<AllocNode> ns) {
+    PointsToSetInternal ret = HybridPointsToSet.getFactory().newSet(type, pag);
+    for (AllocNode n : ns) {
+      ret.add(n);
+    }
+    return ret;
+  }
+
+  /** Returns the numbers of the nodes in <code>s</code>, and checks that a roaring set visits them in ascending order. */
+  private static TreeSet<Integer> contents(PointsToSetInternal s) {
+    final List<Integer> visited = new ArrayList<Integer>();
+    s.forall(new P2SetVisitor() {
+      @Override
+      public void visit(Node n) {
+        visited.add(n.getNumber());
+      }
+    });
+    TreeSet<Integer> ret = new TreeSet<Integer>(visited);
+    Assert.assertEquals(visited.size(), ret.size());
+    if (s instanceof RoaringPointsToSet) {
+      Assert.assertEquals(new ArrayList<Integer>(ret), visited);
+    }
+    return ret;
+  }
+
+  private static void assertSameSet(PointsToSetInternal expected, PointsToSetInternal actual) {
+    TreeSet<Integer> e = contents(expected);
+    Assert.assertEquals(e, contents(actual));
+    Assert.assertEquals(e.size(), actual.size());
+    Assert.assertEquals(e.isEmpty(), actual.isEmpty());
+  }
+
+  @Test
+  public void testAdd() {
+    Random r = new Random(1);
+    for (int i = 0; i < 30; i++) {
+      PointsToSetInternal rs = RoaringPointsToSet.getFactory().newSet(null, pag);
+      PointsToSetInternal hs = HybridPointsToSet.getFactory().newSet(null, pag);
+      for (AllocNode n : randomNodes(r)) {
+        Assert.assertEquals(hs.add(n), rs.add(n));
+      }
+      assertSameSet(hs, rs);
+      for (int j = 0; j < 1000; j++) {
+        AllocNode n = nodes.get(r.nextInt(NODES));
+        Assert.assertEquals(hs.contains(n), rs.contains(n));
+      }
+    }
+  }
+
+  @Test
+  public void testAddAllWithExclusion() {
+    Random r = new Random(2);
+    for (int i = 0; i < 40; i++) {
+      List<AllocNode> target = randomNodes(r);
+      List<AllocNode> other = randomNodes(r);
+      List<AllocNode> exclude = r.nextBoolean() ? randomNodes(r) : null;
+
+      PointsToSetInternal rs = roaring(null, target);
+      PointsToSetInternal hs = hybrid(null, target);
+      Assert.assertEquals(hs.addAll(hybrid(null, other), exclude == null ? null : hybrid(null, exclude)),
+          rs.addAll(roaring(null, other), exclude == null ? null : roaring(null, exclude)));
+      assertSameSet(hs, rs);
+
+      // Adding the same nodes again changes nothing
+      Assert.assertFalse(rs.addAll(roaring(null, other), exclude == null ? null : roaring(null, exclude)));
+    }
+  }
+
+  @Test
+  public void testAddAllFromOtherImplementation() {
+    Random r = new Random(3);
+    for (int i = 0; i < 20; i++) {
+      List<AllocNode> target = randomNodes(r);
+      List<AllocNode> other = randomNodes(r);
+      List<AllocNode> exclude = randomNodes(r);
+
+      PointsToSetInternal rs = roaring(null, target);
+      PointsToSetInternal hs = hybrid(null, target);
+      Assert.assertEquals(hs.addAll(hybrid(null, other), hybrid(null, exclude)),
+          rs.addAll(hybrid(null, other), roaring(null, exclude)));
+      assertSameSet(hs, rs);
+    }
+  }
+
+  @Test
+  public void testTypeFiltering() {
+    Type[] types = { RefType.v("java.lang.String"), RefType.v("java.lang.Number"), RefType.v("java.lang.Comparable"),
+        RefType.v("java.lang.Object") };
+    Random r = new Random(4);
+    for (int i = 0; i < 40; i++) {
+      Type type = types[r.nextInt(types.length)];
+      Type otherType = r.nextBoolean() ? null : RefType.v("java.lang.Object");
+      List<AllocNode> other = randomNodes(r);
+
+      PointsToSetInternal rs = RoaringPointsToSet.getFactory().newSet(type, pag);
+      PointsToSetInternal hs = HybridPointsToSet.getFactory().newSet(type, pag);
+      Assert.assertEquals(hs.addAll(hybrid(otherType, other), null), rs.addAll(roaring(otherType, other), null));
+      assertSameSet(hs, rs);
+      for (Integer n : contents(rs)) {
+        Assert.assertTrue(pag.getTypeManager().castNeverFails(nodes.get(n - nodes.get(0).getNumber()).getType(), type));
+      }
+    }
+  }
+
+  @Test
+  public void testHasNonEmptyIntersection() {
+    Random r = new Random(5);
+    int intersecting = 0;
+    for (int i = 0; i < 200; i++) {
+      List<AllocNode> a = randomNodes(r);
+      List<AllocNode> b = randomNodes(r);
+      boolean expected = hybrid(null, a).hasNonEmptyIntersection(hybrid(null, b));
+      Assert.assertEquals(expected, roaring(null, a).hasNonEmptyIntersection(roaring(null, b)));
+      Assert.assertEquals(expected, roaring(null, a).hasNonEmptyIntersection(hybrid(null, b)));
+      if (expected) {
+        intersecting++;
+      }
+    }
+    Assert.assertTrue(intersecting > 0 && intersecting < 200);
+
+    // Sets that only share one element, on either side of a container boundary
+    for (int n : new int[] { 65535, 65536, 2 * 65536 - 1, 2 * 65536 }) {
+      List<AllocNode> a = new ArrayList<AllocNode>(nodes.subList(n - 3000, n + 1));
+      List<AllocNode> b = new ArrayList<AllocNode>(nodes.subList(n, n + 3000));
+      Assert.assertTrue(roaring(null, a).hasNonEmptyIntersection(roaring(null, b)));
+      a.remove(a.size() - 1);
+      Assert.assertFalse(roaring(null, a).hasNonEmptyIntersection(roaring(null, b)));
+    }
+  }
+
+  @Test
+  public void testIterationAcrossContainers() {
+    // One array, one bitmap and one run container, and single elements at
+    // both ends of each chunk
+    List<AllocNode> ns = new ArrayList<AllocNode>();
+    for (int i = 0; i < 100; i++) {
+      ns.add(nodes.get(i * 7));
+    }
+    for (int i = 65536; i < 2 * 65536; i += 3) {
+      ns.add(nodes.get(i));
+    }
+    ns.addAll(nodes.subList(2 * 65536 - 10, 2 * 65536 + 20000));
+    ns.add(nodes.get(3 * 65536 - 1));
+    ns.add(nodes.get(3 * 65536));
+    ns.add(nodes.get(NODES - 1));
+
+    assertSameSet(hybrid(null, ns), roaring(null, ns));
+  }
+}
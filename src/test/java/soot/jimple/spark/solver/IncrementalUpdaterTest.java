@@ -0,0 +1,251 @@
+package soot.jimple.spark.solver;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Local;
+import soot.PhaseOptions;
+import soot.RefLikeType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.AssignStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Jimple;
+import soot.jimple.NewExpr;
+import soot.jimple.Stmt;
+import soot.jimple.spark.SparkTransformer;
+import soot.jimple.spark.builder.ContextInsensitiveBuilder;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.MethodPAG;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+import soot.options.SparkOptions;
+
+/**
+ * Compares the solution after each incremental update with a solution computed from scratch for the same bodies.
+ */
+public class IncrementalUpdaterTest {
+
+  private static final String TARGET_CLASS = "soot.jimple.spark.solver.targets.IncrementalTarget";
+
+  private SootClass target;
+  private SootMethod main;
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    target = Scene.v().getSootClass(TARGET_CLASS);
+    main = target.getMethodByName("main");
+    Scene.v().setEntryPoints(Collections.singletonList(main));
+  }
+
+  private static Map<String, String> sparkOptions(boolean incremental) {
+    Map<String, String> options = new HashMap<String, String>(PhaseOptions.v().getPhaseOptions("cg.spark"));
+    options.put("enabled", "true");
+    options.put("on-fly-cg", "true");
+    options.put("propagator", "worklist");
+    options.put("incremental", Boolean.toString(incremental));
+    return options;
+  }
+
+  @Test
+  public void testUpdatesMatchFullSolve() {
+    Map<String, String> options = sparkOptions(true);
+    SparkTransformer.v().transform("cg.spark", options);
+    PAG pag = (PAG) Scene.v().getPointsToAnalysis();
+    assertSameSolution(pag, solveFromScratch(options));
+
+    SootMethod use = target.getMethodByName("use");
+    Body mainBody = main.getActiveBody();
+
+    // Remove the field store in main
+    mainBody.getUnits().remove(findFieldStore(mainBody));
+    update(pag, options, main);
+
+    // Let the argument of id also point to the first allocation in main
+    Stmt idCall = findCall(mainBody, "id");
+    Local arg = (Local) idCall.getInvokeExpr().getArg(0);
+    Local alloc = (Local) ((AssignStmt) findNew(mainBody)).getLeftOp();
+    mainBody.getUnits().insertBefore(Jimple.v().newAssignStmt(arg, alloc), idCall);
+    update(pag, options, main);
+
+    // Remove the field store in use
+    use.getActiveBody().getUnits().remove(findFieldStore(use.getActiveBody()));
+    update(pag, options, use);
+
+    // Replace the call to id by a copy of its argument
+    mainBody.getUnits().swapWith(idCall,
+        Jimple.v().newAssignStmt(((AssignStmt) idCall).getLeftOp(), idCall.getInvokeExpr().getArg(0)));
+    update(pag, options, main);
+  }
+
+  @Test
+  public void testMergingOptionsNotSupported() {
+    Map<String, String> options = sparkOptions(true);
+    options.put("simplify-sccs", "true");
+    SparkTransformer.v().transform("cg.spark", options);
+    PAG pag = (PAG) Scene.v().getPointsToAnalysis();
+    Assert.assertFalse(IncrementalUpdater.supports(pag));
+    Assert.assertFalse(new IncrementalUpdater(pag).update(Collections.singleton(main)));
+
+    SparkTransformer.v().methodsChanged(Collections.singleton(main));
+    SparkTransformer.v().transform("cg.spark", options);
+    Assert.assertNotSame(pag, Scene.v().getPointsToAnalysis());
+  }
+
+  private void update(PAG pag, Map<String, String> options, SootMethod changed) {
+    SparkTransformer.v().methodsChanged(Collections.singleton(changed));
+    SparkTransformer.v().transform("cg.spark", options);
+    // The previous graph was updated rather than replaced
+    Assert.assertSame(pag, Scene.v().getPointsToAnalysis());
+    assertSameSolution(pag, solveFromScratch(options));
+  }
+
+  /** Solves from scratch without disturbing the method PAGs of the incrementally updated graph. */
+  private static PAG solveFromScratch(Map<String, String> options) {
+    Map<SootMethod, MethodPAG> saved = new HashMap<SootMethod, MethodPAG>(G.v().MethodPAG_methodToPag);
+    G.v().MethodPAG_methodToPag.clear();
+    try {
+      ContextInsensitiveBuilder b = new ContextInsensitiveBuilder();
+      PAG pag = b.setup(new SparkOptions(options));
+      b.build();
+      pag.getTypeManager().makeTypeMask();
+      pag.cleanUpMerges();
+      new PropWorklist(pag).propagate();
+      return pag;
+    } finally {
+      G.v().MethodPAG_methodToPag.clear();
+      G.v().MethodPAG_methodToPag.putAll(saved);
+    }
+  }
+
+  private void assertSameSolution(PAG incremental, PAG full) {
+    for (SootClass c : Scene.v().getApplicationClasses()) {
+      if (!c.getName().startsWith(TARGET_CLASS)) {
+        continue;
+      }
+      for (SootMethod m : c.getMethods()) {
+        if (!m.hasActiveBody()) {
+          continue;
+        }
+        for (Local l : m.getActiveBody().getLocals()) {
+          if (l.getType() instanceof RefLikeType) {
+            Assert.assertEquals(m + ": " + l, allocSites(full.reachingObjects(l)), allocSites(incremental.reachingObjects(l)));
+          }
+        }
+      }
+    }
+    Assert.assertEquals(allocSites(full.reachingObjects(target.getFieldByName("sink"))),
+        allocSites(incremental.reachingObjects(target.getFieldByName("sink"))));
+    Assert.assertEquals(edges(full), edges(incremental));
+  }
+
+  private static Set<Object> allocSites(Object p2set) {
+    final Set<Object> ret = new HashSet<Object>();
+    if (p2set instanceof PointsToSetInternal) {
+      ((PointsToSetInternal) p2set).forall(new P2SetVisitor() {
+        public void visit(Node n) {
+          ret.add(((AllocNode) n).getNewExpr());
+        }
+      });
+    }
+    return ret;
+  }
+
+  private static Set<List<Object>> edges(PAG pag) {
+    Set<List<Object>> ret = new HashSet<List<Object>>();
+    for (Iterator<Edge> it = pag.getOnFlyCallGraph().callGraph().iterator(); it.hasNext();) {
+      Edge e = it.next();
+      if (e.src().getDeclaringClass().getName().startsWith(TARGET_CLASS)) {
+        List<Object> edge = new ArrayList<Object>();
+        edge.add(e.src());
+        edge.add(e.srcUnit());
+        edge.add(e.tgt());
+        ret.add(edge);
+      }
+    }
+    return ret;
+  }
+
+  private static Unit findFieldStore(Body b) {
+    for (Unit u : b.getUnits()) {
+      if (u instanceof AssignStmt && ((AssignStmt) u).getLeftOp() instanceof InstanceFieldRef) {
+        return u;
+      }
+    }
+    throw new AssertionError("No field store in " + b.getMethod());
+  }
+
+  private static Unit findNew(Body b) {
+    for (Unit u : b.getUnits()) {
+      if (u instanceof AssignStmt && ((AssignStmt) u).getRightOp() instanceof NewExpr) {
+        return u;
+      }
+    }
+    throw new AssertionError("No allocation in " + b.getMethod());
+  }
+
+  private static Stmt findCall(Body b, String name) {
+    for (Unit u : b.getUnits()) {
+      Stmt s = (Stmt) u;
+      if (s.containsInvokeExpr()) {
+        InvokeExpr ie = s.getInvokeExpr();
+        if (ie.getMethod().getName().equals(name)) {
+          return s;
+        }
+      }
+    }
+    throw new AssertionError("No call to " + name + " in " + b.getMethod());
+  }
+}
@@ -0,0 +1,153 @@
+package soot.jimple.spark.solver;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.PhaseOptions;
+import soot.RefLikeType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.spark.SparkTransformer;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.options.Options;
+
+/**
+ * Compares the solution of the parallel propagator with the one of the worklist propagator on a small program that uses
+ * the collections of the class library.
+ */
+public class PropParallelTest {
+
+  private static final String MAIN_CLASS = "soot.jimple.toolkits.callgraph.targets.DispatchTarget";
+  private static final List<String> LIBRARY = Arrays.asList("java.util.ArrayList", "java.util.ArrayList$*",
+      "java.util.Collections", "java.util.Arrays", "java.util.TimSort", "java.util.ComparableTimSort",
+      "java.lang.AbstractStringBuilder", "java.lang.StringBuilder");
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_soot_classpath(new File("./target/test-classes").getCanonicalPath());
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Options.v().set_no_bodies_for_excluded(true);
+    Options.v().set_include(LIBRARY);
+    Options.v().set_num_threads(4);
+    Scene.v().addBasicClass(MAIN_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    SootClass main = Scene.v().getSootClass(MAIN_CLASS);
+    main.setApplicationClass();
+    Scene.v().setMainClass(main);
+    Scene.v().setEntryPoints(Collections.singletonList(main.getMethodByName("main")));
+  }
+
+  @Test
+  public void testSameSolutionAsWorklist() {
+    Solution parallel = solve("parallel", "double", true);
+    Solution worklist = solve("worklist", "double", false);
+    Assert.assertTrue(parallel.edges.size() > 100);
+    Assert.assertEquals(worklist.edges, parallel.edges);
+    Assert.assertEquals(worklist.pointsTo, parallel.pointsTo);
+  }
+
+  @Test
+  public void testFallbackWithoutDoubleSets() {
+    Solution worklist = solve("worklist", "double", false);
+    Solution parallel = solve("parallel", "hybrid", true);
+    Assert.assertEquals(worklist.edges, parallel.edges);
+    Assert.assertEquals(worklist.pointsTo, parallel.pointsTo);
+  }
+
+  /** Runs Spark with the given propagator and set implementation on the bodies loaded in setUp. */
+  private static Solution solve(String propagator, String setImpl, boolean check) {
+    Map<String, String> options = new HashMap<String, String>(PhaseOptions.v().getPhaseOptions("cg.spark"));
+    options.put("enabled", "true");
+    options.put("on-fly-cg", "true");
+    options.put("propagator", propagator);
+    options.put("set-impl", setImpl);
+    options.put("check-parallel", Boolean.toString(check));
+    // The method graphs of a previous run belong to its pointer assignment graph
+    G.v().MethodPAG_methodToPag.clear();
+    SparkTransformer.v().transform("cg.spark", options);
+
+    Solution ret = new Solution();
+    for (Edge e : Scene.v().getCallGraph()) {
+      ret.edges.add(e);
+    }
+    PAG pag = (PAG) Scene.v().getPointsToAnalysis();
+    for (Iterator<MethodOrMethodContext> it = Scene.v().getReachableMethods().listener(); it.hasNext();) {
+      SootMethod m = it.next().method();
+      if (!m.hasActiveBody()) {
+        continue;
+      }
+      for (Local l : m.getActiveBody().getLocals()) {
+        if (l.getType() instanceof RefLikeType) {
+          ret.pointsTo.put(l, allocSites(pag.reachingObjects(l)));
+        }
+      }
+    }
+    return ret;
+  }
+
+  private static Set<Object> allocSites(Object p2set) {
+    final Set<Object> ret = new HashSet<Object>();
+    if (p2set instanceof PointsToSetInternal) {
+      ((PointsToSetInternal) p2set).forall(new P2SetVisitor() {
+        public void visit(Node n) {
+          ret.add(((AllocNode) n).getNewExpr());
+        }
+      });
+    }
+    return ret;
+  }
+
+  private static class Solution {
+    final Set<Edge> edges = new HashSet<Edge>();
+    final Map<Local, Set<Object>> pointsTo = new HashMap<Local, Set<Object>>();
+  }
+}
@@ -0,0 +1,85 @@
+package soot.jimple.toolkits.callgraph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.G;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
+import soot.options.Options;
+
+public class CallGraphBuilderTest {
+
+  static final String TARGET_CLASS = "soot.jimple.toolkits.callgraph.targets.DispatchTarget";
+
+  /** Loads the dispatch target with the bodies of the JDK excluded. */
+  static void loadTarget() throws IOException {
+    G.reset();
+    Options.v().set_soot_classpath(new File("./target/test-classes").getCanonicalPath());
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_no_bodies_for_excluded(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    Scene.v().setEntryPoints(Collections.singletonList(Scene.v().getSootClass(TARGET_CLASS).getMethodByName("main")));
+  }
+
+  private static List<String> buildCHA(int threads) throws IOException {
+    loadTarget();
+    Options.v().set_num_threads(threads);
+    PhaseOptions.v().setPhaseOption("cg", "parallel-bodies:true");
+    CallGraphBuilder cgb = new CallGraphBuilder(DumbPointerAnalysis.v());
+    cgb.build();
+
+    List<String> edges = new ArrayList<String>();
+    for (Iterator<Edge> it = cgb.getCallGraph().iterator(); it.hasNext();) {
+      Edge e = it.next();
+      edges.add(e.src() + " " + e.srcUnit() + " " + e.kind() + " " + e.tgt());
+    }
+    // Classes may be resolved in a different order, so only the edges are compared
+    Collections.sort(edges);
+    return edges;
+  }
+
+  @Test
+  public void testParallelBodiesSameEdges() throws IOException {
+    List<String> sequential = buildCHA(1);
+    Assert.assertFalse(sequential.isEmpty());
+    Assert.assertEquals(sequential, buildCHA(4));
+  }
+}
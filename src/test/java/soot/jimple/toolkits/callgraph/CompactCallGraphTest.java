@@ -0,0 +1,182 @@
+package soot.jimple.toolkits.callgraph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Context;
+import soot.Kind;
+import soot.MethodContext;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
+import soot.util.queue.QueueReader;
+
+public class CompactCallGraphTest {
+
+  private CallGraph cg;
+  private CompactCallGraph compact;
+
+  @Before
+  public void setUp() throws IOException {
+    CallGraphBuilderTest.loadTarget();
+    CallGraphBuilder cgb = new CallGraphBuilder(DumbPointerAnalysis.v());
+    cgb.build();
+    cg = cgb.getCallGraph();
+
+    // Calls from the same unit under two contexts, and from the same unit in the edges of another method
+    SootMethod main = Scene.v().getMethod("<" + CallGraphBuilderTest.TARGET_CLASS + ": void main(java.lang.String[])>");
+    SootMethod run = Scene.v().getMethod("<" + CallGraphBuilderTest.TARGET_CLASS + "$Plain: void run()>");
+    Edge first = cg.edgesOutOf(main).next();
+    Unit u = first.srcUnit();
+    Context a = new Context() {
+    };
+    Context b = new Context() {
+    };
+    cg.addEdge(new Edge(MethodContext.v(main, a), u, MethodContext.v(first.tgt(), a), first.kind()));
+    cg.addEdge(new Edge(MethodContext.v(main, b), u, MethodContext.v(first.tgt(), b), first.kind()));
+    cg.addEdge(new Edge(run, u, main, Kind.STATIC));
+
+    compact = new CompactCallGraph(cg);
+  }
+
+  private static <T> Set<T> toSet(Iterator<T> it) {
+    Set<T> ret = new HashSet<T>();
+    while (it.hasNext()) {
+      Assert.assertTrue("duplicate element", ret.add(it.next()));
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSameQueries() {
+    Assert.assertEquals(cg.size(), compact.size());
+    Assert.assertEquals(toSet(cg.iterator()), toSet(compact.iterator()));
+    Assert.assertEquals(toSet(cg.listener()), toSet(compact.listener()));
+    Assert.assertEquals(toSet(cg.sourceMethods()), toSet(compact.sourceMethods()));
+
+    Set<MethodOrMethodContext> methods = new LinkedHashSet<MethodOrMethodContext>();
+    Set<Unit> units = new LinkedHashSet<Unit>();
+    for (Edge e : cg) {
+      methods.add(e.getSrc());
+      methods.add(e.src());
+      methods.add(e.getTgt());
+      methods.add(e.tgt());
+      units.add(e.srcUnit());
+    }
+    for (MethodOrMethodContext m : methods) {
+      Assert.assertEquals(m.toString(), toSet(cg.edgesOutOf(m)), toSet(compact.edgesOutOf(m)));
+      Assert.assertEquals(m.toString(), toSet(cg.edgesInto(m)), toSet(compact.edgesInto(m)));
+      Assert.assertEquals(cg.isEntryMethod(m.method()), compact.isEntryMethod(m.method()));
+    }
+    for (Unit u : units) {
+      if (u == null) {
+        continue;
+      }
+      Set<Edge> out = toSet(cg.edgesOutOf(u));
+      Assert.assertEquals(u.toString(), out, toSet(compact.edgesOutOf(u)));
+      for (Edge e : out) {
+        Edge found = compact.findEdge(u, e.tgt());
+        Assert.assertNotNull(found);
+        Assert.assertSame(u, found.srcUnit());
+        Assert.assertSame(e.tgt(), found.tgt());
+      }
+    }
+  }
+
+  @Test
+  public void testSuccessorAndPredecessorNumbers() {
+    Set<SootMethod> methods = new HashSet<SootMethod>();
+    for (Edge e : cg) {
+      methods.add(e.src());
+      methods.add(e.tgt());
+    }
+    for (SootMethod m : methods) {
+      List<Integer> succ = new ArrayList<Integer>();
+      List<Integer> pred = new ArrayList<Integer>();
+      for (Edge e : cg) {
+        if (e.src() == m) {
+          succ.add(e.tgt().getNumber());
+        }
+        if (e.tgt() == m) {
+          pred.add(e.src().getNumber());
+        }
+      }
+      Assert.assertEquals(sorted(succ), sorted(compact.getSuccessorNumbers(m)));
+      Assert.assertEquals(sorted(pred), sorted(compact.getPredecessorNumbers(m)));
+    }
+  }
+
+  private static List<Integer> sorted(List<Integer> l) {
+    List<Integer> ret = new ArrayList<Integer>(l);
+    Collections.sort(ret);
+    return ret;
+  }
+
+  private static List<Integer> sorted(int[] a) {
+    int[] copy = a.clone();
+    Arrays.sort(copy);
+    List<Integer> ret = new ArrayList<Integer>(copy.length);
+    for (int i : copy) {
+      ret.add(i);
+    }
+    return ret;
+  }
+
+  @Test
+  public void testListenersAreReadOnly() {
+    QueueReader<Edge> reader = compact.listener();
+    Edge first = reader.next();
+    QueueReader<Edge> clone = reader.clone();
+    Assert.assertSame(reader.next(), clone.next());
+    Assert.assertNotSame(first, clone.next());
+    try {
+      clone.remove();
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    Assert.assertFalse(compact.newListener().hasNext());
+    Assert.assertEquals(cg.size(), toSet(compact.listener()).size());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutable() {
+    compact.addEdge(cg.iterator().next());
+  }
+}
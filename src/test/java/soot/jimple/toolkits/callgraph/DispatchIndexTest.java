@@ -0,0 +1,223 @@
+package soot.jimple.toolkits.callgraph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.AnySubType;
+import soot.PhaseOptions;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.options.Options;
+import soot.util.NumberedString;
+import soot.util.queue.ChunkedQueue;
+import soot.util.queue.QueueReader;
+
+/**
+ * Checks that {@link VirtualCalls} resolves calls the same with and without the <code>dispatch-index</code> option.
+ */
+public class DispatchIndexTest {
+
+  private static final String[] LIBRARY_TYPES = { "java.lang.Object", "java.lang.Runnable", "java.lang.Comparable",
+      "java.util.List", "java.util.AbstractList", "java.util.ArrayList" };
+  private static final String[] LIBRARY_SUBSIGS = { "int hashCode()", "java.lang.String toString()", "void run()",
+      "boolean add(java.lang.Object)", "int compareTo(java.lang.Object)", "java.lang.Object get(int)", "int size()" };
+
+  private List<RefType> types;
+  private List<NumberedString> subSigs;
+  private SootMethod container;
+
+  @Before
+  public void setUp() throws IOException {
+    CallGraphBuilderTest.loadTarget();
+    Options.v().set_num_threads(4);
+
+    Set<RefType> typeSet = new LinkedHashSet<RefType>();
+    Set<NumberedString> subSigSet = new LinkedHashSet<NumberedString>();
+    for (SootClass cl : new ArrayList<SootClass>(Scene.v().getClasses())) {
+      if (cl.getName().startsWith(CallGraphBuilderTest.TARGET_CLASS)) {
+        cl.setApplicationClass();
+        typeSet.add(cl.getType());
+        for (SootMethod m : cl.getMethods()) {
+          subSigSet.add(m.getNumberedSubSignature());
+        }
+      }
+    }
+    for (String t : LIBRARY_TYPES) {
+      typeSet.add(RefType.v(t));
+    }
+    for (String s : LIBRARY_SUBSIGS) {
+      subSigSet.add(Scene.v().getSubSigNumberer().findOrAdd(s));
+    }
+    types = new ArrayList<RefType>(typeSet);
+    subSigs = new ArrayList<NumberedString>(subSigSet);
+    container = Scene.v().getSootClass(CallGraphBuilderTest.TARGET_CLASS).getMethodByName("main");
+
+    Assert.assertTrue(Scene.v().getSootClass(CallGraphBuilderTest.TARGET_CLASS + "$Unit").isAbstract());
+    for (String t : new String[] { "java.lang.Object", "java.lang.Runnable" }) {
+      SootClass cl = Scene.v().getSootClass(t);
+      Assert.assertTrue(t, cl.isLibraryClass() && !cl.isPhantom());
+    }
+  }
+
+  private static VirtualCalls newVirtualCalls(boolean dispatchIndex) {
+    PhaseOptions.v().setPhaseOption("cg", "dispatch-index:" + dispatchIndex);
+    return new VirtualCalls(null);
+  }
+
+  /**
+   * Resolves every call with a fresh classic resolver. Its caches do not tell apart <code>appOnly</code>, and once it knows
+   * the subtypes of a type it visits them in hash order and also resolves calls on the type itself, even if it is abstract.
+   */
+  private List<String> resolveClassic() {
+    List<String> ret = new ArrayList<String>();
+    for (boolean appOnly : new boolean[] { false, true }) {
+      ret.addAll(resolveAll(null, appOnly, queries()));
+    }
+    return ret;
+  }
+
+  private List<int[]> queries() {
+    List<int[]> queries = new ArrayList<int[]>();
+    for (int t = 0; t < types.size(); t++) {
+      for (int s = 0; s < subSigs.size(); s++) {
+        queries.add(new int[] { t, s });
+      }
+    }
+    return queries;
+  }
+
+  /**
+   * Describes the target of a call on every type, and the targets of a call on any subtype of it, with no declared type,
+   * declared as <code>java.lang.Object</code> and declared as the type itself. If <code>vc</code> is null, every call is
+   * resolved by a fresh classic resolver.
+   */
+  private List<String> resolveAll(VirtualCalls vc, boolean appOnly, List<int[]> queries) {
+    List<String> ret = new ArrayList<String>();
+    Type[] declaredTypes = { null, RefType.v("java.lang.Object"), null };
+    for (int[] q : queries) {
+      RefType t = types.get(q[0]);
+      NumberedString subSig = subSigs.get(q[1]);
+      StringBuilder sb = new StringBuilder();
+      sb.append(t).append('.').append(subSig.getString()).append(appOnly ? " app: " : ": ");
+      sb.append(resolver(vc).resolveNonSpecial(t, subSig, appOnly));
+      declaredTypes[2] = t;
+      for (Type declaredType : declaredTypes) {
+        ChunkedQueue<SootMethod> targets = new ChunkedQueue<SootMethod>();
+        QueueReader<SootMethod> reader = targets.reader();
+        resolver(vc).resolve(AnySubType.v(t), declaredType, null, subSig, container, targets, appOnly);
+        sb.append(" |");
+        while (reader.hasNext()) {
+          sb.append(' ').append(reader.next());
+        }
+      }
+      ret.add(sb.toString());
+    }
+    return ret;
+  }
+
+  private static VirtualCalls resolver(VirtualCalls vc) {
+    return vc == null ? newVirtualCalls(false) : vc;
+  }
+
+  @Test
+  public void testSameTargets() {
+    List<String> expected = resolveClassic();
+    Assert.assertTrue(expected.toString().contains("<" + CallGraphBuilderTest.TARGET_CLASS + "$Tiny: double area()>"));
+
+    VirtualCalls indexed = newVirtualCalls(true);
+    List<String> actual = new ArrayList<String>();
+    for (boolean appOnly : new boolean[] { false, true }) {
+      actual.addAll(resolveAll(indexed, appOnly, queries()));
+    }
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    final List<String> expectedAll = resolveClassic();
+    final int half = expectedAll.size() / 2;
+
+    // The index is built here, but its cones and any-subtype targets are filled by the readers
+    final VirtualCalls indexed = newVirtualCalls(true);
+    indexed.getDispatchIndex();
+
+    final int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < threads; i++) {
+        final Random random = new Random(i);
+        final boolean appOnly = i % 2 == 1;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            List<int[]> queries = queries();
+            List<Integer> order = new ArrayList<Integer>();
+            for (int q = 0; q < queries.size(); q++) {
+              order.add(q);
+            }
+            Collections.shuffle(order, random);
+            List<int[]> shuffled = new ArrayList<int[]>();
+            for (int q : order) {
+              shuffled.add(queries.get(q));
+            }
+
+            start.await();
+            List<String> actual = resolveAll(indexed, appOnly, shuffled);
+            for (int q = 0; q < order.size(); q++) {
+              Assert.assertEquals(expectedAll.get((appOnly ? half : 0) + order.get(q)), actual.get(q));
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
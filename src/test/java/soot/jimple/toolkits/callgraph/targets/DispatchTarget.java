@@ -0,0 +1,119 @@
+package soot.jimple.toolkits.callgraph.targets;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DispatchTarget {
+
+  public interface Shape {
+    double area();
+  }
+
+  public abstract static class Base implements Shape {
+    public abstract double area();
+
+    public String name() {
+      return "base";
+    }
+
+    @Override
+    public String toString() {
+      return name() + area();
+    }
+  }
+
+  public static class Square extends Base {
+    public double area() {
+      return 1;
+    }
+
+    @Override
+    public String name() {
+      return "square";
+    }
+  }
+
+  public static class Circle extends Base {
+    public double area() {
+      return 3.14;
+    }
+  }
+
+  /** Overrides a concrete method with an abstract one. */
+  public abstract static class Unit extends Square {
+    @Override
+    public abstract double area();
+  }
+
+  public static class Tiny extends Unit {
+    @Override
+    public double area() {
+      return 0;
+    }
+  }
+
+  public static class Plain implements Shape, Comparable<Plain>, Runnable {
+    private final int size;
+
+    public Plain(int size) {
+      this.size = size;
+    }
+
+    public double area() {
+      return size;
+    }
+
+    public int compareTo(Plain o) {
+      return Integer.compare(size, o.size);
+    }
+
+    public void run() {
+      System.out.println(area());
+    }
+  }
+
+  public static void main(String[] args) {
+    List<Shape> shapes = new ArrayList<Shape>();
+    shapes.add(new Square());
+    shapes.add(new Circle());
+    shapes.add(new Tiny());
+    double total = 0;
+    for (Shape s : shapes) {
+      total += s.area();
+    }
+
+    Base b = args.length > 0 ? new Circle() : new Tiny();
+    System.out.println(b.name() + b + b.hashCode() + total);
+
+    List<Plain> plains = new ArrayList<Plain>();
+    plains.add(new Plain(2));
+    plains.add(new Plain(1));
+    Collections.sort(plains);
+    Runnable r = plains.get(0);
+    r.run();
+  }
+}
@@ -0,0 +1,184 @@
+package soot.jimple.toolkits.ide;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import heros.InterproceduralCFG;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.options.Options;
+
+public class SolverResultsTest {
+
+  private static final String TARGET_CLASS = "soot.toolkits.exceptions.targets.MethodThrowableSetClass";
+
+  private static final String[] FACTS = { "x", "a", "m", "b", "z", "c", "y", "d", "k", "e" };
+
+  private List<Unit> units;
+  private InterproceduralCFG<Unit, SootMethod> icfg;
+
+  /** A fact whose hash code is its identity, so that hash maps order new instances differently. */
+  private static final class Fact {
+    private final String name;
+
+    Fact(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+
+    units = new ArrayList<Unit>();
+    final SootClass c = Scene.v().getSootClass(TARGET_CLASS);
+    for (SootMethod m : c.getMethods()) {
+      if (m.isConcrete()) {
+        units.addAll(m.retrieveActiveBody().getUnits());
+      }
+    }
+
+    // Only the method of each statement is needed to order the results
+    icfg = (InterproceduralCFG<Unit, SootMethod>) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { InterproceduralCFG.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("getMethodOf")) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            for (SootMethod m : c.getMethods()) {
+              if (m.hasActiveBody() && m.getActiveBody().getUnits().contains(args[0])) {
+                return m;
+              }
+            }
+            return null;
+          }
+        });
+  }
+
+  /** Computes results as a solver run would, with new fact instances added in the given order. */
+  private SolverResults<Fact, Integer> run(boolean reversed) {
+    List<Fact> facts = new ArrayList<Fact>();
+    for (String name : FACTS) {
+      facts.add(new Fact(name));
+    }
+    Table<Unit, Fact, Integer> results = HashBasedTable.create();
+    List<Unit> us = new ArrayList<Unit>(units);
+    if (reversed) {
+      Collections.reverse(us);
+      Collections.reverse(facts);
+    }
+    for (Unit u : us) {
+      int i = units.indexOf(u);
+      for (Fact f : facts) {
+        // Every statement holds a different subset of the facts
+        int v = (i + f.name.charAt(0)) % 3;
+        if (v != 0) {
+          results.put(u, f, v);
+        }
+      }
+    }
+    return new SolverResults<Fact, Integer>(results, icfg);
+  }
+
+  private static String csv(SolverResults<?, ?> r) throws IOException {
+    StringWriter out = new StringWriter();
+    r.writeCSV(out);
+    return out.toString();
+  }
+
+  private static byte[] binary(SolverResults<?, ?> r) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    r.writeBinary(out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testCSVIsReproducible() throws IOException {
+    String first = csv(run(false));
+    String second = csv(run(true));
+    Assert.assertFalse(first.isEmpty());
+    Assert.assertEquals(first, second);
+  }
+
+  @Test
+  public void testCSVOrdersFactsByText() throws IOException {
+    String previousStmt = null;
+    String previousFact = null;
+    for (String line : csv(run(false)).split("\n")) {
+      String[] fields = line.split(";");
+      String stmt = fields[0] + ";" + fields[1];
+      if (stmt.equals(previousStmt)) {
+        Assert.assertTrue(line, previousFact.compareTo(fields[2]) < 0);
+      }
+      previousStmt = stmt;
+      previousFact = fields[2];
+    }
+  }
+
+  @Test
+  public void testBinaryIsReproducible() throws IOException {
+    byte[] first = binary(run(false));
+    byte[] second = binary(run(true));
+    Assert.assertTrue(first.length > 4);
+    Assert.assertTrue(Arrays.equals(first, second));
+  }
+}
@@ -0,0 +1,152 @@
+package soot.jimple.toolkits.ide.icfg;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.toolkits.callgraph.CallGraphBuilder;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
+import soot.options.Options;
+import soot.toolkits.graph.DirectedGraph;
+
+/**
+ * Checks that {@link PrecomputedJimpleBasedICFG} answers every query like {@link JimpleBasedInterproceduralCFG}.
+ */
+public class PrecomputedJimpleBasedICFGTest {
+
+  private static final String TARGET_CLASS = "soot.jimple.toolkits.callgraph.targets.DispatchTarget";
+
+  private List<SootMethod> methods;
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_soot_classpath(new File("./target/test-classes").getCanonicalPath());
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_whole_program(true);
+    Options.v().set_no_bodies_for_excluded(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Options.v().set_num_threads(4);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+    Scene.v().setEntryPoints(Collections.singletonList(Scene.v().getSootClass(TARGET_CLASS).getMethodByName("main")));
+
+    CallGraphBuilder cgb = new CallGraphBuilder(DumbPointerAnalysis.v());
+    cgb.build();
+    Scene.v().setCallGraph(cgb.getCallGraph());
+
+    methods = new ArrayList<SootMethod>();
+    for (Iterator<MethodOrMethodContext> it = Scene.v().getReachableMethods().listener(); it.hasNext();) {
+      SootMethod m = it.next().method();
+      if (m.hasActiveBody()) {
+        methods.add(m);
+      }
+    }
+    Assert.assertTrue(methods.size() > 5);
+  }
+
+  private static <T> HashSet<T> set(Collection<T> c) {
+    return new HashSet<T>(c);
+  }
+
+  private static <T> List<T> list(Collection<T> c) {
+    return new ArrayList<T>(c);
+  }
+
+  private void assertSameAnswers(BiDiInterproceduralCFG<Unit, SootMethod> expected,
+      BiDiInterproceduralCFG<Unit, SootMethod> actual) {
+    int calls = 0;
+    for (SootMethod m : methods) {
+      Assert.assertEquals(m.toString(), set(expected.getStartPointsOf(m)), set(actual.getStartPointsOf(m)));
+      Assert.assertEquals(m.toString(), set(expected.getEndPointsOf(m)), set(actual.getEndPointsOf(m)));
+      Assert.assertEquals(m.toString(), list(expected.getCallsFromWithin(m)), list(actual.getCallsFromWithin(m)));
+      Assert.assertEquals(m.toString(), set(expected.getCallersOf(m)), set(actual.getCallersOf(m)));
+      Assert.assertEquals(m.toString(), expected.getParameterRefs(m), actual.getParameterRefs(m));
+
+      DirectedGraph<Unit> graph = actual.getOrCreateUnitGraph(m);
+      Assert.assertEquals(m.toString(), m.getActiveBody().getUnits().size(), graph.size());
+
+      for (Unit u : m.getActiveBody().getUnits()) {
+        String where = m + ": " + u;
+        Assert.assertEquals(where, expected.getMethodOf(u), actual.getMethodOf(u));
+        Assert.assertEquals(where, expected.getSuccsOf(u), actual.getSuccsOf(u));
+        Assert.assertEquals(where, expected.getPredsOf(u), actual.getPredsOf(u));
+        Assert.assertEquals(where, expected.isStartPoint(u), actual.isStartPoint(u));
+        Assert.assertEquals(where, expected.isExitStmt(u), actual.isExitStmt(u));
+        Assert.assertEquals(where, expected.isCallStmt(u), actual.isCallStmt(u));
+        Assert.assertEquals(where, expected.isReturnSite(u), actual.isReturnSite(u));
+        Assert.assertEquals(where, expected.isReachable(u), actual.isReachable(u));
+        for (Unit succ : expected.getSuccsOf(u)) {
+          Assert.assertEquals(where, expected.isFallThroughSuccessor(u, succ), actual.isFallThroughSuccessor(u, succ));
+          Assert.assertEquals(where, expected.isBranchTarget(u, succ), actual.isBranchTarget(u, succ));
+        }
+        if (expected.isCallStmt(u)) {
+          calls++;
+          Assert.assertEquals(where, list(expected.getCalleesOfCallAt(u)), list(actual.getCalleesOfCallAt(u)));
+          Assert.assertEquals(where, list(expected.getReturnSitesOfCallAt(u)), list(actual.getReturnSitesOfCallAt(u)));
+          Assert.assertEquals(where, expected.getPredsOfCallAt(u), actual.getPredsOfCallAt(u));
+        }
+      }
+    }
+    Assert.assertTrue(calls > 0);
+    Assert.assertEquals(expected.allNonCallStartNodes(), actual.allNonCallStartNodes());
+    Assert.assertEquals(expected.allNonCallEndNodes(), actual.allNonCallEndNodes());
+  }
+
+  @Test
+  public void testSameAnswersWithExceptions() {
+    assertSameAnswers(new JimpleBasedInterproceduralCFG(true), new PrecomputedJimpleBasedICFG(true));
+  }
+
+  @Test
+  public void testSameAnswersWithoutExceptions() {
+    assertSameAnswers(new JimpleBasedInterproceduralCFG(false), new PrecomputedJimpleBasedICFG(false));
+  }
+
+  @Test
+  public void testSameAnswersWithPhantomCallees() {
+    JimpleBasedInterproceduralCFG expected = new JimpleBasedInterproceduralCFG(true);
+    expected.setIncludePhantomCallees(true);
+    assertSameAnswers(expected, new PrecomputedJimpleBasedICFG(true, false, true));
+  }
+}
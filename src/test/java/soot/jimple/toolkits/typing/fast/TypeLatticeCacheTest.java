@@ -0,0 +1,129 @@
+package soot.jimple.toolkits.typing.fast;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.G;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.ValueBox;
+import soot.options.Options;
+
+/**
+ * Checks that the fast type assigner of <code>jb.tr</code> types bodies the same with and without the
+ * {@link TypeLatticeCache}.
+ */
+public class TypeLatticeCacheTest {
+
+  private static final String[] CLASSES = { "soot.toolkits.exceptions.targets.MethodThrowableSetClass",
+      "java.util.HashMap", "java.util.concurrent.ConcurrentHashMap", "java.util.zip.ZipFile", "java.io.BufferedReader",
+      "java.util.Collections", "java.lang.String" };
+
+  /**
+   * Loads the classes afresh and returns the types of the locals used and defined by each statement of their methods, by
+   * signature. The names of the locals are left out, as the local splitter may name them differently from run to run.
+   */
+  private static Map<String, String> typeBodies(boolean cached) throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    for (String c : CLASSES) {
+      Scene.v().addBasicClass(c, SootClass.BODIES);
+    }
+    Scene.v().loadNecessaryClasses();
+    TypeLatticeCache.v().setEnabled(cached);
+    Assert.assertEquals(cached, TypeLatticeCache.v().isEnabled());
+
+    Map<String, String> ret = new TreeMap<String, String>();
+    for (String c : CLASSES) {
+      for (SootMethod m : new ArrayList<SootMethod>(Scene.v().getSootClass(c).getMethods())) {
+        if (m.isConcrete()) {
+          StringBuilder types = new StringBuilder();
+          for (Unit u : m.retrieveActiveBody().getUnits()) {
+            types.append(u.getClass().getSimpleName());
+            for (ValueBox vb : u.getUseAndDefBoxes()) {
+              if (vb.getValue() instanceof Local) {
+                types.append(' ').append(vb.getValue().getType());
+              }
+            }
+            types.append('\n');
+          }
+          ret.put(m.getSignature(), types.toString());
+        }
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSameTypingWithoutCache() throws IOException {
+    Map<String, String> cached = typeBodies(true);
+    Map<String, String> uncached = typeBodies(false);
+    Assert.assertTrue(cached.size() > 100);
+    Assert.assertEquals(cached.keySet(), uncached.keySet());
+    for (Map.Entry<String, String> e : cached.entrySet()) {
+      Assert.assertEquals(e.getKey(), uncached.get(e.getKey()), e.getValue());
+    }
+  }
+
+  /** Answers computed with an outdated hierarchy must not be returned once the Scene has changed its hierarchy. */
+  @Test
+  public void testDroppedWhenHierarchyChanges() {
+    G.reset();
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_allow_phantom_refs(true);
+    Scene.v().loadNecessaryClasses();
+    SootClass object = Scene.v().getSootClass("java.lang.Object");
+    SootClass a = new SootClass("test.A");
+    a.setSuperclass(object);
+    Scene.v().addClass(a);
+    SootClass b = new SootClass("test.B");
+    b.setSuperclass(object);
+    Scene.v().addClass(b);
+    Assert.assertFalse(TypeLatticeCache.v().ancestor(a.getType(), b.getType()));
+    Assert.assertFalse(TypeLatticeCache.v().ancestor(a.getType(), b.getType()));
+
+    Scene.v().removeClass(b);
+    SootClass b2 = new SootClass("test.B");
+    b2.setSuperclass(a);
+    Scene.v().addClass(b2);
+    Assert.assertSame(b.getType(), b2.getType());
+    Assert.assertTrue(TypeLatticeCache.v().ancestor(a.getType(), b2.getType()));
+  }
+}
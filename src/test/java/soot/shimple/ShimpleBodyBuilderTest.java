@@ -0,0 +1,299 @@
+package soot.shimple;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.AddExpr;
+import soot.jimple.AssignStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.MulExpr;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.options.Options;
+import soot.toolkits.graph.DominatorsFinder;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.MHGDominatorsFinder;
+import soot.toolkits.scalar.ValueUnitPair;
+
+/**
+ * Checks the SSA form that Shimple builds, with and without pruning and extended SSA.
+ */
+public class ShimpleBodyBuilderTest {
+
+  private static final String TARGET_CLASS = "soot.shimple.targets.SsaTarget";
+  private static final String TRAPS_CLASS = "soot.toolkits.exceptions.targets.MethodThrowableSetClass";
+
+  @Before
+  public void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    Scene.v().addBasicClass(TARGET_CLASS, SootClass.BODIES);
+    Scene.v().addBasicClass(TRAPS_CLASS, SootClass.BODIES);
+    Scene.v().loadNecessaryClasses();
+  }
+
+  @Test
+  public void testValidSsa() {
+    int withTraps = 0;
+    for (String c : new String[] { TARGET_CLASS, TRAPS_CLASS }) {
+      for (SootMethod m : Scene.v().getSootClass(c).getMethods()) {
+        if (!m.isConcrete()) {
+          continue;
+        }
+        Body b = m.retrieveActiveBody();
+        if (!b.getTraps().isEmpty()) {
+          withTraps++;
+        }
+        for (boolean pruned : new boolean[] { true, false }) {
+          assertSsa(newBody(b, pruned, false));
+        }
+      }
+    }
+    Assert.assertTrue(withTraps > 5);
+  }
+
+  @Test
+  public void testPruning() {
+    // x is defined on both branches and guaranteed to be defined at the join, but it is not live there
+    SootMethod m = new SootMethod("deadAtJoin", Collections.singletonList(IntType.v()), IntType.v(), Modifier.STATIC);
+    Scene.v().getSootClass(TARGET_CLASS).addMethod(m);
+    JimpleBody b = Jimple.v().newBody(m);
+    m.setActiveBody(b);
+    Local n = Jimple.v().newLocal("n", IntType.v());
+    Local x = Jimple.v().newLocal("x", IntType.v());
+    b.getLocals().add(n);
+    b.getLocals().add(x);
+    ReturnStmt ret = Jimple.v().newReturnStmt(n);
+    Stmt elseBranch = Jimple.v().newAssignStmt(x, Jimple.v().newSubExpr(x, IntConstant.v(1)));
+    b.getUnits().add(Jimple.v().newIdentityStmt(n, Jimple.v().newParameterRef(IntType.v(), 0)));
+    b.getUnits().add(Jimple.v().newAssignStmt(x, n));
+    b.getUnits().add(Jimple.v().newIfStmt(Jimple.v().newLeExpr(n, IntConstant.v(0)), elseBranch));
+    b.getUnits().add(Jimple.v().newAssignStmt(x, Jimple.v().newAddExpr(x, IntConstant.v(1))));
+    b.getUnits().add(Jimple.v().newGotoStmt(ret));
+    b.getUnits().add(elseBranch);
+    b.getUnits().add(ret);
+
+    ShimpleBody unpruned = newBody(b, false, false);
+    assertSsa(unpruned);
+    Assert.assertEquals(1, phiNodes(unpruned).size());
+    Assert.assertFalse(usedLocals(unpruned).contains(Shimple.getLhsLocal(phiNodes(unpruned).get(0))));
+
+    ShimpleBody pruned = newBody(b, true, false);
+    assertSsa(pruned);
+    Assert.assertTrue(phiNodes(pruned).isEmpty());
+  }
+
+  @Test
+  public void testPhiNodesAreLive() {
+    for (SootMethod m : Scene.v().getSootClass(TARGET_CLASS).getMethods()) {
+      if (!m.isConcrete()) {
+        continue;
+      }
+      Body b = m.retrieveActiveBody();
+      ShimpleBody pruned = newBody(b, true, false);
+      ShimpleBody unpruned = newBody(b, false, false);
+      Set<Local> used = usedLocals(pruned);
+      for (Unit phi : phiNodes(pruned)) {
+        Assert.assertTrue(m + ": " + phi, used.contains(Shimple.getLhsLocal(phi)));
+      }
+      Assert.assertTrue(m.toString(), phiNodes(pruned).size() <= phiNodes(unpruned).size());
+    }
+
+    // The loop counter and the sum meet at the loop header
+    Body loop = Scene.v().getSootClass(TARGET_CLASS).getMethodByName("loopTemp").retrieveActiveBody();
+    Assert.assertEquals(2, phiNodes(newBody(loop, true, false)).size());
+  }
+
+  @Test
+  public void testPhiNodesInHandlers() {
+    for (String name : new String[] { "handler", "loopInTry" }) {
+      Body b = Scene.v().getSootClass(TARGET_CLASS).getMethodByName(name).retrieveActiveBody();
+      Assert.assertEquals(1, b.getTraps().size());
+      for (boolean pruned : new boolean[] { true, false }) {
+        ShimpleBody sb = newBody(b, pruned, false);
+        assertSsa(sb);
+
+        // The local read in the handler may come from before or after the excepting statement
+        Unit handler = sb.getTraps().getFirst().getHandlerUnit();
+        Unit phi = sb.getUnits().getSuccOf(handler);
+        Assert.assertTrue(name + " " + pruned, Shimple.isPhiNode(phi));
+        Assert.assertTrue(Shimple.getPhiExpr(phi).getArgCount() >= 2);
+        Assert.assertTrue(usedLocals(sb).contains(Shimple.getLhsLocal(phi)));
+      }
+    }
+  }
+
+  @Test
+  public void testExtendedSsa() {
+    // Extended SSA does not support bodies with traps, since Pi nodes would be in protected ranges
+    for (String name : new String[] { "loopTemp", "nestedLoops" }) {
+      Body b = Scene.v().getSootClass(TARGET_CLASS).getMethodByName(name).retrieveActiveBody();
+      for (boolean pruned : new boolean[] { true, false }) {
+        ShimpleBody sb = newBody(b, pruned, true);
+        Assert.assertTrue(sb.isExtendedSSA());
+        assertSsa(sb);
+        Assert.assertFalse(phiNodes(sb).isEmpty());
+        boolean hasPi = false;
+        for (Unit u : sb.getUnits()) {
+          hasPi |= Shimple.isPiNode(u);
+        }
+        Assert.assertTrue(hasPi);
+      }
+    }
+  }
+
+  @Test
+  public void testRebuildAfterEdit() {
+    Body b = Scene.v().getSootClass(TARGET_CLASS).getMethodByName("nestedLoops").retrieveActiveBody();
+    ShimpleBody sb = newBody(b, true, false);
+
+    // Assign a local defined in the loop a second time, right after its definition
+    AssignStmt def = null;
+    for (Unit u : sb.getUnits()) {
+      if (u instanceof AssignStmt && ((AssignStmt) u).getRightOp() instanceof AddExpr) {
+        def = (AssignStmt) u;
+        break;
+      }
+    }
+    Assert.assertNotNull(def);
+    Local local = (Local) def.getLeftOp();
+    List<ValueBox> uses = new ArrayList<ValueBox>();
+    for (ValueBox use : sb.getUseBoxes()) {
+      if (use.getValue() == local) {
+        uses.add(use);
+      }
+    }
+    Assert.assertFalse(uses.isEmpty());
+    MulExpr mul = Jimple.v().newMulExpr(local, IntConstant.v(3));
+    AssignStmt edit = Jimple.v().newAssignStmt(local, mul);
+    sb.getUnits().insertAfter(edit, def);
+    int phis = phiNodes(sb).size();
+
+    sb.rebuild();
+    assertSsa(sb);
+    Assert.assertEquals(phis, phiNodes(sb).size());
+
+    // The edit reads the first definition, and every former use now reads the edit
+    Assert.assertSame(def.getLeftOp(), mul.getOp1());
+    Assert.assertNotSame(def.getLeftOp(), edit.getLeftOp());
+    for (ValueBox use : uses) {
+      Assert.assertSame(edit.getLeftOp(), use.getValue());
+    }
+  }
+
+  /**
+   * Checks that every Local is defined once and that its definition dominates its uses. A Phi argument must be defined
+   * before the end of its predecessor, unless it is the undefined value that keeps the name of the Phi node's Local.
+   */
+  private static void assertSsa(ShimpleBody sb) {
+    sb.validate();
+    String where = sb.getMethod().toString();
+
+    Map<Local, Unit> defs = new HashMap<Local, Unit>();
+    for (Unit u : sb.getUnits()) {
+      for (ValueBox vb : u.getDefBoxes()) {
+        if (vb.getValue() instanceof Local) {
+          Assert.assertNull(where + ": " + vb.getValue() + " defined twice", defs.put((Local) vb.getValue(), u));
+        }
+      }
+    }
+
+    DominatorsFinder<Unit> doms = new MHGDominatorsFinder<Unit>(new ExceptionalUnitGraph(sb));
+    for (Unit u : sb.getUnits()) {
+      if (Shimple.isPhiNode(u)) {
+        for (ValueUnitPair arg : Shimple.getPhiExpr(u).getArgs()) {
+          Unit def = defs.get(arg.getValue());
+          if (def != null && def != u) {
+            Assert.assertTrue(where + ": " + u, doms.isDominatedBy(arg.getUnit(), def));
+          }
+        }
+        continue;
+      }
+      for (ValueBox vb : u.getUseBoxes()) {
+        Unit def = defs.get(vb.getValue());
+        if (def != null) {
+          Assert.assertTrue(where + ": " + u, def != u && doms.isDominatedBy(u, def));
+        }
+      }
+    }
+  }
+
+  private static List<Unit> phiNodes(Body b) {
+    List<Unit> phis = new ArrayList<Unit>();
+    for (Unit u : b.getUnits()) {
+      if (Shimple.isPhiNode(u)) {
+        phis.add(u);
+      }
+    }
+    return phis;
+  }
+
+  private static Set<Local> usedLocals(Body b) {
+    Set<Local> used = new HashSet<Local>();
+    for (ValueBox vb : b.getUseBoxes()) {
+      Value v = vb.getValue();
+      if (v instanceof Local) {
+        used.add((Local) v);
+      }
+    }
+    return used;
+  }
+
+  private static ShimpleBody newBody(Body b, boolean pruned, boolean extended) {
+    Map<String, String> options = new HashMap<String, String>(PhaseOptions.v().getPhaseOptions(Shimple.PHASE));
+    options.put("pruned", String.valueOf(pruned));
+    options.put("extended", String.valueOf(extended));
+    return Shimple.v().newBody(b, options);
+  }
+}
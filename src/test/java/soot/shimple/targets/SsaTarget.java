@@ -0,0 +1,83 @@
+package soot.shimple.targets;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+public class SsaTarget {
+
+  public int loopTemp(int n) {
+    int sum = 0;
+    for (int i = 0; i < n; i++) {
+      int t = i * 2;
+      sum += t;
+    }
+    return sum;
+  }
+
+  public int nestedLoops(int n, int m) {
+    int x = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < m; j++) {
+        if (i < j) {
+          x = x + j;
+        } else {
+          x = x - i;
+        }
+      }
+    }
+    return x;
+  }
+
+  public int handler(int n) {
+    int x = 0;
+    try {
+      x = 100 / n;
+      x = mayThrow(x);
+    } catch (ArithmeticException e) {
+      return x;
+    }
+    return x;
+  }
+
+  public int loopInTry(int[] a) {
+    int i = 0;
+    try {
+      while (i < a.length) {
+        if (a[i] < 0) {
+          break;
+        }
+        i++;
+      }
+    } catch (RuntimeException e) {
+      i = -i;
+    }
+    return i;
+  }
+
+  private static int mayThrow(int x) {
+    if (x > 100) {
+      throw new ArithmeticException();
+    }
+    return x + 1;
+  }
+}
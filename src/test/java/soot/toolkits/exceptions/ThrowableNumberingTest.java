@@ -0,0 +1,243 @@
+package soot.toolkits.exceptions;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.AnySubType;
+import soot.FastHierarchy;
+import soot.G;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.Scene;
+import soot.options.Options;
+
+public class ThrowableNumberingTest {
+
+  private ExceptionTestUtility util;
+  private FastHierarchy hierarchy;
+  private ThrowableNumbering numbering;
+
+  /** The non-phantom test throwables, in a fixed order. */
+  private List<RefType> types;
+
+  @Before
+  public void setUp() {
+    G.reset();
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_allow_phantom_refs(true);
+    Scene.v().loadBasicClasses();
+    util = new ExceptionTestUtility();
+    hierarchy = Scene.v().getOrMakeFastHierarchy();
+    numbering = ThrowableSet.Manager.v().numbering(hierarchy);
+
+    types = new ArrayList<RefType>();
+    for (RefType t : util.ALL_TEST_THROWABLES) {
+      if (!t.getSootClass().isPhantom()) {
+        types.add(t);
+      }
+    }
+    Collections.sort(types, (t1, t2) -> t1.getClassName().compareTo(t2.getClassName()));
+  }
+
+  @Test
+  public void testNumbersFollowHierarchy() {
+    for (RefType t : types) {
+      Assert.assertTrue(t.toString(), numbering.number(t) >= 0);
+    }
+    for (RefType child : types) {
+      for (RefType parent : types) {
+        Assert.assertEquals(child + " <: " + parent, hierarchy.canStoreType(child, parent),
+            numbering.isSubtype(numbering.number(child), numbering.number(parent)));
+      }
+    }
+    Assert.assertEquals(0, numbering.number(util.THROWABLE));
+    Assert.assertEquals(-1, numbering.number(RefType.v("java.lang.Object")));
+    Assert.assertEquals(-1, numbering.number(util.PHANTOM_EXCEPTION1));
+  }
+
+  @Test
+  public void testNumberingFollowsHierarchy() {
+    Assert.assertSame(numbering, ThrowableSet.Manager.v().numbering(hierarchy));
+    Scene.v().releaseFastHierarchy();
+    FastHierarchy newHierarchy = Scene.v().getOrMakeFastHierarchy();
+    ThrowableNumbering newNumbering = ThrowableSet.Manager.v().numbering(newHierarchy);
+    Assert.assertNotSame(numbering, newNumbering);
+    Assert.assertSame(newHierarchy, newNumbering.hierarchy);
+  }
+
+  @Test
+  public void testMasks() {
+    Set<RefLikeType> included = new HashSet<RefLikeType>();
+    included.add(util.ARITHMETIC_EXCEPTION);
+    included.add(AnySubType.v(util.LINKAGE_ERROR));
+    Set<AnySubType> excluded = Collections.singleton(AnySubType.v(util.INCOMPATIBLE_CLASS_CHANGE_ERROR));
+    ThrowableNumbering.Masks m = numbering.masksOf(included, excluded);
+
+    for (RefType t : types) {
+      int n = numbering.number(t);
+      boolean inSubtypes = hierarchy.canStoreType(t, util.LINKAGE_ERROR);
+      Assert.assertEquals(t.toString(), inSubtypes || t == util.ARITHMETIC_EXCEPTION,
+          ThrowableNumbering.Masks.get(m.included, n));
+      Assert.assertEquals(t.toString(), inSubtypes, ThrowableNumbering.Masks.get(m.subtypes, n));
+      Assert.assertEquals(t.toString(), hierarchy.canStoreType(t, util.INCOMPATIBLE_CLASS_CHANGE_ERROR),
+          ThrowableNumbering.Masks.get(m.excluded, n));
+    }
+
+    included.add(util.PHANTOM_EXCEPTION1);
+    Assert.assertNull(numbering.masksOf(included, Collections.<AnySubType>emptySet()).included);
+  }
+
+  @Test
+  public void testRangeQueries() {
+    for (RefType t : types) {
+      Set<RefLikeType> included = Collections.<RefLikeType>singleton(t);
+      ThrowableNumbering.Masks m = numbering.masksOf(included, Collections.<AnySubType>emptySet());
+      for (RefType catcher : types) {
+        int cn = numbering.number(catcher);
+        boolean caught = hierarchy.canStoreType(t, catcher);
+        Assert.assertEquals(t + " in " + catcher, caught, m.intersectsSubtypes(m.included, cn));
+        Assert.assertEquals(t + " in " + catcher, caught, m.withinSubtypes(m.included, cn));
+      }
+    }
+  }
+
+  /**
+   * Returns the types that a set built from <code>added</code> should contain: those not covered by an
+   * {@link AnySubType} among the others, found by searching the hierarchy.
+   */
+  private Set<RefLikeType> expected(List<RefLikeType> added) {
+    Set<RefLikeType> ret = new HashSet<RefLikeType>();
+    for (RefLikeType t : added) {
+      boolean covered = false;
+      for (RefLikeType o : added) {
+        if (o instanceof AnySubType && !o.equals(t)) {
+          RefType base = t instanceof RefType ? (RefType) t : ((AnySubType) t).getBase();
+          covered |= hierarchy.canStoreType(base, ((AnySubType) o).getBase());
+        }
+      }
+      if (!covered) {
+        ret.add(t);
+      }
+    }
+    return ret;
+  }
+
+  private RefLikeType randomType(Random r) {
+    RefType t = types.get(r.nextInt(types.size()));
+    return r.nextBoolean() ? t : AnySubType.v(t);
+  }
+
+  private static ThrowableSet add(ThrowableSet s, RefLikeType t) {
+    return t instanceof RefType ? s.add((RefType) t) : s.add((AnySubType) t);
+  }
+
+  @Test
+  public void testAddAnySubType() {
+    ThrowableSet.Manager mgr = ThrowableSet.Manager.v();
+    Random r = new Random(42);
+    for (int i = 0; i < 300; i++) {
+      ThrowableSet s = mgr.EMPTY;
+      List<RefLikeType> added = new ArrayList<RefLikeType>();
+      for (int j = r.nextInt(6); j >= 0; j--) {
+        RefLikeType t = randomType(r);
+        added.add(t);
+        s = add(s, t);
+        Assert.assertEquals(added.toString(), expected(added), new HashSet<RefLikeType>(s.typesIncluded()));
+        Assert.assertSame(s, add(s, t));
+      }
+    }
+
+    // An AnySubType replaces the types below it, and adding a covered one
+    // leaves the set alone
+    ThrowableSet s = mgr.EMPTY.add(util.ARITHMETIC_EXCEPTION).add(AnySubType.v(util.INDEX_OUT_OF_BOUNDS_EXCEPTION))
+        .add(util.LINKAGE_ERROR);
+    ThrowableSet t = s.add(AnySubType.v(util.RUNTIME_EXCEPTION));
+    Assert.assertEquals(new HashSet<RefLikeType>(Arrays.asList(AnySubType.v(util.RUNTIME_EXCEPTION), util.LINKAGE_ERROR)),
+        new HashSet<RefLikeType>(t.typesIncluded()));
+    Assert.assertSame(t, t.add(AnySubType.v(util.INDEX_OUT_OF_BOUNDS_EXCEPTION)));
+    Assert.assertSame(t, t.add(AnySubType.v(util.ARRAY_INDEX_OUT_OF_BOUNDS_EXCEPTION)));
+  }
+
+  @Test
+  public void testAddSet() {
+    ThrowableSet.Manager mgr = ThrowableSet.Manager.v();
+    Random r = new Random(4711);
+    for (int i = 0; i < 300; i++) {
+      ThrowableSet s1 = mgr.EMPTY;
+      ThrowableSet s2 = mgr.EMPTY;
+      List<RefLikeType> added = new ArrayList<RefLikeType>();
+      for (int j = r.nextInt(5); j >= 0; j--) {
+        RefLikeType t = randomType(r);
+        added.add(t);
+        s1 = add(s1, t);
+      }
+      for (int j = r.nextInt(5); j >= 0; j--) {
+        RefLikeType t = randomType(r);
+        added.add(t);
+        s2 = add(s2, t);
+      }
+      ThrowableSet union = s1.add(s2);
+      Assert.assertEquals(s1 + " + " + s2, expected(added), new HashSet<RefLikeType>(union.typesIncluded()));
+      Assert.assertSame(union, s2.add(s1));
+      Assert.assertSame(union, union.add(s1));
+      Assert.assertSame(union, s1.add(union));
+    }
+
+    // A RefType and the AnySubType of the same leaf class set the same bit
+    // of the inclusion mask, but the AnySubType replaces the RefType
+    ThrowableSet leaf = mgr.EMPTY.add(util.ARRAY_INDEX_OUT_OF_BOUNDS_EXCEPTION);
+    ThrowableSet anyLeaf = mgr.EMPTY.add(AnySubType.v(util.ARRAY_INDEX_OUT_OF_BOUNDS_EXCEPTION));
+    Assert.assertSame(anyLeaf, leaf.add(anyLeaf));
+    Assert.assertSame(anyLeaf, anyLeaf.add(leaf));
+  }
+
+  @Test
+  public void testPhantomTypesUseHierarchySearch() {
+    ThrowableSet.Manager mgr = ThrowableSet.Manager.v();
+    ThrowableSet s = mgr.EMPTY.add(AnySubType.v(util.RUNTIME_EXCEPTION)).add(AnySubType.v(util.PHANTOM_EXCEPTION1));
+    Assert.assertEquals(
+        new HashSet<RefLikeType>(
+            Arrays.asList(AnySubType.v(util.RUNTIME_EXCEPTION), AnySubType.v(util.PHANTOM_EXCEPTION1))),
+        new HashSet<RefLikeType>(s.typesIncluded()));
+
+    Assert.assertSame(s, s.add(mgr.EMPTY.add(util.ARITHMETIC_EXCEPTION)));
+    Assert.assertSame(s, mgr.EMPTY.add(util.ARITHMETIC_EXCEPTION).add(s));
+    ThrowableSet u = s.add(mgr.EMPTY.add(util.ARITHMETIC_EXCEPTION).add(util.LINKAGE_ERROR));
+    Assert.assertEquals(
+        new HashSet<RefLikeType>(Arrays.asList(AnySubType.v(util.RUNTIME_EXCEPTION),
+            AnySubType.v(util.PHANTOM_EXCEPTION1), util.LINKAGE_ERROR)),
+        new HashSet<RefLikeType>(u.typesIncluded()));
+  }
+}
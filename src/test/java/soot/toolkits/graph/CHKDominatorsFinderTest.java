@@ -0,0 +1,255 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.G;
+import soot.options.Options;
+
+/**
+ * Compares {@link CHKDominatorsFinder} and {@link CHKPostDominatorsFinder} with the iterative finders.
+ */
+public class CHKDominatorsFinderTest {
+
+  @Test
+  public void testReducible() {
+    // Nested loops: 0 -> 1 -> 2 -> 3 -> 2, 3 -> 1, 1 -> 4, 2 -> 5 -> 4
+    IntGraph g = new IntGraph(6, 0);
+    g.edge(0, 1).edge(1, 2).edge(2, 3).edge(3, 2).edge(3, 1).edge(1, 4).edge(2, 5).edge(5, 4);
+    assertAgree(g);
+
+    CHKDominatorsFinder<Integer> chk = new CHKDominatorsFinder<Integer>(g);
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3), chk.getDominators(3));
+    Assert.assertEquals(Arrays.asList(0, 1, 4), chk.getDominators(4));
+    Assert.assertEquals(Integer.valueOf(2), chk.getImmediateDominator(5));
+  }
+
+  @Test
+  public void testIrreducible() {
+    // A loop with two entries, 1 and 2, neither of which dominates the other
+    IntGraph g = new IntGraph(5, 0);
+    g.edge(0, 1).edge(0, 2).edge(1, 2).edge(2, 1).edge(1, 3).edge(2, 3).edge(3, 4);
+    assertAgree(g);
+
+    CHKDominatorsFinder<Integer> chk = new CHKDominatorsFinder<Integer>(g);
+    Assert.assertEquals(Arrays.asList(0, 1), chk.getDominators(1));
+    Assert.assertEquals(Arrays.asList(0, 2), chk.getDominators(2));
+    Assert.assertEquals(Arrays.asList(0, 3, 4), chk.getDominators(4));
+    Assert.assertFalse(chk.isDominatedBy(2, 1));
+    Assert.assertFalse(chk.isDominatedBy(1, 2));
+  }
+
+  @Test
+  public void testMultipleHeadsAndUnreachableNodes() {
+    // Heads 0 and 1 meet in 2; 3 and 4 form a cycle that no head reaches; head 1 has a predecessor
+    IntGraph g = new IntGraph(7, 0, 1);
+    g.edge(0, 2).edge(1, 2).edge(2, 5).edge(5, 1).edge(3, 4).edge(4, 3).edge(4, 2).edge(0, 6);
+    assertAgree(g);
+
+    CHKDominatorsFinder<Integer> chk = new CHKDominatorsFinder<Integer>(g);
+    Assert.assertEquals(Collections.singletonList(1), chk.getDominators(1));
+    Assert.assertNull(chk.getImmediateDominator(1));
+    Assert.assertEquals(Collections.singletonList(2), chk.getDominators(2));
+    Assert.assertNull(chk.getImmediateDominator(2));
+    Assert.assertEquals(Arrays.asList(2, 5), chk.getDominators(5));
+    Assert.assertEquals(Arrays.asList(0, 6), chk.getDominators(6));
+    Assert.assertEquals(Collections.singletonList(3), chk.getDominators(3));
+    Assert.assertNull(chk.getImmediateDominator(3));
+    Assert.assertTrue(chk.isDominatedBy(3, 3));
+    Assert.assertFalse(chk.isDominatedBy(3, 4));
+    Assert.assertFalse(chk.isDominatedBy(2, 4));
+  }
+
+  @Test
+  public void testRandomGraphs() {
+    Random random = new Random(4711);
+    for (int round = 0; round < 500; round++) {
+      int n = 1 + random.nextInt(40);
+      int headCount = 1 + random.nextInt(Math.min(n, 3));
+      int[] heads = new int[headCount];
+      for (int i = 0; i < headCount; i++) {
+        heads[i] = random.nextInt(n);
+      }
+      IntGraph g = new IntGraph(n, heads);
+      int edges = random.nextInt(3 * n);
+      for (int i = 0; i < edges; i++) {
+        g.edge(random.nextInt(n), random.nextInt(n));
+      }
+      assertAgree(g);
+    }
+  }
+
+  @Test
+  public void testFactory() {
+    G.reset();
+    IntGraph g = new IntGraph(2, 0).edge(0, 1);
+    Assert.assertTrue(DominatorsFinder.Factory.newDominatorsFinder(g) instanceof MHGDominatorsFinder);
+    Assert.assertTrue(DominatorsFinder.Factory.newPostDominatorsFinder(g) instanceof MHGPostDominatorsFinder);
+    Options.v().set_dominators(Options.dominators_chk);
+    Assert.assertTrue(DominatorsFinder.Factory.newDominatorsFinder(g) instanceof CHKDominatorsFinder);
+    Assert.assertTrue(DominatorsFinder.Factory.newPostDominatorsFinder(g) instanceof CHKPostDominatorsFinder);
+    G.reset();
+  }
+
+  private static void assertAgree(IntGraph g) {
+    assertAgree(new CHKDominatorsFinder<Integer>(g), new MHGDominatorsFinder<Integer>(g));
+    assertAgree(new CHKPostDominatorsFinder<Integer>(g), new MHGPostDominatorsFinder<Integer>(g));
+  }
+
+  /**
+   * Nodes that no head reaches are dominated by themselves only in the CHK finder, while the iterative finder leaves them
+   * dominated by every node, so they are only compared as dominators.
+   */
+  private static void assertAgree(DominatorsFinder<Integer> chk, DominatorsFinder<Integer> mhg) {
+    DirectedGraph<Integer> g = chk.getGraph();
+    Set<Integer> reachable = reachable(g);
+    for (Integer node : g) {
+      List<Integer> doms = chk.getDominators(node);
+      if (!reachable.contains(node)) {
+        Assert.assertEquals(Collections.singletonList(node), doms);
+        Assert.assertNull(chk.getImmediateDominator(node));
+        for (Integer d : g) {
+          Assert.assertEquals(node.equals(d), chk.isDominatedBy(node, d));
+        }
+        continue;
+      }
+
+      String where = g + " node " + node;
+      Assert.assertEquals(where, new HashSet<Integer>(mhg.getDominators(node)), new HashSet<Integer>(doms));
+      Assert.assertEquals(where, mhg.getImmediateDominator(node), chk.getImmediateDominator(node));
+
+      // The dominators run from the outermost one down to the node itself, each immediately dominating the next
+      Assert.assertEquals(where, node, doms.get(doms.size() - 1));
+      Assert.assertNull(where, chk.getImmediateDominator(doms.get(0)));
+      for (int i = 1; i < doms.size(); i++) {
+        Assert.assertEquals(where, doms.get(i - 1), chk.getImmediateDominator(doms.get(i)));
+      }
+
+      for (Integer d : g) {
+        Assert.assertEquals(where + " by " + d, mhg.isDominatedBy(node, d), chk.isDominatedBy(node, d));
+      }
+      Assert.assertTrue(where, chk.isDominatedByAll(node, doms));
+    }
+  }
+
+  private static Set<Integer> reachable(DirectedGraph<Integer> g) {
+    Set<Integer> seen = new HashSet<Integer>(g.getHeads());
+    ArrayDeque<Integer> queue = new ArrayDeque<Integer>(seen);
+    while (!queue.isEmpty()) {
+      for (Integer s : g.getSuccsOf(queue.poll())) {
+        if (seen.add(s)) {
+          queue.add(s);
+        }
+      }
+    }
+    return seen;
+  }
+
+  /**
+   * A graph over the numbers <code>0..n-1</code> with the given heads, which may have predecessors. The tails are the
+   * nodes without successors.
+   */
+  private static class IntGraph implements DirectedGraph<Integer> {
+    private final List<List<Integer>> succs = new ArrayList<List<Integer>>();
+    private final List<List<Integer>> preds = new ArrayList<List<Integer>>();
+    private final List<Integer> heads = new ArrayList<Integer>();
+
+    IntGraph(int n, int... heads) {
+      for (int i = 0; i < n; i++) {
+        succs.add(new ArrayList<Integer>());
+        preds.add(new ArrayList<Integer>());
+      }
+      for (int h : heads) {
+        if (!this.heads.contains(h)) {
+          this.heads.add(h);
+        }
+      }
+    }
+
+    IntGraph edge(int from, int to) {
+      if (!succs.get(from).contains(to)) {
+        succs.get(from).add(to);
+        preds.get(to).add(from);
+      }
+      return this;
+    }
+
+    @Override
+    public List<Integer> getHeads() {
+      return heads;
+    }
+
+    @Override
+    public List<Integer> getTails() {
+      List<Integer> tails = new ArrayList<Integer>();
+      for (int i = 0; i < succs.size(); i++) {
+        if (succs.get(i).isEmpty()) {
+          tails.add(i);
+        }
+      }
+      return tails;
+    }
+
+    @Override
+    public List<Integer> getPredsOf(Integer s) {
+      return preds.get(s);
+    }
+
+    @Override
+    public List<Integer> getSuccsOf(Integer s) {
+      return succs.get(s);
+    }
+
+    @Override
+    public int size() {
+      return succs.size();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      List<Integer> nodes = new ArrayList<Integer>();
+      for (int i = 0; i < succs.size(); i++) {
+        nodes.add(i);
+      }
+      return nodes.iterator();
+    }
+
+    @Override
+    public String toString() {
+      return "heads " + heads + " succs " + succs;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package soot.toolkits.graph;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.options.Options;
+import soot.toolkits.exceptions.PedanticThrowAnalysis;
+import soot.toolkits.exceptions.ThrowAnalysis;
+import soot.toolkits.exceptions.UnitThrowAnalysis;
+import soot.toolkits.graph.ExceptionalUnitGraph.ExceptionDest;
+
+/**
+ * Compares the compact unit graphs with the classic ones on real bodies with traps.
+ */
+public class CompactUnitGraphTest {
+
+  private static final String[] CLASSES = { "soot.toolkits.exceptions.targets.MethodThrowableSetClass",
+      "java.util.zip.ZipFile", "java.io.BufferedReader", "java.util.concurrent.ConcurrentHashMap",
+      "java.net.URLConnection" };
+
+  private static List<Body> bodies;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    for (String c : CLASSES) {
+      Scene.v().addBasicClass(c, SootClass.BODIES);
+    }
+    Scene.v().loadNecessaryClasses();
+
+    bodies = new ArrayList<Body>();
+    int withTraps = 0;
+    for (String c : CLASSES) {
+      for (SootMethod m : Scene.v().getSootClass(c).getMethods()) {
+        if (m.isConcrete()) {
+          Body b = m.retrieveActiveBody();
+          bodies.add(b);
+          if (!b.getTraps().isEmpty()) {
+            withTraps++;
+          }
+        }
+      }
+    }
+    Assert.assertTrue(withTraps > 10);
+  }
+
+  @Test
+  public void testExceptionalGraphs() {
+    ThrowAnalysis[] analyses = { UnitThrowAnalysis.v(), PedanticThrowAnalysis.v() };
+    for (Body b : bodies) {
+      for (ThrowAnalysis ta : analyses) {
+        for (boolean omit : new boolean[] { false, true }) {
+          String where = b.getMethod() + " " + ta.getClass().getSimpleName() + " omit=" + omit;
+          ExceptionalUnitGraph classic = new ExceptionalUnitGraph(b, ta, omit);
+          ExceptionalUnitGraph compact = new CompactExceptionalUnitGraph(b, ta, omit);
+
+          assertSameGraph(where, classic, compact);
+          for (Unit u : b.getUnits()) {
+            Assert.assertEquals(where, classic.getUnexceptionalSuccsOf(u), compact.getUnexceptionalSuccsOf(u));
+            Assert.assertEquals(where, classic.getUnexceptionalPredsOf(u), compact.getUnexceptionalPredsOf(u));
+            Assert.assertEquals(where, classic.getExceptionalSuccsOf(u), compact.getExceptionalSuccsOf(u));
+            Assert.assertEquals(where, classic.getExceptionalPredsOf(u), compact.getExceptionalPredsOf(u));
+            Assert.assertEquals(where + " " + u, describe(classic.getExceptionDests(u)),
+                describe(compact.getExceptionDests(u)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBriefGraphs() {
+    for (Body b : bodies) {
+      assertSameGraph(b.getMethod().toString(), new BriefUnitGraph(b), new CompactBriefUnitGraph(b));
+    }
+  }
+
+  private static void assertSameGraph(String where, UnitGraph classic, UnitGraph compact) {
+    Assert.assertEquals(where, classic.size(), compact.size());
+    Assert.assertEquals(where, classic.getHeads(), compact.getHeads());
+    Assert.assertEquals(where, classic.getTails(), compact.getTails());
+    Iterator<Unit> it = compact.iterator();
+    for (Unit u : classic) {
+      Assert.assertSame(where, u, it.next());
+      Assert.assertEquals(where + " " + u, classic.getSuccsOf(u), compact.getSuccsOf(u));
+      Assert.assertEquals(where + " " + u, classic.getPredsOf(u), compact.getPredsOf(u));
+    }
+    Assert.assertFalse(where, it.hasNext());
+  }
+
+  private static List<String> describe(Collection<ExceptionDest> dests) {
+    List<String> ret = new ArrayList<String>();
+    for (ExceptionDest d : dests) {
+      ret.add(System.identityHashCode(d.getTrap()) + " " + System.identityHashCode(d.getHandlerNode()) + " "
+          + d.getThrowables());
+    }
+    return ret;
+  }
+}
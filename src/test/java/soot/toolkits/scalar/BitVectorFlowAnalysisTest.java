@@ -0,0 +1,353 @@
+package soot.toolkits.scalar;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import soot.Body;
+import soot.G;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.ValueBox;
+import soot.options.Options;
+import soot.toolkits.graph.CompactExceptionalUnitGraph;
+import soot.toolkits.graph.DirectedGraph;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+public class BitVectorFlowAnalysisTest {
+
+  private static final String[] CLASSES = { "soot.toolkits.exceptions.targets.MethodThrowableSetClass",
+      "java.util.concurrent.ConcurrentHashMap", "java.util.zip.ZipFile", "java.io.BufferedReader" };
+
+  private static class Graph implements DirectedGraph<String> {
+    final List<String> nodes = new ArrayList<String>();
+    final Map<String, List<String>> succs = new HashMap<String, List<String>>();
+    final Map<String, List<String>> preds = new HashMap<String, List<String>>();
+
+    Graph(String... nodes) {
+      for (String n : nodes) {
+        this.nodes.add(n);
+        succs.put(n, new ArrayList<String>());
+        preds.put(n, new ArrayList<String>());
+      }
+    }
+
+    Graph edge(String from, String to) {
+      succs.get(from).add(to);
+      preds.get(to).add(from);
+      return this;
+    }
+
+    @Override
+    public List<String> getHeads() {
+      return Collections.singletonList(nodes.get(0));
+    }
+
+    @Override
+    public List<String> getTails() {
+      List<String> tails = new ArrayList<String>();
+      for (String n : nodes) {
+        if (succs.get(n).isEmpty()) {
+          tails.add(n);
+        }
+      }
+      return tails;
+    }
+
+    @Override
+    public List<String> getPredsOf(String s) {
+      return preds.get(s);
+    }
+
+    @Override
+    public List<String> getSuccsOf(String s) {
+      return succs.get(s);
+    }
+
+    @Override
+    public int size() {
+      return nodes.size();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return nodes.iterator();
+    }
+  }
+
+  /**
+   * An analysis whose gen and kill sets are given as maps from nodes to facts.
+   */
+  private static class Analysis extends BitVectorFlowAnalysis<String> {
+    final Map<String, int[]> gens = new HashMap<String, int[]>();
+    final Map<String, int[]> kills = new HashMap<String, int[]>();
+    String inFlowFrom;
+
+    Analysis(Graph g, boolean forward, boolean intersection) {
+      super(g, forward, intersection);
+    }
+
+    Analysis gen(String node, int... facts) {
+      gens.put(node, facts);
+      return this;
+    }
+
+    Analysis kill(String node, int... facts) {
+      kills.put(node, facts);
+      return this;
+    }
+
+    Analysis run(int universeSize) {
+      doAnalysis(universeSize);
+      return this;
+    }
+
+    @Override
+    protected void initGenKill(String node, int index) {
+      if (gens.containsKey(node)) {
+        for (int f : gens.get(node)) {
+          gen(index, f);
+        }
+      }
+      if (kills.containsKey(node)) {
+        for (int f : kills.get(node)) {
+          kill(index, f);
+        }
+      }
+    }
+
+    @Override
+    protected boolean isInFlowEdge(String from, String to) {
+      return from.equals(inFlowFrom);
+    }
+  }
+
+  @Test
+  public void testForwardUnionWithLoop() {
+    Graph g = new Graph("a", "b", "c", "d").edge("a", "b").edge("b", "c").edge("c", "b").edge("c", "d");
+    Analysis an = new Analysis(g, true, false).gen("a", 0).kill("c", 0).gen("c", 1).run(2);
+
+    assertEquals(Collections.<Integer>emptyList(), facts(an.getFlowBefore("a")));
+    assertEquals(Arrays.asList(0, 1), facts(an.getFlowBefore("b")));
+    assertEquals(Arrays.asList(0, 1), facts(an.getFlowAfter("b")));
+    assertEquals(Arrays.asList(1), facts(an.getFlowBefore("d")));
+  }
+
+  @Test
+  public void testForwardIntersection() {
+    // dead1 and dead2 form a cycle that cannot be reached from the head
+    Graph g = new Graph("a", "b", "c", "d", "dead1", "dead2").edge("a", "b").edge("a", "c").edge("b", "d")
+        .edge("c", "d").edge("dead1", "dead2").edge("dead2", "dead1").edge("dead2", "d");
+    Analysis an = new Analysis(g, true, true).gen("b", 0, 1).gen("c", 0).gen("dead1", 2).run(3);
+
+    assertEquals(Arrays.asList(0), facts(an.getFlowBefore("d")));
+    assertEquals(Arrays.asList(0, 1), facts(an.getFlowAfter("b")));
+    assertTrue(an.getFlowBefore("dead1").isEmpty());
+    assertEquals(Arrays.asList(2), facts(an.getFlowAfter("dead1")));
+  }
+
+  @Test
+  public void testIntersectionWithLoop() {
+    Graph g = new Graph("a", "b", "c", "d").edge("a", "b").edge("b", "c").edge("c", "b").edge("b", "d");
+    Analysis an = new Analysis(g, true, true).gen("a", 0).gen("c", 1).run(2);
+
+    // fact 1 is only generated inside the loop and does not hold on entry to it
+    assertEquals(Arrays.asList(0), facts(an.getFlowBefore("b")));
+    assertEquals(Arrays.asList(0, 1), facts(an.getFlowAfter("c")));
+  }
+
+  @Test
+  public void testBackwardAcrossWords() {
+    Graph g = new Graph("a", "b", "c").edge("a", "b").edge("b", "c");
+    Analysis an = new Analysis(g, false, false).gen("c", 3, 70).kill("b", 70).gen("a", 129).run(130);
+
+    assertEquals(Arrays.asList(3, 70), facts(an.getFlowAfter("b")));
+    assertEquals(Arrays.asList(3), facts(an.getFlowBefore("b")));
+    assertEquals(Arrays.asList(3, 129), facts(an.getFlowBefore("a")));
+    assertTrue(an.isSetBefore("c", 70));
+    assertFalse(an.isSetBefore("b", 70));
+    assertEquals(Arrays.asList("x70"), an.getElementsAfter("b", names(130), 4, 130));
+  }
+
+  @Test
+  public void testInFlowEdge() {
+    Graph g = new Graph("a", "b", "h").edge("a", "b").edge("b", "h");
+    Analysis an = new Analysis(g, true, false).gen("a", 0).kill("b", 0).gen("b", 1);
+    an.inFlowFrom = "b";
+    an.run(2);
+
+    // h sees the flow before b
+    assertEquals(Arrays.asList(0), facts(an.getFlowBefore("h")));
+  }
+
+  /**
+   * Runs the bit-vector analyses and the analyses they replace on the bodies of a few loaded classes, many of them with
+   * traps, and checks that they agree on every statement. The compact graph numbers its units itself, the exceptional
+   * unit graph is numbered by the analysis.
+   */
+  @Test
+  public void testAgreesWithSimpleAnalysesOnLoadedBodies() throws IOException {
+    G.reset();
+    Options.v().set_process_dir(Collections.singletonList(new File("./target/test-classes").getCanonicalPath()));
+    Options.v().set_prepend_classpath(true);
+    Options.v().set_src_prec(Options.src_prec_only_class);
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_output_format(Options.output_format_none);
+    for (String c : CLASSES) {
+      Scene.v().addBasicClass(c, SootClass.BODIES);
+    }
+    Scene.v().loadNecessaryClasses();
+
+    int bodies = 0;
+    int bodiesWithTraps = 0;
+    for (String c : CLASSES) {
+      for (SootMethod m : new ArrayList<SootMethod>(Scene.v().getSootClass(c).getMethods())) {
+        if (!m.isConcrete()) {
+          continue;
+        }
+        Body b = m.retrieveActiveBody();
+        bodies++;
+        if (!b.getTraps().isEmpty()) {
+          bodiesWithTraps++;
+        }
+        assertAgree(m.getSignature(), new ExceptionalUnitGraph(b));
+        assertAgree(m.getSignature(), new CompactExceptionalUnitGraph(b));
+      }
+    }
+    assertTrue(bodies > 50);
+    assertTrue(bodiesWithTraps > 10);
+  }
+
+  private static void assertAgree(String method, UnitGraph g) {
+    SimpleLiveLocals live = new SimpleLiveLocals(g);
+    BitVectorLiveLocals bvLive = new BitVectorLiveLocals(g);
+    SimpleLocalDefs defs = new SimpleLocalDefs(g);
+    BitVectorLocalDefs bvDefs = new BitVectorLocalDefs(g);
+    GuaranteedDefs guaranteed = new GuaranteedDefs(g);
+    MustDefs mustDefs = new MustDefs(g);
+    BitVectorGuaranteedDefs bvGuaranteed = new BitVectorGuaranteedDefs(g);
+
+    for (Unit u : g.getBody().getUnits()) {
+      String at = method + " at " + u;
+      assertEquals(at, set(live.getLiveLocalsBefore(u)), set(bvLive.getLiveLocalsBefore(u)));
+      assertEquals(at, set(live.getLiveLocalsAfter(u)), set(bvLive.getLiveLocalsAfter(u)));
+      // GuaranteedDefs starts from the empty set and loses definitions that flow around loops
+      assertTrue(at, set(bvGuaranteed.getGuaranteedDefs(u)).containsAll(guaranteed.getGuaranteedDefs(u)));
+      assertEquals(at, set(mustDefs.getFlowBefore(u).toList()), set(bvGuaranteed.getGuaranteedDefs(u)));
+      for (ValueBox vb : u.getUseBoxes()) {
+        if (vb.getValue() instanceof Local) {
+          Local l = (Local) vb.getValue();
+          assertEquals(at + " for " + l, set(defs.getDefsOfAt(l, u)), set(bvDefs.getDefsOfAt(l, u)));
+        }
+      }
+    }
+    for (Local l : g.getBody().getLocals()) {
+      assertEquals(method + " for " + l, set(defs.getDefsOf(l)), set(bvDefs.getDefsOf(l)));
+    }
+  }
+
+  /**
+   * The locals defined on all paths to a unit, starting from the full set of locals, as the maximal fixed point that
+   * {@link BitVectorGuaranteedDefs} computes.
+   */
+  private static class MustDefs extends ForwardFlowAnalysis<Unit, FlowSet<Local>> {
+    private final FlowSet<Local> allLocals = new ArraySparseSet<Local>();
+
+    MustDefs(UnitGraph graph) {
+      super(graph);
+      for (Local l : graph.getBody().getLocals()) {
+        allLocals.add(l);
+      }
+      doAnalysis();
+    }
+
+    @Override
+    protected FlowSet<Local> newInitialFlow() {
+      return allLocals.clone();
+    }
+
+    @Override
+    protected FlowSet<Local> entryInitialFlow() {
+      return new ArraySparseSet<Local>();
+    }
+
+    @Override
+    protected void flowThrough(FlowSet<Local> in, Unit unit, FlowSet<Local> out) {
+      in.copy(out);
+      for (ValueBox box : unit.getDefBoxes()) {
+        if (box.getValue() instanceof Local) {
+          out.add((Local) box.getValue());
+        }
+      }
+    }
+
+    @Override
+    protected void merge(FlowSet<Local> in1, FlowSet<Local> in2, FlowSet<Local> out) {
+      in1.intersection(in2, out);
+    }
+
+    @Override
+    protected void copy(FlowSet<Local> source, FlowSet<Local> dest) {
+      source.copy(dest);
+    }
+  }
+
+  private static HashSet<Object> set(List<?> list) {
+    return new HashSet<Object>(list);
+  }
+
+  private static List<Integer> facts(java.util.BitSet bits) {
+    List<Integer> result = new ArrayList<Integer>();
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      result.add(i);
+    }
+    return result;
+  }
+
+  private static String[] names(int n) {
+    String[] names = new String[n];
+    for (int i = 0; i < n; i++) {
+      names[i] = "x" + i;
+    }
+    return names;
+  }
+}
@@ -0,0 +1,193 @@
+package soot.util;
+
+/*-
+ * #%L
+ * Soot - a J*va Optimization Framework
+ * %%
+ * Copyright (C) 1997 - 2018 Raja Vallée-Rai and others
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.G;
+import soot.SourceLocator;
+
+public class MappedArchiveTest {
+
+  private static final byte[] STORED = "stored entry contents".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] DEFLATED;
+
+  static {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("deflated entry contents ").append(i).append('\n');
+    }
+    DEFLATED = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  File jar;
+  MappedArchive archive;
+
+  @Before
+  public void createArchive() throws IOException {
+    jar = File.createTempFile("mapped", ".jar");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      ZipEntry stored = new ZipEntry("a/Stored.class");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(STORED.length);
+      CRC32 crc = new CRC32();
+      crc.update(STORED);
+      stored.setCrc(crc.getValue());
+      out.putNextEntry(stored);
+      out.write(STORED);
+      out.closeEntry();
+
+      out.putNextEntry(new ZipEntry("a/b/Deflated.class"));
+      out.write(DEFLATED);
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+    archive = MappedArchive.open(jar, true);
+  }
+
+  @After
+  public void deleteArchive() throws IOException {
+    archive.close();
+    jar.delete();
+  }
+
+  @Test
+  public void testIndex() {
+    assertTrue(archive.isMapped());
+    assertEquals(2, archive.getEntryNames().size());
+    assertTrue(archive.containsEntry("a/Stored.class"));
+    assertTrue(archive.containsEntry("a/b/Deflated.class"));
+    assertFalse(archive.containsEntry("a/Missing.class"));
+  }
+
+  @Test
+  public void testStoredEntryIsView() throws IOException {
+    ByteBuffer buf = archive.getEntry("a/Stored.class");
+    assertTrue(buf.isReadOnly());
+    assertArrayEquals(STORED, toArray(buf));
+  }
+
+  @Test
+  public void testDeflatedEntry() throws IOException {
+    assertArrayEquals(DEFLATED, toArray(archive.getEntry("a/b/Deflated.class")));
+  }
+
+  @Test
+  public void testInputStream() throws IOException {
+    InputStream is = archive.getInputStream("a/b/Deflated.class");
+    byte[] read = new byte[DEFLATED.length];
+    int n = 0;
+    for (int len; (len = is.read(read, n, read.length - n)) > 0;) {
+      n += len;
+    }
+    assertEquals(DEFLATED.length, n);
+    assertEquals(-1, is.read());
+    assertArrayEquals(DEFLATED, read);
+  }
+
+  @Test
+  public void testMissingEntry() throws IOException {
+    assertNull(archive.getEntry("a/Missing.class"));
+    assertNull(archive.getInputStream("a/Missing.class"));
+  }
+
+  @Test
+  public void testOpenWhileInterrupted() throws IOException {
+    Thread.currentThread().interrupt();
+    MappedArchive interrupted = MappedArchive.open(jar, true);
+    // The interrupt is kept for the caller
+    assertTrue(Thread.interrupted());
+    try {
+      assertTrue(interrupted.isMapped());
+      assertArrayEquals(DEFLATED, toArray(interrupted.getEntry("a/b/Deflated.class")));
+    } finally {
+      interrupted.close();
+    }
+  }
+
+  @Test
+  public void testUnmappedArchive() throws IOException {
+    MappedArchive unmapped = MappedArchive.open(jar, false);
+    try {
+      assertFalse(unmapped.isMapped());
+      assertEquals(archive.getEntryNames(), unmapped.getEntryNames());
+      assertArrayEquals(STORED, toArray(unmapped.getEntry("a/Stored.class")));
+      assertArrayEquals(DEFLATED, toArray(unmapped.getEntry("a/b/Deflated.class")));
+    } finally {
+      unmapped.close();
+    }
+    assertTrue(unmapped.isClosed());
+  }
+
+  @Test
+  public void testSourceLocatorReopensChangedArchive() throws IOException {
+    G.reset();
+    String path = jar.getPath();
+    MappedArchive first = SourceLocator.v().getArchive(path);
+    assertSame(first, SourceLocator.v().getArchive(path));
+
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      out.putNextEntry(new ZipEntry("c/Other.class"));
+      out.write(DEFLATED);
+      out.closeEntry();
+    } finally {
+      out.close();
+    }
+    // The archive is only checked for changes when the class path is invalidated
+    assertSame(first, SourceLocator.v().getArchive(path));
+    SourceLocator.v().invalidateClassPath();
+    assertTrue(first.isClosed());
+    MappedArchive second = SourceLocator.v().getArchive(path);
+    assertNotSame(first, second);
+    assertEquals(Collections.singleton("c/Other.class"), second.getEntryNames());
+
+    SourceLocator.v().invalidateClassPath();
+    assertSame(second, SourceLocator.v().getArchive(path));
+    G.reset();
+    assertTrue(second.isClosed());
+  }
+
+  private static byte[] toArray(ByteBuffer buf) {
+    byte[] ret = new byte[buf.remaining()];
+    buf.get(ret);
+    return ret;
+  }
+}